@@ -0,0 +1,88 @@
+package com.newwave.student_management.benchmark;
+
+import com.newwave.student_management.domains.assessment.entity.Grade;
+import com.newwave.student_management.domains.curriculum.entity.Course;
+import com.newwave.student_management.domains.enrollment.entity.ClassSession;
+import com.newwave.student_management.domains.enrollment.entity.Enrollment;
+import com.newwave.student_management.domains.enrollment.entity.ScheduledClass;
+import com.newwave.student_management.domains.facility.entity.Room;
+import com.newwave.student_management.domains.profile.entity.Teacher;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Dữ liệu mẫu dựng sẵn (không cần DB/Redis) dùng chung cho các benchmark.
+ */
+public final class BenchmarkFixtures {
+
+    private BenchmarkFixtures() {
+    }
+
+    public static List<ClassSession> sessions(int count) {
+        List<ClassSession> sessions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Room room = new Room();
+            room.setRoomId(100 + i);
+            room.setName("A-10" + i);
+
+            ClassSession session = new ClassSession();
+            session.setSessionId((long) i + 1);
+            session.setDayOfWeek(2 + i);
+            session.setStartTime(LocalTime.of(7 + i * 2, 30));
+            session.setEndTime(LocalTime.of(9 + i * 2, 0));
+            session.setRoom(room);
+            sessions.add(session);
+        }
+        return sessions;
+    }
+
+    public static ScheduledClass scheduledClass(int classId, int sessionCount) {
+        Course course = new Course();
+        course.setCourseId(classId % 50 + 1);
+        course.setCode("CS" + (100 + classId % 50));
+        course.setName("Cấu trúc dữ liệu và giải thuật");
+        course.setCredits(3);
+
+        Teacher teacher = new Teacher();
+        teacher.setTeacherId(UUID.nameUUIDFromBytes(("teacher-" + classId).getBytes()));
+        teacher.setFirstName("Nguyễn Văn");
+        teacher.setLastName("An");
+
+        ScheduledClass scheduledClass = new ScheduledClass();
+        scheduledClass.setClassId(classId);
+        scheduledClass.setCourse(course);
+        scheduledClass.setTeacher(teacher);
+        scheduledClass.setMaxStudents(40);
+        List<ClassSession> sessions = sessions(sessionCount);
+        sessions.forEach(session -> session.setScheduledClass(scheduledClass));
+        scheduledClass.setSessions(sessions);
+        return scheduledClass;
+    }
+
+    public static Enrollment enrollment(int enrollmentId, ScheduledClass scheduledClass) {
+        Enrollment enrollment = new Enrollment();
+        enrollment.setEnrollmentId(enrollmentId);
+        enrollment.setScheduledClass(scheduledClass);
+        enrollment.setEnrollmentDate(LocalDate.of(2026, 1, 5));
+        return enrollment;
+    }
+
+    /**
+     * Bảng điểm {@code count} môn, điểm hệ 10 rải đều từ 3.0 đến 10.0.
+     */
+    public static List<Grade> grades(int count) {
+        List<Grade> grades = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Grade grade = new Grade();
+            grade.setEnrollment(enrollment(i + 1, scheduledClass(i + 1, 1)));
+            grade.setGradeValue(BigDecimal.valueOf(30 + (i * 7) % 71, 1));
+            grades.add(grade);
+        }
+        return grades;
+    }
+}
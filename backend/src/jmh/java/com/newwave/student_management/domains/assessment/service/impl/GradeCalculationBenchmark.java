@@ -0,0 +1,57 @@
+package com.newwave.student_management.domains.assessment.service.impl;
+
+import com.newwave.student_management.benchmark.BenchmarkFixtures;
+import com.newwave.student_management.domains.assessment.entity.Grade;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GPA tích lũy và quy đổi thang điểm 10 → 4 của {@link GradeServiceImpl}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GradeCalculationBenchmark {
+
+    /** Số môn trên bảng điểm (1 học kỳ ≈ 8, cả khóa ≈ 50). */
+    @Param({ "8", "50" })
+    private int gradeCount;
+
+    private List<Grade> grades;
+    private BigDecimal[] grade10Values;
+
+    @Setup
+    public void setUp() {
+        grades = BenchmarkFixtures.grades(gradeCount);
+        grade10Values = grades.stream().map(Grade::getGradeValue).toArray(BigDecimal[]::new);
+    }
+
+    @Benchmark
+    public BigDecimal calculateGpa() {
+        return GradeServiceImpl.calculateGpa(grades);
+    }
+
+    @Benchmark
+    public void convertToScale4(Blackhole blackhole) {
+        for (BigDecimal value : grade10Values) {
+            blackhole.consume(GradeServiceImpl.convertToScale4(value));
+        }
+    }
+}
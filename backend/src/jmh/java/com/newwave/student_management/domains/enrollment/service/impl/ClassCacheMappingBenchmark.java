@@ -0,0 +1,59 @@
+package com.newwave.student_management.domains.enrollment.service.impl;
+
+import com.newwave.student_management.benchmark.BenchmarkFixtures;
+import com.newwave.student_management.domains.enrollment.dto.response.StudentAvailableClassResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ClassCacheService#mapCacheToResponse}: dựng response từ 1 hash
+ * {@code class:{classId}} (đường near cache miss của listing).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClassCacheMappingBenchmark {
+
+    @Param({ "LEGACY", "BINARY" })
+    private ClassSessionCodec.Encoding sessionEncoding;
+
+    private Map<Object, Object> classHash;
+
+    @Setup
+    public void setUp() {
+        classHash = new HashMap<>();
+        classHash.put("classId", "1201");
+        classHash.put("courseId", "17");
+        classHash.put("semesterId", "5");
+        classHash.put("courseCode", "CS117");
+        classHash.put("courseName", "Cấu trúc dữ liệu và giải thuật");
+        classHash.put("credits", "3");
+        classHash.put("teacherName", "Nguyễn Văn An");
+        classHash.put("maxSlot", "40");
+        classHash.put("currentSlot", "27");
+        classHash.put("departmentId", "2");
+        classHash.put("status", "OPEN");
+        classHash.put("sessions", ClassSessionCodec.encode(BenchmarkFixtures.sessions(2), sessionEncoding));
+    }
+
+    @Benchmark
+    public StudentAvailableClassResponse mapCacheToResponse() {
+        return ClassCacheService.mapCacheToResponse(classHash);
+    }
+}
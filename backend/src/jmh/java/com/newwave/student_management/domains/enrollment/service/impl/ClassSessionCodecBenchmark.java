@@ -0,0 +1,67 @@
+package com.newwave.student_management.domains.enrollment.service.impl;
+
+import com.newwave.student_management.benchmark.BenchmarkFixtures;
+import com.newwave.student_management.domains.enrollment.dto.response.ClassSessionResponse;
+import com.newwave.student_management.domains.enrollment.entity.ClassSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * So sánh codec field {@code sessions} cũ (JSON String.format + split) với
+ * codec binary trên cùng dữ liệu. Decode là hot path của listing lớp.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClassSessionCodecBenchmark {
+
+    /** Số buổi học / tuần của 1 lớp (thực tế 1-3). */
+    @Param({ "1", "3" })
+    private int sessionCount;
+
+    private List<ClassSession> sessions;
+    private String legacyEncoded;
+    private String binaryEncoded;
+
+    @Setup
+    public void setUp() {
+        sessions = BenchmarkFixtures.sessions(sessionCount);
+        legacyEncoded = ClassSessionCodec.encodeLegacy(sessions);
+        binaryEncoded = ClassSessionCodec.encodeBinary(sessions);
+    }
+
+    @Benchmark
+    public String encodeLegacy() {
+        return ClassSessionCodec.encodeLegacy(sessions);
+    }
+
+    @Benchmark
+    public String encodeBinary() {
+        return ClassSessionCodec.encodeBinary(sessions);
+    }
+
+    @Benchmark
+    public List<ClassSessionResponse> decodeLegacy() {
+        return ClassSessionCodec.decode(legacyEncoded);
+    }
+
+    @Benchmark
+    public List<ClassSessionResponse> decodeBinary() {
+        return ClassSessionCodec.decode(binaryEncoded);
+    }
+}
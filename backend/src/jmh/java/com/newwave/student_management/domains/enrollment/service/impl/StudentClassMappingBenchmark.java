@@ -0,0 +1,54 @@
+package com.newwave.student_management.domains.enrollment.service.impl;
+
+import com.newwave.student_management.benchmark.BenchmarkFixtures;
+import com.newwave.student_management.domains.enrollment.dto.response.StudentAvailableClassResponse;
+import com.newwave.student_management.domains.enrollment.dto.response.StudentEnrolledClassResponse;
+import com.newwave.student_management.domains.enrollment.entity.Enrollment;
+import com.newwave.student_management.domains.enrollment.entity.ScheduledClass;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping entity → DTO của {@link StudentClassServiceImpl} (đường DB fallback
+ * của listing lớp và danh sách lớp đã đăng ký).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StudentClassMappingBenchmark {
+
+    private StudentClassServiceImpl service;
+    private ScheduledClass scheduledClass;
+    private Enrollment enrollment;
+
+    @Setup
+    public void setUp() {
+        // Các hàm mapping không chạm repository/Redis
+        service = new StudentClassServiceImpl(null, null, null, null, null, null, null, null);
+        scheduledClass = BenchmarkFixtures.scheduledClass(1201, 2);
+        enrollment = BenchmarkFixtures.enrollment(1, scheduledClass);
+    }
+
+    @Benchmark
+    public StudentAvailableClassResponse mapToAvailableClassResponse() {
+        return service.mapToAvailableClassResponse(scheduledClass, 27);
+    }
+
+    @Benchmark
+    public StudentEnrolledClassResponse mapToEnrolledClassResponse() {
+        return service.mapToEnrolledClassResponse(enrollment);
+    }
+}
@@ -0,0 +1,62 @@
+package com.newwave.student_management.domains.enrollment.service.impl;
+
+import com.newwave.student_management.benchmark.BenchmarkFixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chi phí kiểm tra trùng lịch trong JVM: dựng thời khóa biểu của SV từ các
+ * dòng {@code findEnrolledSessionSlots} rồi AND với lớp đích — phần thay cho
+ * N query countStudentConflicts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WeeklyTimetableBenchmark {
+
+    /** Số buổi SV đã đăng ký trong tuần (thực tế 10-25). */
+    @Param({ "10", "25" })
+    private int enrolledSessions;
+
+    private List<Object[]> rows;
+    private WeeklyTimetable target;
+    private WeeklyTimetable student;
+
+    @Setup
+    public void setUp() {
+        rows = new ArrayList<>(enrolledSessions);
+        for (int i = 0; i < enrolledSessions; i++) {
+            int hour = 7 + (i / 6) * 3;
+            rows.add(new Object[] { 1 + i % 6, LocalTime.of(hour, 0), LocalTime.of(hour + 2, 30) });
+        }
+        target = WeeklyTimetable.of(BenchmarkFixtures.sessions(3));
+        student = WeeklyTimetable.fromRows(rows);
+    }
+
+    @Benchmark
+    public WeeklyTimetable buildStudentTimetable() {
+        return WeeklyTimetable.fromRows(rows);
+    }
+
+    @Benchmark
+    public boolean overlaps() {
+        return target.overlaps(student);
+    }
+}
@@ -0,0 +1,72 @@
+package com.newwave.student_management.infrastructure.ratelimit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import com.newwave.student_management.infrastructure.security.ClientIpResolver;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolve key rate limit của {@link RateLimitFilter}: userId từ JWT đã xác
+ * thực, hoặc IP (X-Forwarded-For) khi chưa có JWT.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RateLimitKeyBenchmark {
+
+    @Param({ "jwt", "forwarded-for" })
+    private String source;
+
+    private RateLimitFilter filter;
+    private MockHttpServletRequest request;
+
+    @Setup
+    public void setUp() {
+        filter = new RateLimitFilter(null, new RateLimitProperties(true, true, true, 0, null),
+                new ClientIpResolver(List.of("10.0.0.0/8")), null);
+        request = new MockHttpServletRequest("POST", "/api/v1/student/classes/1201/enroll");
+        request.setRemoteAddr("10.0.0.15");
+        SecurityContextHolder.clearContext();
+        if ("jwt".equals(source)) {
+            Jwt jwt = Jwt.withTokenValue("token")
+                    .header("alg", "HS256")
+                    .claim("userId", UUID.randomUUID().toString())
+                    .claim("role", "STUDENT")
+                    .build();
+            // State Scope.Thread → @Setup chạy trên chính thread benchmark
+            SecurityContextHolder.getContext().setAuthentication(new JwtAuthenticationToken(jwt));
+        } else {
+            request.addHeader("X-Forwarded-For", "203.113.10.25, 10.0.0.1");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Benchmark
+    public String resolveUserId() {
+        return filter.resolveUserId(request);
+    }
+}
@@ -0,0 +1,95 @@
+package com.newwave.student_management.loadtest;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Đối soát sau khi chạy: DB là nguồn sự thật.
+ * <ul>
+ * <li>Oversubscription: lớp có số ENROLLED &gt; max_students.</li>
+ * <li>Slot drift: {@code class:{id}.currentSlot} khác số ENROLLED trên DB.</li>
+ * <li>Waitlist drift: {@code ZCARD waitlist:{id}} khác số WAITLISTED trên
+ * DB.</li>
+ * </ul>
+ */
+@RequiredArgsConstructor
+public class ConsistencyChecker {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public record ClassState(int classId, int maxStudents, long enrolled, long waitlisted) {
+    }
+
+    public Map<String, Object> check(int semesterId) {
+        List<ClassState> classes = jdbcTemplate.query("""
+                SELECT sc.class_id, sc.max_students,
+                       COUNT(e.enrollment_id) FILTER (WHERE e.status = 'ENROLLED') AS enrolled,
+                       COUNT(e.enrollment_id) FILTER (WHERE e.status = 'WAITLISTED') AS waitlisted
+                FROM scheduled_classes sc
+                LEFT JOIN enrollments e ON e.class_id = sc.class_id AND e.deleted_at IS NULL
+                WHERE sc.semester_id = ? AND sc.deleted_at IS NULL
+                GROUP BY sc.class_id, sc.max_students
+                ORDER BY sc.class_id
+                """,
+                (rs, rowNum) -> new ClassState(rs.getInt("class_id"), rs.getInt("max_students"),
+                        rs.getLong("enrolled"), rs.getLong("waitlisted")),
+                semesterId);
+
+        List<Map<String, Object>> oversubscribed = new ArrayList<>();
+        List<Map<String, Object>> slotDrift = new ArrayList<>();
+        List<Map<String, Object>> waitlistDrift = new ArrayList<>();
+        long totalEnrolled = 0;
+        long totalWaitlisted = 0;
+
+        for (ClassState state : classes) {
+            totalEnrolled += state.enrolled();
+            totalWaitlisted += state.waitlisted();
+            if (state.enrolled() > state.maxStudents()) {
+                oversubscribed.add(violation(state.classId(), "maxStudents", state.maxStudents(),
+                        "enrolled", state.enrolled()));
+            }
+
+            Object currentSlot = stringRedisTemplate.opsForHash().get("class:" + state.classId(), "currentSlot");
+            if (currentSlot != null && Long.parseLong(currentSlot.toString()) != state.enrolled()) {
+                slotDrift.add(violation(state.classId(), "redisCurrentSlot", Long.parseLong(currentSlot.toString()),
+                        "dbEnrolled", state.enrolled()));
+            }
+            Long redisWaitlist = stringRedisTemplate.opsForZSet().zCard("waitlist:" + state.classId());
+            if (redisWaitlist != null && redisWaitlist != state.waitlisted()) {
+                waitlistDrift.add(violation(state.classId(), "redisWaitlist", redisWaitlist,
+                        "dbWaitlisted", state.waitlisted()));
+            }
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("classes", classes.size());
+        result.put("totalEnrolled", totalEnrolled);
+        result.put("totalWaitlisted", totalWaitlisted);
+        result.put("oversubscribed", oversubscribed);
+        result.put("slotDrift", slotDrift);
+        result.put("waitlistDrift", waitlistDrift);
+        return result;
+    }
+
+    public static boolean hasViolations(Map<String, Object> consistency) {
+        return !((List<?>) consistency.get("oversubscribed")).isEmpty()
+                || !((List<?>) consistency.get("slotDrift")).isEmpty()
+                || !((List<?>) consistency.get("waitlistDrift")).isEmpty();
+    }
+
+    private static Map<String, Object> violation(int classId, String expectedName, long expected,
+            String actualName, long actual) {
+        Map<String, Object> violation = new LinkedHashMap<>();
+        violation.put("classId", classId);
+        violation.put(expectedName, expected);
+        violation.put(actualName, actual);
+        return violation;
+    }
+}
@@ -0,0 +1,100 @@
+package com.newwave.student_management.loadtest;
+
+import com.newwave.student_management.domains.enrollment.service.IAdminClassService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chạy khóa lớp / dồn lớp trên semester vừa đăng ký xong rồi đối chiếu với
+ * trạng thái chụp trước đó: lớp thiếu minStudents phải CANCELLED, còn lại
+ * LOCKED, lớp bị hủy không còn enrollment hiệu lực, và mỗi SV bị hủy nhận đúng
+ * 1 thông báo inbox.
+ */
+@RequiredArgsConstructor
+public class ConsolidationProbe {
+
+    private static final String CANCELLED_TITLE_PATTERN = "Lớp % bị hủy";
+
+    private final IAdminClassService adminClassService;
+    private final JdbcTemplate jdbcTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private record ClassBefore(String expectedStatus, long active) {
+    }
+
+    public Map<String, Object> probe(int semesterId) {
+        Map<Integer, ClassBefore> before = new HashMap<>();
+        jdbcTemplate.query("""
+                SELECT sc.class_id,
+                       COUNT(e.enrollment_id) FILTER (WHERE e.status = 'ENROLLED') < sc.min_students AS cancel,
+                       COUNT(e.enrollment_id) FILTER (WHERE e.status <> 'DROPPED') AS active
+                FROM scheduled_classes sc
+                LEFT JOIN enrollments e ON e.class_id = sc.class_id AND e.deleted_at IS NULL
+                WHERE sc.semester_id = ? AND sc.status = 'OPEN' AND sc.deleted_at IS NULL
+                GROUP BY sc.class_id
+                """, rs -> {
+            before.put(rs.getInt(1), new ClassBefore(rs.getBoolean(2) ? "CANCELLED" : "LOCKED", rs.getLong(3)));
+        }, semesterId);
+        long notificationsBefore = countCancellationNotices();
+
+        long start = System.nanoTime();
+        adminClassService.lockClassesAndConsolidate(semesterId);
+        double elapsedMs = (System.nanoTime() - start) / 1_000_000.0;
+
+        List<Map<String, Object>> violations = new ArrayList<>();
+        long expectedNotices = 0;
+        int cancelled = 0;
+        for (Map.Entry<Integer, ClassBefore> entry : before.entrySet()) {
+            int classId = entry.getKey();
+            ClassBefore expected = entry.getValue();
+            String status = jdbcTemplate.queryForObject(
+                    "SELECT status FROM scheduled_classes WHERE class_id = ?", String.class, classId);
+            if (!expected.expectedStatus().equals(status)) {
+                violations.add(Map.of("classId", classId, "expected", expected.expectedStatus(), "actual", status));
+            }
+            if ("CANCELLED".equals(expected.expectedStatus())) {
+                cancelled++;
+                expectedNotices += expected.active();
+                Long active = jdbcTemplate.queryForObject("""
+                        SELECT COUNT(*) FROM enrollments
+                        WHERE class_id = ? AND status <> 'DROPPED' AND deleted_at IS NULL
+                        """, Long.class, classId);
+                if (active != null && active > 0) {
+                    violations.add(Map.of("classId", classId, "activeEnrollmentsAfterCancel", active));
+                }
+            }
+        }
+        long notices = countCancellationNotices() - notificationsBefore;
+        if (notices != expectedNotices) {
+            violations.add(Map.of("expectedNotices", expectedNotices, "actualNotices", notices));
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("classes", before.size());
+        result.put("cancelled", cancelled);
+        result.put("locked", before.size() - cancelled);
+        result.put("notices", notices);
+        result.put("elapsedMs", elapsedMs);
+        result.put("progress", stringRedisTemplate.opsForHash().entries("semester:" + semesterId + ":consolidation"));
+        result.put("violations", violations);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static boolean hasViolations(Map<String, Object> result) {
+        return !((List<Object>) result.get("violations")).isEmpty();
+    }
+
+    private long countCancellationNotices() {
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM notifications WHERE title LIKE ?",
+                Long.class, CANCELLED_TITLE_PATTERN);
+        return count == null ? 0 : count;
+    }
+}
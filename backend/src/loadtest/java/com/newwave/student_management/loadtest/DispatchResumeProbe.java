@@ -0,0 +1,166 @@
+package com.newwave.student_management.loadtest;
+
+import com.newwave.student_management.domains.notification.entity.Notification;
+import com.newwave.student_management.domains.notification.entity.SentNotification;
+import com.newwave.student_management.domains.notification.repository.SentNotificationRepository;
+import com.newwave.student_management.domains.notification.service.NotificationInboxService;
+import com.newwave.student_management.domains.notification.service.NotificationScheduler;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Giả lập tiến trình gửi broadcast chết giữa chừng: SentNotification đang
+ * PROCESSING, heartbeat cũ, dispatch_cursor ở giữa danh sách người nhận.
+ * NotificationScheduler phải nhận lại và chỉ push tiếp cho nửa sau;
+ * recipient_count khớp, không ghi dòng notifications nào, và inbox của người
+ * nhận (ghép lúc đọc) có thông báo đúng 1 lần với trạng thái đọc đúng.
+ */
+@RequiredArgsConstructor
+public class DispatchResumeProbe {
+
+    private static final String TITLE = "Load test dispatch resume";
+    private static final long WAIT_MILLIS = 60_000;
+    private static final int INBOX_SAMPLES = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SentNotificationRepository sentNotificationRepository;
+    private final NotificationScheduler notificationScheduler;
+    private final NotificationInboxService notificationInboxService;
+    private final StubFcmServer stub;
+
+    public Map<String, Object> probe() throws InterruptedException {
+        List<UUID> recipients = jdbcTemplate.queryForList("""
+                SELECT u.user_id FROM users u
+                JOIN roles r ON r.role_id = u.role_id
+                WHERE r.role_name <> 'ADMIN' AND u.deleted_at IS NULL
+                ORDER BY u.user_id
+                """, UUID.class);
+        List<UUID> committed = recipients.subList(0, recipients.size() / 2);
+        UUID cursor = committed.getLast();
+        Long remainingTokens = jdbcTemplate.queryForObject("""
+                SELECT COUNT(*) FROM fcm_tokens t
+                JOIN users u ON u.user_id = t.user_id
+                JOIN roles r ON r.role_id = u.role_id
+                WHERE r.role_name <> 'ADMIN' AND u.deleted_at IS NULL AND t.quarantined_at IS NULL
+                  AND t.user_id > ?
+                """, Long.class, cursor);
+
+        SentNotification notif = sentNotificationRepository.save(SentNotification.builder()
+                .title(TITLE)
+                .body("Dispatch resume probe")
+                .notificationType("BROADCAST")
+                .targetGroup("All Users")
+                .status("PENDING")
+                .build());
+        UUID sentId = notif.getSentId();
+        // Bắt đầu gửi sau khi seed user, heartbeat cuối đã quá lease
+        jdbcTemplate.update("""
+                UPDATE sent_notifications SET status = 'PROCESSING', inbox_on_read = TRUE, sent_at = ?,
+                       dispatch_cursor = ?, recipient_count = ?, updated_at = ?
+                WHERE sent_id = ?
+                """, LocalDateTime.now(), cursor, committed.size(), LocalDateTime.now().minusHours(1), sentId);
+
+        stub.reset();
+        long start = System.nanoTime();
+        notificationScheduler.processScheduledNotifications();
+        SentNotification sent = awaitFinished(sentId);
+        double elapsedMs = (System.nanoTime() - start) / 1_000_000.0;
+
+        Long rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM notifications WHERE title = ?", Long.class,
+                TITLE);
+
+        List<Map<String, Object>> violations = new ArrayList<>();
+        expect(violations, "status", "SENT", sent.getStatus());
+        expect(violations, "recipientCount", recipients.size(), sent.getRecipientCount());
+        expect(violations, "materializedInboxRows", 0L, rows);
+        expect(violations, "resumedPushSuccess", remainingTokens.intValue(), sent.getPushSuccessCount());
+        expect(violations, "resumedPushDelivered", remainingTokens, stub.stats().get("delivered"));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("recipients", recipients.size());
+        result.put("committedBeforeCrash", committed.size());
+        result.put("resumedRecipients", recipients.size() - committed.size());
+        result.put("resumedPushes", sent.getPushSuccessCount());
+        result.put("elapsedMs", elapsedMs);
+        result.put("inbox", probeInbox(recipients, sentId, violations));
+        result.put("violations", violations);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static boolean hasViolations(Map<String, Object> result) {
+        return !((List<Object>) result.get("violations")).isEmpty();
+    }
+
+    /**
+     * Với mẫu người nhận: thông báo có trong trang đầu inbox đúng 1 lần, chưa đọc;
+     * đọc lẻ rồi "đọc tất cả" đưa số chưa đọc về 0.
+     */
+    private Map<String, Object> probeInbox(List<UUID> recipients, UUID sentId,
+            List<Map<String, Object>> violations) {
+        int step = Math.max(1, recipients.size() / INBOX_SAMPLES);
+        long inboxNanos = 0;
+        long unreadNanos = 0;
+        int samples = 0;
+        for (int i = 0; i < recipients.size(); i += step) {
+            UUID userId = recipients.get(i);
+            long t0 = System.nanoTime();
+            List<Notification> page = notificationInboxService.getInbox(userId, PageRequest.of(0, 20)).getContent();
+            long t1 = System.nanoTime();
+            long unread = notificationInboxService.countUnread(userId);
+            long t2 = System.nanoTime();
+            inboxNanos += t1 - t0;
+            unreadNanos += t2 - t1;
+            samples++;
+
+            List<Notification> matches = page.stream().filter(n -> sentId.equals(n.getNotificationId())).toList();
+            if (matches.size() != 1 || matches.getFirst().isRead()) {
+                violations.add(Map.of("userId", userId, "inboxMatches", matches.size()));
+                continue;
+            }
+            notificationInboxService.markAsRead(userId, sentId);
+            long afterRead = notificationInboxService.countUnread(userId);
+            if (afterRead != unread - 1) {
+                violations.add(Map.of("userId", userId, "unreadBefore", unread, "unreadAfterRead", afterRead));
+            }
+            notificationInboxService.markAllAsRead(userId);
+            long afterReadAll = notificationInboxService.countUnread(userId);
+            if (afterReadAll != 0) {
+                violations.add(Map.of("userId", userId, "unreadAfterReadAll", afterReadAll));
+            }
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("samples", samples);
+        result.put("avgInboxMs", inboxNanos / 1_000_000.0 / Math.max(1, samples));
+        result.put("avgUnreadCountMs", unreadNanos / 1_000_000.0 / Math.max(1, samples));
+        return result;
+    }
+
+    // Scheduler thật (cron mỗi phút) có thể đã nhận thông báo trước lời gọi ở trên
+    private SentNotification awaitFinished(UUID sentId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (true) {
+            SentNotification sent = sentNotificationRepository.findById(sentId).orElseThrow();
+            if (!"PROCESSING".equals(sent.getStatus()) || System.currentTimeMillis() > deadline) {
+                return sent;
+            }
+            Thread.sleep(200);
+        }
+    }
+
+    private static void expect(List<Map<String, Object>> violations, String field, Object expected,
+            Object actual) {
+        if (!expected.equals(actual)) {
+            violations.add(Map.of("field", field, "expected", expected, "actual", String.valueOf(actual)));
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.newwave.student_management.loadtest;
+
+import com.newwave.student_management.domains.enrollment.dto.response.AdminEligibleStudentListResponse;
+import com.newwave.student_management.domains.enrollment.service.IAdminClassService;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Đo trang "SV đủ điều kiện" của admin sau khi SV đã đăng ký xong: số câu SQL
+ * (Hibernate statistics, chỉ bật trong lúc đo) và thời gian cho 1 trang. Số
+ * query phải giữ nguyên khi tăng {@code loadtest.students}.
+ */
+@RequiredArgsConstructor
+public class EligibleStudentsProbe {
+
+    private static final int PAGE_SIZE = 20;
+
+    private final IAdminClassService adminClassService;
+    private final EntityManagerFactory entityManagerFactory;
+
+    public Map<String, Object> probe(int classId) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        boolean wasEnabled = statistics.isStatisticsEnabled();
+        statistics.clear();
+        statistics.setStatisticsEnabled(true);
+        long start = System.nanoTime();
+        AdminEligibleStudentListResponse page;
+        long queries;
+        try {
+            page = adminClassService.getEligibleStudents(classId, null, PageRequest.of(0, PAGE_SIZE));
+            queries = statistics.getPrepareStatementCount();
+        } finally {
+            statistics.setStatisticsEnabled(wasEnabled);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("classId", classId);
+        result.put("eligibleStudents", page.getTotalElements());
+        result.put("pageSize", PAGE_SIZE);
+        result.put("sqlStatements", queries);
+        result.put("elapsedMs", (System.nanoTime() - start) / 1_000_000.0);
+        return result;
+    }
+}
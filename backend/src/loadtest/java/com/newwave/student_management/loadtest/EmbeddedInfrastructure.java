@@ -0,0 +1,82 @@
+package com.newwave.student_management.loadtest;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import lombok.extern.slf4j.Slf4j;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * PostgreSQL + Redis chạy trong tiến trình (binary nhúng, không cần Docker /
+ * Testcontainers). Dùng PostgreSQL thật thay vì H2 vì migration Flyway và các
+ * query native ({@code ON CONFLICT}, partial index, {@code FOR UPDATE}) phụ
+ * thuộc dialect PostgreSQL.
+ */
+@Slf4j
+public final class EmbeddedInfrastructure implements AutoCloseable {
+
+    private final EmbeddedPostgres postgres;
+    private final RedisServer redis;
+    private final int redisPort;
+
+    private EmbeddedInfrastructure(EmbeddedPostgres postgres, RedisServer redis, int redisPort) {
+        this.postgres = postgres;
+        this.redis = redis;
+        this.redisPort = redisPort;
+    }
+
+    public static EmbeddedInfrastructure start() throws IOException {
+        EmbeddedPostgres postgres = EmbeddedPostgres.builder()
+                .setServerConfig("max_connections", "300")
+                .start();
+        int redisPort = freePort();
+        RedisServer redis;
+        try {
+            redis = RedisServer.newRedisServer()
+                    .port(redisPort)
+                    .bind("127.0.0.1")
+                    .setting("save \"\"")
+                    .setting("appendonly no")
+                    .build();
+            redis.start();
+        } catch (IOException | RuntimeException ex) {
+            postgres.close();
+            throw ex;
+        }
+        log.info("Embedded PostgreSQL on port {}, Redis on port {}", postgres.getPort(), redisPort);
+        return new EmbeddedInfrastructure(postgres, redis, redisPort);
+    }
+
+    /**
+     * Property trỏ ứng dụng vào hạ tầng nhúng.
+     */
+    public Map<String, Object> springProperties() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("spring.datasource.url", postgres.getJdbcUrl("postgres", "postgres"));
+        properties.put("spring.datasource.username", "postgres");
+        properties.put("spring.datasource.password", "postgres");
+        properties.put("spring.data.redis.host", "127.0.0.1");
+        properties.put("spring.data.redis.port", redisPort);
+        properties.put("spring.data.redis.password", "");
+        return properties;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            redis.stop();
+        } finally {
+            postgres.close();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            socket.setReuseAddress(true);
+            return socket.getLocalPort();
+        }
+    }
+}
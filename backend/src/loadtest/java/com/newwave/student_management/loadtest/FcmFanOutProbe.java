@@ -0,0 +1,150 @@
+package com.newwave.student_management.loadtest;
+
+import com.newwave.student_management.domains.notification.entity.SentNotification;
+import com.newwave.student_management.domains.notification.repository.SentNotificationRepository;
+import com.newwave.student_management.domains.notification.service.FcmTokenPruner;
+import com.newwave.student_management.domains.notification.service.NotificationInternalService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Broadcast tới {@code devices} thiết bị qua stub FCM: gắn token giả cho các SV
+ * đã seed (xoay vòng nếu ít SV hơn), tạo 1 SentNotification BROADCAST rồi xử lý
+ * như consumer Kafka. Đối chiếu số batch / thành công / thất bại ghi trên
+ * SentNotification với số token chết (UNREGISTERED) và sai (INVALID_ARGUMENT)
+ * mà stub trả về; sau khi FcmTokenPruner flush, token chết phải bị xóa, token
+ * sai bị cách ly, và broadcast thứ hai chỉ còn gửi tới token hợp lệ.
+ */
+@RequiredArgsConstructor
+public class FcmFanOutProbe {
+
+    private static final int BATCH_SIZE = 500;
+    // 1/50 token chết, 1/50 token bị throttle lần đầu, 1/50 token sai định dạng
+    private static final int FAULT_EVERY = 50;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NotificationInternalService notificationInternalService;
+    private final SentNotificationRepository sentNotificationRepository;
+    private final FcmTokenPruner fcmTokenPruner;
+    private final StubFcmServer stub;
+
+    public Map<String, Object> probe(List<UUID> userIds, int devices) {
+        List<Object[]> rows = new ArrayList<>(devices);
+        int dead = 0;
+        int invalid = 0;
+        for (int i = 0; i < devices; i++) {
+            String prefix = "";
+            if (i % FAULT_EVERY == 0) {
+                prefix = StubFcmServer.DEAD_PREFIX;
+                dead++;
+            } else if (i % FAULT_EVERY == 1) {
+                prefix = StubFcmServer.FLAKY_PREFIX;
+            } else if (i % FAULT_EVERY == 2) {
+                prefix = StubFcmServer.INVALID_PREFIX;
+                invalid++;
+            }
+            rows.add(new Object[] { UUID.randomUUID(), userIds.get(i % userIds.size()),
+                    prefix + "loadtest-" + i, "web" });
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO fcm_tokens (token_id, user_id, token, device_type) VALUES (?, ?, ?, ?)",
+                rows);
+        Integer tokens = jdbcTemplate.queryForObject("""
+                SELECT COUNT(*) FROM fcm_tokens t
+                JOIN users u ON u.user_id = t.user_id
+                JOIN roles r ON r.role_id = u.role_id
+                WHERE r.role_name <> 'ADMIN' AND t.quarantined_at IS NULL
+                """, Integer.class);
+
+        stub.reset();
+        long start = System.nanoTime();
+        SentNotification sent = broadcast();
+        double elapsedMs = (System.nanoTime() - start) / 1_000_000.0;
+
+        List<Map<String, Object>> violations = new ArrayList<>();
+        expect(violations, "status", "SENT", sent.getStatus());
+        expectAtLeast(violations, "pushBatchCount", batches(tokens), sent.getPushBatchCount());
+        expect(violations, "pushSuccessCount", tokens - dead - invalid, sent.getPushSuccessCount());
+        expect(violations, "pushFailureCount", dead + invalid, sent.getPushFailureCount());
+        Map<String, Object> firstStub = stub.stats();
+
+        long pruneStart = System.nanoTime();
+        fcmTokenPruner.flush();
+        double pruneMs = (System.nanoTime() - pruneStart) / 1_000_000.0;
+        expect(violations, "deadTokensLeft", 0L, countTokens("token LIKE ?", StubFcmServer.DEAD_PREFIX + "loadtest-%"));
+        expect(violations, "invalidTokensQuarantined", (long) invalid, countTokens(
+                "token LIKE ? AND quarantined_at IS NOT NULL", StubFcmServer.INVALID_PREFIX + "loadtest-%"));
+
+        // Lượt 2: chỉ còn token hợp lệ, không lỗi vĩnh viễn nào
+        int active = tokens - dead - invalid;
+        stub.reset();
+        SentNotification second = broadcast();
+        expectAtLeast(violations, "second.pushBatchCount", batches(active), second.getPushBatchCount());
+        expect(violations, "second.pushSuccessCount", active, second.getPushSuccessCount());
+        expect(violations, "second.pushFailureCount", 0, second.getPushFailureCount());
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("devices", tokens);
+        result.put("deadTokens", dead);
+        result.put("invalidTokens", invalid);
+        result.put("batches", sent.getPushBatchCount());
+        result.put("success", sent.getPushSuccessCount());
+        result.put("failure", sent.getPushFailureCount());
+        result.put("stub", firstStub);
+        result.put("elapsedMs", elapsedMs);
+        result.put("devicesPerSecond", tokens * 1000.0 / Math.max(1.0, elapsedMs));
+        result.put("pruneMs", pruneMs);
+        result.put("secondBroadcast", Map.of("batches", second.getPushBatchCount(),
+                "success", second.getPushSuccessCount(), "failure", second.getPushFailureCount(),
+                "stub", stub.stats()));
+        result.put("violations", violations);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static boolean hasViolations(Map<String, Object> result) {
+        return !((List<Object>) result.get("violations")).isEmpty();
+    }
+
+    private SentNotification broadcast() {
+        SentNotification notif = sentNotificationRepository.save(SentNotification.builder()
+                .title("Load test broadcast")
+                .body("FCM fan-out probe")
+                .notificationType("BROADCAST")
+                .targetGroup("All Users")
+                .status("PENDING")
+                .build());
+        notificationInternalService.processScheduledNotification(notif);
+        return sentNotificationRepository.findById(notif.getSentId()).orElseThrow();
+    }
+
+    private long countTokens(String condition, Object arg) {
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM fcm_tokens WHERE " + condition, Long.class,
+                arg);
+        return count == null ? 0 : count;
+    }
+
+    private static int batches(int tokens) {
+        return (tokens + BATCH_SIZE - 1) / BATCH_SIZE;
+    }
+
+    // Mỗi chunk người nhận chia batch riêng nên số batch ≥ ceil(token / 500)
+    private static void expectAtLeast(List<Map<String, Object>> violations, String field, int expected,
+            Integer actual) {
+        if (actual == null || actual < expected) {
+            violations.add(Map.of("field", field, "expectedAtLeast", expected, "actual", String.valueOf(actual)));
+        }
+    }
+
+    private static void expect(List<Map<String, Object>> violations, String field, Object expected,
+            Object actual) {
+        if (!expected.equals(actual)) {
+            violations.add(Map.of("field", field, "expected", expected, "actual", String.valueOf(actual)));
+        }
+    }
+}
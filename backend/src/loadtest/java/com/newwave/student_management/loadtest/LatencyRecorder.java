@@ -0,0 +1,61 @@
+package com.newwave.student_management.loadtest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ghi latency + kết quả theo từng thao tác (list / enroll / drop). Vài chục
+ * nghìn mẫu → giữ nguyên mẫu và sort lúc báo cáo, không cần histogram.
+ */
+public class LatencyRecorder {
+
+    private final Map<String, ConcurrentLinkedQueue<Long>> samples = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, LongAdder>> outcomes = new ConcurrentHashMap<>();
+
+    public void record(String operation, long elapsedNanos, String outcome) {
+        samples.computeIfAbsent(operation, k -> new ConcurrentLinkedQueue<>()).add(elapsedNanos);
+        outcomes.computeIfAbsent(operation, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(outcome, k -> new LongAdder())
+                .increment();
+    }
+
+    public long totalOperations() {
+        return samples.values().stream().mapToLong(ConcurrentLinkedQueue::size).sum();
+    }
+
+    /**
+     * @return operation → {count, p50Ms, p99Ms, maxMs, outcomes}
+     */
+    public Map<String, Object> summary() {
+        Map<String, Object> result = new TreeMap<>();
+        samples.forEach((operation, queue) -> {
+            long[] sorted = queue.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sorted);
+            Map<String, Long> operationOutcomes = new TreeMap<>();
+            outcomes.getOrDefault(operation, Map.of())
+                    .forEach((outcome, count) -> operationOutcomes.put(outcome, count.sum()));
+
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("count", sorted.length);
+            stats.put("p50Ms", percentileMillis(sorted, 0.50));
+            stats.put("p99Ms", percentileMillis(sorted, 0.99));
+            stats.put("maxMs", sorted.length > 0 ? sorted[sorted.length - 1] / 1_000_000.0 : 0.0);
+            stats.put("outcomes", operationOutcomes);
+            result.put(operation, stats);
+        });
+        return result;
+    }
+
+    private static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,29 @@
+package com.newwave.student_management.loadtest;
+
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.FirebaseOptions;
+import com.newwave.student_management.infrastructure.fcm.FcmEndpointTransport;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Bean thay thế khi chạy load test: không có service account Firebase, nên
+ * {@code FirebaseConfig} sẽ fail lúc khởi động. Push đi tới {@link StubFcmServer}
+ * (qua {@code fcm.endpoint}) nên credential giả là đủ.
+ */
+@Configuration(proxyBeanMethods = false)
+public class LoadTestOverrides {
+
+    @Bean
+    public FirebaseApp firebaseApp(@Value("${fcm.endpoint}") String fcmEndpoint) {
+        FirebaseOptions options = FirebaseOptions.builder()
+                .setCredentials(GoogleCredentials.create(new AccessToken("loadtest", null)))
+                .setProjectId("loadtest")
+                .setHttpTransport(FcmEndpointTransport.forEndpoint(fcmEndpoint))
+                .build();
+        return FirebaseApp.getApps().isEmpty() ? FirebaseApp.initializeApp(options) : FirebaseApp.getInstance();
+    }
+}
@@ -0,0 +1,110 @@
+package com.newwave.student_management.loadtest;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Chuẩn bị học kỳ trên nền dữ liệu mock của Flyway (V3, V18, V29: khoa, môn,
+ * giảng viên, phòng). Dữ liệu mock chỉ có vài lớp và môn chưa gắn khoa, nên
+ * seeder gắn các môn vào 1 khoa, mở {@code sectionsPerCourse} lớp cho mỗi môn
+ * trong học kỳ hiện tại (mỗi lớp 1 buổi, xếp xoay vòng thứ/ca để có trùng lịch
+ * thật) và sinh N sinh viên ảo thuộc khoa đó.
+ *
+ * <p>
+ * Toàn bộ là SQL set-based ({@code generate_series}) — seed vài nghìn SV trong
+ * vài trăm ms.
+ * </p>
+ */
+@RequiredArgsConstructor
+@Slf4j
+public class LoadTestSeeder {
+
+    static final String EMAIL_DOMAIN = "@loadtest.local";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public record SeededSemester(int semesterId, int departmentId, List<Integer> classIds, List<UUID> userIds) {
+    }
+
+    public SeededSemester seed(LoadTestSettings settings) {
+        Integer semesterId = jdbcTemplate.queryForObject(
+                "SELECT semester_id FROM semesters WHERE is_current = TRUE AND deleted_at IS NULL", Integer.class);
+        Integer departmentId = jdbcTemplate.queryForObject(
+                "SELECT MIN(department_id) FROM departments WHERE deleted_at IS NULL", Integer.class);
+
+        jdbcTemplate.update(
+                "UPDATE courses SET department_id = ? WHERE department_id IS NULL AND deleted_at IS NULL",
+                departmentId);
+
+        // Giảng viên xoay vòng theo (môn, section)
+        jdbcTemplate.update("""
+                WITH t AS (
+                    SELECT teacher_id, ROW_NUMBER() OVER (ORDER BY teacher_id) - 1 AS idx,
+                           COUNT(*) OVER () AS total
+                    FROM teachers WHERE deleted_at IS NULL
+                )
+                INSERT INTO scheduled_classes (course_id, teacher_id, semester_id, status, max_students)
+                SELECT c.course_id, t.teacher_id, ?, 'OPEN', ?
+                FROM courses c
+                CROSS JOIN generate_series(1, ?) AS s
+                JOIN t ON t.idx = (c.course_id + s) % t.total
+                WHERE c.department_id = ? AND c.deleted_at IS NULL AND c.status = 'ACTIVE'
+                """, semesterId, settings.classCapacity(), settings.sectionsPerCourse(), departmentId);
+
+        // 1 buổi / lớp: thứ 2..7 × 4 ca, xoay vòng → các section khác môn có thể trùng giờ
+        jdbcTemplate.update("""
+                WITH slots AS (
+                    SELECT sc.class_id, ROW_NUMBER() OVER (ORDER BY sc.class_id) - 1 AS n
+                    FROM scheduled_classes sc
+                    WHERE sc.semester_id = ? AND sc.deleted_at IS NULL
+                      AND NOT EXISTS (SELECT 1 FROM class_sessions cs WHERE cs.class_id = sc.class_id)
+                ),
+                r AS (
+                    SELECT room_id, ROW_NUMBER() OVER (ORDER BY room_id) - 1 AS idx, COUNT(*) OVER () AS total
+                    FROM rooms WHERE deleted_at IS NULL
+                )
+                INSERT INTO class_sessions (class_id, room_id, day_of_week, start_time, end_time)
+                SELECT slots.class_id, r.room_id, 2 + slots.n % 6,
+                       TIME '07:30' + ((slots.n / 6) % 4) * INTERVAL '150 minutes',
+                       TIME '09:30' + ((slots.n / 6) % 4) * INTERVAL '150 minutes'
+                FROM slots
+                JOIN r ON r.idx = slots.n % r.total
+                """, semesterId);
+
+        List<Integer> classIds = jdbcTemplate.queryForList("""
+                SELECT sc.class_id
+                FROM scheduled_classes sc
+                JOIN courses c ON c.course_id = sc.course_id
+                WHERE sc.semester_id = ? AND sc.status = 'OPEN' AND sc.deleted_at IS NULL
+                  AND c.department_id = ?
+                ORDER BY sc.class_id
+                """, Integer.class, semesterId, departmentId);
+
+        jdbcTemplate.update("""
+                INSERT INTO users (user_id, email, password_hash, role_id, status, email_verified)
+                SELECT gen_random_uuid(), 'loadtest.' || g || ?, '{noop}loadtest',
+                       (SELECT role_id FROM roles WHERE role_name = 'STUDENT'), 'ACTIVE', TRUE
+                FROM generate_series(1, ?) AS g
+                """, EMAIL_DOMAIN, settings.students());
+        jdbcTemplate.update("""
+                INSERT INTO students (student_id, user_id, department_id, first_name, last_name, email,
+                                      student_code, year)
+                SELECT gen_random_uuid(), u.user_id, ?, 'Load', 'Test ' || split_part(u.email, '.', 2), u.email,
+                       'LT' || lpad(split_part(split_part(u.email, '@', 1), '.', 2), 6, '0'), 1
+                FROM users u
+                WHERE u.email LIKE ?
+                """, departmentId, "loadtest.%" + EMAIL_DOMAIN);
+
+        List<UUID> userIds = jdbcTemplate.queryForList(
+                "SELECT user_id FROM users WHERE email LIKE ? ORDER BY email", UUID.class,
+                "loadtest.%" + EMAIL_DOMAIN);
+
+        log.info("Seeded {} students into department {} ({} OPEN classes, semester {})",
+                userIds.size(), departmentId, classIds.size(), semesterId);
+        return new SeededSemester(semesterId, departmentId, classIds, userIds);
+    }
+}
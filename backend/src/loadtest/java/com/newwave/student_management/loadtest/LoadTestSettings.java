@@ -0,0 +1,37 @@
+package com.newwave.student_management.loadtest;
+
+/**
+ * Tham số của một lần mô phỏng, đọc từ system property {@code loadtest.*}.
+ *
+ * @param students      số sinh viên ảo (mỗi SV = 1 virtual thread)
+ * @param classCapacity sĩ số mỗi lớp seed — đặt nhỏ để tạo tranh chấp slot +
+ *                      waitlist
+ * @param sectionsPerCourse số lớp mở cho mỗi môn
+ * @param enrollsPerStudent số lớp mỗi SV thử đăng ký
+ * @param dropRatio     tỉ lệ SV hủy 1 lớp đã đăng ký sau khi đăng ký xong
+ * @param timeoutSeconds thời gian tối đa chờ toàn bộ SV chạy xong
+ * @param fcmDevices    số thiết bị (token FCM giả) nhận broadcast qua stub FCM
+ * @param fcmLatencyMillis độ trễ mỗi request của stub FCM
+ */
+public record LoadTestSettings(
+        int students,
+        int classCapacity,
+        int sectionsPerCourse,
+        int enrollsPerStudent,
+        double dropRatio,
+        long timeoutSeconds,
+        int fcmDevices,
+        long fcmLatencyMillis) {
+
+    public static LoadTestSettings fromSystemProperties() {
+        return new LoadTestSettings(
+                Integer.getInteger("loadtest.students", 5000),
+                Integer.getInteger("loadtest.class-capacity", 40),
+                Integer.getInteger("loadtest.sections-per-course", 3),
+                Integer.getInteger("loadtest.enrolls-per-student", 3),
+                Double.parseDouble(System.getProperty("loadtest.drop-ratio", "0.1")),
+                Long.getLong("loadtest.timeout-seconds", 600L),
+                Integer.getInteger("loadtest.fcm-devices", 10000),
+                Long.getLong("loadtest.fcm-latency-ms", 20L));
+    }
+}
@@ -0,0 +1,180 @@
+package com.newwave.student_management.loadtest;
+
+import com.newwave.student_management.StudentManagementApplication;
+import com.newwave.student_management.domains.auth.entity.Role;
+import com.newwave.student_management.domains.auth.entity.User;
+import com.newwave.student_management.domains.auth.service.AdminSemesterService;
+import com.newwave.student_management.domains.enrollment.service.IAdminClassService;
+import com.newwave.student_management.domains.notification.repository.SentNotificationRepository;
+import com.newwave.student_management.domains.notification.service.FcmTokenPruner;
+import com.newwave.student_management.domains.notification.service.NotificationInboxService;
+import com.newwave.student_management.domains.notification.service.NotificationInternalService;
+import com.newwave.student_management.domains.notification.service.NotificationScheduler;
+import com.newwave.student_management.domains.notification.service.UnreadCounterReconciler;
+import com.newwave.student_management.infrastructure.security.JwtService;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import tools.jackson.databind.json.JsonMapper;
+
+import javax.sql.DataSource;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+
+/**
+ * Mô phỏng ngày mở đăng ký tín chỉ: boot toàn bộ ứng dụng trên PostgreSQL +
+ * Redis nhúng, seed học kỳ từ dữ liệu mock của Flyway, publish (warm cache)
+ * rồi thả hàng nghìn sinh viên ảo chạy list → enroll → drop qua HTTP.
+ *
+ * <p>
+ * Chạy: {@code mvn -Ploadtest test-compile exec:exec
+ * [-Dloadtest.students=5000 -Dloadtest.class-capacity=40]}. Báo cáo
+ * (throughput, p50/p99, vi phạm sĩ số, lệch Redis/DB, số SQL của trang SV đủ
+ * điều kiện, kết quả dồn lớp, fan-out FCM qua stub, counter chưa đọc) in ra console và ghi
+ * JSON vào {@code target/loadtest-report.json}; exit code 1 nếu có vi phạm.
+ * </p>
+ *
+ * <p>
+ * Kafka không được dựng: write-behind commit phải tắt (mặc định), listener
+ * Kafka không auto-start.
+ * </p>
+ */
+@Slf4j
+public final class RegistrationDayLoadSimulator {
+
+    private RegistrationDayLoadSimulator() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestSettings settings = LoadTestSettings.fromSystemProperties();
+        Path reportFile = Path.of(System.getProperty("loadtest.report-file", "target/loadtest-report.json"));
+
+        boolean violated;
+        try (EmbeddedInfrastructure infrastructure = EmbeddedInfrastructure.start();
+                StubFcmServer fcm = StubFcmServer.start(settings.fcmLatencyMillis());
+                ConfigurableApplicationContext app = new SpringApplicationBuilder(
+                        StudentManagementApplication.class, LoadTestOverrides.class)
+                        .run(applicationArguments(infrastructure, fcm))) {
+
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(app.getBean(DataSource.class));
+            LoadTestSeeder.SeededSemester seeded = new LoadTestSeeder(jdbcTemplate).seed(settings);
+            app.getBean(AdminSemesterService.class).publishSemester(seeded.semesterId());
+
+            List<String> tokens = mintTokens(app.getBean(JwtService.class), seeded.userIds());
+            int port = app.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            String contextPath = app.getEnvironment().getProperty("server.servlet.context-path", "");
+
+            LatencyRecorder recorder = new LatencyRecorder();
+            JsonMapper jsonMapper = JsonMapper.builder().build();
+            Duration elapsed;
+            try (HttpClient httpClient = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(10))
+                    .executor(Executors.newVirtualThreadPerTaskExecutor())
+                    .build()) {
+                log.info("Releasing {} students against {} classes", tokens.size(), seeded.classIds().size());
+                elapsed = new StudentFlowDriver(httpClient, "http://127.0.0.1:" + port + contextPath,
+                        jsonMapper, recorder, settings).run(tokens);
+            }
+
+            Map<String, Object> consistency = new ConsistencyChecker(jdbcTemplate,
+                    app.getBean(StringRedisTemplate.class)).check(seeded.semesterId());
+            violated = ConsistencyChecker.hasViolations(consistency);
+            Map<String, Object> eligibleStudents = new EligibleStudentsProbe(
+                    app.getBean(IAdminClassService.class), app.getBean(EntityManagerFactory.class))
+                    .probe(seeded.classIds().getFirst());
+            Map<String, Object> consolidation = new ConsolidationProbe(app.getBean(IAdminClassService.class),
+                    jdbcTemplate, app.getBean(StringRedisTemplate.class)).probe(seeded.semesterId());
+            violated |= ConsolidationProbe.hasViolations(consolidation);
+            Map<String, Object> fcmFanOut = new FcmFanOutProbe(jdbcTemplate,
+                    app.getBean(NotificationInternalService.class), app.getBean(SentNotificationRepository.class),
+                    app.getBean(FcmTokenPruner.class), fcm).probe(seeded.userIds(), settings.fcmDevices());
+            violated |= FcmFanOutProbe.hasViolations(fcmFanOut);
+            Map<String, Object> dispatchResume = new DispatchResumeProbe(jdbcTemplate,
+                    app.getBean(SentNotificationRepository.class), app.getBean(NotificationScheduler.class),
+                    app.getBean(NotificationInboxService.class), fcm).probe();
+            violated |= DispatchResumeProbe.hasViolations(dispatchResume);
+            Map<String, Object> unreadCounter = new UnreadCounterProbe(jdbcTemplate,
+                    app.getBean(StringRedisTemplate.class), app.getBean(SentNotificationRepository.class),
+                    app.getBean(NotificationScheduler.class), app.getBean(NotificationInternalService.class),
+                    app.getBean(NotificationInboxService.class), app.getBean(UnreadCounterReconciler.class)).probe();
+            violated |= UnreadCounterProbe.hasViolations(unreadCounter);
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("settings", settings);
+            report.put("semesterId", seeded.semesterId());
+            report.put("departmentId", seeded.departmentId());
+            report.put("elapsedMs", elapsed.toMillis());
+            report.put("totalOperations", recorder.totalOperations());
+            report.put("throughputPerSecond",
+                    recorder.totalOperations() * 1000.0 / Math.max(1, elapsed.toMillis()));
+            report.put("operations", recorder.summary());
+            report.put("consistency", consistency);
+            report.put("eligibleStudents", eligibleStudents);
+            report.put("consolidation", consolidation);
+            report.put("fcmFanOut", fcmFanOut);
+            report.put("dispatchResume", dispatchResume);
+            report.put("unreadCounter", unreadCounter);
+
+            String json = jsonMapper.writerWithDefaultPrettyPrinter().writeValueAsString(report);
+            Files.createDirectories(reportFile.toAbsolutePath().getParent());
+            Files.writeString(reportFile, json);
+            System.out.println(json);
+            log.info("Load test report written to {} (violations: {})", reportFile.toAbsolutePath(), violated);
+        }
+        System.exit(violated ? 1 : 0);
+    }
+
+    private static String[] applicationArguments(EmbeddedInfrastructure infrastructure, StubFcmServer fcm) {
+        byte[] signerKey = new byte[32];
+        new SecureRandom().nextBytes(signerKey);
+
+        Map<String, Object> properties = new LinkedHashMap<>(infrastructure.springProperties());
+        properties.put("server.port", 0);
+        // LoadTestOverrides thay bean firebaseApp của FirebaseConfig
+        properties.put("spring.main.allow-bean-definition-overriding", true);
+        properties.put("spring.security.jwt.signer-key", HexFormat.of().formatHex(signerKey));
+        properties.put("fcm.endpoint", fcm.endpoint());
+        properties.put("fcm.fan-out.initial-backoff-ms", 50);
+        properties.put("spring.jpa.show-sql", false);
+        properties.put("logging.level.org.hibernate.SQL", "WARN");
+        properties.put("spring.kafka.listener.auto-startup", false);
+        properties.put("spring.kafka.admin.auto-create", false);
+        properties.put("enrollment.async-commit.enabled", false);
+        // Chunk nhỏ để dồn lớp chạy qua nhiều transaction
+        properties.put("enrollment.consolidation.chunk-size", 16);
+        properties.put("notification.dispatch.chunk-size", 64);
+        properties.put("logging.level.com.newwave.student_management.domains", "WARN");
+
+        List<String> arguments = new ArrayList<>();
+        properties.forEach((key, value) -> arguments.add("--" + key + "=" + value));
+        return arguments.toArray(String[]::new);
+    }
+
+    private static List<String> mintTokens(JwtService jwtService, List<UUID> userIds) {
+        Role studentRole = new Role();
+        studentRole.setRoleName("STUDENT");
+        List<String> tokens = new ArrayList<>(userIds.size());
+        for (UUID userId : userIds) {
+            User user = new User();
+            user.setUserId(userId);
+            user.setEmail(userId + LoadTestSeeder.EMAIL_DOMAIN);
+            user.setRole(studentRole);
+            tokens.add(jwtService.generateToken(user, 0L));
+        }
+        return tokens;
+    }
+}
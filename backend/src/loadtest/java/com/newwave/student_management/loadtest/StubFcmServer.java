@@ -0,0 +1,133 @@
+package com.newwave.student_management.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stub endpoint FCM HTTP v1 ({@code POST /v1/projects/{id}/messages:send}) để
+ * đo fan-out mà không gọi Google. Ứng dụng trỏ vào qua {@code fcm.endpoint}.
+ *
+ * <ul>
+ * <li>Token bắt đầu {@value #DEAD_PREFIX} → 404 UNREGISTERED (lỗi vĩnh viễn).</li>
+ * <li>Token bắt đầu {@value #INVALID_PREFIX} → 400 INVALID_ARGUMENT (token sai
+ * định dạng).</li>
+ * <li>Token bắt đầu {@value #FLAKY_PREFIX} → lần đầu 429 QUOTA_EXCEEDED, các
+ * lần sau thành công (phải được engine gửi lại).</li>
+ * <li>Còn lại → 200 sau {@code latencyMillis}.</li>
+ * </ul>
+ */
+@Slf4j
+public final class StubFcmServer implements AutoCloseable {
+
+    public static final String DEAD_PREFIX = "dead-";
+    public static final String FLAKY_PREFIX = "flaky-";
+    public static final String INVALID_PREFIX = "invalid-";
+
+    private static final Pattern TOKEN = Pattern.compile("\"token\"\\s*:\\s*\"([^\"]+)\"");
+    private static final String UNREGISTERED = """
+            {"error":{"code":404,"message":"Requested entity was not found.","status":"NOT_FOUND",\
+            "details":[{"@type":"type.googleapis.com/google.firebase.fcm.v1.FcmError","errorCode":"UNREGISTERED"}]}}""";
+    private static final String INVALID_ARGUMENT = """
+            {"error":{"code":400,"message":"The registration token is not a valid FCM registration token",\
+            "status":"INVALID_ARGUMENT","details":[{"@type":"type.googleapis.com/google.firebase.fcm.v1.FcmError",\
+            "errorCode":"INVALID_ARGUMENT"}]}}""";
+    private static final String QUOTA_EXCEEDED = """
+            {"error":{"code":429,"message":"Quota exceeded.","status":"RESOURCE_EXHAUSTED",\
+            "details":[{"@type":"type.googleapis.com/google.firebase.fcm.v1.FcmError","errorCode":"QUOTA_EXCEEDED"}]}}""";
+
+    private final HttpServer server;
+    private final long latencyMillis;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final Set<String> throttledOnce = ConcurrentHashMap.newKeySet();
+
+    private StubFcmServer(HttpServer server, long latencyMillis) {
+        this.server = server;
+        this.latencyMillis = latencyMillis;
+    }
+
+    public static StubFcmServer start(long latencyMillis) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 512);
+        StubFcmServer stub = new StubFcmServer(server, latencyMillis);
+        server.createContext("/v1/projects/", stub::handle);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+        log.info("Stub FCM endpoint on {}", stub.endpoint());
+        return stub;
+    }
+
+    public String endpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Số request nhận được và số message trả 200 kể từ lần reset gần nhất.
+     */
+    public Map<String, Object> stats() {
+        return Map.of("requests", requests.get(), "delivered", delivered.get());
+    }
+
+    public void reset() {
+        requests.set(0);
+        delivered.set(0);
+        throttledOnce.clear();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requests.incrementAndGet();
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            Matcher matcher = TOKEN.matcher(body);
+            String token = matcher.find() ? matcher.group(1) : "";
+            sleep();
+            if (token.startsWith(DEAD_PREFIX)) {
+                respond(exchange, 404, UNREGISTERED);
+            } else if (token.startsWith(INVALID_PREFIX)) {
+                respond(exchange, 400, INVALID_ARGUMENT);
+            } else if (token.startsWith(FLAKY_PREFIX) && throttledOnce.add(token)) {
+                respond(exchange, 429, QUOTA_EXCEEDED);
+            } else {
+                delivered.incrementAndGet();
+                respond(exchange, 200, "{\"name\":\"projects/loadtest/messages/" + requests.get() + "\"}");
+            }
+        }
+    }
+
+    private void sleep() {
+        if (latencyMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.newwave.student_management.loadtest;
+
+import com.newwave.student_management.common.exception.ErrorCode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Mỗi sinh viên ảo là 1 virtual thread chạy luồng thật qua HTTP (đi qua
+ * security filter chain + {@code RateLimitFilter}):
+ * list lớp → đăng ký {@code enrollsPerStudent} lớp ngẫu nhiên → (tùy tỉ lệ) hủy
+ * 1 lớp. Mọi SV được giữ ở vạch xuất phát rồi thả cùng lúc để tái hiện thời
+ * điểm mở cổng đăng ký.
+ */
+@RequiredArgsConstructor
+@Slf4j
+public class StudentFlowDriver {
+
+    static final String OP_LIST = "list";
+    static final String OP_ENROLL = "enroll";
+    static final String OP_DROP = "drop";
+
+    private static final int SUCCESS_CODE = 1000;
+    private static final Map<Integer, String> ERROR_NAMES = Arrays.stream(ErrorCode.values())
+            .collect(Collectors.toMap(ErrorCode::getCode, ErrorCode::name, (first, second) -> first));
+
+    private final HttpClient httpClient;
+    private final String baseUrl;
+    private final JsonMapper jsonMapper;
+    private final LatencyRecorder recorder;
+    private final LoadTestSettings settings;
+
+    /**
+     * @return thời gian từ lúc thả vạch xuất phát tới khi SV cuối cùng xong
+     */
+    public Duration run(List<String> accessTokens) throws InterruptedException {
+        CountDownLatch startLine = new CountDownLatch(1);
+        long startedAt;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String token : accessTokens) {
+                executor.submit(() -> {
+                    startLine.await();
+                    runStudent(token);
+                    return null;
+                });
+            }
+            startedAt = System.nanoTime();
+            startLine.countDown();
+            executor.shutdown();
+            if (!executor.awaitTermination(settings.timeoutSeconds(), TimeUnit.SECONDS)) {
+                log.warn("Load test did not finish within {}s, cancelling remaining students",
+                        settings.timeoutSeconds());
+                executor.shutdownNow();
+            }
+        }
+        return Duration.ofNanos(System.nanoTime() - startedAt);
+    }
+
+    private void runStudent(String token) {
+        CallResult listing = call(OP_LIST, "GET", "/student/classes/available", token, body -> "OK");
+        if (!listing.success()) {
+            return;
+        }
+        List<Integer> classIds = new ArrayList<>();
+        for (JsonNode item : listing.body().path("result")) {
+            classIds.add(item.path("classId").asInt());
+        }
+        Collections.shuffle(classIds, ThreadLocalRandom.current());
+
+        List<Integer> enrolled = new ArrayList<>();
+        for (Integer classId : classIds.subList(0, Math.min(settings.enrollsPerStudent(), classIds.size()))) {
+            CallResult enrollment = call(OP_ENROLL, "POST", "/student/classes/" + classId + "/enroll", token,
+                    body -> body.path("result").path("status").asString("OK"));
+            if (enrollment.success() && "ENROLLED".equals(enrollment.outcome())) {
+                enrolled.add(classId);
+            }
+        }
+
+        if (!enrolled.isEmpty() && ThreadLocalRandom.current().nextDouble() < settings.dropRatio()) {
+            Integer classId = enrolled.get(ThreadLocalRandom.current().nextInt(enrolled.size()));
+            call(OP_DROP, "DELETE", "/student/classes/" + classId + "/enroll", token, body -> "OK");
+        }
+    }
+
+    private CallResult call(String operation, String method, String path, String token,
+            Function<JsonNode, String> successOutcome) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Authorization", "Bearer " + token)
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .timeout(Duration.ofSeconds(30))
+                .build();
+        long begin = System.nanoTime();
+        try {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            long elapsed = System.nanoTime() - begin;
+            CallResult result = classify(response, successOutcome);
+            recorder.record(operation, elapsed, result.outcome());
+            return result;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            recorder.record(operation, System.nanoTime() - begin, "INTERRUPTED");
+            return new CallResult(false, "INTERRUPTED", null);
+        } catch (Exception ex) {
+            recorder.record(operation, System.nanoTime() - begin, "IO_ERROR");
+            log.debug("{} {} failed: {}", method, path, ex.getMessage());
+            return new CallResult(false, "IO_ERROR", null);
+        }
+    }
+
+    private CallResult classify(HttpResponse<String> response, Function<JsonNode, String> successOutcome) {
+        if (response.statusCode() == 429) {
+            return new CallResult(false, "RATE_LIMITED", null);
+        }
+        JsonNode body;
+        try {
+            body = jsonMapper.readTree(response.body());
+        } catch (Exception ex) {
+            return new CallResult(false, "HTTP_" + response.statusCode(), null);
+        }
+        int code = body.path("code").asInt(-1);
+        if (response.statusCode() / 100 == 2 && code == SUCCESS_CODE) {
+            return new CallResult(true, successOutcome.apply(body), body);
+        }
+        return new CallResult(false, ERROR_NAMES.getOrDefault(code, "HTTP_" + response.statusCode()), body);
+    }
+
+    private record CallResult(boolean success, String outcome, JsonNode body) {
+    }
+}
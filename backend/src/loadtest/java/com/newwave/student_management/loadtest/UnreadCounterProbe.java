@@ -0,0 +1,141 @@
+package com.newwave.student_management.loadtest;
+
+import com.newwave.student_management.domains.notification.entity.SentNotification;
+import com.newwave.student_management.domains.notification.repository.SentNotificationRepository;
+import com.newwave.student_management.domains.notification.service.NotificationInboxService;
+import com.newwave.student_management.domains.notification.service.NotificationInternalService;
+import com.newwave.student_management.domains.notification.service.NotificationScheduler;
+import com.newwave.student_management.domains.notification.service.UnreadCounterReconciler;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Counter chưa đọc trên Redis: với mẫu user đã có counter, sau một broadcast
+ * (tăng theo chunk), một lượt gửi hệ thống (tăng sau commit) và các lượt đọc lẻ
+ * (đọc lại lần hai không được giảm thêm), counter phải khớp số đếm trong DB.
+ * Sau đó làm lệch vài counter và chạy UnreadCounterReconciler hai vòng: lệch
+ * phải được sửa. Đo thời gian đếm chưa đọc qua Redis so với đếm trong DB.
+ */
+@RequiredArgsConstructor
+public class UnreadCounterProbe {
+
+    private static final String TITLE = "Load test unread counter";
+    private static final String KEY_PREFIX = "notification:unread:";
+    private static final long WAIT_MILLIS = 60_000;
+    private static final int SAMPLES = 100;
+    private static final int DRIFTED = 10;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final SentNotificationRepository sentNotificationRepository;
+    private final NotificationScheduler notificationScheduler;
+    private final NotificationInternalService notificationInternalService;
+    private final NotificationInboxService notificationInboxService;
+    private final UnreadCounterReconciler unreadCounterReconciler;
+
+    public Map<String, Object> probe() throws InterruptedException {
+        List<UUID> recipients = jdbcTemplate.queryForList("""
+                SELECT u.user_id FROM users u
+                JOIN roles r ON r.role_id = u.role_id
+                WHERE r.role_name <> 'ADMIN' AND u.deleted_at IS NULL
+                ORDER BY u.user_id
+                """, UUID.class);
+        int step = Math.max(1, recipients.size() / SAMPLES);
+        List<UUID> samples = new ArrayList<>();
+        for (int i = 0; i < recipients.size(); i += step) {
+            samples.add(recipients.get(i));
+        }
+        samples.forEach(notificationInboxService::countUnread);
+
+        SentNotification notif = sentNotificationRepository.save(SentNotification.builder()
+                .title(TITLE)
+                .body("Unread counter probe")
+                .notificationType("BROADCAST")
+                .targetGroup("All Users")
+                .status("PENDING")
+                .scheduledAt(LocalDateTime.now().minusSeconds(1))
+                .build());
+        notificationScheduler.processScheduledNotifications();
+        SentNotification sent = awaitFinished(notif.getSentId());
+        notificationInternalService.sendToUsers(samples.subList(0, samples.size() / 2), TITLE,
+                "Unread counter probe (system)", null, "Load test");
+
+        List<Map<String, Object>> violations = new ArrayList<>();
+        if (!"SENT".equals(sent.getStatus())) {
+            violations.add(Map.of("field", "status", "expected", "SENT", "actual", String.valueOf(sent.getStatus())));
+        }
+        long counterNanos = 0;
+        long dbNanos = 0;
+        for (UUID userId : samples) {
+            long t0 = System.nanoTime();
+            long counter = notificationInboxService.countUnread(userId);
+            long t1 = System.nanoTime();
+            long db = notificationInboxService.countUnreadFromDb(userId);
+            long t2 = System.nanoTime();
+            counterNanos += t1 - t0;
+            dbNanos += t2 - t1;
+            if (counter != db) {
+                violations.add(Map.of("userId", userId, "stage", "afterSend", "counter", counter, "db", db));
+            }
+        }
+
+        for (UUID userId : samples) {
+            notificationInboxService.markAsRead(userId, sent.getSentId());
+            notificationInboxService.markAsRead(userId, sent.getSentId());
+            expectInSync(violations, userId, "afterMarkAsRead");
+        }
+
+        List<UUID> drifted = samples.subList(0, Math.min(DRIFTED, samples.size()));
+        for (UUID userId : drifted) {
+            long db = notificationInboxService.countUnreadFromDb(userId);
+            stringRedisTemplate.opsForValue().set(KEY_PREFIX + userId, String.valueOf(db + 5));
+        }
+        unreadCounterReconciler.reconcile();
+        unreadCounterReconciler.reconcile();
+        for (UUID userId : drifted) {
+            expectInSync(violations, userId, "afterReconciliation");
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("samples", samples.size());
+        result.put("avgCounterMs", counterNanos / 1_000_000.0 / Math.max(1, samples.size()));
+        result.put("avgDbCountMs", dbNanos / 1_000_000.0 / Math.max(1, samples.size()));
+        result.put("drifted", drifted.size());
+        result.put("violations", violations);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static boolean hasViolations(Map<String, Object> result) {
+        return !((List<Object>) result.get("violations")).isEmpty();
+    }
+
+    private void expectInSync(List<Map<String, Object>> violations, UUID userId, String stage) {
+        String counter = stringRedisTemplate.opsForValue().get(KEY_PREFIX + userId);
+        long db = notificationInboxService.countUnreadFromDb(userId);
+        if (counter == null || Long.parseLong(counter) != db) {
+            violations.add(Map.of("userId", userId, "stage", stage, "counter", String.valueOf(counter), "db", db));
+        }
+    }
+
+    // Scheduler thật (cron mỗi phút) có thể đã nhận thông báo trước lời gọi ở trên
+    private SentNotification awaitFinished(UUID sentId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (true) {
+            SentNotification sent = sentNotificationRepository.findById(sentId).orElseThrow();
+            if ("SENT".equals(sent.getStatus()) || "FAILED".equals(sent.getStatus())
+                    || System.currentTimeMillis() > deadline) {
+                return sent;
+            }
+            Thread.sleep(200);
+        }
+    }
+}
@@ -8,6 +8,7 @@ public enum ErrorCode {
         // System errors (9xxx)
         UNCATEGORIZED_EXCEPTION(9999, "Uncategorized error", HttpStatus.INTERNAL_SERVER_ERROR),
         INVALID_KEY(9998, "Invalid error key", HttpStatus.BAD_REQUEST),
+        SERVICE_BUSY(9996, "Server is busy. Please try again later.", HttpStatus.SERVICE_UNAVAILABLE),
 
         // Validation errors - Generic (1000-1099)
         VALIDATION_ERROR(1000, "Validation error", HttpStatus.BAD_REQUEST),
@@ -71,6 +72,10 @@ public enum ErrorCode {
                         HttpStatus.BAD_REQUEST),
         CLASS_NOT_OPEN(1272, "Class is not open for enrollment", HttpStatus.BAD_REQUEST),
         STUDENT_ALREADY_WAITLISTED(1281, "Student is already in the waitlist for this class", HttpStatus.CONFLICT),
+        // Giữ mã 4029 mà EnrollRateLimitFilter cũ trả về — client đang dựa vào mã này
+        ENROLL_RATE_LIMITED(4029, "Too many enrollment requests. Please wait before trying again.",
+                        HttpStatus.TOO_MANY_REQUESTS),
+        ENROLLMENT_RESERVATION_NOT_FOUND(1282, "Enrollment reservation not found or expired", HttpStatus.NOT_FOUND),
         ENROLLMENT_CLOSED(1280, "Enrollment period is closed. You can no longer drop classes.", HttpStatus.BAD_REQUEST),
         ENROLLMENT_NOT_FOUND(1270, "Enrollment record not found", HttpStatus.NOT_FOUND),
         ROOM_NOT_FOUND(1273, "Room not found", HttpStatus.NOT_FOUND),
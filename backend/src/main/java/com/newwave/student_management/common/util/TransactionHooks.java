@@ -0,0 +1,52 @@
+package com.newwave.student_management.common.util;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Utility for side effects (Redis, Kafka, push) that must only happen once the
+ * surrounding database transaction has committed.
+ */
+public final class TransactionHooks {
+
+    private TransactionHooks() {
+    }
+
+    /**
+     * Runs {@code action} after the current transaction commits; nothing runs on
+     * rollback. Without an active transaction the action runs immediately.
+     *
+     * @param action The side effect to run
+     */
+    public static void afterCommit(Runnable action) {
+        afterCommit(action, () -> {
+        });
+    }
+
+    /**
+     * Like {@link #afterCommit(Runnable)}, additionally running {@code onRollback}
+     * when the current transaction rolls back.
+     *
+     * @param action     The side effect to run after commit
+     * @param onRollback The compensation to run after rollback
+     */
+    public static void afterCommit(Runnable action, Runnable onRollback) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        onRollback.run();
+                    }
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -209,7 +209,7 @@ public class GradeServiceImpl implements IGradeService {
                 .build();
     }
 
-    private BigDecimal calculateGpa(List<Grade> grades) {
+    static BigDecimal calculateGpa(List<Grade> grades) {
         if (grades.isEmpty()) {
             return BigDecimal.ZERO;
         }
@@ -237,7 +237,7 @@ public class GradeServiceImpl implements IGradeService {
         return totalPoints.divide(BigDecimal.valueOf(totalCredits), 2, RoundingMode.HALF_UP);
     }
 
-    private BigDecimal convertToScale4(BigDecimal grade10) {
+    static BigDecimal convertToScale4(BigDecimal grade10) {
         if (grade10 == null)
             return BigDecimal.ZERO;
         double val = grade10.doubleValue();
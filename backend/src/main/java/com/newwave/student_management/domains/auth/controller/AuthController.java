@@ -8,6 +8,7 @@ import com.newwave.student_management.domains.auth.dto.request.RefreshTokenReque
 import com.newwave.student_management.domains.auth.dto.request.ForgotPasswordRequest;
 import com.newwave.student_management.domains.auth.dto.request.ResetPasswordRequest;
 import com.newwave.student_management.domains.auth.service.IAuthService;
+import com.newwave.student_management.infrastructure.security.ClientIpResolver;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.servlet.http.HttpServletRequest;
@@ -28,6 +29,7 @@ import org.springframework.web.bind.annotation.RestController;
 public class AuthController {
 
     private final IAuthService authService;
+    private final ClientIpResolver clientIpResolver;
 
     @PostMapping("/login")
     @Operation(
@@ -39,7 +41,7 @@ public class AuthController {
             @Valid @RequestBody LoginRequest request,
             HttpServletRequest httpServletRequest
     ) {
-        String clientIp = extractClientIp(httpServletRequest);
+        String clientIp = clientIpResolver.resolve(httpServletRequest);
         return ApiResponse.success(authService.authenticate(request, clientIp));
     }
 
@@ -122,12 +124,4 @@ public class AuthController {
                 )
         );
     }
-
-    private String extractClientIp(HttpServletRequest request) {
-        String xForwardedFor = request.getHeader("X-Forwarded-For");
-        if (xForwardedFor != null && !xForwardedFor.isBlank()) {
-            return xForwardedFor.split(",")[0].trim();
-        }
-        return request.getRemoteAddr();
-    }
 }
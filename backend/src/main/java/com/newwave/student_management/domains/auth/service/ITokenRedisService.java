@@ -6,29 +6,40 @@ public interface ITokenRedisService {
 
     boolean isRateLimited(String email);
 
-    int recordFailedAttempt(String email);
+    // ── Login hot path (gộp nhiều lệnh vào 1 round-trip) ───────────────────
 
-    void resetFailedAttempts(String email);
+    enum LoginGate {
+        OPEN, IP_LOCKED, EMAIL_LOCKED
+    }
 
-    // ── IP-based rate limiting (chống Password Spraying) ──────────────────
+    /**
+     * @param emailRemaining số lần thử còn lại trước khi khóa email
+     * @param ipRemaining    số lần thử còn lại trước khi khóa IP (0 nếu không có IP)
+     * @param ipLocked       lần fail này vừa khóa IP
+     */
+    record FailedLogin(int emailRemaining, int ipRemaining, boolean ipLocked) {
+    }
+
+    record LoginSession(long tokenVersion, String refreshToken) {
+    }
 
     /**
-     * Kiểm tra IP có đang bị block do quá nhiều login fail không.
-     * Key: auth:login:ip:lock:{ip}
+     * Kiểm tra khóa IP rồi khóa email trong 1 Lua call.
      */
-    boolean isIpRateLimited(String ip);
+    LoginGate checkLoginGate(String email, String ip);
 
     /**
-     * Ghi nhận 1 login fail từ IP này.
-     * Trả về số attempt còn lại trước khi bị block.
-     * Key: auth:login:ip:fail:{ip} TTL = IP_FAIL_WINDOW_SECONDS
+     * Ghi nhận 1 login fail cho cả email và IP trong 1 Lua call; khóa email / IP
+     * khi vượt ngưỡng.
      */
-    int recordIpFailedAttempt(String ip);
+    FailedLogin recordFailedLogin(String email, String ip);
 
     /**
-     * Reset fail counter của IP khi login thành công.
+     * Sau khi login thành công: reset fail counter của email (kèm khóa email) và
+     * của IP (không gỡ khóa IP), đọc token version và lưu refresh token mới — 1
+     * round-trip.
      */
-    void resetIpFailedAttempts(String ip);
+    LoginSession completeLogin(UUID userId, String email, String ip);
 
     String createAndStoreRefreshToken(UUID userId);
 
@@ -57,6 +68,12 @@ public interface ITokenRedisService {
 
     int deleteAllRefreshTokensForUser(UUID userId);
 
+    /**
+     * Dọn refresh token hết hạn khỏi mọi ZSET auth:refresh:{userId} (SCAN theo
+     * batch). Trả về số token đã gỡ.
+     */
+    long pruneExpiredRefreshTokens(int batchSize);
+
     /**
      * Token version for user. Incremented on password change so all existing JWTs
      * are invalidated.
@@ -47,23 +47,21 @@ public class AuthService implements IAuthService {
     public LoginResponse authenticate(LoginRequest loginRequest, String clientIp) {
         String email = loginRequest.getEmail() != null ? loginRequest.getEmail().trim().toLowerCase() : null;
 
-        // 1. Rate limit by IP (Password Spraying defense) — check TRƯỚC email để chặn
-        // sớm nhất
-        if (tokenRedisService.isIpRateLimited(clientIp)) {
+        // 1. Rate limit by IP (Password Spraying defense) rồi by email (Brute Force
+        // defense) — 1 Lua call, IP được check trước để chặn sớm nhất
+        ITokenRedisService.LoginGate gate = tokenRedisService.checkLoginGate(email, clientIp);
+        if (gate == ITokenRedisService.LoginGate.IP_LOCKED) {
             log.warn("Login blocked: IP rate limited, ip={}", clientIp);
             throw new AppException(ErrorCode.RATE_LIMITED);
         }
-
-        // 2. Rate limit by email (Brute Force defense)
-        if (tokenRedisService.isRateLimited(email)) {
+        if (gate == ITokenRedisService.LoginGate.EMAIL_LOCKED) {
             throw new AppException(ErrorCode.RATE_LIMITED);
         }
 
         // 3. Find user
         User user = userRepository.findByEmail(email)
                 .orElseThrow(() -> {
-                    tokenRedisService.recordFailedAttempt(email);
-                    tokenRedisService.recordIpFailedAttempt(clientIp);
+                    tokenRedisService.recordFailedLogin(email, clientIp);
                     return new AppException(ErrorCode.UNAUTHENTICATED);
                 });
 
@@ -82,30 +80,28 @@ public class AuthService implements IAuthService {
         // 5. Verify password
         boolean ok = passwordEncoder.matches(loginRequest.getPassword(), user.getPasswordHash());
         if (!ok) {
-            int emailRemaining = tokenRedisService.recordFailedAttempt(email);
-            int ipRemaining = tokenRedisService.recordIpFailedAttempt(clientIp);
+            ITokenRedisService.FailedLogin failed = tokenRedisService.recordFailedLogin(email, clientIp);
             log.warn("Login failed: email={}, emailRemaining={}, ipRemaining={}, ip={}",
-                    email, emailRemaining, ipRemaining, clientIp);
+                    email, failed.emailRemaining(), failed.ipRemaining(), clientIp);
             throw new AppException(ErrorCode.UNAUTHENTICATED);
         }
 
-        // 6. Reset counters (login thành công)
-        tokenRedisService.resetFailedAttempts(email);
-        // Chỉ reset IP fail counter, KHÔNG reset IP lock (tự hết TTL)
-        // → Tránh attacker dùng account hợp lệ để "rửa" IP block
-        tokenRedisService.resetIpFailedAttempts(clientIp);
-
-        // 7. Update login tracking
+        // 6. Update login tracking
         user.setLastLoginAt(LocalDateTime.now());
         user.setLastLoginIp(clientIp);
         user.setLoginCount(user.getLoginCount() + 1);
         userRepository.save(user);
 
+        // 7. Reset counters + đọc token version + lưu refresh token (1 round-trip).
+        // Chỉ reset IP fail counter, KHÔNG reset IP lock (tự hết TTL)
+        // → Tránh attacker dùng account hợp lệ để "rửa" IP block
+        ITokenRedisService.LoginSession session = tokenRedisService.completeLogin(user.getUserId(), email,
+                clientIp);
+
         // 9. Generate tokens (with current token version so change-password can
         // invalidate all)
-        long tokenVersion = tokenRedisService.getTokenVersion(user.getUserId());
-        String accessToken = jwtService.generateToken(user, tokenVersion);
-        String refreshToken = tokenRedisService.createAndStoreRefreshToken(user.getUserId());
+        String accessToken = jwtService.generateToken(user, session.tokenVersion());
+        String refreshToken = session.refreshToken();
 
         // 10. Return response (profilePictureUrl: full URL for frontend)
         String profilePictureUrl = toFullAvatarUrl(user.getProfilePictureUrl());
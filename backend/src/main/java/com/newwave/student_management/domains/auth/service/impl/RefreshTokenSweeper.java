@@ -0,0 +1,43 @@
+package com.newwave.student_management.domains.auth.service.impl;
+
+import com.newwave.student_management.domains.auth.service.ITokenRedisService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Định kỳ dọn refresh token hết hạn khỏi các ZSET auth:refresh:{userId} của
+ * user không còn đăng nhập/refresh — các ZSET này không được dọn ở luồng
+ * request và (với dữ liệu tạo trước khi ZSET có TTL) sẽ tồn tại mãi.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RefreshTokenSweeper {
+
+    private final ITokenRedisService tokenRedisService;
+
+    @Value("${auth.refresh-sweeper.enabled:true}")
+    private boolean enabled;
+
+    @Value("${auth.refresh-sweeper.batch-size:500}")
+    private int batchSize;
+
+    @Scheduled(fixedDelayString = "${auth.refresh-sweeper.interval-ms:3600000}",
+            initialDelayString = "${auth.refresh-sweeper.initial-delay-ms:300000}")
+    public void sweep() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            long removed = tokenRedisService.pruneExpiredRefreshTokens(batchSize);
+            log.info("Refresh token sweep removed {} expired tokens in {}ms", removed,
+                    System.currentTimeMillis() - start);
+        } catch (Exception ex) {
+            log.warn("Refresh token sweep failed: {}", ex.getMessage());
+        }
+    }
+}
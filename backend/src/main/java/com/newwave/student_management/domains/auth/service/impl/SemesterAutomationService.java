@@ -75,7 +75,9 @@ public class SemesterAutomationService {
         // Hủy kích hoạt học kỳ hiện tại cũ
         semesterRepository.findByIsCurrentTrue().ifPresent(oldSemester -> {
             oldSemester.setCurrent(false);
-            semesterRepository.save(oldSemester);
+            // Flush ngay: unique index idx_semesters_current chỉ cho 1 dòng is_current,
+            // Hibernate không đảm bảo thứ tự UPDATE khi flush lúc commit
+            semesterRepository.saveAndFlush(oldSemester);
             log.info("Deactivated old current semester: {}", oldSemester.getDisplayName());
         });
 
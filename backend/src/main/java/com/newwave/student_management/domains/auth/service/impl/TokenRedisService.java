@@ -1,13 +1,22 @@
 package com.newwave.student_management.domains.auth.service.impl;
 
 import com.newwave.student_management.domains.auth.service.ITokenRedisService;
+import com.newwave.student_management.infrastructure.security.TokenStateCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.DefaultStringRedisConnection;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
@@ -32,7 +41,117 @@ public class TokenRedisService implements ITokenRedisService {
     private static final String IP_FAIL_KEY_PREFIX = "auth:login:ip:fail:";
     private static final String IP_LOCK_KEY_PREFIX = "auth:login:ip:lock:";
 
+    /**
+     * Tạo refresh token trong 1 round-trip: ZADD vào ZSET của user, SET
+     * token → userId (PX), dọn token hết hạn và kéo TTL của ZSET theo token mới
+     * nhất — session bị bỏ rơi tự biến mất khi token cuối cùng hết hạn.
+     * • KEYS[1] = auth:refresh:{userId}, KEYS[2] = auth:refresh-token:{token}
+     * • ARGV = token, userId, expiry (epoch millis), ttl (ms), now (epoch millis)
+     */
+    private static final DefaultRedisScript<Long> CREATE_REFRESH_SCRIPT;
+
+    /** Phần lưu refresh token dùng chung cho CREATE_REFRESH và COMPLETE_LOGIN. */
+    private static final String STORE_REFRESH_LUA = "redis.call('ZADD', KEYS[1], ARGV[3], ARGV[1]) " +
+            "redis.call('SET', KEYS[2], ARGV[2], 'PX', ARGV[4]) " +
+            "redis.call('ZREMRANGEBYSCORE', KEYS[1], 0, ARGV[5]) " +
+            "local newest = redis.call('ZRANGE', KEYS[1], -1, -1, 'WITHSCORES') " +
+            "if newest[2] then redis.call('PEXPIREAT', KEYS[1], newest[2]) end ";
+
+    /**
+     * Cổng login: khóa IP được kiểm tra trước khóa email.
+     * • KEYS[1] = auth:login:lock:{email}, KEYS[2] = auth:login:ip:lock:{ip}
+     * (bỏ qua nếu không có IP)
+     * • Trả về 0 = mở, 1 = IP bị khóa, 2 = email bị khóa.
+     */
+    private static final DefaultRedisScript<Long> LOGIN_GATE_SCRIPT;
+
+    /**
+     * Login fail: INCR counter (đặt TTL nếu chưa có), chạm ngưỡng thì SET khóa
+     * và xóa counter — cho email rồi IP.
+     * • KEYS[1..2] = auth:login:fail:{email}, auth:login:lock:{email}
+     * • KEYS[3..4] = auth:login:ip:fail:{ip}, auth:login:ip:lock:{ip} (bỏ qua nếu
+     * không có IP)
+     * • ARGV = max, window, lock (giây) của email rồi của IP
+     * • Trả về {emailRemaining, ipRemaining, ipLocked (1/0)}.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> LOGIN_FAILURE_SCRIPT;
+
+    /**
+     * Login thành công: lưu refresh token như CREATE_REFRESH, xóa fail counter,
+     * đọc token version.
+     * • KEYS[1..2] như CREATE_REFRESH, KEYS[3] = auth:token-version:{userId}
+     * • KEYS[4..] = key cần xóa (fail + lock của email, fail của IP)
+     * • ARGV như CREATE_REFRESH
+     * • Trả về token version (0 nếu chưa có).
+     */
+    private static final DefaultRedisScript<Long> COMPLETE_LOGIN_SCRIPT;
+
+    /**
+     * Xóa 1 refresh token ở cả hai chiều.
+     * • KEYS[1] = auth:refresh-token:{token}, KEYS[2] = auth:refresh:{userId}
+     * (bỏ qua nếu không biết userId)
+     * • ARGV = token, now (epoch millis)
+     */
+    private static final DefaultRedisScript<Long> DELETE_REFRESH_SCRIPT;
+
+    /** Số token key UNLINK trong 1 lệnh khi xóa mọi refresh token của user. */
+    private static final int DELETE_ALL_CHUNK_SIZE = 500;
+
+    static {
+        CREATE_REFRESH_SCRIPT = new DefaultRedisScript<>();
+        CREATE_REFRESH_SCRIPT.setResultType(Long.class);
+        CREATE_REFRESH_SCRIPT.setScriptText(STORE_REFRESH_LUA +
+                "return redis.call('ZCARD', KEYS[1])");
+
+        LOGIN_GATE_SCRIPT = new DefaultRedisScript<>();
+        LOGIN_GATE_SCRIPT.setResultType(Long.class);
+        LOGIN_GATE_SCRIPT.setScriptText(
+                "if KEYS[2] and redis.call('EXISTS', KEYS[2]) == 1 then return 1 end " +
+                        "if redis.call('EXISTS', KEYS[1]) == 1 then return 2 end " +
+                        "return 0");
+
+        LOGIN_FAILURE_SCRIPT = new DefaultRedisScript<>();
+        LOGIN_FAILURE_SCRIPT.setResultType(List.class);
+        LOGIN_FAILURE_SCRIPT.setScriptText(
+                "local function hit(failKey, lockKey, max, window, lock) " +
+                        "  local count = redis.call('INCR', failKey) " +
+                        "  if redis.call('TTL', failKey) < 0 then redis.call('EXPIRE', failKey, window) end " +
+                        "  if count >= max then " +
+                        "    redis.call('SET', lockKey, '1', 'EX', lock) " +
+                        "    redis.call('DEL', failKey) " +
+                        "    return 0 " +
+                        "  end " +
+                        "  return max - count " +
+                        "end " +
+                        "local emailRemaining = hit(KEYS[1], KEYS[2], tonumber(ARGV[1]), ARGV[2], ARGV[3]) " +
+                        "local ipRemaining = 0 " +
+                        "local ipLocked = 0 " +
+                        "if KEYS[4] then " +
+                        "  ipRemaining = hit(KEYS[3], KEYS[4], tonumber(ARGV[4]), ARGV[5], ARGV[6]) " +
+                        "  if ipRemaining == 0 then ipLocked = 1 end " +
+                        "end " +
+                        "return {emailRemaining, ipRemaining, ipLocked}");
+
+        COMPLETE_LOGIN_SCRIPT = new DefaultRedisScript<>();
+        COMPLETE_LOGIN_SCRIPT.setResultType(Long.class);
+        COMPLETE_LOGIN_SCRIPT.setScriptText(STORE_REFRESH_LUA +
+                "redis.call('DEL', unpack(KEYS, 4)) " +
+                "return tonumber(redis.call('GET', KEYS[3])) or 0");
+
+        DELETE_REFRESH_SCRIPT = new DefaultRedisScript<>();
+        DELETE_REFRESH_SCRIPT.setResultType(Long.class);
+        DELETE_REFRESH_SCRIPT.setScriptText(
+                "local deleted = redis.call('DEL', KEYS[1]) " +
+                        "if KEYS[2] then " +
+                        "  redis.call('ZREM', KEYS[2], ARGV[1]) " +
+                        "  redis.call('ZREMRANGEBYSCORE', KEYS[2], 0, ARGV[2]) " +
+                        "end " +
+                        "return deleted");
+    }
+
     private final StringRedisTemplate stringRedisTemplate;
+    private final TokenStateCache tokenStateCache;
 
     @Value("${auth.login.max-failed-attempts:5}")
     private int maxFailedAttempts;
@@ -66,83 +185,68 @@ public class TokenRedisService implements ITokenRedisService {
     }
 
     @Override
-    public int recordFailedAttempt(String email) {
-        String normalized = normalize(email);
-        String failKey = FAIL_KEY_PREFIX + normalized;
-        Long count = stringRedisTemplate.opsForValue().increment(failKey);
-        if (count != null && count == 1L) {
-            stringRedisTemplate.expire(failKey, Duration.ofSeconds(failWindowSeconds));
+    public LoginGate checkLoginGate(String email, String ip) {
+        List<String> keys = hasIp(ip)
+                ? List.of(LOCK_KEY_PREFIX + normalize(email), IP_LOCK_KEY_PREFIX + normalizeIp(ip))
+                : List.of(LOCK_KEY_PREFIX + normalize(email));
+        Long gate = stringRedisTemplate.execute(LOGIN_GATE_SCRIPT, keys);
+        if (gate == null || gate == 0L) {
+            return LoginGate.OPEN;
         }
-
-        long safeCount = count == null ? 0 : count;
-        int remaining = Math.max(0, maxFailedAttempts - (int) safeCount);
-
-        if (safeCount >= maxFailedAttempts) {
-            String lockKey = LOCK_KEY_PREFIX + normalized;
-            stringRedisTemplate.opsForValue().set(lockKey, "1", Duration.ofSeconds(lockSeconds));
-            stringRedisTemplate.delete(failKey);
-            remaining = 0;
-        }
-
-        return remaining;
+        return gate == 1L ? LoginGate.IP_LOCKED : LoginGate.EMAIL_LOCKED;
     }
 
     @Override
-    public void resetFailedAttempts(String email) {
+    public FailedLogin recordFailedLogin(String email, String ip) {
         String normalized = normalize(email);
-        stringRedisTemplate.delete(FAIL_KEY_PREFIX + normalized);
-        stringRedisTemplate.delete(LOCK_KEY_PREFIX + normalized);
-    }
-
-    // ── IP-based rate limiting ─────────────────────────────────────────────────
-
-    @Override
-    public boolean isIpRateLimited(String ip) {
-        if (ip == null || ip.isBlank())
-            return false;
-        Boolean exists = stringRedisTemplate.hasKey(IP_LOCK_KEY_PREFIX + normalizeIp(ip));
-        return Boolean.TRUE.equals(exists);
-    }
-
-    @Override
-    public int recordIpFailedAttempt(String ip) {
-        if (ip == null || ip.isBlank())
-            return 0;
-        String normalized = normalizeIp(ip);
-        String failKey = IP_FAIL_KEY_PREFIX + normalized;
-        Long count = stringRedisTemplate.opsForValue().increment(failKey);
-        if (count != null && count == 1L) {
-            stringRedisTemplate.expire(failKey, Duration.ofSeconds(ipFailWindowSeconds));
-        } else if (count != null) {
-            // Safety net: TTL bị mất (crash giữa INCR và EXPIRE)
-            Long ttl = stringRedisTemplate.getExpire(failKey);
-            if (ttl != null && ttl == -1L) {
-                stringRedisTemplate.expire(failKey, Duration.ofSeconds(ipFailWindowSeconds));
-            }
+        List<String> keys = new ArrayList<>(4);
+        keys.add(FAIL_KEY_PREFIX + normalized);
+        keys.add(LOCK_KEY_PREFIX + normalized);
+        if (hasIp(ip)) {
+            String normalizedIp = normalizeIp(ip);
+            keys.add(IP_FAIL_KEY_PREFIX + normalizedIp);
+            keys.add(IP_LOCK_KEY_PREFIX + normalizedIp);
         }
-
-        long safeCount = count == null ? 0 : count;
-        int remaining = Math.max(0, ipMaxFailedAttempts - (int) safeCount);
-
-        if (safeCount >= ipMaxFailedAttempts) {
-            String lockKey = IP_LOCK_KEY_PREFIX + normalized;
-            stringRedisTemplate.opsForValue().set(lockKey, "1", Duration.ofSeconds(ipLockSeconds));
-            stringRedisTemplate.delete(failKey);
+        List<?> result = stringRedisTemplate.execute(LOGIN_FAILURE_SCRIPT, keys,
+                String.valueOf(maxFailedAttempts), String.valueOf(failWindowSeconds), String.valueOf(lockSeconds),
+                String.valueOf(ipMaxFailedAttempts), String.valueOf(ipFailWindowSeconds),
+                String.valueOf(ipLockSeconds));
+        if (result == null || result.size() != 3) {
+            return new FailedLogin(maxFailedAttempts, ipMaxFailedAttempts, false);
+        }
+        FailedLogin failedLogin = new FailedLogin(((Number) result.get(0)).intValue(),
+                ((Number) result.get(1)).intValue(), ((Number) result.get(2)).longValue() == 1L);
+        if (failedLogin.ipLocked()) {
             log.warn("IP blocked due to too many login failures: ip={}, threshold={}", ip, ipMaxFailedAttempts);
-            remaining = 0;
         }
-        return remaining;
+        return failedLogin;
     }
 
     @Override
-    public void resetIpFailedAttempts(String ip) {
-        if (ip == null || ip.isBlank())
-            return;
-        String normalized = normalizeIp(ip);
-        stringRedisTemplate.delete(IP_FAIL_KEY_PREFIX + normalized);
-        // Không xóa IP_LOCK_KEY (block phải tự hết TTL, không reset khi login thành
-        // công)
-        // → Tránh attacker login 1 tài khoản hợp lệ để "rửa" counter của IP
+    public LoginSession completeLogin(UUID userId, String email, String ip) {
+        Objects.requireNonNull(userId, "userId");
+        String refreshToken = UUID.randomUUID().toString();
+        String normalized = normalize(email);
+        List<String> keys = new ArrayList<>(6);
+        keys.add(REFRESH_KEY_PREFIX + userId);
+        keys.add(REFRESH_TOKEN_TO_USER_PREFIX + refreshToken);
+        keys.add(TOKEN_VERSION_PREFIX + userId);
+        keys.add(FAIL_KEY_PREFIX + normalized);
+        keys.add(LOCK_KEY_PREFIX + normalized);
+        if (hasIp(ip)) {
+            // Chỉ reset IP fail counter, KHÔNG xóa IP lock (tự hết TTL)
+            keys.add(IP_FAIL_KEY_PREFIX + normalizeIp(ip));
+        }
+
+        long ttlMillis = Duration.ofSeconds(refreshExpirationSeconds).toMillis();
+        long now = System.currentTimeMillis();
+        Long version = stringRedisTemplate.execute(COMPLETE_LOGIN_SCRIPT, keys,
+                refreshToken, userId.toString(), String.valueOf(now + ttlMillis), String.valueOf(ttlMillis),
+                String.valueOf(now));
+        long tokenVersion = version != null ? version : 0L;
+        // Request đầu tiên sau login không phải đọc lại version từ Redis
+        tokenStateCache.putTokenVersion(userId, tokenVersion);
+        return new LoginSession(tokenVersion, refreshToken);
     }
 
     @Override
@@ -154,12 +258,12 @@ public class TokenRedisService implements ITokenRedisService {
 
         Duration ttl = Duration.ofSeconds(refreshExpirationSeconds);
         // User -> ZSET (score = expiry timestamp) tránh "rò rỉ bộ nhớ" khi Token Key
-        // hết TTL trước Set
-        long expiryTime = System.currentTimeMillis() + ttl.toMillis();
-        stringRedisTemplate.opsForZSet().add(userKey, refreshToken, expiryTime);
-        // Token -> userId (để validate nhanh)
-        stringRedisTemplate.opsForValue().set(tokenKey, userId.toString(), ttl);
-        cleanupExpiredTokensFromUserZSet(userKey);
+        // hết TTL trước Set; Token -> userId (để validate nhanh)
+        long now = System.currentTimeMillis();
+        long expiryTime = now + ttl.toMillis();
+        stringRedisTemplate.execute(CREATE_REFRESH_SCRIPT, List.of(userKey, tokenKey),
+                refreshToken, userId.toString(), String.valueOf(expiryTime), String.valueOf(ttl.toMillis()),
+                String.valueOf(now));
         return refreshToken;
     }
 
@@ -187,17 +291,17 @@ public class TokenRedisService implements ITokenRedisService {
             return;
         }
 
-        // Luôn xóa "con đường" token -> userId trước
         String tokenKey = REFRESH_TOKEN_TO_USER_PREFIX + refreshToken;
-        String resolvedUserId = userId != null ? userId.toString() : stringRedisTemplate.opsForValue().get(tokenKey);
-        stringRedisTemplate.delete(tokenKey);
-
-        // Xóa token khỏi ZSET user -> tokens (con đường ngược)
-        if (resolvedUserId != null && !resolvedUserId.isBlank()) {
-            String userKey = REFRESH_KEY_PREFIX + resolvedUserId;
-            stringRedisTemplate.opsForZSet().remove(userKey, refreshToken);
-            cleanupExpiredTokensFromUserZSet(userKey);
+        if (userId == null) {
+            userId = getUserIdByRefreshToken(refreshToken);
         }
+        // Xóa "con đường" token -> userId và token khỏi ZSET user -> tokens (con
+        // đường ngược) trong cùng 1 script; mọi key đều khai báo trong KEYS
+        List<String> keys = userId != null
+                ? List.of(tokenKey, REFRESH_KEY_PREFIX + userId)
+                : List.of(tokenKey);
+        stringRedisTemplate.execute(DELETE_REFRESH_SCRIPT, keys,
+                refreshToken, String.valueOf(System.currentTimeMillis()));
     }
 
     @Override
@@ -207,6 +311,8 @@ public class TokenRedisService implements ITokenRedisService {
         }
         String key = ACCESS_BLACKLIST_PREFIX + jti;
         stringRedisTemplate.opsForValue().set(key, "1", Duration.ofSeconds(expiresInSeconds));
+        // Replica đang cache jti này là "chưa blacklist" → cập nhật ngay qua pub/sub
+        tokenStateCache.publishBlacklisted(jti, expiresInSeconds);
     }
 
     @Override
@@ -323,15 +429,68 @@ public class TokenRedisService implements ITokenRedisService {
         }
         String userKey = REFRESH_KEY_PREFIX + userId;
         Set<String> tokens = stringRedisTemplate.opsForZSet().range(userKey, 0, -1);
-        int deletedCount = 0;
-        if (tokens != null && !tokens.isEmpty()) {
-            deletedCount = tokens.size();
-            for (String token : tokens) {
-                stringRedisTemplate.delete(REFRESH_TOKEN_TO_USER_PREFIX + token);
+        if (tokens == null || tokens.isEmpty()) {
+            return 0;
+        }
+        // UNLINK token key theo chunk rồi chỉ ZREM đúng các token đã đọc, để token
+        // tạo song song (login ngay sau đổi mật khẩu) không bị mất khỏi ZSET
+        List<String> members = new ArrayList<>(tokens);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = new DefaultStringRedisConnection(connection);
+            for (int from = 0; from < members.size(); from += DELETE_ALL_CHUNK_SIZE) {
+                List<String> chunk = members.subList(from, Math.min(from + DELETE_ALL_CHUNK_SIZE, members.size()));
+                conn.unlink(chunk.stream().map(token -> REFRESH_TOKEN_TO_USER_PREFIX + token)
+                        .toArray(String[]::new));
+                conn.zRem(userKey, chunk.toArray(String[]::new));
+            }
+            return null;
+        });
+        return members.size();
+    }
+
+    @Override
+    public long pruneExpiredRefreshTokens(int batchSize) {
+        ScanOptions options = ScanOptions.scanOptions()
+                .match(REFRESH_KEY_PREFIX + "*")
+                .count(batchSize)
+                .build();
+        long now = System.currentTimeMillis();
+        long removed = 0;
+        List<String> batch = new ArrayList<>(batchSize);
+        try (Cursor<String> cursor = stringRedisTemplate.scan(options)) {
+            while (cursor.hasNext()) {
+                batch.add(cursor.next());
+                if (batch.size() >= batchSize) {
+                    removed += pruneBatch(batch, now);
+                    batch.clear();
+                }
             }
         }
-        stringRedisTemplate.delete(userKey);
-        return deletedCount;
+        if (!batch.isEmpty()) {
+            removed += pruneBatch(batch, now);
+        }
+        return removed;
+    }
+
+    /**
+     * ZREMRANGEBYSCORE pipelined cho 1 batch key. ZSET rỗng sau khi dọn được
+     * Redis tự xóa.
+     */
+    private long pruneBatch(List<String> userKeys, long now) {
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = new DefaultStringRedisConnection(connection);
+            for (String userKey : userKeys) {
+                conn.zRemRangeByScore(userKey, 0, now);
+            }
+            return null;
+        });
+        long removed = 0;
+        for (Object result : results) {
+            if (result instanceof Number number) {
+                removed += number.longValue();
+            }
+        }
+        return removed;
     }
 
     @Override
@@ -354,24 +513,14 @@ public class TokenRedisService implements ITokenRedisService {
         if (userId == null)
             return;
         String key = TOKEN_VERSION_PREFIX + userId;
-        stringRedisTemplate.opsForValue().increment(key);
+        Long version = stringRedisTemplate.opsForValue().increment(key);
+        if (version != null) {
+            tokenStateCache.publishTokenVersion(userId, version);
+        }
     }
 
-    /**
-     * Tự dọn các token đã hết hạn khỏi ZSET (score &lt; now).
-     * Giải quyết lệch pha TTL: Token Key mất trước khi có thể xóa khỏi Set → rò rỉ
-     * bộ nhớ.
-     */
-    private void cleanupExpiredTokensFromUserZSet(String userKey) {
-        if (userKey == null || userKey.isBlank()) {
-            return;
-        }
-        long now = System.currentTimeMillis();
-        stringRedisTemplate.opsForZSet().removeRangeByScore(userKey, 0, now);
-        Long size = stringRedisTemplate.opsForZSet().zCard(userKey);
-        if (size != null && size == 0) {
-            stringRedisTemplate.delete(userKey);
-        }
+    private static boolean hasIp(String ip) {
+        return ip != null && !ip.isBlank();
     }
 
     private String normalize(String email) {
@@ -7,7 +7,7 @@ import com.newwave.student_management.domains.enrollment.dto.request.AdminUpdate
 import com.newwave.student_management.domains.enrollment.dto.response.AdminClassDetailResponse;
 import com.newwave.student_management.domains.enrollment.dto.response.AdminClassListItemResponse;
 import com.newwave.student_management.domains.enrollment.dto.response.AdminClassListResponse;
-import com.newwave.student_management.domains.enrollment.dto.response.AdminEligibleStudentResponse;
+import com.newwave.student_management.domains.enrollment.dto.response.AdminEligibleStudentListResponse;
 import com.newwave.student_management.domains.enrollment.entity.ScheduledClassStatus;
 import com.newwave.student_management.domains.enrollment.service.IAdminClassService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -20,7 +20,6 @@ import org.springframework.data.web.PageableDefault;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
 import java.util.UUID;
 
 @RestController
@@ -73,11 +72,14 @@ public class AdminClassController {
         return ApiResponse.success(null);
     }
 
-    @Operation(summary = "Danh sách Sinh viên đủ điều kiện đăng ký", description = "Lấy danh sách sinh viên cùng phòng ban và không trùng lịch.")
+    @Operation(summary = "Danh sách Sinh viên đủ điều kiện đăng ký", description = "Lấy danh sách sinh viên cùng phòng ban và không trùng lịch, phân trang và search theo tên/mã SV/email.")
     @GetMapping("/{classId}/eligible-students")
     @PreAuthorize("hasRole('ADMIN')")
-    public ApiResponse<List<AdminEligibleStudentResponse>> getEligibleStudents(@PathVariable Integer classId) {
-        return ApiResponse.success(adminClassService.getEligibleStudents(classId));
+    public ApiResponse<AdminEligibleStudentListResponse> getEligibleStudents(
+            @PathVariable Integer classId,
+            @RequestParam(required = false) String search,
+            @PageableDefault(size = 20) Pageable pageable) {
+        return ApiResponse.success(adminClassService.getEligibleStudents(classId, search, pageable));
     }
 
     @Operation(summary = "UC-14.7 - Thêm Sinh viên vào Lớp (Admin)", description = "Thêm một sinh viên vào lớp học với kiểm tra lịch học, sức chứa và trùng lặp.")
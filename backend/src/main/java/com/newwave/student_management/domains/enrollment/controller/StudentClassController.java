@@ -1,6 +1,7 @@
 package com.newwave.student_management.domains.enrollment.controller;
 
 import com.newwave.student_management.common.dto.ApiResponse;
+import com.newwave.student_management.domains.enrollment.dto.response.EnrollmentReservationResponse;
 import com.newwave.student_management.domains.enrollment.dto.response.StudentAvailableClassResponse;
 import com.newwave.student_management.domains.enrollment.dto.response.StudentEnrolledClassResponse;
 import com.newwave.student_management.domains.enrollment.service.IStudentClassService;
@@ -81,13 +82,22 @@ public class StudentClassController {
     }
 
     @PostMapping("/{classId}/enroll")
-    @Operation(summary = "Đăng ký học phần", description = "Đăng ký sinh viên vào một lớp học phần. Kiểm tra trùng lịch, sĩ số và đăng ký môn học.")
-    public ApiResponse<Void> enroll(
+    @Operation(summary = "Đăng ký học phần", description = "Đăng ký sinh viên vào một lớp học phần. Kiểm tra trùng lịch, sĩ số và đăng ký môn học. "
+            + "Khi bật async commit, trả về status PENDING kèm reservationId để poll.")
+    public ApiResponse<EnrollmentReservationResponse> enroll(
             @PathVariable Integer classId,
             @AuthenticationPrincipal Jwt jwt) {
         UUID userId = UUID.fromString(jwt.getClaim("userId"));
-        studentClassService.enroll(userId, classId);
-        return ApiResponse.success(null);
+        return ApiResponse.success(studentClassService.enroll(userId, classId));
+    }
+
+    @GetMapping("/reservations/{reservationId}")
+    @Operation(summary = "Trạng thái suất đăng ký", description = "Poll trạng thái ghi DB của một suất đăng ký async (PENDING, ENROLLED, FAILED).")
+    public ApiResponse<EnrollmentReservationResponse> getReservation(
+            @PathVariable String reservationId,
+            @AuthenticationPrincipal Jwt jwt) {
+        UUID userId = UUID.fromString(jwt.getClaim("userId"));
+        return ApiResponse.success(studentClassService.getReservation(userId, reservationId));
     }
 
     @DeleteMapping("/{classId}/enroll")
@@ -0,0 +1,17 @@
+package com.newwave.student_management.domains.enrollment.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EnrollmentReservationResponse {
+    private String reservationId; // null khi đăng ký được ghi đồng bộ
+    private Integer classId;
+    private String status; // ENROLLED, WAITLISTED, PENDING, FAILED
+    private String message;
+}
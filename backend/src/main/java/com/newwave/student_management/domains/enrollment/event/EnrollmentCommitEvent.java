@@ -0,0 +1,26 @@
+package com.newwave.student_management.domains.enrollment.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Một suất đăng ký đã được admission engine chấp nhận trên Redis, chờ consumer
+ * ghi xuống bảng enrollments (async commit mode).
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EnrollmentCommitEvent {
+    private String reservationId;
+    private UUID studentId;
+    private Integer classId;
+    private Integer semesterId;
+    private Integer courseId;
+    private LocalDate enrollmentDate;
+}
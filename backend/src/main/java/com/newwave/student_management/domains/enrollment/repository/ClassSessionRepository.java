@@ -7,6 +7,8 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalTime;
+import java.util.Collection;
+import java.util.List;
 
 @Repository
 public interface ClassSessionRepository extends JpaRepository<ClassSession, Long> {
@@ -30,4 +32,14 @@ public interface ClassSessionRepository extends JpaRepository<ClassSession, Long
             @Param("endTime") LocalTime endTime,
             @Param("semesterId") Integer semesterId,
             @Param("excludeClassId") Integer excludeClassId);
+
+    /**
+     * Các buổi học của một nhóm lớp, cùng định dạng với
+     * EnrollmentRepository.findEnrolledSessionSlots: Object[]{dayOfWeek,
+     * startTime, endTime}.
+     */
+    @Query("SELECT cs.dayOfWeek, cs.startTime, cs.endTime FROM ClassSession cs " +
+            "WHERE cs.scheduledClass.classId IN :classIds " +
+            "AND cs.scheduledClass.deletedAt IS NULL")
+    List<Object[]> findSessionSlotsByClassIds(@Param("classIds") Collection<Integer> classIds);
 }
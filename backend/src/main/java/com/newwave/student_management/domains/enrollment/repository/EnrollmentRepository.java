@@ -5,7 +5,6 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
-import java.time.LocalTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -29,13 +28,12 @@ public interface EnrollmentRepository extends JpaRepository<Enrollment, Integer>
         @Query("SELECT e FROM Enrollment e WHERE e.scheduledClass.classId = :classId AND e.student.studentId = :studentId AND e.status = 'WAITLISTED'")
         Optional<Enrollment> findByScheduledClassClassIdAndStudentStudentIdWaitlisted(Integer classId, UUID studentId);
 
-        @Query("SELECT COUNT(e) FROM Enrollment e JOIN e.scheduledClass.sessions sess WHERE e.student.studentId = :studentId AND "
-                        +
-                        "e.scheduledClass.semester.semesterId = :semesterId AND sess.dayOfWeek = :dayOfWeek AND " +
-                        "((sess.startTime < :endTime AND sess.endTime > :startTime)) AND " +
-                        "e.scheduledClass.deletedAt IS NULL AND e.status = 'ENROLLED'")
-        long countStudentConflicts(UUID studentId, Integer semesterId, Integer dayOfWeek, LocalTime startTime,
-                        LocalTime endTime);
+        /**
+         * Dòng đã hủy (DROPPED hoặc soft-delete) của SV ở lớp — unique constraint
+         * uk_enrollments_student_class buộc đăng ký lại phải dùng lại dòng này.
+         */
+        @Query("SELECT e FROM Enrollment e WHERE e.scheduledClass.classId = :classId AND e.student.studentId = :studentId AND (e.status = 'DROPPED' OR e.deletedAt IS NOT NULL)")
+        Optional<Enrollment> findByScheduledClassClassIdAndStudentStudentIdDropped(Integer classId, UUID studentId);
 
         @Query("SELECT CASE WHEN COUNT(e) > 0 THEN true ELSE false END FROM Enrollment e WHERE e.student.studentId = :studentId AND e.scheduledClass.course.courseId = :courseId AND e.scheduledClass.semester.semesterId = :semesterId AND e.scheduledClass.deletedAt IS NULL AND e.status = 'ENROLLED'")
         boolean existsByStudentStudentIdAndScheduledClassCourseCourseIdAndScheduledClassSemesterSemesterIdAndScheduledClassDeletedAtIsNull(
@@ -54,4 +52,44 @@ public interface EnrollmentRepository extends JpaRepository<Enrollment, Integer>
                         "AND e.scheduledClass.semester.semesterId = :semesterId " +
                         "AND e.scheduledClass.deletedAt IS NULL AND e.status = 'ENROLLED'")
         java.util.Set<Integer> findClassIdsByStudentIdAndSemesterId(UUID studentId, Integer semesterId);
+
+        /**
+         * Membership (ENROLLED + WAITLISTED) của toàn bộ SV trong 1 semester.
+         * Dùng cho ClassCacheService nạp membership set lên Redis bằng 1 query.
+         * Trả về Object[]{studentId (UUID), classId (Integer), courseId (Integer),
+         * status (EnrollmentRecordStatus), createdAt (LocalDateTime)}.
+         */
+        @Query("SELECT e.student.studentId, e.scheduledClass.classId, e.scheduledClass.course.courseId, e.status, e.createdAt "
+                        + "FROM Enrollment e "
+                        + "WHERE e.scheduledClass.semester.semesterId = :semesterId "
+                        + "AND e.scheduledClass.deletedAt IS NULL AND e.status <> 'DROPPED'")
+        List<Object[]> findActiveMembershipBySemesterId(Integer semesterId);
+
+        /**
+         * Trong danh sách SV ứng viên, lấy những SV đã ENROLLED một lớp khác của cùng
+         * semester có buổi học trùng giờ với lớp {@code classId}. Thay cho việc kiểm
+         * tra trùng lịch từng SV × từng buổi khi đôn hàng đợi theo batch.
+         */
+        @Query("SELECT DISTINCT e.student.studentId FROM Enrollment e JOIN e.scheduledClass.sessions sess, "
+                        + "ClassSession target "
+                        + "WHERE target.scheduledClass.classId = :classId "
+                        + "AND e.student.studentId IN :studentIds "
+                        + "AND e.scheduledClass.semester.semesterId = target.scheduledClass.semester.semesterId "
+                        + "AND e.scheduledClass.classId <> :classId "
+                        + "AND e.scheduledClass.deletedAt IS NULL AND e.status = 'ENROLLED' "
+                        + "AND sess.dayOfWeek = target.dayOfWeek "
+                        + "AND sess.startTime < target.endTime AND sess.endTime > target.startTime")
+        List<UUID> findStudentsWithConflicts(Integer classId, java.util.Collection<UUID> studentIds);
+
+        /**
+         * Các buổi học của mọi lớp SV đang ENROLLED trong 1 semester — 1 query để dựng
+         * WeeklyTimetable thay cho 1 query đếm trùng lịch cho mỗi buổi.
+         * Trả về Object[]{dayOfWeek (Integer), startTime, endTime (LocalTime)}.
+         */
+        @Query("SELECT sess.dayOfWeek, sess.startTime, sess.endTime FROM Enrollment e "
+                        + "JOIN e.scheduledClass.sessions sess "
+                        + "WHERE e.student.studentId = :studentId "
+                        + "AND e.scheduledClass.semester.semesterId = :semesterId "
+                        + "AND e.scheduledClass.deletedAt IS NULL AND e.status = 'ENROLLED'")
+        List<Object[]> findEnrolledSessionSlots(UUID studentId, Integer semesterId);
 }
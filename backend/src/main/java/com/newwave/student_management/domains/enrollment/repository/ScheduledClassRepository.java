@@ -57,14 +57,46 @@ public interface ScheduledClassRepository
                         Integer semesterId,
                         com.newwave.student_management.domains.enrollment.entity.ScheduledClassStatus status);
 
+        /**
+         * Giống {@link #findBySemesterSemesterIdAndStatusAndDeletedAtIsNull} nhưng
+         * fetch-join course, department, teacher, sessions và room trong 1 query —
+         * dùng cho warmCache để không lazy-load từng lớp (N+1).
+         */
+        @Query("SELECT DISTINCT sc FROM ScheduledClass sc "
+                        + "JOIN FETCH sc.course c "
+                        + "LEFT JOIN FETCH c.department "
+                        + "LEFT JOIN FETCH sc.teacher "
+                        + "LEFT JOIN FETCH sc.sessions sess "
+                        + "LEFT JOIN FETCH sess.room "
+                        + "WHERE sc.semester.semesterId = :semesterId "
+                        + "AND sc.status = :status "
+                        + "AND sc.deletedAt IS NULL")
+        List<ScheduledClass> findForCacheWarmup(
+                        @org.springframework.data.repository.query.Param("semesterId") Integer semesterId,
+                        @org.springframework.data.repository.query.Param("status") com.newwave.student_management.domains.enrollment.entity.ScheduledClassStatus status);
+
         /**
          * Batch count enroll cho danh sách classId — tránh N+1 query trong fallback
-         * path.
+         * path. Chỉ đếm ENROLLED (cùng nghĩa với
+         * EnrollmentRepository.countByScheduledClassClassId).
          * Trả về mảng Object[]{classId (Integer), count (Long)} cho mỗi lớp.
          */
         @Query("SELECT e.scheduledClass.classId, COUNT(e) FROM Enrollment e "
                         + "WHERE e.scheduledClass.classId IN :classIds "
+                        + "AND e.status = 'ENROLLED' AND e.deletedAt IS NULL "
                         + "GROUP BY e.scheduledClass.classId")
         List<Object[]> countEnrollmentsByClassIds(
                         @org.springframework.data.repository.query.Param("classIds") List<Integer> classIds);
+
+        /**
+         * Đếm ENROLLED theo lớp cho cả semester trong 1 query — dùng cho job đối soát
+         * currentSlot trên Redis. Lớp không có enrollment nào không xuất hiện (= 0).
+         * Trả về mảng Object[]{classId (Integer), count (Long)} cho mỗi lớp.
+         */
+        @Query("SELECT e.scheduledClass.classId, COUNT(e) FROM Enrollment e "
+                        + "WHERE e.scheduledClass.semester.semesterId = :semesterId "
+                        + "AND e.status = 'ENROLLED' AND e.deletedAt IS NULL "
+                        + "GROUP BY e.scheduledClass.classId")
+        List<Object[]> countEnrollmentsBySemester(
+                        @org.springframework.data.repository.query.Param("semesterId") Integer semesterId);
 }
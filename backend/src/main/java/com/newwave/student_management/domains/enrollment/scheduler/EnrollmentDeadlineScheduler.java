@@ -1,6 +1,6 @@
 package com.newwave.student_management.domains.enrollment.scheduler;
 
-import com.newwave.student_management.domains.enrollment.service.IAdminClassService;
+import com.newwave.student_management.domains.enrollment.service.impl.ClassConsolidationService;
 import com.newwave.student_management.domains.profile.entity.EnrollmentStatus;
 import com.newwave.student_management.domains.profile.entity.Semester;
 import com.newwave.student_management.domains.profile.repository.SemesterRepository;
@@ -8,7 +8,6 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -19,11 +18,11 @@ import java.util.List;
 public class EnrollmentDeadlineScheduler {
 
     private final SemesterRepository semesterRepository;
-    private final IAdminClassService adminClassService;
+    private final ClassConsolidationService classConsolidationService;
 
-    // Checks every minute
+    // Checks every minute. Không bọc @Transactional: đóng semester commit ngay,
+    // dồn lớp tự commit theo từng chunk.
     @Scheduled(fixedRate = 60000)
-    @Transactional
     public void processEnrollmentDeadlines() {
         log.debug("Running enrollment deadline check...");
         List<Semester> publishedSemesters = semesterRepository.findByEnrollmentStatus(EnrollmentStatus.PUBLISHED);
@@ -39,13 +38,31 @@ public class EnrollmentDeadlineScheduler {
                     log.info(
                             "Enrollment deadline passed for semester: {}. Closing enrollment and consolidating classes.",
                             semester.getDisplayName());
+                    classConsolidationService.markPending(semester.getSemesterId());
                     semester.setEnrollmentStatus(EnrollmentStatus.CLOSED);
                     semesterRepository.save(semester);
 
                     // Call the consolidation logic to cancel under-enrolled classes
-                    adminClassService.lockClassesAndConsolidate(semester.getSemesterId());
+                    consolidate(semester);
                 }
             }
         }
+
+        // Chạy tiếp lần dồn lớp bị ngắt giữa chừng (restart, lỗi DB...)
+        for (Semester semester : semesterRepository.findByEnrollmentStatus(EnrollmentStatus.CLOSED)) {
+            if (classConsolidationService.isPending(semester.getSemesterId())) {
+                log.info("Resuming class consolidation for semester: {}", semester.getDisplayName());
+                consolidate(semester);
+            }
+        }
+    }
+
+    private void consolidate(Semester semester) {
+        try {
+            classConsolidationService.consolidate(semester.getSemesterId());
+        } catch (Exception ex) {
+            log.error("Class consolidation failed for semester {}; will resume on next run",
+                    semester.getSemesterId(), ex);
+        }
     }
 }
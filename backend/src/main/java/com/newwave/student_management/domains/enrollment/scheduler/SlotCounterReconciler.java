@@ -0,0 +1,141 @@
+package com.newwave.student_management.domains.enrollment.scheduler;
+
+import com.newwave.student_management.domains.enrollment.repository.ScheduledClassRepository;
+import com.newwave.student_management.domains.enrollment.service.impl.ClassCacheService;
+import com.newwave.student_management.domains.enrollment.service.impl.EnrollmentWriteBehindService;
+import com.newwave.student_management.domains.profile.entity.EnrollmentStatus;
+import com.newwave.student_management.domains.profile.entity.Semester;
+import com.newwave.student_management.domains.profile.repository.SemesterRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Đối soát currentSlot trong hash {@code class:{classId}} với số ENROLLED thật
+ * trong PostgreSQL (crash giữa reserve Redis và insert DB, Admin thêm/xóa SV
+ * trực tiếp...).
+ *
+ * <p>
+ * Mỗi vòng, với từng semester PUBLISHED: đọc currentSlot (pipeline) → 1 query
+ * COUNT group theo lớp → đọc lại currentSlot. Lớp có counter đổi giữa hai lần
+ * đọc đang có request xử lý nên bỏ qua. Reservation write-behind chưa ghi DB
+ * vẫn giữ slot trên Redis nên được cộng vào số đếm DB (đọc trước query COUNT:
+ * reservation commit xen giữa bị đếm hai lần, lệch về phía an toàn thay vì kéo
+ * counter xuống). Một lệch chỉ được sửa khi cùng cặp (redis, db) xuất hiện ở
+ * hai vòng liên tiếp. Việc ghi là compare-and-set trên Redis nên
+ * reserve/release xen giữa không bị mất và nhiều replica chạy song song vẫn an
+ * toàn.
+ * </p>
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class SlotCounterReconciler {
+
+    private static final String METRIC_NAME = "enrollment.slot_reconciliation";
+
+    private final SemesterRepository semesterRepository;
+    private final ScheduledClassRepository scheduledClassRepository;
+    private final ClassCacheService classCacheService;
+    private final EnrollmentWriteBehindService writeBehindService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${enrollment.reconciliation.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * Lệch quan sát được ở vòng trước, chờ xác nhận. Thay mới mỗi vòng nên lớp
+     * đã hết lệch hoặc semester đã đóng tự rơi khỏi map.
+     */
+    private volatile Map<Integer, Observation> pending = Map.of();
+
+    private record Observation(long redis, long db) {
+    }
+
+    @Scheduled(fixedDelayString = "${enrollment.reconciliation.interval-ms:60000}",
+            initialDelayString = "${enrollment.reconciliation.interval-ms:60000}")
+    public void reconcile() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        Map<Integer, Observation> next = new HashMap<>();
+        List<Semester> publishedSemesters = semesterRepository.findByEnrollmentStatus(EnrollmentStatus.PUBLISHED);
+        for (Semester semester : publishedSemesters) {
+            try {
+                reconcileSemester(semester.getSemesterId(), next);
+            } catch (Exception ex) {
+                log.warn("Slot reconciliation failed for semester {}: {}", semester.getSemesterId(), ex.getMessage());
+            }
+        }
+        pending = next;
+        meterRegistry.timer(METRIC_NAME + ".duration").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void reconcileSemester(Integer semesterId, Map<Integer, Observation> next) {
+        Map<Integer, Long> before = classCacheService.readSlotCounters(semesterId);
+        if (before.isEmpty()) {
+            return;
+        }
+
+        Map<Integer, Long> enrolled = new HashMap<>(writeBehindService.countPending(before.keySet()));
+        for (Object[] row : scheduledClassRepository.countEnrollmentsBySemester(semesterId)) {
+            enrolled.merge((Integer) row[0], (Long) row[1], Long::sum);
+        }
+
+        Map<Integer, Long> after = classCacheService.readSlotCounters(before.keySet());
+        Map<Integer, Observation> previous = pending;
+
+        for (Map.Entry<Integer, Long> entry : before.entrySet()) {
+            Integer classId = entry.getKey();
+            long redis = entry.getValue();
+            Long again = after.get(classId);
+            if (again == null || again != redis) {
+                meterRegistry.counter(METRIC_NAME, "result", "busy").increment();
+                continue;
+            }
+
+            long db = enrolled.getOrDefault(classId, 0L);
+            if (redis == db) {
+                continue;
+            }
+
+            Observation observation = new Observation(redis, db);
+            if (!observation.equals(previous.get(classId))) {
+                next.put(classId, observation);
+                continue;
+            }
+
+            recordDrift(redis, db);
+            long result = classCacheService.compareAndSetSlot(classId, redis, db);
+            if (result == 1) {
+                log.warn("Repaired slot counter for class {} in semester {}: redis={} db={}",
+                        classId, semesterId, redis, db);
+                meterRegistry.counter(METRIC_NAME, "result", "repaired").increment();
+            } else {
+                meterRegistry.counter(METRIC_NAME, "result", result == 0 ? "changed" : "missing").increment();
+            }
+        }
+    }
+
+    /**
+     * redis &lt; db: Redis còn cho giữ chỗ dù lớp đã đủ → nguy cơ oversell.
+     * redis &gt; db: slot bị giữ mà không có enrollment → SV bị từ chối oan.
+     */
+    private void recordDrift(long redis, long db) {
+        DistributionSummary.builder(METRIC_NAME + ".drift")
+                .description("Absolute currentSlot drift of repaired classes")
+                .tag("direction", redis < db ? "oversell_risk" : "phantom_reservation")
+                .register(meterRegistry)
+                .record(Math.abs(redis - db));
+    }
+}
@@ -0,0 +1,28 @@
+package com.newwave.student_management.domains.enrollment.service;
+
+import com.newwave.student_management.domains.enrollment.event.EnrollmentCommitEvent;
+import com.newwave.student_management.domains.enrollment.service.impl.EnrollmentWriteBehindService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class EnrollmentCommitConsumer {
+
+    private final EnrollmentWriteBehindService writeBehindService;
+
+    /**
+     * Batch listener: mỗi lần poll tối đa {@code enrollment.async-commit.batch-size}
+     * reservation, ghi xuống DB bằng một câu INSERT nhiều dòng.
+     */
+    @KafkaListener(topics = EnrollmentCommitProducer.TOPIC, groupId = "${spring.application.name}-group", batch = "true", autoStartup = "${enrollment.async-commit.enabled:false}", properties = "max.poll.records=${enrollment.async-commit.batch-size:500}")
+    public void listenEnrollmentCommits(List<EnrollmentCommitEvent> events) {
+        log.debug("Received {} enrollment commit events from Kafka", events.size());
+        writeBehindService.commitBatch(events);
+    }
+}
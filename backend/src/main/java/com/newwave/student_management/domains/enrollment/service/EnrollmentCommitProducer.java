@@ -0,0 +1,26 @@
+package com.newwave.student_management.domains.enrollment.service;
+
+import com.newwave.student_management.domains.enrollment.event.EnrollmentCommitEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.CompletableFuture;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EnrollmentCommitProducer {
+
+    public static final String TOPIC = "enrollment-commit-topic";
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+
+    public CompletableFuture<SendResult<String, Object>> sendCommitEvent(EnrollmentCommitEvent event) {
+        log.debug("Sending enrollment commit event to Kafka: {}", event);
+        // Key theo classId → các reservation của cùng một lớp vào cùng partition
+        return kafkaTemplate.send(TOPIC, String.valueOf(event.getClassId()), event);
+    }
+}
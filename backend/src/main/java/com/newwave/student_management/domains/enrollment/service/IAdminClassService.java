@@ -6,11 +6,10 @@ import com.newwave.student_management.domains.enrollment.dto.request.AdminUpdate
 import com.newwave.student_management.domains.enrollment.dto.response.AdminClassDetailResponse;
 import com.newwave.student_management.domains.enrollment.dto.response.AdminClassListItemResponse;
 import com.newwave.student_management.domains.enrollment.dto.response.AdminClassListResponse;
-import com.newwave.student_management.domains.enrollment.dto.response.AdminEligibleStudentResponse;
+import com.newwave.student_management.domains.enrollment.dto.response.AdminEligibleStudentListResponse;
 import com.newwave.student_management.domains.enrollment.entity.ScheduledClassStatus;
 import org.springframework.data.domain.Pageable;
 
-import java.util.List;
 import java.util.UUID;
 
 public interface IAdminClassService {
@@ -32,7 +31,7 @@ public interface IAdminClassService {
 
     void unenrollStudent(Integer classId, UUID studentId);
 
-    List<AdminEligibleStudentResponse> getEligibleStudents(Integer classId);
+    AdminEligibleStudentListResponse getEligibleStudents(Integer classId, String search, Pageable pageable);
 
     void lockClassesAndConsolidate(Integer semesterId);
 }
@@ -1,5 +1,6 @@
 package com.newwave.student_management.domains.enrollment.service;
 
+import com.newwave.student_management.domains.enrollment.dto.response.EnrollmentReservationResponse;
 import com.newwave.student_management.domains.enrollment.dto.response.StudentAvailableClassResponse;
 import com.newwave.student_management.domains.enrollment.dto.response.StudentEnrolledClassResponse;
 import java.util.List;
@@ -10,7 +11,9 @@ public interface IStudentClassService {
 
     List<StudentEnrolledClassResponse> getEnrolledClasses(UUID userId);
 
-    void enroll(UUID userId, Integer classId);
+    EnrollmentReservationResponse enroll(UUID userId, Integer classId);
+
+    EnrollmentReservationResponse getReservation(UUID userId, String reservationId);
 
     void unenroll(UUID userId, Integer classId);
 
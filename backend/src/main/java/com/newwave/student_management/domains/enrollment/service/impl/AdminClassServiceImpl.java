@@ -1,6 +1,7 @@
 package com.newwave.student_management.domains.enrollment.service.impl;
 
 import com.newwave.student_management.common.util.PaginationUtil;
+import com.newwave.student_management.common.util.TransactionHooks;
 import com.newwave.student_management.common.exception.AppException;
 import com.newwave.student_management.common.exception.ErrorCode;
 import com.newwave.student_management.domains.curriculum.entity.Course;
@@ -12,8 +13,10 @@ import com.newwave.student_management.domains.enrollment.dto.response.AdminClass
 import com.newwave.student_management.domains.enrollment.dto.response.AdminClassListItemResponse;
 import com.newwave.student_management.domains.enrollment.dto.response.AdminClassListResponse;
 import com.newwave.student_management.domains.enrollment.dto.response.AdminClassStudentResponse;
+import com.newwave.student_management.domains.enrollment.dto.response.AdminEligibleStudentListResponse;
 import com.newwave.student_management.domains.enrollment.dto.response.AdminEligibleStudentResponse;
 import com.newwave.student_management.domains.enrollment.entity.Enrollment;
+import com.newwave.student_management.domains.enrollment.entity.EnrollmentRecordStatus;
 import com.newwave.student_management.domains.enrollment.entity.ScheduledClass;
 import com.newwave.student_management.domains.enrollment.entity.ScheduledClassStatus;
 import com.newwave.student_management.domains.profile.entity.Student;
@@ -28,7 +31,6 @@ import com.newwave.student_management.domains.enrollment.entity.ClassSession;
 import com.newwave.student_management.domains.enrollment.repository.ClassSessionRepository;
 import com.newwave.student_management.domains.facility.entity.Room;
 import com.newwave.student_management.domains.facility.repository.RoomRepository;
-import com.newwave.student_management.domains.notification.service.NotificationInternalService;
 import com.newwave.student_management.domains.profile.repository.SemesterRepository;
 import com.newwave.student_management.domains.profile.repository.StudentRepository;
 import com.newwave.student_management.domains.profile.repository.TeacherRepository;
@@ -37,6 +39,7 @@ import jakarta.persistence.criteria.JoinType;
 import jakarta.persistence.criteria.Predicate;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
@@ -62,7 +65,9 @@ public class AdminClassServiceImpl implements IAdminClassService {
     private final SemesterRepository semesterRepository;
     private final RoomRepository roomRepository;
     private final ClassSessionRepository classSessionRepository;
-    private final NotificationInternalService notificationInternalService;
+    private final ClassCacheService classCacheService;
+    private final WaitlistPromotionService waitlistPromotionService;
+    private final ClassConsolidationService classConsolidationService;
 
     @Override
     public AdminClassListResponse getAdminClasses(
@@ -209,6 +214,7 @@ public class AdminClassServiceImpl implements IAdminClassService {
         scheduledClass.setSessions(classSessions);
 
         scheduledClass = scheduledClassRepository.save(scheduledClass);
+        classCacheService.syncClass(scheduledClass);
 
         return mapToListItemResponse(scheduledClass);
     }
@@ -246,6 +252,7 @@ public class AdminClassServiceImpl implements IAdminClassService {
             throw new AppException(ErrorCode.INVALID_MAX_STUDENTS);
         }
 
+        int previousMaxStudents = scheduledClass.getMaxStudents();
         scheduledClass.setTeacher(teacher);
         scheduledClass.setMaxStudents(
                 request.getMaxStudents() != null ? request.getMaxStudents() : scheduledClass.getMaxStudents());
@@ -304,6 +311,12 @@ public class AdminClassServiceImpl implements IAdminClassService {
         }
 
         scheduledClass = scheduledClassRepository.save(scheduledClass);
+        classCacheService.syncClass(scheduledClass);
+        // Tăng sĩ số → đôn hàng đợi theo batch (sau khi maxSlot mới lên Redis)
+        if (scheduledClass.getMaxStudents() > previousMaxStudents
+                && scheduledClass.getStatus() == ScheduledClassStatus.OPEN) {
+            waitlistPromotionService.fillOpenSlotsAfterCommit(scheduledClass);
+        }
         return mapToListItemResponse(scheduledClass);
     }
 
@@ -377,6 +390,7 @@ public class AdminClassServiceImpl implements IAdminClassService {
 
         scheduledClass.setDeletedAt(java.time.LocalDateTime.now());
         scheduledClassRepository.save(scheduledClass);
+        classCacheService.syncClass(scheduledClass);
     }
 
     @Override
@@ -409,18 +423,11 @@ public class AdminClassServiceImpl implements IAdminClassService {
         }
 
         // 3. Check Student Schedule Conflict
-        if (scheduledClass.getSessions() != null) {
-            for (ClassSession session : scheduledClass.getSessions()) {
-                long conflicts = enrollmentRepository.countStudentConflicts(
-                        student.getStudentId(),
-                        scheduledClass.getSemester().getSemesterId(),
-                        session.getDayOfWeek(),
-                        session.getStartTime(),
-                        session.getEndTime());
-                if (conflicts > 0) {
-                    throw new AppException(ErrorCode.STUDENT_SCHEDULE_CONFLICT);
-                }
-            }
+        WeeklyTimetable target = WeeklyTimetable.of(scheduledClass.getSessions());
+        if (!target.isEmpty() && target.overlaps(WeeklyTimetable.fromRows(
+                enrollmentRepository.findEnrolledSessionSlots(student.getStudentId(),
+                        scheduledClass.getSemester().getSemesterId())))) {
+            throw new AppException(ErrorCode.STUDENT_SCHEDULE_CONFLICT);
         }
 
         // 4. Create Enrollment
@@ -430,22 +437,65 @@ public class AdminClassServiceImpl implements IAdminClassService {
         enrollment.setEnrollmentDate(java.time.LocalDate.now());
 
         enrollmentRepository.save(enrollment);
+
+        // 5. Membership + slot trên Redis — admission engine tin các set này khi
+        // members:ready tồn tại, thiếu thì SV đăng ký được lớp khác cùng môn
+        Integer semesterId = scheduledClass.getSemester().getSemesterId();
+        Integer courseId = scheduledClass.getCourse().getCourseId();
+        UUID studentId = student.getStudentId();
+        TransactionHooks.afterCommit(() -> {
+            try {
+                classCacheService.addEnrollment(semesterId, scheduledClass.getClassId(), courseId, studentId);
+            } catch (Exception ex) {
+                log.warn("Failed to add Redis membership for student {} in class {}: {}", studentId,
+                        scheduledClass.getClassId(), ex.getMessage());
+            }
+        });
     }
 
     @Override
     @Transactional
     public void unenrollStudent(Integer classId, UUID studentId) {
+        // SV đang ENROLLED hoặc đang trong hàng đợi (WAITLISTED) đều gỡ được
         Enrollment enrollment = enrollmentRepository
                 .findByScheduledClassClassIdAndStudentStudentId(classId, studentId)
+                .or(() -> enrollmentRepository
+                        .findByScheduledClassClassIdAndStudentStudentIdWaitlisted(classId, studentId))
                 .orElseThrow(() -> new AppException(ErrorCode.ENROLLMENT_NOT_FOUND));
 
-        enrollment.setStatus(com.newwave.student_management.domains.enrollment.entity.EnrollmentRecordStatus.DROPPED);
+        EnrollmentRecordStatus previousStatus = enrollment.getStatus();
+        enrollment.setStatus(EnrollmentRecordStatus.DROPPED);
         enrollmentRepository.save(enrollment);
+
+        // Gỡ membership trên Redis như luồng SV tự hủy; slot trống chuyển cho hàng đợi
+        ScheduledClass scheduledClass = enrollment.getScheduledClass();
+        Integer semesterId = scheduledClass.getSemester().getSemesterId();
+        Integer courseId = scheduledClass.getCourse().getCourseId();
+        if (previousStatus == EnrollmentRecordStatus.ENROLLED) {
+            TransactionHooks.afterCommit(() -> {
+                try {
+                    classCacheService.removeEnrollment(semesterId, classId, courseId, studentId, false);
+                } catch (Exception ex) {
+                    log.warn("Failed to remove Redis membership for student {} in class {}: {}", studentId,
+                            classId, ex.getMessage());
+                }
+            });
+            waitlistPromotionService.fillReleasedSlotsAfterCommit(scheduledClass, 1);
+        } else if (previousStatus == EnrollmentRecordStatus.WAITLISTED) {
+            TransactionHooks.afterCommit(() -> {
+                try {
+                    classCacheService.revokeWaitlist(semesterId, classId, studentId);
+                } catch (Exception ex) {
+                    log.warn("Failed to remove student {} from Redis waitlist of class {}: {}", studentId,
+                            classId, ex.getMessage());
+                }
+            });
+        }
     }
 
     @Override
     @Transactional(readOnly = true)
-    public List<AdminEligibleStudentResponse> getEligibleStudents(Integer classId) {
+    public AdminEligibleStudentListResponse getEligibleStudents(Integer classId, String search, Pageable pageable) {
         ScheduledClass scheduledClass = scheduledClassRepository.findByClassIdAndDeletedAtIsNull(classId)
                 .orElseThrow(() -> new AppException(ErrorCode.CLASS_NOT_FOUND));
 
@@ -455,99 +505,47 @@ public class AdminClassServiceImpl implements IAdminClassService {
                 : null;
 
         if (departmentId == null) {
-            return new ArrayList<>();
+            return AdminEligibleStudentListResponse.builder()
+                    .content(new ArrayList<>())
+                    .page(pageable.getPageNumber())
+                    .size(pageable.getPageSize())
+                    .build();
         }
 
-        // Find students in the same department
-        List<Student> departmentStudents = studentRepository
-                .findByDepartment_DepartmentIdAndDeletedAtIsNull(departmentId);
-
-        return departmentStudents.stream()
-                .filter(student -> {
-                    // Check if already enrolled in this SPECIFIC class
-                    if (enrollmentRepository.existsByScheduledClassClassIdAndStudentStudentId(classId,
-                            student.getStudentId())) {
-                        return false;
-                    }
-                    // Check schedule conflicts in the SAME semester
-                    if (scheduledClass.getSessions() != null) {
-                        for (ClassSession session : scheduledClass.getSessions()) {
-                            long conflicts = enrollmentRepository.countStudentConflicts(
-                                    student.getStudentId(),
-                                    scheduledClass.getSemester().getSemesterId(),
-                                    session.getDayOfWeek(),
-                                    session.getStartTime(),
-                                    session.getEndTime());
-                            if (conflicts > 0) {
-                                return false;
-                            }
-                        }
-                    }
-                    return true;
-                })
-                .map(student -> AdminEligibleStudentResponse.builder()
-                        .userId(student.getUser().getUserId().toString())
-                        .studentCode(student.getStudentCode())
-                        .fullName((student.getFirstName() + " " + student.getLastName()).trim())
-                        .email(student.getEmail())
+        // Cùng khoa, chưa có dòng enrollment nào ở lớp này, không trùng lịch trong
+        // cùng semester — lọc hết trong 1 query (+ 1 count), số query không phụ thuộc
+        // số SV của khoa
+        String normalizedSearch = PaginationUtil.normalizeSearch(search);
+        String keyword = normalizedSearch != null ? normalizedSearch : "%";
+        Page<Object[]> pageResult = studentRepository.findEligibleForClass(classId, departmentId, keyword,
+                PageRequest.of(pageable.getPageNumber(), pageable.getPageSize()));
+
+        List<AdminEligibleStudentResponse> content = pageResult.getContent().stream()
+                .map(row -> AdminEligibleStudentResponse.builder()
+                        .userId(row[0].toString())
+                        .studentCode((String) row[1])
+                        .fullName((row[2] + " " + row[3]).trim())
+                        .email((String) row[4])
                         .build())
-                .collect(Collectors.toList());
+                .toList();
+
+        PaginationUtil.PaginationMetadata metadata = PaginationUtil.extractMetadata(pageResult);
+        return AdminEligibleStudentListResponse.builder()
+                .content(content)
+                .page(metadata.page)
+                .size(metadata.size)
+                .totalElements(metadata.totalElements)
+                .totalPages(metadata.totalPages)
+                .build();
     }
 
     /**
-     * Giai đoạn 3: Tính năng khóa lớp và dồn lớp
+     * Giai đoạn 3: Tính năng khóa lớp và dồn lớp. Chạy theo chunk, mỗi chunk tự
+     * commit (xem {@link ClassConsolidationService}).
      */
-    @Transactional
+    @Override
     public void lockClassesAndConsolidate(Integer semesterId) {
-        // 1. Tìm tất cả các lớp trong học kỳ
-        List<ScheduledClass> classes = scheduledClassRepository.findAll((root, query, cb) -> {
-            return cb.and(
-                    cb.equal(root.get("semester").get("semesterId"), semesterId),
-                    cb.equal(root.get("status"), ScheduledClassStatus.OPEN),
-                    cb.isNull(root.get("deletedAt")));
-        });
-
-        for (ScheduledClass sc : classes) {
-            long enrolledCount = enrollmentRepository.countByScheduledClassClassId(sc.getClassId());
-
-            // 2. Chuyển trạng thái sang LOCKED
-            sc.setStatus(ScheduledClassStatus.LOCKED);
-
-            // 3. Hủy lớp nếu sĩ số dưới mức tối thiểu
-            if (enrolledCount < sc.getMinStudents()) {
-                sc.setStatus(ScheduledClassStatus.CANCELLED);
-
-                // System Notification
-                log.info("Class {} has been CANCELLED due to low enrollment {}/{}",
-                        sc.getClassId(), enrolledCount, sc.getMinStudents());
-
-                List<Enrollment> classEnrollments = enrollmentRepository
-                        .findAllByScheduledClassClassId(sc.getClassId());
-                for (Enrollment en : classEnrollments) {
-                    if (en.getStatus() != com.newwave.student_management.domains.enrollment.entity.EnrollmentRecordStatus.DROPPED) {
-                        en.setStatus(
-                                com.newwave.student_management.domains.enrollment.entity.EnrollmentRecordStatus.DROPPED);
-                        enrollmentRepository.save(en);
-
-                        String title = "Lớp " + sc.getCourse().getCode() + " bị hủy";
-                        String body = "Lớp học phần " + sc.getCourse().getName() + " (" + sc.getCourse().getCode() +
-                                ") mà bạn đã đăng ký đã bị hủy do không đạt số lượng sinh viên tối thiểu. Vui lòng đăng ký lớp học phần khác.";
-                        String actionUrl = "/student/courses";
-
-                        notificationInternalService.sendPersonal(
-                                title,
-                                body,
-                                actionUrl,
-                                en.getStudent().getStudentCode(),
-                                null);
-                    }
-                }
-            } else {
-                log.info("Class {} has been LOCKED with {}/{} students",
-                        sc.getClassId(), enrolledCount, sc.getMinStudents());
-            }
-            scheduledClassRepository.save(sc);
-        }
+        classConsolidationService.consolidate(semesterId);
     }
 
     private AdminClassListItemResponse mapToListItemResponse(ScheduledClass scheduledClass) {
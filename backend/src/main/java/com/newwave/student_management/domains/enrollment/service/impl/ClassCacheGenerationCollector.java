@@ -0,0 +1,79 @@
+package com.newwave.student_management.domains.enrollment.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Dọn generation cũ của cache lớp học sau khi {@link ClassCacheService#warmCache}
+ * đã swap con trỏ sang generation mới. Chạy async để publish không phải chờ.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ClassCacheGenerationCollector {
+
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * Xóa SET + index khoa của generation cũ cùng hash/hàng đợi của các lớp không
+     * còn trong generation mới (lớp đã hủy/đóng). Hash của lớp còn sống được ghi
+     * đè tại chỗ nên giữ nguyên.
+     *
+     * @param previousGeneration generation vừa bị thay, null nếu là key cũ
+     *                           semester:{id}:classes (trước khi có generation)
+     * @param liveClassIds       classId thuộc generation mới
+     */
+    @Async
+    public void collect(Integer semesterId, Long previousGeneration, Set<String> liveClassIds) {
+        String previousSetKey = previousGeneration != null
+                ? ClassCacheService.classSetKey(semesterId, previousGeneration)
+                : ClassCacheService.legacyClassSetKey(semesterId);
+        try {
+            Set<String> previousClassIds = stringRedisTemplate.opsForSet().members(previousSetKey);
+            List<String> keys = new ArrayList<>();
+            int removedClasses = 0;
+            if (previousClassIds != null) {
+                for (String classId : previousClassIds) {
+                    if (!liveClassIds.contains(classId)) {
+                        keys.add(ClassCacheService.classKey(classId));
+                        keys.add(ClassCacheService.waitlistKey(classId));
+                        removedClasses++;
+                    }
+                    if (keys.size() >= DELETE_BATCH_SIZE) {
+                        stringRedisTemplate.delete(keys);
+                        keys.clear();
+                    }
+                }
+            }
+            if (previousGeneration != null) {
+                ScanOptions options = ScanOptions.scanOptions()
+                        .match(ClassCacheService.departmentClassSetKey(semesterId, previousGeneration, "*"))
+                        .count(DELETE_BATCH_SIZE)
+                        .build();
+                try (Cursor<String> cursor = stringRedisTemplate.scan(options)) {
+                    while (cursor.hasNext()) {
+                        keys.add(cursor.next());
+                    }
+                }
+            }
+            keys.add(previousSetKey);
+            stringRedisTemplate.delete(keys);
+            log.info("Collected cache generation {} of semester {}: {} stale classes removed", previousSetKey,
+                    semesterId, removedClasses);
+        } catch (Exception ex) {
+            log.warn("Failed to collect cache generation {} of semester {}: {}", previousSetKey, semesterId,
+                    ex.getMessage());
+        }
+    }
+}
@@ -1,20 +1,33 @@
 package com.newwave.student_management.domains.enrollment.service.impl;
 
-import com.newwave.student_management.domains.enrollment.entity.ClassSession;
+import com.newwave.student_management.common.util.TransactionHooks;
+import com.newwave.student_management.domains.enrollment.entity.EnrollmentRecordStatus;
 import com.newwave.student_management.domains.enrollment.entity.ScheduledClass;
 import com.newwave.student_management.domains.enrollment.entity.ScheduledClassStatus;
 import com.newwave.student_management.domains.enrollment.repository.EnrollmentRepository;
 import com.newwave.student_management.domains.enrollment.repository.ScheduledClassRepository;
 import com.newwave.student_management.domains.profile.entity.Semester;
 import com.newwave.student_management.domains.profile.repository.SemesterRepository;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.DefaultStringRedisConnection;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -34,8 +47,16 @@ import java.util.stream.Collectors;
  * <h3>Redis Key Structure</h3>
  * 
  * <pre>
- * semester:{semesterId}:classes → SET [classId1, classId2, ...]
- * class:{classId}               → HASH {classId, courseCode, courseName, ...}
+ * semester:{semesterId}:current               → STRING generation n đang active
+ * semester:{semesterId}:generation            → counter sinh generation mới (INCR)
+ * semester:{semesterId}:v{n}:classes          → SET [classId1, classId2, ...] của generation n
+ * semester:{semesterId}:v{n}:dept:{deptId}:classes → SET classId theo khoa (index cho listing SV)
+ * class:{classId}               → HASH {classId, courseId, courseCode, courseName, ...}
+ * waitlist:{classId}            → ZSET studentId (score = thời điểm xếp hàng)
+ * semester:{semesterId}:members:ready                  → STRING marker (membership đã nạp)
+ * semester:{semesterId}:student:{studentId}:classes    → SET classId đã ENROLLED
+ * semester:{semesterId}:student:{studentId}:courses    → SET courseId đã ENROLLED
+ * semester:{semesterId}:student:{studentId}:waitlist   → SET classId đang WAITLISTED
  * </pre>
  */
 @Service
@@ -49,6 +70,16 @@ public class ClassCacheService {
     private final ScheduledClassRepository scheduledClassRepository;
     private final EnrollmentRepository enrollmentRepository;
     private final SemesterRepository semesterRepository;
+    private final MeterRegistry meterRegistry;
+    private final ClassCacheGenerationCollector generationCollector;
+    private final ClassCatalogNearCache nearCache;
+
+    /**
+     * Định dạng ghi field sessions (đọc luôn hỗ trợ cả hai). Rollout: deploy với
+     * LEGACY cho tới khi mọi replica đọc được BINARY, sau đó chuyển BINARY.
+     */
+    @Value("${enrollment.cache.session-encoding:BINARY}")
+    private ClassSessionCodec.Encoding sessionEncoding;
 
     /**
      * Lua script thực hiện INCR + check maxSlot trong một lệnh atomic duy nhất.
@@ -58,6 +89,78 @@ public class ClassCacheService {
     private static final DefaultRedisScript<Long> RESERVE_SLOT_SCRIPT;
     private static final DefaultRedisScript<Long> RELEASE_SLOT_SCRIPT;
 
+    /**
+     * Lua script "admission engine": quyết định admit / waitlist / reject cho 1 SV
+     * + 1 lớp trong MỘT round-trip, thay cho 3-4 query exists trên PostgreSQL.
+     * • KEYS[1] = class:{classId}
+     * • KEYS[2] = waitlist:{classId}
+     * • KEYS[3] = semester:{sid}:student:{studentId}:classes
+     * • KEYS[4] = semester:{sid}:student:{studentId}:courses
+     * • KEYS[5] = semester:{sid}:student:{studentId}:waitlist
+     * • KEYS[6] = semester:{sid}:members:ready
+     * • ARGV = classId, courseId, studentId, score (epoch millis), maxWaitlist
+     * • Trả về mã {@link AdmissionResult#code}.
+     */
+    private static final DefaultRedisScript<Long> ADMIT_SCRIPT;
+
+    /**
+     * Hoàn tác 1 admission (validation fail / DB insert fail / SV hủy đăng ký):
+     * giảm currentSlot (clamp ≥ 0) và gỡ classId/courseId khỏi membership set.
+     * • KEYS[1] = class:{classId}, KEYS[2] = student classes, KEYS[3] = student courses
+     * • ARGV = classId, courseId, releaseSlot (1/0)
+     */
+    private static final DefaultRedisScript<Long> REVOKE_ADMISSION_SCRIPT;
+
+    /**
+     * Ghi membership + giữ slot cho enrollment tạo ngoài admission engine (Admin
+     * thêm SV): chiều ngược của {@link #REVOKE_ADMISSION_SCRIPT}. Không check
+     * maxSlot — dòng DB đã tồn tại, counter chỉ cần khớp.
+     * • KEYS[1] = class:{classId}, KEYS[2] = student classes, KEYS[3] = student courses
+     * • ARGV = classId, courseId
+     */
+    private static final DefaultRedisScript<Long> GRANT_ADMISSION_SCRIPT;
+
+    /**
+     * Compare-and-set currentSlot cho job đối soát: chỉ ghi đè khi giá trị vẫn
+     * bằng giá trị đã quan sát — reserve/release xen giữa không bị mất.
+     * • KEYS[1] = class:{classId}
+     * • ARGV = expected currentSlot, giá trị mới (đếm từ DB)
+     * • Trả về 1 nếu đã sửa, 0 nếu currentSlot đã đổi, -1 nếu hash không tồn tại.
+     */
+    private static final DefaultRedisScript<Long> RECONCILE_SLOT_SCRIPT;
+
+    /**
+     * Xếp hàng đợi có giới hạn (thay cho ZCARD rồi ZADD không atomic).
+     * • KEYS[1] = waitlist:{classId}
+     * • ARGV = studentId, score (epoch millis), maxWaitlist
+     * • Trả về 1 nếu đã thêm, 0 nếu hàng đợi đầy, -1 nếu SV đã có trong hàng đợi.
+     */
+    private static final DefaultRedisScript<Long> JOIN_WAITLIST_SCRIPT;
+
+    /**
+     * Trả slot + đôn SV đầu hàng đợi trong cùng 1 script: currentSlot -= released
+     * rồi lần lượt ZREM các SV ứng viên (đã đọc từ hàng đợi theo thứ tự) cho tới
+     * khi lớp đủ chỗ; SV không còn trong hàng đợi bị bỏ qua. Mỗi SV được đôn nhận
+     * luôn slot và membership (waitlist → classes/courses).
+     * • KEYS[1] = class:{classId}, KEYS[2] = waitlist:{classId}, rồi với ứng viên
+     * thứ i: KEYS[3i], KEYS[3i+1], KEYS[3i+2] = waitlist/classes/courses set của SV
+     * • ARGV = released, classId, courseId, studentId ứng viên...
+     * • Trả về [số chỗ còn trống, studentId đã được đôn...], rỗng nếu lớp chưa cache.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> FILL_FROM_WAITLIST_SCRIPT;
+
+    /**
+     * Hoàn tác {@link #FILL_FROM_WAITLIST_SCRIPT} khi phần DB của lượt đôn bị
+     * rollback: với từng SV, gỡ membership (trả slot nếu SV còn giữ) rồi xếp lại
+     * vào hàng đợi với score cũ.
+     * • KEYS[1] = class:{classId}, KEYS[2] = waitlist:{classId}, rồi với SV thứ i:
+     * KEYS[3i], KEYS[3i+1], KEYS[3i+2] = waitlist/classes/courses set của SV
+     * • ARGV = classId, courseId, rồi cặp (studentId, score) của từng SV
+     * • Trả về số slot đã trả.
+     */
+    private static final DefaultRedisScript<Long> RESTORE_WAITLIST_SCRIPT;
+
     static {
         RESERVE_SLOT_SCRIPT = new DefaultRedisScript<>();
         RESERVE_SLOT_SCRIPT.setResultType(Long.class);
@@ -85,11 +188,149 @@ public class ClassCacheService {
                         "  redis.call('HSET', key, 'currentSlot', '0') " +
                         "end " +
                         "return cur");
+
+        ADMIT_SCRIPT = new DefaultRedisScript<>();
+        ADMIT_SCRIPT.setResultType(Long.class);
+        ADMIT_SCRIPT.setScriptText(
+                "if redis.call('EXISTS', KEYS[6]) == 0 or redis.call('HEXISTS', KEYS[1], 'courseId') == 0 then " +
+                        "  return 0 " +
+                        "end " +
+                        "if redis.call('SISMEMBER', KEYS[3], ARGV[1]) == 1 then return -1 end " +
+                        "if redis.call('SISMEMBER', KEYS[5], ARGV[1]) == 1 then return -2 end " +
+                        "if redis.call('SISMEMBER', KEYS[4], ARGV[2]) == 1 then return -3 end " +
+                        "local max = tonumber(redis.call('HGET', KEYS[1], 'maxSlot')) " +
+                        "local cur = tonumber(redis.call('HGET', KEYS[1], 'currentSlot')) or 0 " +
+                        "if max ~= nil and cur < max then " +
+                        "  redis.call('HINCRBY', KEYS[1], 'currentSlot', 1) " +
+                        "  redis.call('SADD', KEYS[3], ARGV[1]) " +
+                        "  redis.call('SADD', KEYS[4], ARGV[2]) " +
+                        "  return 1 " +
+                        "end " +
+                        "if redis.call('ZCARD', KEYS[2]) >= tonumber(ARGV[5]) then return -4 end " +
+                        "redis.call('ZADD', KEYS[2], ARGV[4], ARGV[3]) " +
+                        "redis.call('SADD', KEYS[5], ARGV[1]) " +
+                        "return 2");
+
+        REVOKE_ADMISSION_SCRIPT = new DefaultRedisScript<>();
+        REVOKE_ADMISSION_SCRIPT.setResultType(Long.class);
+        REVOKE_ADMISSION_SCRIPT.setScriptText(
+                "local removed = redis.call('SREM', KEYS[2], ARGV[1]) " +
+                        "redis.call('SREM', KEYS[3], ARGV[2]) " +
+                        "if ARGV[3] == '1' and removed == 1 and redis.call('EXISTS', KEYS[1]) == 1 then " +
+                        "  local cur = redis.call('HINCRBY', KEYS[1], 'currentSlot', -1) " +
+                        "  if cur < 0 then redis.call('HSET', KEYS[1], 'currentSlot', '0') end " +
+                        "end " +
+                        "return removed");
+
+        GRANT_ADMISSION_SCRIPT = new DefaultRedisScript<>();
+        GRANT_ADMISSION_SCRIPT.setResultType(Long.class);
+        GRANT_ADMISSION_SCRIPT.setScriptText(
+                "local added = redis.call('SADD', KEYS[2], ARGV[1]) " +
+                        "redis.call('SADD', KEYS[3], ARGV[2]) " +
+                        "if added == 1 and redis.call('EXISTS', KEYS[1]) == 1 then " +
+                        "  redis.call('HINCRBY', KEYS[1], 'currentSlot', 1) " +
+                        "end " +
+                        "return added");
+
+        RECONCILE_SLOT_SCRIPT = new DefaultRedisScript<>();
+        RECONCILE_SLOT_SCRIPT.setResultType(Long.class);
+        RECONCILE_SLOT_SCRIPT.setScriptText(
+                "local cur = redis.call('HGET', KEYS[1], 'currentSlot') " +
+                        "if not cur then return -1 end " +
+                        "if cur ~= ARGV[1] then return 0 end " +
+                        "redis.call('HSET', KEYS[1], 'currentSlot', ARGV[2]) " +
+                        "return 1");
+
+        JOIN_WAITLIST_SCRIPT = new DefaultRedisScript<>();
+        JOIN_WAITLIST_SCRIPT.setResultType(Long.class);
+        JOIN_WAITLIST_SCRIPT.setScriptText(
+                "if redis.call('ZSCORE', KEYS[1], ARGV[1]) then return -1 end " +
+                        "if redis.call('ZCARD', KEYS[1]) >= tonumber(ARGV[3]) then return 0 end " +
+                        "redis.call('ZADD', KEYS[1], ARGV[2], ARGV[1]) " +
+                        "return 1");
+
+        FILL_FROM_WAITLIST_SCRIPT = new DefaultRedisScript<>();
+        FILL_FROM_WAITLIST_SCRIPT.setResultType(List.class);
+        FILL_FROM_WAITLIST_SCRIPT.setScriptText(
+                "if redis.call('EXISTS', KEYS[1]) == 0 then return {} end " +
+                        "local max = tonumber(redis.call('HGET', KEYS[1], 'maxSlot')) or 0 " +
+                        "local cur = (tonumber(redis.call('HGET', KEYS[1], 'currentSlot')) or 0) - tonumber(ARGV[1]) " +
+                        "if cur < 0 then cur = 0 end " +
+                        "local out = {} " +
+                        "local i = 0 " +
+                        "while cur < max and i < #ARGV - 3 do " +
+                        "  i = i + 1 " +
+                        "  local sid = ARGV[3 + i] " +
+                        "  if redis.call('ZREM', KEYS[2], sid) == 1 then " +
+                        "    local k = 3 * i " +
+                        "    redis.call('SREM', KEYS[k], ARGV[2]) " +
+                        "    redis.call('SADD', KEYS[k + 1], ARGV[2]) " +
+                        "    redis.call('SADD', KEYS[k + 2], ARGV[3]) " +
+                        "    cur = cur + 1 " +
+                        "    out[#out + 1] = sid " +
+                        "  end " +
+                        "end " +
+                        "redis.call('HSET', KEYS[1], 'currentSlot', cur) " +
+                        "table.insert(out, 1, max - cur) " +
+                        "return out");
+
+        RESTORE_WAITLIST_SCRIPT = new DefaultRedisScript<>();
+        RESTORE_WAITLIST_SCRIPT.setResultType(Long.class);
+        RESTORE_WAITLIST_SCRIPT.setScriptText(
+                "local released = 0 " +
+                        "local hasClass = redis.call('EXISTS', KEYS[1]) == 1 " +
+                        "for i = 1, (#ARGV - 2) / 2 do " +
+                        "  local k = 3 * i " +
+                        "  if redis.call('SREM', KEYS[k + 1], ARGV[1]) == 1 and hasClass then " +
+                        "    local cur = redis.call('HINCRBY', KEYS[1], 'currentSlot', -1) " +
+                        "    if cur < 0 then redis.call('HSET', KEYS[1], 'currentSlot', '0') end " +
+                        "    released = released + 1 " +
+                        "  end " +
+                        "  redis.call('SREM', KEYS[k + 2], ARGV[2]) " +
+                        "  redis.call('SADD', KEYS[k], ARGV[1]) " +
+                        "  redis.call('ZADD', KEYS[2], ARGV[2 * i + 2], ARGV[2 * i + 1]) " +
+                        "end " +
+                        "return released");
+    }
+
+    /**
+     * Kết quả của admission script. {@code code} khớp với giá trị Lua trả về.
+     */
+    public enum AdmissionResult {
+        /** Đã giữ chỗ (currentSlot +1, membership đã ghi). */
+        ADMITTED(1),
+        /** Lớp đầy, SV đã được xếp vào hàng đợi. */
+        WAITLISTED(2),
+        ALREADY_ENROLLED(-1),
+        ALREADY_WAITLISTED(-2),
+        COURSE_ALREADY_ENROLLED(-3),
+        /** Lớp đầy và hàng đợi cũng đầy. */
+        CLASS_FULL(-4),
+        /** Cache/membership chưa sẵn sàng → caller fallback về DB. */
+        NOT_READY(0);
+
+        private final long code;
+
+        AdmissionResult(long code) {
+            this.code = code;
+        }
+
+        static AdmissionResult fromCode(Long code) {
+            if (code != null) {
+                for (AdmissionResult result : values()) {
+                    if (result.code == code) {
+                        return result;
+                    }
+                }
+            }
+            return NOT_READY;
+        }
     }
 
     /**
      * Prefix cho Redis keys.
-     * - SEMESTER_KEY_PREFIX + semesterId + ":classes" → SET chứa tất cả classId
+     * - SEMESTER_KEY_PREFIX + semesterId + ":v{n}:classes" → SET chứa tất cả classId
+     * của generation n (generation active lưu ở ":current")
      * - CLASS_KEY_PREFIX + classId → HASH chứa chi tiết lớp
      * - WAITLIST_KEY_PREFIX + classId → ZSET chứa studentId xếp hàng đợi theo
      * timestamp
@@ -97,19 +338,29 @@ public class ClassCacheService {
     private static final String SEMESTER_KEY_PREFIX = "semester:";
     private static final String CLASS_KEY_PREFIX = "class:";
     private static final String WAITLIST_KEY_PREFIX = "waitlist:";
+    private static final String MEMBERS_READY_SUFFIX = ":members:ready";
+    private static final String STUDENT_KEY_INFIX = ":student:";
+    private static final String CURRENT_GENERATION_SUFFIX = ":current";
+    private static final String GENERATION_COUNTER_SUFFIX = ":generation";
+    private static final String DEPT_KEY_INFIX = ":dept:";
     private static final int MAX_WAITLIST = 10;
+    private static final int FILL_MAX_ROUNDS = 3;
 
     /**
      * Đồng bộ tất cả lớp OPEN trong 1 semester lên Redis.
      *
      * <p>
-     * Flow:
+     * Flow (mỗi phase được đo bằng timer {@code enrollment.cache.warm}, tag
+     * {@code phase}):
      * </p>
      * <ol>
-     * <li>Query PostgreSQL: lấy tất cả lớp OPEN chưa bị xóa</li>
-     * <li>Với mỗi lớp: tạo Redis Hash chứa thông tin (courseCode, maxSlot,
-     * currentSlot, sessions...)</li>
-     * <li>Thêm classId vào SET semester:{id}:classes</li>
+     * <li>load: 1 query fetch-join lớp OPEN + course/department/teacher/sessions</li>
+     * <li>count: 1 query GROUP BY đếm SV ENROLLED cho toàn bộ lớp</li>
+     * <li>write: 1 pipeline HMSET từng lớp (currentSlot chỉ HSETNX, như
+     * {@link #syncClass}) + SADD vào SET của generation mới
+     * semester:{id}:v{n}:classes, rồi đổi con trỏ semester:{id}:current sang n</li>
+     * <li>membership: bổ sung membership set của SV từ DB, không xóa set đang
+     * phục vụ (xem {@link #warmMembership})</li>
      * </ol>
      *
      * @param semesterId ID của semester cần publish
@@ -117,74 +368,285 @@ public class ClassCacheService {
      */
     @Transactional(readOnly = true)
     public int warmCache(Integer semesterId) {
-        // 1. Lấy tất cả lớp OPEN trong semester
-        List<ScheduledClass> openClasses = scheduledClassRepository
-                .findBySemesterSemesterIdAndStatusAndDeletedAtIsNull(
-                        semesterId, ScheduledClassStatus.OPEN);
+        long started = System.nanoTime();
 
-        String semesterSetKey = SEMESTER_KEY_PREFIX + semesterId + ":classes";
+        // 1. Lấy tất cả lớp OPEN trong semester (kèm quan hệ cần cho hash)
+        long phaseStart = System.nanoTime();
+        List<ScheduledClass> openClasses = scheduledClassRepository
+                .findForCacheWarmup(semesterId, ScheduledClassStatus.OPEN);
+        long loadMs = recordWarmPhase("load", phaseStart);
+
+        // 2. Đếm SV đã đăng ký (snapshot hiện tại từ DB) — 1 query cho cả semester
+        phaseStart = System.nanoTime();
+        Map<Integer, Long> enrolledCounts = new HashMap<>();
+        if (!openClasses.isEmpty()) {
+            List<Integer> classIds = openClasses.stream().map(ScheduledClass::getClassId).toList();
+            for (Object[] row : scheduledClassRepository.countEnrollmentsByClassIds(classIds)) {
+                enrolledCounts.put((Integer) row[0], (Long) row[1]);
+            }
+        }
+        long countMs = recordWarmPhase("count", phaseStart);
 
-        // 2. Xóa cache cũ (nếu re-publish)
-        clearSemesterCache(semesterId, semesterSetKey);
+        // 3. Dựng generation mới bên cạnh generation đang phục vụ — không xóa trước,
+        // nên SV đọc danh sách trong lúc re-publish vẫn thấy bản cũ (không dồn về DB)
+        phaseStart = System.nanoTime();
+        long generation = stringRedisTemplate.opsForValue()
+                .increment(SEMESTER_KEY_PREFIX + semesterId + GENERATION_COUNTER_SUFFIX);
+        String semesterSetKey = classSetKey(semesterId, generation);
 
-        // 3. Sync từng lớp lên Redis
-        int count = 0;
+        List<Map<String, String>> hashes = new ArrayList<>(openClasses.size());
         for (ScheduledClass scheduledClass : openClasses) {
-            String classKey = CLASS_KEY_PREFIX + scheduledClass.getClassId();
-
-            // Đếm SV đã đăng ký (snapshot hiện tại từ DB)
-            long currentEnrolled = enrollmentRepository
-                    .countByScheduledClassClassId(scheduledClass.getClassId());
-
-            // Build hash data
-            Map<String, String> classData = new HashMap<>();
-            classData.put("classId", String.valueOf(scheduledClass.getClassId()));
-            classData.put("courseCode", scheduledClass.getCourse().getCode());
-            classData.put("courseName", scheduledClass.getCourse().getName());
-            classData.put("credits", String.valueOf(scheduledClass.getCourse().getCredits()));
-            classData.put("teacherName", getTeacherName(scheduledClass));
-            classData.put("maxSlot", String.valueOf(scheduledClass.getMaxStudents()));
-            classData.put("currentSlot", String.valueOf(currentEnrolled));
-            classData.put("departmentId", scheduledClass.getCourse().getDepartment() != null
-                    ? String.valueOf(scheduledClass.getCourse().getDepartment().getDepartmentId())
-                    : "");
-            classData.put("status", "OPEN");
-            classData.put("sessions", serializeSessions(scheduledClass.getSessions()));
-
-            // 4. Lưu Hash vào Redis bằng stringRedisTemplate (plain String values)
-            // QUAN TRỌNG: Phải dùng stringRedisTemplate để hash values là plain String
-            // (e.g., "30") thay vì JSON-quoted ("\"30\""), vì Lua HINCRBY cần plain integer
-            // string
-            stringRedisTemplate.opsForHash().putAll(classKey, classData);
-
-            // 5. Thêm classId vào SET của semester
-            stringRedisTemplate.opsForSet().add(semesterSetKey, String.valueOf(scheduledClass.getClassId()));
-
-            count++;
+            hashes.add(buildClassHash(scheduledClass, semesterId,
+                    enrolledCounts.getOrDefault(scheduledClass.getClassId(), 0L)));
         }
 
-        log.info("Cache warmed for semester {}: {} classes synced to Redis", semesterId, count);
-        return count;
+        // QUAN TRỌNG: Phải dùng string connection để hash values là plain String
+        // (e.g., "30") thay vì JSON-quoted ("\"30\""), vì Lua HINCRBY cần plain integer
+        // string
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = new DefaultStringRedisConnection(connection);
+            for (Map<String, String> classData : hashes) {
+                // currentSlot là bộ đếm sống khi re-publish — chỉ nạp từ DB nếu hash chưa có
+                Map<String, String> fields = new HashMap<>(classData);
+                String currentSlot = fields.remove("currentSlot");
+                String classKey = CLASS_KEY_PREFIX + classData.get("classId");
+                conn.hMSet(classKey, fields);
+                conn.hSetNX(classKey, "currentSlot", currentSlot);
+            }
+            if (!hashes.isEmpty()) {
+                conn.sAdd(semesterSetKey, hashes.stream().map(h -> h.get("classId")).toArray(String[]::new));
+            }
+            // Index theo khoa — lớp không có khoa không hiện ở listing SV nên bỏ qua
+            hashes.stream()
+                    .filter(h -> !h.get("departmentId").isEmpty())
+                    .collect(Collectors.groupingBy(h -> h.get("departmentId"),
+                            Collectors.mapping(h -> h.get("classId"), Collectors.toList())))
+                    .forEach((deptId, ids) -> conn.sAdd(
+                            departmentClassSetKey(semesterId, generation, deptId), ids.toArray(String[]::new)));
+            return null;
+        });
+
+        // Swap: 1 lệnh SET ... GET đổi con trỏ, reader chuyển sang generation mới ngay
+        String previous = stringRedisTemplate.opsForValue()
+                .getAndSet(currentGenerationKey(semesterId), String.valueOf(generation));
+        nearCache.publishInvalidateAll();
+        Set<String> liveClassIds = hashes.stream().map(h -> h.get("classId")).collect(Collectors.toSet());
+        generationCollector.collect(semesterId, previous != null ? Long.parseLong(previous) : null, liveClassIds);
+        long writeMs = recordWarmPhase("write", phaseStart);
+
+        // 4. Nạp membership (enrolled/waitlisted) của toàn bộ SV trong semester
+        phaseStart = System.nanoTime();
+        int members = warmMembership(semesterId);
+        long membershipMs = recordWarmPhase("membership", phaseStart);
+
+        log.info("Cache warmed for semester {} (generation {}): {} classes synced to Redis, {} membership rows "
+                + "loaded in {} ms (load {} ms, count {} ms, write {} ms, membership {} ms)",
+                semesterId, generation, hashes.size(), members, (System.nanoTime() - started) / 1_000_000,
+                loadMs, countMs, writeMs, membershipMs);
+        return hashes.size();
+    }
+
+    private Map<String, String> buildClassHash(ScheduledClass scheduledClass, Integer semesterId,
+            long currentEnrolled) {
+        Map<String, String> classData = new HashMap<>();
+        classData.put("classId", String.valueOf(scheduledClass.getClassId()));
+        classData.put("courseId", String.valueOf(scheduledClass.getCourse().getCourseId()));
+        classData.put("semesterId", String.valueOf(semesterId));
+        classData.put("courseCode", scheduledClass.getCourse().getCode());
+        classData.put("courseName", scheduledClass.getCourse().getName());
+        classData.put("credits", String.valueOf(scheduledClass.getCourse().getCredits()));
+        classData.put("teacherName", getTeacherName(scheduledClass));
+        classData.put("maxSlot", String.valueOf(scheduledClass.getMaxStudents()));
+        classData.put("currentSlot", String.valueOf(currentEnrolled));
+        classData.put("departmentId", scheduledClass.getCourse().getDepartment() != null
+                ? String.valueOf(scheduledClass.getCourse().getDepartment().getDepartmentId())
+                : "");
+        classData.put("status", "OPEN");
+        classData.put("sessions", ClassSessionCodec.encode(scheduledClass.getSessions(), sessionEncoding));
+        return classData;
+    }
+
+    private long recordWarmPhase(String phase, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        meterRegistry.timer("enrollment.cache.warm", "phase", phase).record(elapsed, TimeUnit.NANOSECONDS);
+        return elapsed / 1_000_000;
+    }
+
+    /**
+     * Nạp membership set của mọi SV trong semester bằng 1 query duy nhất + 1
+     * pipeline, rồi đặt marker {@code semester:{id}:members:ready}. Khi marker tồn
+     * tại, SV không có set nào nghĩa là chưa đăng ký gì → admission script không
+     * cần hỏi lại DB.
+     *
+     * <p>
+     * Chỉ thêm, không xóa: khi re-publish, set và hàng đợi đang phục vụ (gồm cả
+     * reservation write-behind chưa có trong DB) được giữ nguyên, marker không bị
+     * gỡ nên admission không rơi về DB giữa chừng. Hàng đợi
+     * {@code waitlist:{classId}} được bổ sung từ các bản ghi WAITLISTED (score =
+     * createdAt, ZADD NX giữ thứ tự đang có).
+     * </p>
+     *
+     * @return số bản ghi enrollment đã nạp
+     */
+    private int warmMembership(Integer semesterId) {
+        List<Object[]> rows = enrollmentRepository.findActiveMembershipBySemesterId(semesterId);
+
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = new DefaultStringRedisConnection(connection);
+            for (Object[] row : rows) {
+                UUID studentId = (UUID) row[0];
+                String classId = String.valueOf(row[1]);
+                String courseId = String.valueOf(row[2]);
+                EnrollmentRecordStatus status = (EnrollmentRecordStatus) row[3];
+                if (status == EnrollmentRecordStatus.ENROLLED) {
+                    conn.sAdd(studentClassesKey(semesterId, studentId), classId);
+                    conn.sAdd(studentCoursesKey(semesterId, studentId), courseId);
+                } else if (status == EnrollmentRecordStatus.WAITLISTED) {
+                    LocalDateTime joinedAt = (LocalDateTime) row[4];
+                    double score = joinedAt != null
+                            ? joinedAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                            : System.currentTimeMillis();
+                    conn.zAdd(WAITLIST_KEY_PREFIX + classId, score, studentId.toString(),
+                            RedisZSetCommands.ZAddArgs.ifNotExists());
+                    conn.sAdd(studentWaitlistKey(semesterId, studentId), classId);
+                }
+            }
+            conn.set(membersReadyKey(semesterId), "1");
+            return null;
+        });
+        return rows.size();
+    }
+
+    /**
+     * Đồng bộ 1 lớp vào generation đang active sau khi Admin tạo/sửa/xóa lớp giữa
+     * kỳ đăng ký. Lớp OPEN được ghi hash + thêm vào SET semester và index khoa;
+     * lớp không còn OPEN (hoặc đã xóa) bị gỡ khỏi cả hai và xóa hash.
+     *
+     * <p>
+     * Hash được dựng ngay (trong transaction của caller, để đọc quan hệ lazy) nhưng
+     * chỉ ghi lên Redis sau khi transaction commit. currentSlot được giữ nguyên nếu
+     * hash đã tồn tại — đó là bộ đếm sống, không ghi đè bằng snapshot DB.
+     * </p>
+     */
+    public void syncClass(ScheduledClass scheduledClass) {
+        Integer semesterId = scheduledClass.getSemester().getSemesterId();
+        String classId = String.valueOf(scheduledClass.getClassId());
+        boolean listed = scheduledClass.getStatus() == ScheduledClassStatus.OPEN
+                && scheduledClass.getDeletedAt() == null;
+        Map<String, String> classData = listed
+                ? buildClassHash(scheduledClass, semesterId,
+                        enrollmentRepository.countByScheduledClassClassId(scheduledClass.getClassId()))
+                : null;
+        String departmentId = scheduledClass.getCourse().getDepartment() != null
+                ? String.valueOf(scheduledClass.getCourse().getDepartment().getDepartmentId())
+                : "";
+
+        Runnable write = () -> {
+            try {
+                String generation = stringRedisTemplate.opsForValue().get(currentGenerationKey(semesterId));
+                if (generation == null) {
+                    return; // Semester chưa publish → không có cache để đồng bộ
+                }
+                long gen = Long.parseLong(generation);
+                stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    StringRedisConnection conn = new DefaultStringRedisConnection(connection);
+                    String classKey = CLASS_KEY_PREFIX + classId;
+                    if (classData != null) {
+                        String currentSlot = classData.remove("currentSlot");
+                        conn.hMSet(classKey, classData);
+                        conn.hSetNX(classKey, "currentSlot", currentSlot);
+                        conn.sAdd(classSetKey(semesterId, gen), classId);
+                        if (!departmentId.isEmpty()) {
+                            conn.sAdd(departmentClassSetKey(semesterId, gen, departmentId), classId);
+                        }
+                    } else {
+                        conn.sRem(classSetKey(semesterId, gen), classId);
+                        if (!departmentId.isEmpty()) {
+                            conn.sRem(departmentClassSetKey(semesterId, gen, departmentId), classId);
+                        }
+                        conn.del(classKey);
+                    }
+                    return null;
+                });
+                nearCache.publishInvalidation(scheduledClass.getClassId());
+            } catch (Exception ex) {
+                log.warn("Failed to sync class {} to Redis cache: {}", classId, ex.getMessage());
+            }
+        };
+
+        TransactionHooks.afterCommit(write);
     }
 
     /**
-     * Xóa toàn bộ cache của 1 semester.
-     * Gọi trước khi re-publish hoặc khi đóng đăng ký (CLOSED).
+     * Xóa toàn bộ cache của 1 semester — gọi khi đóng đăng ký (CLOSED).
+     * Re-publish không gọi hàm này mà dựng generation mới rồi swap (xem
+     * {@link #warmCache}).
      */
     public void clearSemesterCache(Integer semesterId) {
-        String semesterSetKey = SEMESTER_KEY_PREFIX + semesterId + ":classes";
-        clearSemesterCache(semesterId, semesterSetKey);
+        // Gỡ con trỏ trước → reader coi như cache miss ngay
+        String current = stringRedisTemplate.opsForValue().getAndDelete(currentGenerationKey(semesterId));
+
+        List<String> setKeys = new ArrayList<>();
+        setKeys.add(legacyClassSetKey(semesterId));
+        if (current != null) {
+            setKeys.add(classSetKey(semesterId, Long.parseLong(current)));
+        }
+        // Generation cũ mà GC chưa kịp dọn (VD: instance restart giữa chừng)
+        ScanOptions options = ScanOptions.scanOptions()
+                .match(SEMESTER_KEY_PREFIX + semesterId + ":v*:classes")
+                .count(1000)
+                .build();
+        try (Cursor<String> cursor = stringRedisTemplate.scan(options)) {
+            while (cursor.hasNext()) {
+                String key = cursor.next();
+                if (!setKeys.contains(key)) {
+                    setKeys.add(key);
+                }
+            }
+        }
+
+        Set<String> existingClassIds = new HashSet<>();
+        for (String setKey : setKeys) {
+            Set<String> members = stringRedisTemplate.opsForSet().members(setKey);
+            if (members != null) {
+                existingClassIds.addAll(members);
+            }
+        }
+        List<String> keys = new ArrayList<>(existingClassIds.size() * 2 + setKeys.size());
+        for (String classId : existingClassIds) {
+            keys.add(CLASS_KEY_PREFIX + classId);
+            keys.add(WAITLIST_KEY_PREFIX + classId);
+        }
+        keys.addAll(setKeys);
+        stringRedisTemplate.delete(keys);
+        log.info("Cleared {} cached classes for semester {}", existingClassIds.size(), semesterId);
+        nearCache.publishInvalidateAll();
+
+        clearMembership(semesterId);
     }
 
-    private void clearSemesterCache(Integer semesterId, String semesterSetKey) {
-        Set<String> existingClassIds = stringRedisTemplate.opsForSet().members(semesterSetKey);
-        if (existingClassIds != null && !existingClassIds.isEmpty()) {
-            for (String classId : existingClassIds) {
-                stringRedisTemplate.delete(CLASS_KEY_PREFIX + classId);
-                stringRedisTemplate.delete(WAITLIST_KEY_PREFIX + classId);
+    /**
+     * Xóa marker + toàn bộ membership set của semester. Marker bị xóa TRƯỚC để
+     * admission script fallback về DB ngay, không đọc set đang bị xóa dở.
+     */
+    private void clearMembership(Integer semesterId) {
+        stringRedisTemplate.delete(membersReadyKey(semesterId));
+        ScanOptions options = ScanOptions.scanOptions()
+                .match(SEMESTER_KEY_PREFIX + semesterId + STUDENT_KEY_INFIX + "*")
+                .count(1000)
+                .build();
+        List<String> batch = new ArrayList<>();
+        try (Cursor<String> cursor = stringRedisTemplate.scan(options)) {
+            while (cursor.hasNext()) {
+                batch.add(cursor.next());
+                if (batch.size() >= 1000) {
+                    stringRedisTemplate.delete(batch);
+                    batch.clear();
+                }
             }
-            stringRedisTemplate.delete(semesterSetKey);
-            log.info("Cleared {} cached classes for semester {}", existingClassIds.size(), semesterId);
+        }
+        if (!batch.isEmpty()) {
+            stringRedisTemplate.delete(batch);
         }
     }
 
@@ -192,7 +654,7 @@ public class ClassCacheService {
      * Kiểm tra semester đã được cache trên Redis chưa.
      */
     public boolean isCached(Integer semesterId) {
-        String semesterSetKey = SEMESTER_KEY_PREFIX + semesterId + ":classes";
+        String semesterSetKey = currentClassSetKey(semesterId);
         Long size = stringRedisTemplate.opsForSet().size(semesterSetKey);
         return size != null && size > 0;
     }
@@ -201,7 +663,7 @@ public class ClassCacheService {
      * Lấy số lượng lớp đang cache cho 1 semester.
      */
     public long getCachedClassCount(Integer semesterId) {
-        String semesterSetKey = SEMESTER_KEY_PREFIX + semesterId + ":classes";
+        String semesterSetKey = currentClassSetKey(semesterId);
         Long size = stringRedisTemplate.opsForSet().size(semesterSetKey);
         return size != null ? size : 0;
     }
@@ -274,37 +736,277 @@ public class ClassCacheService {
         log.debug("Slot released for class {}, currentSlot after release: {}", classId, result);
     }
 
+    // ===== Slot counter reconciliation =====
+
+    /**
+     * Đọc currentSlot của mọi lớp trong generation đang active (SMEMBERS + HGET
+     * pipelined). Lớp mất hash (TTL/eviction) không có trong kết quả.
+     *
+     * @return classId → currentSlot, rỗng nếu semester chưa publish
+     */
+    public Map<Integer, Long> readSlotCounters(Integer semesterId) {
+        Set<String> classIds = stringRedisTemplate.opsForSet().members(currentClassSetKey(semesterId));
+        if (classIds == null || classIds.isEmpty()) {
+            return Map.of();
+        }
+        return readSlotCounters(classIds.stream().map(Integer::valueOf).toList());
+    }
+
+    /**
+     * Đọc currentSlot của danh sách lớp trong 1 pipeline.
+     */
+    public Map<Integer, Long> readSlotCounters(Collection<Integer> classIds) {
+        List<Integer> ids = new ArrayList<>(classIds);
+        List<Object> values = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = new DefaultStringRedisConnection(connection);
+            for (Integer classId : ids) {
+                conn.hGet(CLASS_KEY_PREFIX + classId, "currentSlot");
+            }
+            return null;
+        });
+        Map<Integer, Long> counters = new HashMap<>(ids.size() * 2);
+        for (int i = 0; i < ids.size(); i++) {
+            Object value = values.get(i);
+            if (value != null) {
+                counters.put(ids.get(i), (long) parseIntSafe(value, 0));
+            }
+        }
+        return counters;
+    }
+
+    /**
+     * Ghi đè currentSlot bằng số đếm từ DB nếu Redis vẫn đang ở {@code expected}.
+     *
+     * @return 1 đã sửa, 0 currentSlot vừa thay đổi (bỏ qua), -1 hash không tồn tại
+     */
+    public long compareAndSetSlot(Integer classId, long expected, long actual) {
+        Long result = stringRedisTemplate.execute(
+                RECONCILE_SLOT_SCRIPT,
+                List.of(CLASS_KEY_PREFIX + classId),
+                String.valueOf(expected), String.valueOf(actual));
+        return result != null ? result : -1L;
+    }
+
+    // ===== Admission engine (1 Lua round-trip) =====
+
+    /**
+     * Quyết định admit / waitlist / reject cho SV vào lớp trong 1 lần gọi Lua.
+     *
+     * <p>
+     * Thứ tự kiểm tra giống hệt luồng DB cũ: đã ENROLLED lớp này → đã WAITLISTED
+     * lớp này → đã ENROLLED lớp khác cùng môn → còn slot thì giữ chỗ, hết slot thì
+     * vào hàng đợi (tối đa {@value #MAX_WAITLIST}).
+     * </p>
+     *
+     * @return {@link AdmissionResult#NOT_READY} nếu lớp chưa cache hoặc membership
+     *         chưa nạp — caller phải fallback về DB
+     */
+    public AdmissionResult admit(Integer semesterId, Integer classId, Integer courseId, UUID studentId) {
+        Long code = stringRedisTemplate.execute(
+                ADMIT_SCRIPT,
+                List.of(CLASS_KEY_PREFIX + classId,
+                        WAITLIST_KEY_PREFIX + classId,
+                        studentClassesKey(semesterId, studentId),
+                        studentCoursesKey(semesterId, studentId),
+                        studentWaitlistKey(semesterId, studentId),
+                        membersReadyKey(semesterId)),
+                String.valueOf(classId),
+                String.valueOf(courseId),
+                studentId.toString(),
+                String.valueOf(System.currentTimeMillis()),
+                String.valueOf(MAX_WAITLIST));
+        AdmissionResult result = AdmissionResult.fromCode(code);
+        log.debug("Admission for student {} into class {}: {}", studentId, classId, result);
+        return result;
+    }
+
+    /**
+     * Hoàn tác admission đã {@link AdmissionResult#ADMITTED}: trả slot + gỡ
+     * membership. Dùng khi validation sau admit fail hoặc insert DB fail.
+     */
+    public void revokeAdmission(Integer semesterId, Integer classId, Integer courseId, UUID studentId) {
+        removeEnrollment(semesterId, classId, courseId, studentId, true);
+    }
+
+    /**
+     * Gỡ classId/courseId khỏi membership set của SV (khi hủy đăng ký).
+     *
+     * @param releaseSlot true nếu đồng thời trả lại slot (currentSlot -1)
+     */
+    public void removeEnrollment(Integer semesterId, Integer classId, Integer courseId, UUID studentId,
+            boolean releaseSlot) {
+        stringRedisTemplate.execute(
+                REVOKE_ADMISSION_SCRIPT,
+                List.of(CLASS_KEY_PREFIX + classId,
+                        studentClassesKey(semesterId, studentId),
+                        studentCoursesKey(semesterId, studentId)),
+                String.valueOf(classId),
+                String.valueOf(courseId),
+                releaseSlot ? "1" : "0");
+    }
+
+    /**
+     * Ghi classId/courseId vào membership set của SV và giữ slot cho enrollment đã
+     * ghi DB ngoài admission engine (Admin thêm SV). Gọi lại nhiều lần không giữ
+     * slot lần hai.
+     */
+    public void addEnrollment(Integer semesterId, Integer classId, Integer courseId, UUID studentId) {
+        stringRedisTemplate.execute(
+                GRANT_ADMISSION_SCRIPT,
+                List.of(CLASS_KEY_PREFIX + classId,
+                        studentClassesKey(semesterId, studentId),
+                        studentCoursesKey(semesterId, studentId)),
+                String.valueOf(classId),
+                String.valueOf(courseId));
+    }
+
+    /**
+     * Các lớp SV đang giữ chỗ trong semester theo membership set: gồm cả enrollment
+     * đã commit lẫn reservation write-behind chưa ghi DB.
+     */
+    public Set<Integer> getAdmittedClassIds(Integer semesterId, UUID studentId) {
+        Set<String> members = stringRedisTemplate.opsForSet().members(studentClassesKey(semesterId, studentId));
+        if (members == null || members.isEmpty()) {
+            return Set.of();
+        }
+        return members.stream().map(Integer::valueOf).collect(Collectors.toSet());
+    }
+
+    /**
+     * Hoàn tác admission {@link AdmissionResult#WAITLISTED}: gỡ SV khỏi hàng đợi và
+     * membership set.
+     */
+    public void revokeWaitlist(Integer semesterId, Integer classId, UUID studentId) {
+        stringRedisTemplate.opsForZSet().remove(WAITLIST_KEY_PREFIX + classId, studentId.toString());
+        stringRedisTemplate.opsForSet().remove(studentWaitlistKey(semesterId, studentId), String.valueOf(classId));
+    }
+
     // ===== Phase 5: Waitlist Management =====
 
+    /**
+     * SV được đôn khỏi hàng đợi cùng score (epoch millis lúc xếp hàng) đã đọc trước
+     * khi ZREM — đủ để xếp lại đúng vị trí nếu lượt đôn phải hoàn tác.
+     */
+    public record WaitlistEntry(UUID studentId, double score) {
+    }
+
     /**
      * Thêm sinh viên vào hàng đợi (ZSet). Score là thời gian hiện tại (ai đến trước
-     * xếp trước).
+     * xếp trước). Check sức chứa + ZADD chạy trong 1 Lua script.
      * 
-     * @return true nếu thêm thành công, false nếu hàng đợi đã đầy.
+     * @return true nếu thêm thành công, false nếu hàng đợi đã đầy hoặc SV đã có
+     *         trong hàng đợi.
      */
     public boolean joinWaitlist(Integer classId, UUID studentId) {
+        Long result = stringRedisTemplate.execute(
+                JOIN_WAITLIST_SCRIPT,
+                List.of(WAITLIST_KEY_PREFIX + classId),
+                studentId.toString(),
+                String.valueOf(System.currentTimeMillis()),
+                String.valueOf(MAX_WAITLIST));
+        return Long.valueOf(1L).equals(result);
+    }
+
+    /**
+     * Trả {@code releasedSlots} slot và lấp chỗ trống bằng SV đầu hàng đợi —
+     * atomic, nên hai replica cùng trả slot không thể đôn trùng một SV. Cũng dùng
+     * với {@code releasedSlots = 0} khi Admin tăng maxStudents.
+     *
+     * <p>
+     * SV được trả về đã giữ slot và có membership ENROLLED trên Redis; caller
+     * chuyển trạng thái DB và hoàn tác (removeEnrollment không trả slot rồi gọi lại
+     * hàm này) với SV không đôn được; nếu transaction DB rollback thì gọi
+     * {@link #restoreWaitlist} để xếp SV lại hàng đợi.
+     * </p>
+     *
+     * <p>
+     * Hàng đợi (tối đa {@value #MAX_WAITLIST} SV) được đọc trước để dựng key
+     * membership của từng ứng viên ở Java. Nếu còn chỗ mà hàng đợi vừa có SV mới
+     * xếp vào sau lần đọc, đọc lại (tối đa {@value #FILL_MAX_ROUNDS} lượt).
+     * </p>
+     *
+     * @return SV đã được đôn kèm score trong hàng đợi, rỗng nếu hàng đợi trống hoặc
+     *         lớp chưa cache
+     */
+    public List<WaitlistEntry> fillFromWaitlist(Integer semesterId, Integer classId, Integer courseId,
+            int releasedSlots) {
         String waitlistKey = WAITLIST_KEY_PREFIX + classId;
-        Long count = stringRedisTemplate.opsForZSet().zCard(waitlistKey);
-        if (count != null && count >= MAX_WAITLIST) {
-            return false;
+        List<WaitlistEntry> promoted = new ArrayList<>();
+        int released = releasedSlots;
+        for (int round = 0; round < FILL_MAX_ROUNDS; round++) {
+            Set<ZSetOperations.TypedTuple<String>> queued = stringRedisTemplate.opsForZSet()
+                    .rangeWithScores(waitlistKey, 0, -1);
+            Map<String, Double> scores = new LinkedHashMap<>();
+            if (queued != null) {
+                for (ZSetOperations.TypedTuple<String> tuple : queued) {
+                    scores.put(tuple.getValue(), tuple.getScore());
+                }
+            }
+            if (scores.isEmpty() && released == 0) {
+                break;
+            }
+
+            List<String> keys = new ArrayList<>(2 + scores.size() * 3);
+            keys.add(CLASS_KEY_PREFIX + classId);
+            keys.add(waitlistKey);
+            List<String> args = new ArrayList<>(3 + scores.size());
+            args.add(String.valueOf(released));
+            args.add(String.valueOf(classId));
+            args.add(String.valueOf(courseId));
+            for (String candidate : scores.keySet()) {
+                UUID studentId = UUID.fromString(candidate);
+                keys.add(studentWaitlistKey(semesterId, studentId));
+                keys.add(studentClassesKey(semesterId, studentId));
+                keys.add(studentCoursesKey(semesterId, studentId));
+                args.add(candidate);
+            }
+
+            List<?> result = stringRedisTemplate.execute(FILL_FROM_WAITLIST_SCRIPT, keys, args.toArray());
+            if (result == null || result.isEmpty()) {
+                break; // Lớp chưa cache
+            }
+            released = 0;
+            for (int i = 1; i < result.size(); i++) {
+                String candidate = result.get(i).toString();
+                Double score = scores.get(candidate);
+                promoted.add(new WaitlistEntry(UUID.fromString(candidate),
+                        score != null ? score : System.currentTimeMillis()));
+            }
+            long open = Long.parseLong(result.get(0).toString());
+            Long remaining = open > 0 ? stringRedisTemplate.opsForZSet().zCard(waitlistKey) : null;
+            if (remaining == null || remaining == 0) {
+                break;
+            }
         }
-        long score = System.currentTimeMillis();
-        return Boolean.TRUE.equals(stringRedisTemplate.opsForZSet().add(waitlistKey, studentId.toString(), score));
+        return promoted;
     }
 
     /**
-     * Bốc sinh viên đứng đầu dòng (có score nhỏ nhất) khỏi hàng đợi.
-     * Lệnh POP sẽ lấy ra và xóa khỏi ZSet.
+     * Hoàn tác {@link #fillFromWaitlist} cho các SV mà DB không ghi nhận được (DB
+     * rollback): gỡ membership ENROLLED, trả slot SV còn giữ, xếp SV lại hàng đợi
+     * với score cũ. SV đã bị gỡ membership (trùng lịch) chỉ được xếp lại hàng đợi.
      */
-    public UUID popWaitlist(Integer classId) {
-        String waitlistKey = WAITLIST_KEY_PREFIX + classId;
-        Set<String> set = stringRedisTemplate.opsForZSet().range(waitlistKey, 0, 0);
-        if (set != null && !set.isEmpty()) {
-            String studentIdStr = set.iterator().next();
-            stringRedisTemplate.opsForZSet().remove(waitlistKey, studentIdStr);
-            return UUID.fromString(studentIdStr);
+    public void restoreWaitlist(Integer semesterId, Integer classId, Integer courseId,
+            Collection<WaitlistEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
         }
-        return null;
+        List<String> keys = new ArrayList<>(2 + entries.size() * 3);
+        keys.add(CLASS_KEY_PREFIX + classId);
+        keys.add(WAITLIST_KEY_PREFIX + classId);
+        List<String> args = new ArrayList<>(2 + entries.size() * 2);
+        args.add(String.valueOf(classId));
+        args.add(String.valueOf(courseId));
+        for (WaitlistEntry entry : entries) {
+            keys.add(studentWaitlistKey(semesterId, entry.studentId()));
+            keys.add(studentClassesKey(semesterId, entry.studentId()));
+            keys.add(studentCoursesKey(semesterId, entry.studentId()));
+            args.add(entry.studentId().toString());
+            args.add(String.valueOf((long) entry.score()));
+        }
+        Long released = stringRedisTemplate.execute(RESTORE_WAITLIST_SCRIPT, keys, args.toArray());
+        log.info("Restored {} students to waitlist of class {} ({} slots released)", entries.size(), classId,
+                released);
     }
 
     /**
@@ -332,7 +1034,7 @@ public class ClassCacheService {
         boolean isPublished = semester != null && semester
                 .getEnrollmentStatus() == com.newwave.student_management.domains.profile.entity.EnrollmentStatus.PUBLISHED;
 
-        String semesterSetKey = SEMESTER_KEY_PREFIX + semesterId + ":classes";
+        String semesterSetKey = currentClassSetKey(semesterId);
         Set<String> classIds = stringRedisTemplate.opsForSet().members(semesterSetKey);
 
         if (!isPublished) {
@@ -421,33 +1123,114 @@ public class ClassCacheService {
 
     // ===== Helper methods =====
 
+    /**
+     * SET classId của generation đang active. Chưa có con trỏ (dữ liệu publish
+     * trước khi có generation) → đọc key cũ semester:{id}:classes.
+     */
+    private String currentClassSetKey(Integer semesterId) {
+        String generation = stringRedisTemplate.opsForValue().get(currentGenerationKey(semesterId));
+        return generation != null
+                ? classSetKey(semesterId, Long.parseLong(generation))
+                : legacyClassSetKey(semesterId);
+    }
+
+    private static String currentGenerationKey(Integer semesterId) {
+        return SEMESTER_KEY_PREFIX + semesterId + CURRENT_GENERATION_SUFFIX;
+    }
+
+    static String classSetKey(Integer semesterId, long generation) {
+        return SEMESTER_KEY_PREFIX + semesterId + ":v" + generation + ":classes";
+    }
+
+    static String departmentClassSetKey(Integer semesterId, long generation, String departmentId) {
+        return SEMESTER_KEY_PREFIX + semesterId + ":v" + generation + DEPT_KEY_INFIX + departmentId + ":classes";
+    }
+
+    static String legacyClassSetKey(Integer semesterId) {
+        return SEMESTER_KEY_PREFIX + semesterId + ":classes";
+    }
+
+    static String classKey(String classId) {
+        return CLASS_KEY_PREFIX + classId;
+    }
+
+    static String waitlistKey(String classId) {
+        return WAITLIST_KEY_PREFIX + classId;
+    }
+
+    private static String membersReadyKey(Integer semesterId) {
+        return SEMESTER_KEY_PREFIX + semesterId + MEMBERS_READY_SUFFIX;
+    }
+
+    private static String studentClassesKey(Integer semesterId, UUID studentId) {
+        return SEMESTER_KEY_PREFIX + semesterId + STUDENT_KEY_INFIX + studentId + ":classes";
+    }
+
+    private static String studentCoursesKey(Integer semesterId, UUID studentId) {
+        return SEMESTER_KEY_PREFIX + semesterId + STUDENT_KEY_INFIX + studentId + ":courses";
+    }
+
+    private static String studentWaitlistKey(Integer semesterId, UUID studentId) {
+        return SEMESTER_KEY_PREFIX + semesterId + STUDENT_KEY_INFIX + studentId + ":waitlist";
+    }
+
     private String getTeacherName(ScheduledClass sc) {
         if (sc.getTeacher() == null)
             return "N/A";
         return (sc.getTeacher().getFirstName() + " " + sc.getTeacher().getLastName()).trim();
     }
 
+    // ===== Phase 2: Read from cache =====
+
     /**
-     * Serialize sessions thành JSON string đơn giản để lưu vào Redis Hash.
-     * Format: "[{day:2,start:'08:00',end:'10:00',room:'A-101'}, ...]"
+     * currentSlot của các lớp thuộc khoa trong generation đang active. Mọi key
+     * được dựng ở Java từ giá trị đã đọc (không ghép key trong Lua): GET con trỏ
+     * generation → SMEMBERS index khoa → 1 pipeline HGET. Index rỗng trong khi
+     * con trỏ vừa đổi (generation cũ đã bị dọn) thì đọc lại một lần.
+     *
+     * @return mảng phẳng [classId, currentSlot, ...]; null nếu semester chưa publish
      */
-    private String serializeSessions(List<ClassSession> sessions) {
-        if (sessions == null || sessions.isEmpty())
-            return "[]";
+    private List<String> readDepartmentSlots(Integer semesterId, Integer departmentId) {
+        String generation = stringRedisTemplate.opsForValue().get(currentGenerationKey(semesterId));
+        if (generation == null) {
+            return null;
+        }
+        Set<String> classIds = stringRedisTemplate.opsForSet().members(
+                departmentClassSetKey(semesterId, Long.parseLong(generation), String.valueOf(departmentId)));
+        if (classIds == null || classIds.isEmpty()) {
+            String latest = stringRedisTemplate.opsForValue().get(currentGenerationKey(semesterId));
+            if (latest == null) {
+                return null;
+            }
+            if (latest.equals(generation)) {
+                return List.of();
+            }
+            classIds = stringRedisTemplate.opsForSet().members(
+                    departmentClassSetKey(semesterId, Long.parseLong(latest), String.valueOf(departmentId)));
+            if (classIds == null || classIds.isEmpty()) {
+                return List.of();
+            }
+        }
 
-        return "[" + sessions.stream()
-                .map(session -> String.format(
-                        "{\"dayOfWeek\":%d,\"startTime\":\"%s\",\"endTime\":\"%s\",\"roomName\":\"%s\",\"roomId\":%s}",
-                        session.getDayOfWeek(),
-                        session.getStartTime(),
-                        session.getEndTime(),
-                        session.getRoom() != null ? session.getRoom().getName() : "N/A",
-                        session.getRoom() != null ? session.getRoom().getRoomId() : "null"))
-                .collect(Collectors.joining(",")) + "]";
+        List<String> ids = new ArrayList<>(classIds);
+        List<Object> values = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = new DefaultStringRedisConnection(connection);
+            for (String classId : ids) {
+                conn.hGet(CLASS_KEY_PREFIX + classId, "currentSlot");
+            }
+            return null;
+        });
+        List<String> slots = new ArrayList<>(ids.size() * 2);
+        for (int i = 0; i < ids.size(); i++) {
+            Object value = values.get(i);
+            if (value != null) {
+                slots.add(ids.get(i));
+                slots.add(value.toString());
+            }
+        }
+        return slots;
     }
 
-    // ===== Phase 2: Read from cache =====
-
     /**
      * Đọc danh sách lớp available từ Redis cache.
      *
@@ -455,9 +1238,8 @@ public class ClassCacheService {
      * Flow:
      * </p>
      * <ol>
-     * <li>Lấy SET semester:{id}:classes → danh sách classId</li>
-     * <li>Với mỗi classId: HGETALL class:{id} → Hash data</li>
-     * <li>Filter theo departmentId của SV</li>
+     * <li>Đọc currentSlot các lớp của khoa (xem {@link #readDepartmentSlots}); phần
+     * bất biến của lớp lấy từ {@link ClassCatalogNearCache}</li>
      * <li>Loại bỏ lớp SV đã đăng ký (check enrollment DB — nhẹ vì chỉ 1 query
      * nhỏ)</li>
      * <li>Map thành StudentAvailableClassResponse</li>
@@ -471,11 +1253,11 @@ public class ClassCacheService {
     public List<com.newwave.student_management.domains.enrollment.dto.response.StudentAvailableClassResponse> getAvailableClassesFromCache(
             Integer semesterId, Integer departmentId, UUID studentId) {
 
-        String semesterSetKey = SEMESTER_KEY_PREFIX + semesterId + ":classes";
-        Set<String> classIds = stringRedisTemplate.opsForSet().members(semesterSetKey);
+        long readEpoch = nearCache.currentEpoch();
+        List<String> slots = readDepartmentSlots(semesterId, departmentId);
 
-        // Cache miss → return null để caller fallback về DB
-        if (classIds == null || classIds.isEmpty()) {
+        // Cache miss (semester chưa publish) → return null để caller fallback về DB
+        if (slots == null) {
             return null;
         }
 
@@ -485,27 +1267,48 @@ public class ClassCacheService {
 
         List<com.newwave.student_management.domains.enrollment.dto.response.StudentAvailableClassResponse> result = new ArrayList<>();
 
-        for (String classIdStr : classIds) {
-            String classKey = CLASS_KEY_PREFIX + classIdStr;
-            Map<Object, Object> data = stringRedisTemplate.opsForHash().entries(classKey);
-
-            if (data.isEmpty())
-                continue;
-
-            // Filter theo department
-            String classDeptId = (String) data.get("departmentId");
-            if (classDeptId == null || classDeptId.isEmpty())
-                continue;
-            if (!classDeptId.equals(String.valueOf(departmentId)))
-                continue;
-
+        List<String> missedClassIds = new ArrayList<>();
+        Map<String, Integer> missedSlots = new HashMap<>();
+        for (int i = 0; i + 1 < slots.size(); i += 2) {
+            int classId = Integer.parseInt(slots.get(i));
             // Skip lớp SV đã enrolled
-            int classId = Integer.parseInt((String) data.get("classId"));
             if (enrolledClassIds.contains(classId))
                 continue;
 
-            // Map Redis Hash → Response DTO
-            result.add(mapCacheToResponse(data));
+            int currentSlot = Integer.parseInt(slots.get(i + 1));
+            com.newwave.student_management.domains.enrollment.dto.response.StudentAvailableClassResponse response = nearCache
+                    .get(classId);
+            if (response != null) {
+                response.setCurrentStudents(currentSlot);
+                result.add(response);
+            } else {
+                missedClassIds.add(slots.get(i));
+                missedSlots.put(slots.get(i), currentSlot);
+            }
+        }
+
+        // Near cache miss → HGETALL các lớp còn thiếu trong 1 pipeline, dựng template
+        if (!missedClassIds.isEmpty()) {
+            List<Object> hashes = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = new DefaultStringRedisConnection(connection);
+                for (String classId : missedClassIds) {
+                    conn.hGetAll(CLASS_KEY_PREFIX + classId);
+                }
+                return null;
+            });
+            for (int i = 0; i < missedClassIds.size(); i++) {
+                @SuppressWarnings("unchecked")
+                Map<Object, Object> data = (Map<Object, Object>) hashes.get(i);
+                if (data == null || data.isEmpty())
+                    continue;
+                com.newwave.student_management.domains.enrollment.dto.response.StudentAvailableClassResponse template = mapCacheToResponse(
+                        data);
+                nearCache.put(template.getClassId(), template, readEpoch);
+                com.newwave.student_management.domains.enrollment.dto.response.StudentAvailableClassResponse response = template
+                        .toBuilder().build();
+                response.setCurrentStudents(missedSlots.get(missedClassIds.get(i)));
+                result.add(response);
+            }
         }
 
         log.debug("Cache hit for semester {}: returned {} available classes for student {}",
@@ -516,7 +1319,7 @@ public class ClassCacheService {
     /**
      * Map Redis Hash data → StudentAvailableClassResponse DTO.
      */
-    private com.newwave.student_management.domains.enrollment.dto.response.StudentAvailableClassResponse mapCacheToResponse(
+    static com.newwave.student_management.domains.enrollment.dto.response.StudentAvailableClassResponse mapCacheToResponse(
             Map<Object, Object> data) {
 
         return com.newwave.student_management.domains.enrollment.dto.response.StudentAvailableClassResponse.builder()
@@ -528,77 +1331,7 @@ public class ClassCacheService {
                 .maxStudents(Integer.parseInt((String) data.getOrDefault("maxSlot", "0")))
                 .currentStudents(Integer.parseInt((String) data.getOrDefault("currentSlot", "0")))
                 .status(com.newwave.student_management.domains.enrollment.entity.ScheduledClassStatus.OPEN)
-                .sessions(deserializeSessions((String) data.get("sessions")))
+                .sessions(ClassSessionCodec.decode((String) data.get("sessions")))
                 .build();
     }
-
-    /**
-     * Deserialize sessions JSON string từ Redis → List<ClassSessionResponse>.
-     * Input format:
-     * [{"dayOfWeek":2,"startTime":"08:00","endTime":"10:00","roomName":"A-101","roomId":1},
-     * ...]
-     */
-    private List<com.newwave.student_management.domains.enrollment.dto.response.ClassSessionResponse> deserializeSessions(
-            String sessionsJson) {
-
-        if (sessionsJson == null || sessionsJson.equals("[]")) {
-            return new ArrayList<>();
-        }
-
-        List<com.newwave.student_management.domains.enrollment.dto.response.ClassSessionResponse> result = new ArrayList<>();
-
-        // Simple JSON parsing (tránh phụ thuộc Jackson cho Redis value)
-        // Format: [{"dayOfWeek":2,"startTime":"08:00",...}, {...}]
-        String content = sessionsJson.substring(1, sessionsJson.length() - 1); // bỏ []
-        if (content.isEmpty())
-            return result;
-
-        // Split by "},{" pattern
-        String[] items = content.split("\\},\\{");
-        for (String item : items) {
-            String clean = item.replace("{", "").replace("}", "");
-
-            Integer dayOfWeek = null;
-            String startTime = null;
-            String endTime = null;
-            String roomName = null;
-            Integer roomId = null;
-
-            for (String pair : clean.split(",")) {
-                String[] kv = pair.split(":", 2);
-                if (kv.length != 2)
-                    continue;
-                String key = kv[0].replace("\"", "").trim();
-                String val = kv[1].replace("\"", "").trim();
-
-                switch (key) {
-                    case "dayOfWeek":
-                        dayOfWeek = Integer.parseInt(val);
-                        break;
-                    case "startTime":
-                        startTime = val;
-                        break;
-                    case "endTime":
-                        endTime = val;
-                        break;
-                    case "roomName":
-                        roomName = val;
-                        break;
-                    case "roomId":
-                        if (!"null".equals(val))
-                            roomId = Integer.parseInt(val);
-                        break;
-                }
-            }
-
-            result.add(com.newwave.student_management.domains.enrollment.dto.response.ClassSessionResponse.builder()
-                    .dayOfWeek(dayOfWeek)
-                    .startTime(startTime != null ? java.time.LocalTime.parse(startTime) : null)
-                    .endTime(endTime != null ? java.time.LocalTime.parse(endTime) : null)
-                    .roomName(roomName)
-                    .roomId(roomId)
-                    .build());
-        }
-        return result;
-    }
 }
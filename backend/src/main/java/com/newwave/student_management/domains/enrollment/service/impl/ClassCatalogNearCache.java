@@ -0,0 +1,153 @@
+package com.newwave.student_management.domains.enrollment.service.impl;
+
+import com.newwave.student_management.domains.enrollment.dto.response.StudentAvailableClassResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Near cache trong JVM cho phần bất biến của lớp học (course, teacher, sessions,
+ * maxSlot) dưới dạng template {@link StudentAvailableClassResponse} đã parse
+ * sẵn. Listing chỉ còn đọc currentSlot từ Redis.
+ *
+ * <p>
+ * Khi Admin sửa/xóa lớp hoặc semester được publish lại, một message được phát
+ * lên kênh {@value #INVALIDATION_CHANNEL} (payload = classId hoặc "*") để mọi
+ * replica bỏ template cũ.
+ * </p>
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ClassCatalogNearCache implements MessageListener {
+
+    public static final String INVALIDATION_CHANNEL = "enrollment:class-catalog:invalidate";
+    private static final String INVALIDATE_ALL = "*";
+    private static final String METRIC_NAME = "enrollment.class_catalog.near_cache";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectProvider<RedisMessageListenerContainer> listenerContainer;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${enrollment.near-cache.max-entries:5000}")
+    private int maxEntries;
+
+    /**
+     * Tăng mỗi lần invalidate — template đọc từ Redis trước một lần invalidate
+     * không được put vào cache (tránh ghi đè bản mới bằng bản cũ).
+     */
+    private final AtomicLong epoch = new AtomicLong();
+
+    private final Map<Integer, StudentAvailableClassResponse> templates = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, StudentAvailableClassResponse> eldest) {
+            if (size() > maxEntries) {
+                meterRegistry.counter(METRIC_NAME, "result", "eviction").increment();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void subscribe() {
+        meterRegistry.gauge(METRIC_NAME + ".size", templates, Map::size);
+        RedisMessageListenerContainer container = listenerContainer.getIfAvailable();
+        if (container == null) {
+            log.warn("No Redis listener container; class catalog near cache invalidation is local only");
+            return;
+        }
+        container.addMessageListener(this, new ChannelTopic(INVALIDATION_CHANNEL));
+    }
+
+    public long currentEpoch() {
+        return epoch.get();
+    }
+
+    /**
+     * @return bản sao template (caller tự set currentStudents), null nếu miss
+     */
+    public StudentAvailableClassResponse get(Integer classId) {
+        StudentAvailableClassResponse template;
+        synchronized (templates) {
+            template = templates.get(classId);
+        }
+        meterRegistry.counter(METRIC_NAME, "result", template != null ? "hit" : "miss").increment();
+        return template != null ? template.toBuilder().build() : null;
+    }
+
+    /**
+     * Lưu template nếu không có invalidate nào xảy ra kể từ {@code readEpoch}.
+     */
+    public void put(Integer classId, StudentAvailableClassResponse template, long readEpoch) {
+        synchronized (templates) {
+            if (epoch.get() == readEpoch) {
+                templates.put(classId, template);
+            }
+        }
+    }
+
+    /**
+     * Bỏ template của 1 lớp trên mọi replica.
+     */
+    public void publishInvalidation(Integer classId) {
+        publish(String.valueOf(classId));
+    }
+
+    /**
+     * Bỏ toàn bộ template trên mọi replica (re-publish / đóng đăng ký).
+     */
+    public void publishInvalidateAll() {
+        publish(INVALIDATE_ALL);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        invalidateLocal(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    private void publish(String payload) {
+        invalidateLocal(payload);
+        try {
+            stringRedisTemplate.convertAndSend(INVALIDATION_CHANNEL, payload);
+        } catch (Exception ex) {
+            log.warn("Failed to publish class catalog invalidation {}: {}", payload, ex.getMessage());
+        }
+    }
+
+    private void invalidateLocal(String payload) {
+        int removed;
+        synchronized (templates) {
+            epoch.incrementAndGet();
+            if (INVALIDATE_ALL.equals(payload)) {
+                removed = templates.size();
+                templates.clear();
+            } else {
+                try {
+                    removed = templates.remove(Integer.valueOf(payload)) != null ? 1 : 0;
+                } catch (NumberFormatException ex) {
+                    log.warn("Ignoring malformed class catalog invalidation: {}", payload);
+                    return;
+                }
+            }
+        }
+        if (removed > 0) {
+            meterRegistry.counter(METRIC_NAME, "result", "invalidation").increment(removed);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.newwave.student_management.domains.enrollment.service.impl;
+
+import com.newwave.student_management.domains.notification.service.NotificationInternalService;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.DefaultStringRedisConnection;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Khóa lớp và dồn lớp khi hết hạn đăng ký: lớp OPEN đủ minStudents → LOCKED,
+ * thiếu → CANCELLED, mọi enrollment còn hiệu lực của lớp bị hủy → DROPPED và
+ * SV nhận thông báo.
+ *
+ * <p>
+ * Chạy theo chunk {@code enrollment.consolidation.chunk-size} lớp (duyệt theo
+ * classId tăng dần), mỗi chunk một transaction riêng: 1 query đếm ENROLLED
+ * group theo lớp, 1 UPDATE cho lớp LOCKED, 1 UPDATE cho lớp CANCELLED, 1 UPDATE
+ * DROPPED cho enrollment của các lớp bị hủy, rồi 1 lượt fan-out thông báo cho
+ * mỗi lớp bị hủy. Không transaction nào giữ khóa lâu hơn một chunk.
+ * </p>
+ *
+ * <p>
+ * Tiến độ lưu ở Redis để xem và chạy tiếp sau khi crash:
+ * </p>
+ *
+ * <pre>
+ * semester:{semesterId}:consolidation → HASH {status (RUNNING|DONE), lastClassId,
+ *                                             locked, cancelled, dropped, startedAt, finishedAt}
+ * </pre>
+ *
+ * Các UPDATE chỉ đổi lớp còn OPEN ({@code RETURNING}) nên chạy lại một chunk,
+ * hay hai replica chạy cùng lúc, không hủy lớp hoặc gửi thông báo hai lần.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ClassConsolidationService {
+
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_DONE = "DONE";
+
+    private static final String PROGRESS_KEY_PREFIX = "semester:";
+    private static final String PROGRESS_KEY_SUFFIX = ":consolidation";
+    private static final long PROGRESS_TTL_SECONDS = 30L * 24 * 60 * 60;
+    private static final String METRIC_NAME = "enrollment.consolidation";
+
+    private static final String SELECT_CHUNK_SQL = "SELECT sc.class_id, sc.min_students, c.code, c.name, "
+            + "COUNT(e.enrollment_id) AS enrolled "
+            + "FROM scheduled_classes sc "
+            + "JOIN courses c ON c.course_id = sc.course_id "
+            + "LEFT JOIN enrollments e ON e.class_id = sc.class_id AND e.status = 'ENROLLED' "
+            + "AND e.deleted_at IS NULL "
+            + "WHERE sc.semester_id = ? AND sc.status = 'OPEN' AND sc.deleted_at IS NULL AND sc.class_id > ? "
+            + "GROUP BY sc.class_id, c.course_id "
+            + "ORDER BY sc.class_id "
+            + "LIMIT ?";
+    private static final String UPDATE_CLASS_PREFIX = "UPDATE scheduled_classes SET status = ?, updated_at = now() "
+            + "WHERE status = 'OPEN' AND class_id IN (";
+    private static final String UPDATE_CLASS_SUFFIX = ") RETURNING class_id";
+    private static final String DROP_ENROLLMENTS_PREFIX = "UPDATE enrollments e SET status = 'DROPPED', "
+            + "updated_at = now() FROM students s "
+            + "WHERE s.student_id = e.student_id AND e.status <> 'DROPPED' AND e.deleted_at IS NULL "
+            + "AND e.class_id IN (";
+    private static final String DROP_ENROLLMENTS_SUFFIX = ") RETURNING e.class_id, s.user_id";
+
+    private static final String CANCELLED_ACTION_URL = "/student/courses";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final NotificationInternalService notificationInternalService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${enrollment.consolidation.chunk-size:200}")
+    private int chunkSize;
+
+    private record ClassRow(Integer classId, Integer minStudents, String courseCode, String courseName,
+            long enrolled) {
+    }
+
+    private record ChunkResult(int scanned, Integer lastClassId, int locked, int cancelled, int dropped) {
+    }
+
+    /**
+     * Đánh dấu semester cần dồn lớp trước khi đóng đăng ký, để nếu tiến trình
+     * chết giữa chừng thì {@link #isPending} vẫn thấy và chạy tiếp.
+     */
+    public void markPending(Integer semesterId) {
+        try {
+            String key = progressKey(semesterId);
+            if (!STATUS_RUNNING.equals(stringRedisTemplate.opsForHash().get(key, "status"))) {
+                resetProgress(key);
+            }
+        } catch (Exception ex) {
+            log.warn("Failed to mark consolidation pending for semester {}: {}", semesterId, ex.getMessage());
+        }
+    }
+
+    /**
+     * @return true nếu lần dồn lớp gần nhất của semester chưa chạy xong
+     */
+    public boolean isPending(Integer semesterId) {
+        try {
+            return STATUS_RUNNING.equals(stringRedisTemplate.opsForHash().get(progressKey(semesterId), "status"));
+        } catch (Exception ex) {
+            log.warn("Failed to read consolidation progress for semester {}: {}", semesterId, ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Dồn lớp cho semester. Chạy tiếp từ lastClassId nếu lần trước dừng giữa
+     * chừng. Không được gọi trong transaction của caller — mỗi chunk tự commit.
+     */
+    public void consolidate(Integer semesterId) {
+        String key = progressKey(semesterId);
+        Integer lastClassId = resumePoint(key);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        int locked = 0;
+        int cancelled = 0;
+        int dropped = 0;
+        while (true) {
+            Integer after = lastClassId;
+            ChunkResult chunk = transactionTemplate.execute(status -> processChunk(semesterId, after));
+            if (chunk == null || chunk.scanned() == 0) {
+                break;
+            }
+            lastClassId = chunk.lastClassId();
+            locked += chunk.locked();
+            cancelled += chunk.cancelled();
+            dropped += chunk.dropped();
+            recordProgress(key, chunk);
+            if (chunk.scanned() < chunkSize) {
+                break;
+            }
+        }
+
+        finishProgress(key);
+        log.info("Consolidated semester {}: {} classes locked, {} cancelled, {} enrollments dropped",
+                semesterId, locked, cancelled, dropped);
+    }
+
+    private ChunkResult processChunk(Integer semesterId, Integer afterClassId) {
+        List<ClassRow> rows = jdbcTemplate.query(SELECT_CHUNK_SQL,
+                (rs, rowNum) -> new ClassRow(rs.getInt(1), (Integer) rs.getObject(2), rs.getString(3),
+                        rs.getString(4), rs.getLong(5)),
+                semesterId, afterClassId, chunkSize);
+        if (rows.isEmpty()) {
+            return new ChunkResult(0, afterClassId, 0, 0, 0);
+        }
+
+        List<Integer> toLock = new ArrayList<>();
+        List<Integer> toCancel = new ArrayList<>();
+        Map<Integer, ClassRow> byId = new HashMap<>();
+        for (ClassRow row : rows) {
+            byId.put(row.classId(), row);
+            if (row.minStudents() != null && row.enrolled() < row.minStudents()) {
+                toCancel.add(row.classId());
+            } else {
+                toLock.add(row.classId());
+            }
+        }
+
+        List<Integer> locked = updateClassStatus(toLock, "LOCKED");
+        List<Integer> cancelled = updateClassStatus(toCancel, "CANCELLED");
+        Map<Integer, List<UUID>> recipients = dropEnrollments(cancelled);
+
+        for (Integer classId : cancelled) {
+            ClassRow row = byId.get(classId);
+            log.info("Class {} has been CANCELLED due to low enrollment {}/{}",
+                    classId, row.enrolled(), row.minStudents());
+            List<UUID> userIds = recipients.getOrDefault(classId, List.of());
+            notificationInternalService.sendToUsers(userIds,
+                    "Lớp " + row.courseCode() + " bị hủy",
+                    "Lớp học phần " + row.courseName() + " (" + row.courseCode()
+                            + ") mà bạn đã đăng ký đã bị hủy do không đạt số lượng sinh viên tối thiểu. "
+                            + "Vui lòng đăng ký lớp học phần khác.",
+                    CANCELLED_ACTION_URL,
+                    "Class cancelled: " + row.courseCode() + " (#" + classId + ")");
+        }
+
+        int droppedCount = recipients.values().stream().mapToInt(List::size).sum();
+        meterRegistry.counter(METRIC_NAME + ".classes", "result", "locked").increment(locked.size());
+        meterRegistry.counter(METRIC_NAME + ".classes", "result", "cancelled").increment(cancelled.size());
+        meterRegistry.counter(METRIC_NAME + ".dropped").increment(droppedCount);
+        return new ChunkResult(rows.size(), rows.get(rows.size() - 1).classId(), locked.size(), cancelled.size(),
+                droppedCount);
+    }
+
+    /**
+     * @return classId thực sự được chuyển từ OPEN sang {@code status}
+     */
+    private List<Integer> updateClassStatus(List<Integer> classIds, String status) {
+        if (classIds.isEmpty()) {
+            return List.of();
+        }
+        String sql = UPDATE_CLASS_PREFIX
+                + String.join(", ", Collections.nCopies(classIds.size(), "?"))
+                + UPDATE_CLASS_SUFFIX;
+        List<Object> args = new ArrayList<>(classIds.size() + 1);
+        args.add(status);
+        args.addAll(classIds);
+        return jdbcTemplate.queryForList(sql, Integer.class, args.toArray());
+    }
+
+    /**
+     * Hủy mọi enrollment còn hiệu lực (ENROLLED, WAITLISTED) của các lớp bị hủy.
+     *
+     * @return userId của SV bị ảnh hưởng, theo classId
+     */
+    private Map<Integer, List<UUID>> dropEnrollments(List<Integer> classIds) {
+        if (classIds.isEmpty()) {
+            return Map.of();
+        }
+        String sql = DROP_ENROLLMENTS_PREFIX
+                + String.join(", ", Collections.nCopies(classIds.size(), "?"))
+                + DROP_ENROLLMENTS_SUFFIX;
+        Map<Integer, List<UUID>> recipients = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            UUID userId = rs.getObject(2, UUID.class);
+            if (userId != null) {
+                recipients.computeIfAbsent(rs.getInt(1), id -> new ArrayList<>()).add(userId);
+            }
+        }, classIds.toArray());
+        return recipients;
+    }
+
+    private Integer resumePoint(String key) {
+        try {
+            Map<Object, Object> progress = stringRedisTemplate.opsForHash().entries(key);
+            if (STATUS_RUNNING.equals(progress.get("status")) && progress.get("lastClassId") != null) {
+                return Integer.valueOf((String) progress.get("lastClassId"));
+            }
+            resetProgress(key);
+        } catch (Exception ex) {
+            log.warn("Failed to read consolidation progress {}: {}", key, ex.getMessage());
+        }
+        return 0;
+    }
+
+    private void resetProgress(String key) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put("status", STATUS_RUNNING);
+        fields.put("lastClassId", "0");
+        fields.put("locked", "0");
+        fields.put("cancelled", "0");
+        fields.put("dropped", "0");
+        fields.put("startedAt", LocalDateTime.now().toString());
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = new DefaultStringRedisConnection(connection);
+            conn.del(key);
+            conn.hMSet(key, fields);
+            conn.expire(key, PROGRESS_TTL_SECONDS);
+            return null;
+        });
+    }
+
+    private void recordProgress(String key, ChunkResult chunk) {
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = new DefaultStringRedisConnection(connection);
+                conn.hSet(key, "lastClassId", String.valueOf(chunk.lastClassId()));
+                conn.hIncrBy(key, "locked", chunk.locked());
+                conn.hIncrBy(key, "cancelled", chunk.cancelled());
+                conn.hIncrBy(key, "dropped", chunk.dropped());
+                return null;
+            });
+        } catch (Exception ex) {
+            log.warn("Failed to record consolidation progress {}: {}", key, ex.getMessage());
+        }
+    }
+
+    private void finishProgress(String key) {
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = new DefaultStringRedisConnection(connection);
+                conn.hSet(key, "status", STATUS_DONE);
+                conn.hSet(key, "finishedAt", LocalDateTime.now().toString());
+                conn.expire(key, PROGRESS_TTL_SECONDS);
+                return null;
+            });
+        } catch (Exception ex) {
+            log.warn("Failed to record consolidation progress {}: {}", key, ex.getMessage());
+        }
+    }
+
+    private static String progressKey(Integer semesterId) {
+        return PROGRESS_KEY_PREFIX + semesterId + PROGRESS_KEY_SUFFIX;
+    }
+}
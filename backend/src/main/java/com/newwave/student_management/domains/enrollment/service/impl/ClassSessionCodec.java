@@ -0,0 +1,210 @@
+package com.newwave.student_management.domains.enrollment.service.impl;
+
+import com.newwave.student_management.domains.enrollment.dto.response.ClassSessionResponse;
+import com.newwave.student_management.domains.enrollment.entity.ClassSession;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Mã hóa field {@code sessions} của hash {@code class:{classId}} trên Redis.
+ *
+ * <h3>Định dạng</h3>
+ *
+ * <pre>
+ * "[{...},{...}]"   → JSON cũ (LEGACY) — vẫn đọc được trong thời gian rollout
+ * "~" + base64url   → BINARY, layout:
+ *   byte  version (= 1)
+ *   short số session
+ *   mỗi session:
+ *     byte  dayOfWeek
+ *     int   startTime (giây trong ngày)
+ *     int   endTime   (giây trong ngày)
+ *     int   roomId    (-1 = không có phòng)
+ *     short độ dài roomName UTF-8 (-1 = null) + bytes
+ * </pre>
+ *
+ * Decode đọc thẳng từ ByteBuffer — không split/regex, không parse chuỗi giờ,
+ * và tên phòng chứa dấu phẩy/hai chấm/ngoặc kép không còn làm hỏng dữ liệu.
+ */
+public final class ClassSessionCodec {
+
+    /** Cách ghi sessions lên Redis; đọc luôn hỗ trợ cả hai. */
+    public enum Encoding {
+        LEGACY, BINARY
+    }
+
+    private static final char BINARY_MARKER = '~';
+    private static final byte BINARY_VERSION = 1;
+    private static final String NO_ROOM_NAME = "N/A";
+
+    private ClassSessionCodec() {
+    }
+
+    public static String encode(List<ClassSession> sessions, Encoding encoding) {
+        return encoding == Encoding.BINARY ? encodeBinary(sessions) : encodeLegacy(sessions);
+    }
+
+    public static String encodeBinary(List<ClassSession> sessions) {
+        int count = sessions != null ? sessions.size() : 0;
+        byte[][] names = new byte[count][];
+        int size = 1 + 2;
+        for (int i = 0; i < count; i++) {
+            ClassSession session = sessions.get(i);
+            String roomName = session.getRoom() != null ? session.getRoom().getName() : NO_ROOM_NAME;
+            names[i] = roomName != null ? roomName.getBytes(StandardCharsets.UTF_8) : null;
+            size += 1 + 4 + 4 + 4 + 2 + (names[i] != null ? names[i].length : 0);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(BINARY_VERSION);
+        buffer.putShort((short) count);
+        for (int i = 0; i < count; i++) {
+            ClassSession session = sessions.get(i);
+            buffer.put(session.getDayOfWeek() != null ? session.getDayOfWeek().byteValue() : -1);
+            buffer.putInt(session.getStartTime() != null ? session.getStartTime().toSecondOfDay() : -1);
+            buffer.putInt(session.getEndTime() != null ? session.getEndTime().toSecondOfDay() : -1);
+            buffer.putInt(session.getRoom() != null && session.getRoom().getRoomId() != null
+                    ? session.getRoom().getRoomId()
+                    : -1);
+            if (names[i] == null) {
+                buffer.putShort((short) -1);
+            } else {
+                buffer.putShort((short) names[i].length);
+                buffer.put(names[i]);
+            }
+        }
+        return BINARY_MARKER + Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    /**
+     * Định dạng JSON cũ: "[{day:2,start:'08:00',end:'10:00',room:'A-101'}, ...]".
+     */
+    public static String encodeLegacy(List<ClassSession> sessions) {
+        if (sessions == null || sessions.isEmpty())
+            return "[]";
+
+        return "[" + sessions.stream()
+                .map(session -> String.format(
+                        "{\"dayOfWeek\":%d,\"startTime\":\"%s\",\"endTime\":\"%s\",\"roomName\":\"%s\",\"roomId\":%s}",
+                        session.getDayOfWeek(),
+                        session.getStartTime(),
+                        session.getEndTime(),
+                        session.getRoom() != null ? session.getRoom().getName() : NO_ROOM_NAME,
+                        session.getRoom() != null ? session.getRoom().getRoomId() : "null"))
+                .collect(Collectors.joining(",")) + "]";
+    }
+
+    /**
+     * Decode cả hai định dạng (nhận diện qua ký tự đầu).
+     */
+    public static List<ClassSessionResponse> decode(String value) {
+        if (value == null || value.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return value.charAt(0) == BINARY_MARKER ? decodeBinary(value) : decodeLegacy(value);
+    }
+
+    private static List<ClassSessionResponse> decodeBinary(String value) {
+        ByteBuffer buffer = ByteBuffer.wrap(Base64.getUrlDecoder().decode(value.substring(1)));
+        byte version = buffer.get();
+        if (version != BINARY_VERSION) {
+            throw new IllegalArgumentException("Unsupported session encoding version: " + version);
+        }
+        int count = buffer.getShort();
+        List<ClassSessionResponse> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte dayOfWeek = buffer.get();
+            int start = buffer.getInt();
+            int end = buffer.getInt();
+            int roomId = buffer.getInt();
+            int nameLength = buffer.getShort();
+            String roomName = null;
+            if (nameLength >= 0) {
+                roomName = new String(buffer.array(), buffer.position(), nameLength, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + nameLength);
+            }
+            result.add(ClassSessionResponse.builder()
+                    .dayOfWeek(dayOfWeek >= 0 ? (int) dayOfWeek : null)
+                    .startTime(start >= 0 ? LocalTime.ofSecondOfDay(start) : null)
+                    .endTime(end >= 0 ? LocalTime.ofSecondOfDay(end) : null)
+                    .roomName(roomName)
+                    .roomId(roomId >= 0 ? roomId : null)
+                    .build());
+        }
+        return result;
+    }
+
+    /**
+     * Parser của định dạng JSON cũ.
+     * Input format:
+     * [{"dayOfWeek":2,"startTime":"08:00","endTime":"10:00","roomName":"A-101","roomId":1},
+     * ...]
+     */
+    public static List<ClassSessionResponse> decodeLegacy(String sessionsJson) {
+        if (sessionsJson == null || sessionsJson.equals("[]")) {
+            return new ArrayList<>();
+        }
+
+        List<ClassSessionResponse> result = new ArrayList<>();
+
+        // Simple JSON parsing (tránh phụ thuộc Jackson cho Redis value)
+        // Format: [{"dayOfWeek":2,"startTime":"08:00",...}, {...}]
+        String content = sessionsJson.substring(1, sessionsJson.length() - 1); // bỏ []
+        if (content.isEmpty())
+            return result;
+
+        // Split by "},{" pattern
+        String[] items = content.split("\\},\\{");
+        for (String item : items) {
+            String clean = item.replace("{", "").replace("}", "");
+
+            Integer dayOfWeek = null;
+            String startTime = null;
+            String endTime = null;
+            String roomName = null;
+            Integer roomId = null;
+
+            for (String pair : clean.split(",")) {
+                String[] kv = pair.split(":", 2);
+                if (kv.length != 2)
+                    continue;
+                String key = kv[0].replace("\"", "").trim();
+                String val = kv[1].replace("\"", "").trim();
+
+                switch (key) {
+                    case "dayOfWeek":
+                        dayOfWeek = Integer.parseInt(val);
+                        break;
+                    case "startTime":
+                        startTime = val;
+                        break;
+                    case "endTime":
+                        endTime = val;
+                        break;
+                    case "roomName":
+                        roomName = val;
+                        break;
+                    case "roomId":
+                        if (!"null".equals(val))
+                            roomId = Integer.parseInt(val);
+                        break;
+                }
+            }
+
+            result.add(ClassSessionResponse.builder()
+                    .dayOfWeek(dayOfWeek)
+                    .startTime(startTime != null ? LocalTime.parse(startTime) : null)
+                    .endTime(endTime != null ? LocalTime.parse(endTime) : null)
+                    .roomName(roomName)
+                    .roomId(roomId)
+                    .build());
+        }
+        return result;
+    }
+}
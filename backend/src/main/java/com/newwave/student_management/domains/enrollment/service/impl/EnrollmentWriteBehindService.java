@@ -0,0 +1,348 @@
+package com.newwave.student_management.domains.enrollment.service.impl;
+
+import com.newwave.student_management.common.exception.AppException;
+import com.newwave.student_management.common.exception.ErrorCode;
+import com.newwave.student_management.common.util.TransactionHooks;
+import com.newwave.student_management.domains.enrollment.dto.response.EnrollmentReservationResponse;
+import com.newwave.student_management.domains.enrollment.event.EnrollmentCommitEvent;
+import com.newwave.student_management.domains.enrollment.service.EnrollmentCommitProducer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.DefaultStringRedisConnection;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Write-behind cho đăng ký tín chỉ (opt-in qua
+ * {@code enrollment.async-commit.enabled}).
+ *
+ * <p>
+ * Khi bật, request đăng ký chỉ chờ admission engine trên Redis: suất đã giữ
+ * được đẩy vào {@code enrollment-commit-topic} và trả về reservationId ngay.
+ * {@link com.newwave.student_management.domains.enrollment.service.EnrollmentCommitConsumer}
+ * gom batch và ghi xuống bảng enrollments bằng một câu INSERT nhiều dòng.
+ * Sinh viên poll trạng thái qua reservationId.
+ *
+ * <pre>
+ * enroll:reservation:{reservationId} → HASH {status, studentId, classId, message} (TTL 24h)
+ * enroll:pending:{classId}           → ZSET reservationId chưa ghi DB (score = lúc submit)
+ * </pre>
+ *
+ * Nếu một dòng không ghi được, slot và membership trên Redis được trả lại
+ * (revokeAdmission) để bộ đếm khớp với DB.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EnrollmentWriteBehindService {
+
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_ENROLLED = "ENROLLED";
+    public static final String STATUS_FAILED = "FAILED";
+
+    private static final String RESERVATION_KEY_PREFIX = "enroll:reservation:";
+    private static final String PENDING_KEY_PREFIX = "enroll:pending:";
+    private static final long RESERVATION_TTL_SECONDS = 24 * 60 * 60;
+
+    private static final String INSERT_PREFIX = "INSERT INTO enrollments "
+            + "(student_id, class_id, enrollment_date, status, reservation_id, created_at, updated_at) VALUES ";
+    private static final String INSERT_ROW = "(?, ?, ?, 'ENROLLED', ?, now(), now())";
+    // Dòng DROPPED cũ (SV hủy rồi đăng ký lại) được kích hoạt lại; dòng ENROLLED/
+    // WAITLISTED còn sống thì bỏ qua → không có trong RETURNING → trùng, trừ khi
+    // chính reservation này đã ghi dòng đó (xem findCommittedReservations).
+    private static final String INSERT_SUFFIX = " ON CONFLICT (student_id, class_id) DO UPDATE "
+            + "SET status = 'ENROLLED', enrollment_date = EXCLUDED.enrollment_date, "
+            + "reservation_id = EXCLUDED.reservation_id, updated_at = now(), deleted_at = NULL "
+            + "WHERE enrollments.status = 'DROPPED' OR enrollments.deleted_at IS NOT NULL "
+            + "RETURNING student_id, class_id";
+    private static final String SELECT_COMMITTED_SQL = "SELECT reservation_id FROM enrollments "
+            + "WHERE reservation_id = ANY(?)";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final ClassCacheService classCacheService;
+    private final EnrollmentCommitProducer enrollmentCommitProducer;
+
+    @Value("${enrollment.async-commit.enabled:false}")
+    private boolean enabled;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Ghi nhận một suất đã được admission engine giữ chỗ (ADMITTED) và đẩy sang
+     * consumer sau khi transaction hiện tại commit.
+     *
+     * @return reservationId để sinh viên poll trạng thái
+     */
+    public String submit(Integer semesterId, Integer classId, Integer courseId, UUID studentId) {
+        String reservationId = UUID.randomUUID().toString();
+        String key = RESERVATION_KEY_PREFIX + reservationId;
+        Map<String, String> fields = new HashMap<>();
+        fields.put("status", STATUS_PENDING);
+        fields.put("studentId", studentId.toString());
+        fields.put("classId", String.valueOf(classId));
+
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = new DefaultStringRedisConnection(connection);
+            conn.hMSet(key, fields);
+            conn.expire(key, RESERVATION_TTL_SECONDS);
+            conn.zAdd(PENDING_KEY_PREFIX + classId, System.currentTimeMillis(), reservationId);
+            return null;
+        });
+
+        EnrollmentCommitEvent event = EnrollmentCommitEvent.builder()
+                .reservationId(reservationId)
+                .studentId(studentId)
+                .classId(classId)
+                .semesterId(semesterId)
+                .courseId(courseId)
+                .enrollmentDate(LocalDate.now())
+                .build();
+
+        TransactionHooks.afterCommit(() -> publish(event),
+                () -> reject(event, "Enrollment request was rolled back"));
+        return reservationId;
+    }
+
+    /**
+     * Số reservation đã giữ slot trên Redis nhưng chưa ghi DB, theo lớp. Entry
+     * quá TTL của reservation (consumer crash, không bao giờ báo kết quả) bị dọn
+     * luôn trong lần đọc.
+     */
+    public Map<Integer, Long> countPending(Collection<Integer> classIds) {
+        List<Integer> ids = List.copyOf(classIds);
+        long expiredBefore = System.currentTimeMillis() - RESERVATION_TTL_SECONDS * 1000;
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = new DefaultStringRedisConnection(connection);
+            for (Integer classId : ids) {
+                conn.zRemRangeByScore(PENDING_KEY_PREFIX + classId, 0, expiredBefore);
+                conn.zCard(PENDING_KEY_PREFIX + classId);
+            }
+            return null;
+        });
+        Map<Integer, Long> pending = new HashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            Object count = results.get(i * 2 + 1);
+            if (count instanceof Long n && n > 0) {
+                pending.put(ids.get(i), n);
+            }
+        }
+        return pending;
+    }
+
+    public EnrollmentReservationResponse getReservation(String reservationId, UUID studentId) {
+        Map<Object, Object> fields = stringRedisTemplate.opsForHash()
+                .entries(RESERVATION_KEY_PREFIX + reservationId);
+        if (fields.isEmpty() || !studentId.toString().equals(fields.get("studentId"))) {
+            throw new AppException(ErrorCode.ENROLLMENT_RESERVATION_NOT_FOUND);
+        }
+        return EnrollmentReservationResponse.builder()
+                .reservationId(reservationId)
+                .classId(Integer.valueOf((String) fields.get("classId")))
+                .status((String) fields.get("status"))
+                .message((String) fields.get("message"))
+                .build();
+    }
+
+    /**
+     * Ghi một batch reservation xuống DB. Bỏ qua reservation đã xử lý (Kafka
+     * redeliver), thử một câu INSERT nhiều dòng, nếu cả câu lỗi thì ghi lại từng
+     * dòng để cô lập dòng hỏng.
+     */
+    public void commitBatch(List<EnrollmentCommitEvent> events) {
+        List<EnrollmentCommitEvent> pending = filterPending(events);
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        // Trùng (student, class) trong cùng batch → ON CONFLICT không xử lý được
+        // 2 lần trong 1 câu lệnh, tách ra xử lý như đăng ký trùng.
+        Map<String, EnrollmentCommitEvent> unique = new LinkedHashMap<>();
+        List<EnrollmentCommitEvent> duplicates = new ArrayList<>();
+        for (EnrollmentCommitEvent event : pending) {
+            if (unique.putIfAbsent(rowKey(event.getStudentId(), event.getClassId()), event) != null) {
+                duplicates.add(event);
+            }
+        }
+
+        List<EnrollmentCommitEvent> rows = new ArrayList<>(unique.values());
+        Set<String> inserted = new HashSet<>();
+        List<EnrollmentCommitEvent> failed = new ArrayList<>();
+        try {
+            inserted.addAll(insertRows(rows));
+        } catch (DataAccessException ex) {
+            log.warn("Batch insert of {} enrollments failed, retrying row by row: {}", rows.size(),
+                    ex.getMessage());
+            for (EnrollmentCommitEvent row : rows) {
+                try {
+                    inserted.addAll(insertRows(List.of(row)));
+                } catch (DataAccessException rowEx) {
+                    log.error("Failed to persist reservation {} (student {}, class {}): {}",
+                            row.getReservationId(), row.getStudentId(), row.getClassId(), rowEx.getMessage());
+                    failed.add(row);
+                }
+            }
+        }
+
+        Map<EnrollmentCommitEvent, String[]> outcomes = new LinkedHashMap<>();
+        int enrolled = 0;
+        for (EnrollmentCommitEvent row : rows) {
+            if (inserted.contains(rowKey(row.getStudentId(), row.getClassId()))) {
+                outcomes.put(row, new String[] { STATUS_ENROLLED, null });
+                enrolled++;
+            } else if (!failed.contains(row)) {
+                duplicates.add(row);
+            }
+        }
+
+        // Reservation được giao lại sau khi lần trước đã ghi DB nhưng chưa kịp báo
+        // trạng thái: slot và membership trên Redis đã đúng, chỉ còn ghi ENROLLED
+        Set<String> committedEarlier = findCommittedReservations(duplicates);
+        if (!committedEarlier.isEmpty()) {
+            Iterator<EnrollmentCommitEvent> it = duplicates.iterator();
+            while (it.hasNext()) {
+                EnrollmentCommitEvent row = it.next();
+                if (committedEarlier.contains(row.getReservationId())) {
+                    outcomes.put(row, new String[] { STATUS_ENROLLED, null });
+                    enrolled++;
+                    it.remove();
+                }
+            }
+        }
+        for (EnrollmentCommitEvent row : failed) {
+            reconcile(row, true);
+            outcomes.put(row, new String[] { STATUS_FAILED, "Could not save enrollment" });
+        }
+        for (EnrollmentCommitEvent row : duplicates) {
+            // Dòng đã tồn tại trên DB → membership vẫn đúng, chỉ trả slot bị đếm dư
+            reconcile(row, false);
+            outcomes.put(row,
+                    new String[] { STATUS_FAILED, ErrorCode.STUDENT_ALREADY_ENROLLED.getMessage() });
+        }
+        writeOutcomes(outcomes);
+
+        log.info("Committed enrollment batch: {} enrolled, {} duplicate, {} failed", enrolled,
+                duplicates.size(), failed.size());
+    }
+
+    private List<String> insertRows(List<EnrollmentCommitEvent> rows) {
+        StringJoiner values = new StringJoiner(", ");
+        Object[] args = new Object[rows.size() * 4];
+        int i = 0;
+        for (EnrollmentCommitEvent row : rows) {
+            values.add(INSERT_ROW);
+            args[i++] = row.getStudentId();
+            args[i++] = row.getClassId();
+            args[i++] = Date.valueOf(row.getEnrollmentDate());
+            args[i++] = UUID.fromString(row.getReservationId());
+        }
+        return jdbcTemplate.query(INSERT_PREFIX + values + INSERT_SUFFIX,
+                (rs, rowNum) -> rowKey(rs.getObject("student_id", UUID.class), rs.getInt("class_id")),
+                args);
+    }
+
+    /**
+     * @return reservationId (trong {@code candidates}) đã có dòng enrollment do
+     *         chính nó ghi
+     */
+    private Set<String> findCommittedReservations(List<EnrollmentCommitEvent> candidates) {
+        if (candidates.isEmpty()) {
+            return Set.of();
+        }
+        Object[] reservationIds = candidates.stream().map(e -> UUID.fromString(e.getReservationId())).toArray();
+        return new HashSet<>(jdbcTemplate.query(SELECT_COMMITTED_SQL,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("uuid", reservationIds)),
+                (rs, rowNum) -> rs.getObject(1, UUID.class).toString()));
+    }
+
+    private List<EnrollmentCommitEvent> filterPending(List<EnrollmentCommitEvent> events) {
+        List<Object> statuses = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = new DefaultStringRedisConnection(connection);
+            for (EnrollmentCommitEvent event : events) {
+                conn.hGet(RESERVATION_KEY_PREFIX + event.getReservationId(), "status");
+            }
+            return null;
+        });
+        List<EnrollmentCommitEvent> pending = new ArrayList<>(events.size());
+        for (int i = 0; i < events.size(); i++) {
+            Object status = statuses.get(i);
+            // null = key đã hết TTL → vẫn ghi, slot trên Redis đang được giữ cho SV này
+            if (status == null || STATUS_PENDING.equals(status)) {
+                pending.add(events.get(i));
+            }
+        }
+        return pending;
+    }
+
+    private void publish(EnrollmentCommitEvent event) {
+        try {
+            enrollmentCommitProducer.sendCommitEvent(event).whenComplete((result, ex) -> {
+                if (ex != null) {
+                    log.error("Failed to publish reservation {}: {}", event.getReservationId(), ex.getMessage());
+                    reject(event, "Enrollment queue unavailable");
+                }
+            });
+        } catch (Exception ex) {
+            log.error("Failed to publish reservation {}: {}", event.getReservationId(), ex.getMessage());
+            reject(event, "Enrollment queue unavailable");
+        }
+    }
+
+    private void reject(EnrollmentCommitEvent event, String message) {
+        reconcile(event, true);
+        writeOutcomes(Map.of(event, new String[] { STATUS_FAILED, message }));
+    }
+
+    /**
+     * Trả lại slot đã giữ trên Redis cho một reservation không ghi được.
+     *
+     * @param revokeMembership true nếu DB không có dòng nào cho SV ở lớp này
+     */
+    private void reconcile(EnrollmentCommitEvent event, boolean revokeMembership) {
+        try {
+            if (revokeMembership) {
+                classCacheService.revokeAdmission(event.getSemesterId(), event.getClassId(),
+                        event.getCourseId(), event.getStudentId());
+            } else {
+                classCacheService.releaseSlot(event.getClassId());
+            }
+        } catch (Exception ex) {
+            log.error("Failed to reconcile Redis slot for class {} (reservation {}): {}", event.getClassId(),
+                    event.getReservationId(), ex.getMessage());
+        }
+    }
+
+    private void writeOutcomes(Map<EnrollmentCommitEvent, String[]> outcomes) {
+        if (outcomes.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = new DefaultStringRedisConnection(connection);
+            outcomes.forEach((event, outcome) -> {
+                String key = RESERVATION_KEY_PREFIX + event.getReservationId();
+                conn.hSet(key, "status", outcome[0]);
+                if (outcome[1] != null) {
+                    conn.hSet(key, "message", outcome[1]);
+                }
+                conn.expire(key, RESERVATION_TTL_SECONDS);
+                conn.zRem(PENDING_KEY_PREFIX + event.getClassId(), event.getReservationId());
+            });
+            return null;
+        });
+    }
+
+    private static String rowKey(UUID studentId, Integer classId) {
+        return studentId + ":" + classId;
+    }
+}
@@ -2,13 +2,16 @@ package com.newwave.student_management.domains.enrollment.service.impl;
 
 import com.newwave.student_management.common.exception.AppException;
 import com.newwave.student_management.common.exception.ErrorCode;
+import com.newwave.student_management.common.util.TransactionHooks;
 import com.newwave.student_management.domains.enrollment.dto.response.ClassSessionResponse;
+import com.newwave.student_management.domains.enrollment.dto.response.EnrollmentReservationResponse;
 import com.newwave.student_management.domains.enrollment.dto.response.StudentAvailableClassResponse;
 import com.newwave.student_management.domains.enrollment.dto.response.StudentClassMemberResponse;
 import com.newwave.student_management.domains.enrollment.dto.response.StudentEnrolledClassResponse;
-import com.newwave.student_management.domains.enrollment.entity.ClassSession;
 import com.newwave.student_management.domains.enrollment.entity.Enrollment;
+import com.newwave.student_management.domains.enrollment.entity.EnrollmentRecordStatus;
 import com.newwave.student_management.domains.enrollment.entity.ScheduledClass;
+import com.newwave.student_management.domains.enrollment.repository.ClassSessionRepository;
 import com.newwave.student_management.domains.enrollment.repository.EnrollmentRepository;
 import com.newwave.student_management.domains.enrollment.repository.ScheduledClassRepository;
 import com.newwave.student_management.domains.enrollment.service.IStudentClassService;
@@ -21,7 +24,10 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -32,9 +38,12 @@ public class StudentClassServiceImpl implements IStudentClassService {
 
         private final ScheduledClassRepository scheduledClassRepository;
         private final EnrollmentRepository enrollmentRepository;
+        private final ClassSessionRepository classSessionRepository;
         private final StudentRepository studentRepository;
         private final SemesterRepository semesterRepository;
         private final ClassCacheService classCacheService;
+        private final EnrollmentWriteBehindService writeBehindService;
+        private final WaitlistPromotionService waitlistPromotionService;
 
         @Override
         @Transactional(readOnly = true)
@@ -116,7 +125,7 @@ public class StudentClassServiceImpl implements IStudentClassService {
                                 .collect(Collectors.toList());
         }
 
-        private StudentEnrolledClassResponse mapToEnrolledClassResponse(Enrollment enrollment) {
+        StudentEnrolledClassResponse mapToEnrolledClassResponse(Enrollment enrollment) {
                 ScheduledClass scheduledClass = enrollment.getScheduledClass();
                 String teacherName = "N/A";
                 if (scheduledClass.getTeacher() != null) {
@@ -156,7 +165,7 @@ public class StudentClassServiceImpl implements IStudentClassService {
                                 .build();
         }
 
-        private StudentAvailableClassResponse mapToAvailableClassResponse(ScheduledClass scheduledClass,
+        StudentAvailableClassResponse mapToAvailableClassResponse(ScheduledClass scheduledClass,
                         long currentStudents) {
                 String teacherName = "N/A";
                 if (scheduledClass.getTeacher() != null) {
@@ -198,7 +207,7 @@ public class StudentClassServiceImpl implements IStudentClassService {
 
         @Override
         @Transactional
-        public void enroll(UUID userId, Integer classId) {
+        public EnrollmentReservationResponse enroll(UUID userId, Integer classId) {
                 Student student = studentRepository.findByUserIdWithDepartment(userId)
                                 .orElseThrow(() -> new AppException(ErrorCode.STUDENT_PROFILE_NOT_FOUND));
 
@@ -218,6 +227,151 @@ public class StudentClassServiceImpl implements IStudentClassService {
                                                                           // registration
                 }
 
+                Integer semesterId = scheduledClass.getSemester().getSemesterId();
+                Integer courseId = scheduledClass.getCourse().getCourseId();
+
+                // 2-4. Admission — Redis-first: 1 Lua round-trip kiểm tra trùng lớp, trùng
+                // hàng đợi, trùng môn + giữ slot / xếp hàng đợi. NOT_READY → fallback DB.
+                ClassCacheService.AdmissionResult admission = ClassCacheService.AdmissionResult.NOT_READY;
+                try {
+                        admission = classCacheService.admit(semesterId, classId, courseId, student.getStudentId());
+                } catch (Exception ex) {
+                        log.warn("Redis admission failed, falling back to DB checks: {}", ex.getMessage());
+                }
+
+                boolean usedAdmissionEngine = admission != ClassCacheService.AdmissionResult.NOT_READY;
+                switch (admission) {
+                        case ALREADY_ENROLLED -> throw new AppException(ErrorCode.STUDENT_ALREADY_ENROLLED);
+                        case ALREADY_WAITLISTED -> throw new AppException(ErrorCode.STUDENT_ALREADY_WAITLISTED);
+                        case COURSE_ALREADY_ENROLLED -> throw new AppException(ErrorCode.COURSE_ALREADY_ENROLLED);
+                        case CLASS_FULL -> throw new AppException(ErrorCode.CLASS_FULL);
+                        case NOT_READY -> admission = admitFromDatabase(student, scheduledClass);
+                        default -> {
+                        }
+                }
+
+                if (admission == ClassCacheService.AdmissionResult.WAITLISTED) {
+                        log.info("Student {} joined waitlist for class {}", student.getStudentId(), classId);
+                        Enrollment waitlistEnrollment = newOrReactivatedEnrollment(student, scheduledClass,
+                                        EnrollmentRecordStatus.WAITLISTED);
+                        try {
+                                enrollmentRepository.save(waitlistEnrollment);
+                        } catch (RuntimeException ex) {
+                                try {
+                                        if (usedAdmissionEngine) {
+                                                classCacheService.revokeWaitlist(semesterId, classId,
+                                                                student.getStudentId());
+                                        } else {
+                                                classCacheService.removeFromWaitlist(classId, student.getStudentId());
+                                        }
+                                } catch (Exception innerEx) {
+                                        log.error("Failed to revert Redis waitlist for class {}: {}", classId,
+                                                        innerEx.getMessage());
+                                }
+                                throw ex;
+                        }
+                        return EnrollmentReservationResponse.builder()
+                                        .classId(classId)
+                                        .status(EnrollmentRecordStatus.WAITLISTED.name())
+                                        .build();
+                }
+
+                // ADMITTED = slot đã giữ trên Redis; NOT_READY = đã check sĩ số trên DB (lock)
+                boolean usedRedisReservation = admission == ClassCacheService.AdmissionResult.ADMITTED;
+
+                // 5. Check schedule conflicts (always DB — 1 query lấy các buổi đã học rồi
+                // AND bitset, chỉ chạy khi slot OK)
+                try {
+                        WeeklyTimetable target = WeeklyTimetable.of(scheduledClass.getSessions());
+                        if (!target.isEmpty() && target.overlaps(WeeklyTimetable.fromRows(
+                                        loadOccupiedSessionSlots(student.getStudentId(), semesterId, classId,
+                                                        usedAdmissionEngine)))) {
+                                throw new AppException(ErrorCode.STUDENT_SCHEDULE_CONFLICT);
+                        }
+                } catch (AppException ex) {
+                        // Validation failed AFTER Redis reservation → release slot
+                        if (usedRedisReservation) {
+                                releaseReservation(usedAdmissionEngine, semesterId, classId, courseId,
+                                                student.getStudentId());
+                                log.debug("Released Redis slot for class {} due to schedule conflict", classId);
+                        }
+                        throw ex;
+                }
+
+                // 6a. Async commit: slot đã giữ bởi admission engine → đẩy cho consumer ghi
+                // batch, trả reservationId để SV poll trạng thái
+                if (usedAdmissionEngine && usedRedisReservation && writeBehindService.isEnabled()) {
+                        String reservationId = writeBehindService.submit(semesterId, classId, courseId,
+                                        student.getStudentId());
+                        log.info("Student {} reserved class {} (reservation {}, pending commit)",
+                                        student.getStudentId(), classId, reservationId);
+                        return EnrollmentReservationResponse.builder()
+                                        .reservationId(reservationId)
+                                        .classId(classId)
+                                        .status(EnrollmentWriteBehindService.STATUS_PENDING)
+                                        .build();
+                }
+
+                // 6. Create enrollment (sync → DB) — dòng DROPPED cũ được kích hoạt lại như
+                // ON CONFLICT của write-behind
+                Enrollment enrollment = newOrReactivatedEnrollment(student, scheduledClass,
+                                EnrollmentRecordStatus.ENROLLED);
+
+                try {
+                        enrollmentRepository.save(enrollment);
+                        log.info("Student {} enrolled in class {} (Redis reservation: {}, admission engine: {})",
+                                        student.getStudentId(), classId, usedRedisReservation, usedAdmissionEngine);
+                } catch (RuntimeException ex) {
+                        if (usedRedisReservation) {
+                                releaseReservation(usedAdmissionEngine, semesterId, classId, courseId,
+                                                student.getStudentId());
+                                log.debug("Released Redis slot for class {} due to DB save failure", classId);
+                        }
+                        throw ex;
+                }
+                return EnrollmentReservationResponse.builder()
+                                .classId(classId)
+                                .status(EnrollmentRecordStatus.ENROLLED.name())
+                                .build();
+        }
+
+        /**
+         * Dòng enrollment để ghi đồng bộ: SV hủy rồi đăng ký lại thì dùng lại dòng
+         * DROPPED (unique constraint uk_enrollments_student_class), giống ON CONFLICT
+         * ... DO UPDATE của {@link EnrollmentWriteBehindService}.
+         */
+        private Enrollment newOrReactivatedEnrollment(Student student, ScheduledClass scheduledClass,
+                        EnrollmentRecordStatus status) {
+                Enrollment enrollment = enrollmentRepository
+                                .findByScheduledClassClassIdAndStudentStudentIdDropped(scheduledClass.getClassId(),
+                                                student.getStudentId())
+                                .orElseGet(Enrollment::new);
+                enrollment.setStudent(student);
+                enrollment.setScheduledClass(scheduledClass);
+                enrollment.setEnrollmentDate(java.time.LocalDate.now());
+                enrollment.setStatus(status);
+                enrollment.setDeletedAt(null);
+                return enrollment;
+        }
+
+        @Override
+        public EnrollmentReservationResponse getReservation(UUID userId, String reservationId) {
+                Student student = studentRepository.findByUserIdWithDepartment(userId)
+                                .orElseThrow(() -> new AppException(ErrorCode.STUDENT_PROFILE_NOT_FOUND));
+                return writeBehindService.getReservation(reservationId, student.getStudentId());
+        }
+
+        /**
+         * Luồng admission cũ (3 query exists + slot Redis/DB lock) — chỉ dùng khi
+         * membership chưa được nạp lên Redis hoặc Redis lỗi.
+         *
+         * @return ADMITTED nếu đã giữ slot trên Redis, WAITLISTED nếu đã vào hàng đợi
+         *         Redis, NOT_READY nếu sĩ số được check bằng DB lock (không có state
+         *         Redis cần hoàn tác)
+         */
+        private ClassCacheService.AdmissionResult admitFromDatabase(Student student, ScheduledClass scheduledClass) {
+                Integer classId = scheduledClass.getClassId();
+
                 // 2. Check if already enrolled in THIS class
                 if (enrollmentRepository.existsByScheduledClassClassIdAndStudentStudentId(classId,
                                 student.getStudentId())) {
@@ -240,104 +394,77 @@ public class StudentClassServiceImpl implements IStudentClassService {
                 }
 
                 // 4. Check capacity — Redis-first (atomic), fallback DB with Pessimistic Lock
-                boolean usedRedisReservation = false;
                 try {
                         if (classCacheService.isClassCached(classId)) {
                                 // Redis path: HINCRBY atomic — race-condition-free
-                                boolean reserved = classCacheService.reserveSlot(classId);
-                                if (!reserved) {
-                                        boolean joinedWaitlist = classCacheService.joinWaitlist(classId,
-                                                        student.getStudentId());
-                                        if (!joinedWaitlist) {
-                                                throw new AppException(ErrorCode.CLASS_FULL);
-                                        }
-                                        log.info("Student {} joined waitlist for class {}", student.getStudentId(),
-                                                        classId);
-                                        Enrollment waitlistEnrollment = new Enrollment();
-                                        waitlistEnrollment.setStudent(student);
-                                        waitlistEnrollment.setScheduledClass(scheduledClass);
-                                        waitlistEnrollment.setEnrollmentDate(java.time.LocalDate.now());
-                                        waitlistEnrollment.setStatus(
-                                                        com.newwave.student_management.domains.enrollment.entity.EnrollmentRecordStatus.WAITLISTED);
-                                        enrollmentRepository.save(waitlistEnrollment);
-                                        return;
+                                if (classCacheService.reserveSlot(classId)) {
+                                        log.debug("Slot reserved via Redis for class {}", classId);
+                                        return ClassCacheService.AdmissionResult.ADMITTED;
                                 }
-                                usedRedisReservation = true;
-                                log.debug("Slot reserved via Redis for class {}", classId);
-                        } else {
-                                // DB fallback: SELECT ... FOR UPDATE (Pessimistic Lock)
-                                ScheduledClass lockedClass = scheduledClassRepository
-                                                .findByClassIdWithLock(classId)
-                                                .orElseThrow(() -> new AppException(ErrorCode.CLASS_NOT_FOUND));
-                                long currentEnrolled = enrollmentRepository.countByScheduledClassClassId(classId);
-                                if (currentEnrolled >= lockedClass.getMaxStudents()) {
+                                if (!classCacheService.joinWaitlist(classId, student.getStudentId())) {
                                         throw new AppException(ErrorCode.CLASS_FULL);
                                 }
+                                return ClassCacheService.AdmissionResult.WAITLISTED;
                         }
                 } catch (AppException ex) {
                         throw ex; // Re-throw business exceptions
                 } catch (Exception ex) {
                         // Redis error → fallback DB with lock
                         log.warn("Redis slot check failed, falling back to DB with lock: {}", ex.getMessage());
-                        ScheduledClass lockedClass = scheduledClassRepository
-                                        .findByClassIdWithLock(classId)
-                                        .orElseThrow(() -> new AppException(ErrorCode.CLASS_NOT_FOUND));
-                        long currentEnrolled = enrollmentRepository.countByScheduledClassClassId(classId);
-                        if (currentEnrolled >= lockedClass.getMaxStudents()) {
-                                throw new AppException(ErrorCode.CLASS_FULL);
-                        }
                 }
 
-                // 5. Check schedule conflicts (always DB — nhẹ, chỉ chạy khi slot OK)
+                // DB fallback: SELECT ... FOR UPDATE (Pessimistic Lock)
+                ScheduledClass lockedClass = scheduledClassRepository
+                                .findByClassIdWithLock(classId)
+                                .orElseThrow(() -> new AppException(ErrorCode.CLASS_NOT_FOUND));
+                long currentEnrolled = enrollmentRepository.countByScheduledClassClassId(classId);
+                if (currentEnrolled >= lockedClass.getMaxStudents()) {
+                        throw new AppException(ErrorCode.CLASS_FULL);
+                }
+                return ClassCacheService.AdmissionResult.NOT_READY;
+        }
+
+        /**
+         * Các buổi học SV đã chiếm trong semester. Với admission engine, lớp vừa
+         * admit qua write-behind chưa có dòng ENROLLED trong DB nên lấy thêm các lớp
+         * trong membership set trên Redis (đã loại lớp đang đăng ký); hai lớp trùng
+         * lịch đăng ký sát nhau vì vậy vẫn thấy nhau.
+         */
+        private List<Object[]> loadOccupiedSessionSlots(UUID studentId, Integer semesterId, Integer classId,
+                        boolean usedAdmissionEngine) {
+                List<Object[]> slots = new ArrayList<>(
+                                enrollmentRepository.findEnrolledSessionSlots(studentId, semesterId));
+                if (!usedAdmissionEngine) {
+                        return slots;
+                }
                 try {
-                        if (scheduledClass.getSessions() != null) {
-                                for (ClassSession session : scheduledClass.getSessions()) {
-                                        long conflicts = enrollmentRepository.countStudentConflicts(
-                                                        student.getStudentId(),
-                                                        scheduledClass.getSemester().getSemesterId(),
-                                                        session.getDayOfWeek(),
-                                                        session.getStartTime(),
-                                                        session.getEndTime());
-                                        if (conflicts > 0) {
-                                                throw new AppException(ErrorCode.STUDENT_SCHEDULE_CONFLICT);
-                                        }
-                                }
-                        }
-                } catch (AppException ex) {
-                        // Validation failed AFTER Redis reservation → release slot
-                        if (usedRedisReservation) {
-                                try {
-                                        classCacheService.releaseSlot(classId);
-                                        log.debug("Released Redis slot for class {} due to schedule conflict", classId);
-                                } catch (Exception innerEx) {
-                                        log.error("Failed to release Redis slot for class {}: {}", classId,
-                                                        innerEx.getMessage());
-                                }
+                        Set<Integer> admitted = new HashSet<>(
+                                        classCacheService.getAdmittedClassIds(semesterId, studentId));
+                        admitted.remove(classId);
+                        if (!admitted.isEmpty()) {
+                                slots.addAll(classSessionRepository.findSessionSlotsByClassIds(admitted));
                         }
-                        throw ex;
+                } catch (Exception ex) {
+                        log.warn("Failed to read admitted classes of student {} from Redis: {}", studentId,
+                                        ex.getMessage());
                 }
+                return slots;
+        }
 
-                // 6. Create enrollment (sync → DB)
-                com.newwave.student_management.domains.enrollment.entity.Enrollment enrollment = new com.newwave.student_management.domains.enrollment.entity.Enrollment();
-                enrollment.setStudent(student);
-                enrollment.setScheduledClass(scheduledClass);
-                enrollment.setEnrollmentDate(java.time.LocalDate.now());
-
+        /**
+         * Trả slot Redis đã giữ. Nếu slot đến từ admission engine thì gỡ luôn
+         * membership để lần đăng ký sau không bị báo trùng.
+         */
+        private void releaseReservation(boolean usedAdmissionEngine, Integer semesterId, Integer classId,
+                        Integer courseId, UUID studentId) {
                 try {
-                        enrollmentRepository.save(enrollment);
-                        log.info("Student {} enrolled in class {} (Redis reservation: {})",
-                                        student.getStudentId(), classId, usedRedisReservation);
-                } catch (RuntimeException ex) {
-                        if (usedRedisReservation) {
-                                try {
-                                        classCacheService.releaseSlot(classId);
-                                        log.debug("Released Redis slot for class {} due to DB save failure", classId);
-                                } catch (Exception innerEx) {
-                                        log.error("Failed to release Redis slot for class {}: {}", classId,
-                                                        innerEx.getMessage());
-                                }
+                        if (usedAdmissionEngine) {
+                                classCacheService.revokeAdmission(semesterId, classId, courseId, studentId);
+                        } else {
+                                classCacheService.releaseSlot(classId);
                         }
-                        throw ex;
+                } catch (Exception innerEx) {
+                        log.error("Failed to release Redis slot for class {}: {}", classId, innerEx.getMessage());
                 }
         }
 
@@ -371,74 +498,20 @@ public class StudentClassServiceImpl implements IStudentClassService {
                                 com.newwave.student_management.domains.enrollment.entity.EnrollmentRecordStatus.DROPPED);
                 enrollmentRepository.save(enrollment);
 
-                // Release Redis slot or autofill (nếu cache đang active)
-                try {
-                        if (classCacheService.isClassCached(classId)) {
-                                autoFillFromWaitlist(classId, enrollment.getScheduledClass());
-                        }
-                } catch (Exception ex) {
-                        log.warn("Failed to auto-fill or release Redis slot for class {} after unenroll: {}", classId,
-                                        ex.getMessage());
-                }
-        }
-
-        private void autoFillFromWaitlist(Integer classId, ScheduledClass scheduledClass) {
-                while (true) {
-                        UUID waitlistedStudentId = classCacheService.popWaitlist(classId);
-                        if (waitlistedStudentId == null) {
-                                // No one in waitlist, release slot
-                                classCacheService.releaseSlot(classId);
-                                log.debug("Released Redis slot for class {} after unenroll", classId);
-                                break;
+                // Gỡ membership rồi trả slot cho hàng đợi sau khi commit — rollback thì Redis
+                // vẫn khớp DB; việc đôn SV chạy trong transaction riêng
+                Integer semesterId = currentSemester.getSemesterId();
+                Integer courseId = enrollment.getScheduledClass().getCourse().getCourseId();
+                UUID studentId = student.getStudentId();
+                TransactionHooks.afterCommit(() -> {
+                        try {
+                                classCacheService.removeEnrollment(semesterId, classId, courseId, studentId, false);
+                        } catch (Exception ex) {
+                                log.warn("Failed to remove Redis membership for student {} in class {}: {}",
+                                                studentId, classId, ex.getMessage());
                         }
-
-                        // Try to enroll this waitlisted student
-                        Student waitlistedStudent = studentRepository.findById(waitlistedStudentId).orElse(null);
-                        if (waitlistedStudent == null)
-                                continue;
-
-                        boolean hasConflict = false;
-                        if (scheduledClass.getSessions() != null) {
-                                for (ClassSession session : scheduledClass.getSessions()) {
-                                        long conflicts = enrollmentRepository.countStudentConflicts(
-                                                        waitlistedStudentId,
-                                                        scheduledClass.getSemester().getSemesterId(),
-                                                        session.getDayOfWeek(),
-                                                        session.getStartTime(),
-                                                        session.getEndTime());
-                                        if (conflicts > 0) {
-                                                hasConflict = true;
-                                                break;
-                                        }
-                                }
-                        }
-
-                        if (hasConflict) {
-                                enrollmentRepository.findByScheduledClassClassIdAndStudentStudentIdWaitlisted(classId,
-                                                waitlistedStudentId).ifPresent(e -> {
-                                                        e.setStatus(com.newwave.student_management.domains.enrollment.entity.EnrollmentRecordStatus.DROPPED);
-                                                        enrollmentRepository.save(e);
-                                                });
-                                continue;
-                        }
-
-                        // Success! Update status to ENROLLED
-                        enrollmentRepository.findByScheduledClassClassIdAndStudentStudentIdWaitlisted(classId,
-                                        waitlistedStudentId).ifPresentOrElse(e -> {
-                                                e.setStatus(com.newwave.student_management.domains.enrollment.entity.EnrollmentRecordStatus.ENROLLED);
-                                                enrollmentRepository.save(e);
-                                        }, () -> {
-                                                Enrollment newEnrollment = new Enrollment();
-                                                newEnrollment.setStudent(waitlistedStudent);
-                                                newEnrollment.setScheduledClass(scheduledClass);
-                                                newEnrollment.setEnrollmentDate(java.time.LocalDate.now());
-                                                enrollmentRepository.save(newEnrollment);
-                                        });
-
-                        log.info("Auto-filled slot for class {} with waitlisted student {}", classId,
-                                        waitlistedStudentId);
-                        break;
-                }
+                });
+                waitlistPromotionService.fillReleasedSlotsAfterCommit(enrollment.getScheduledClass(), 1);
         }
 
         @Override
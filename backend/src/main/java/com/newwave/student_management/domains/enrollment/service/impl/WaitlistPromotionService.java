@@ -0,0 +1,176 @@
+package com.newwave.student_management.domains.enrollment.service.impl;
+
+import com.newwave.student_management.common.util.TransactionHooks;
+import com.newwave.student_management.domains.enrollment.entity.ScheduledClass;
+import com.newwave.student_management.domains.enrollment.repository.ClassSessionRepository;
+import com.newwave.student_management.domains.enrollment.repository.EnrollmentRepository;
+import com.newwave.student_management.domains.enrollment.service.impl.ClassCacheService.WaitlistEntry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+
+/**
+ * Đôn SV từ hàng đợi lên ENROLLED khi lớp có chỗ trống (SV hủy đăng ký, Admin
+ * tăng maxStudents).
+ *
+ * <p>
+ * Phần Redis chạy trong {@link ClassCacheService#fillFromWaitlist}: đọc hàng
+ * đợi bằng ZRANGE, rồi script FILL_FROM_WAITLIST (ứng viên truyền qua KEYS)
+ * trả slot, ZREM từng ứng viên, giữ slot + ghi membership cho SV được đôn. Phần DB
+ * xử lý theo batch: 1 query check trùng lịch cho cả batch, 1 UPDATE
+ * WAITLISTED → ENROLLED, 1 UPDATE WAITLISTED → DROPPED cho SV trùng lịch. Slot
+ * của SV không đôn được chuyển tiếp cho người kế tiếp trong hàng đợi.
+ * </p>
+ *
+ * <p>
+ * Redis thay đổi trước DB nên nếu transaction DB rollback, các SV đã rời hàng
+ * đợi được xếp lại với score cũ qua {@link ClassCacheService#restoreWaitlist}.
+ * </p>
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class WaitlistPromotionService {
+
+    private static final String UPDATE_WAITLISTED_PREFIX = "UPDATE enrollments SET status = ?, updated_at = now() "
+            + "WHERE class_id = ? AND status = 'WAITLISTED' AND deleted_at IS NULL AND student_id IN (";
+    private static final String UPDATE_WAITLISTED_SUFFIX = ") RETURNING student_id";
+
+    private final ClassCacheService classCacheService;
+    private final EnrollmentRepository enrollmentRepository;
+    private final ClassSessionRepository classSessionRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    /**
+     * Lấp chỗ trống sau khi transaction hiện tại commit (Admin tăng maxStudents —
+     * maxSlot mới chỉ lên Redis ở afterCommit của syncClass). DB chạy trong
+     * transaction riêng.
+     */
+    public void fillOpenSlotsAfterCommit(ScheduledClass scheduledClass) {
+        fillReleasedSlotsAfterCommit(scheduledClass, 0);
+    }
+
+    /**
+     * Trả {@code releasedSlots} slot của lớp và lấp bằng hàng đợi sau khi
+     * transaction hiện tại commit (SV hủy đăng ký, Admin gỡ SV khỏi lớp). DB chạy
+     * trong transaction riêng nên lỗi khi đôn không làm hỏng transaction của caller.
+     */
+    public void fillReleasedSlotsAfterCommit(ScheduledClass scheduledClass, int releasedSlots) {
+        Integer semesterId = scheduledClass.getSemester().getSemesterId();
+        Integer classId = scheduledClass.getClassId();
+        Integer courseId = scheduledClass.getCourse().getCourseId();
+        Runnable task = () -> {
+            // SV đã rời hàng đợi trên Redis mà DB chưa chắc đã ghi nhận
+            Map<UUID, WaitlistEntry> dequeued = new LinkedHashMap<>();
+            try {
+                TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+                transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+                Integer promoted = transactionTemplate.execute(
+                        status -> fill(semesterId, classId, courseId, releasedSlots, dequeued));
+                log.info("Promoted {} waitlisted students into class {} after {} released slots", promoted,
+                        classId, releasedSlots);
+            } catch (Exception ex) {
+                log.warn("Failed to promote waitlist for class {}: {}", classId, ex.getMessage());
+                restoreWaitlist(semesterId, classId, courseId, dequeued.values());
+            }
+        };
+
+        TransactionHooks.afterCommit(task);
+    }
+
+    private int fill(Integer semesterId, Integer classId, Integer courseId, int releasedSlots,
+            Map<UUID, WaitlistEntry> dequeued) {
+        int promoted = 0;
+        List<WaitlistEntry> batch = classCacheService.fillFromWaitlist(semesterId, classId, courseId,
+                releasedSlots);
+        while (!batch.isEmpty()) {
+            batch.forEach(entry -> dequeued.put(entry.studentId(), entry));
+            List<UUID> candidates = batch.stream().map(WaitlistEntry::studentId).toList();
+            Set<UUID> conflicted = findConflicted(semesterId, classId, candidates);
+            List<UUID> eligible = candidates.stream().filter(id -> !conflicted.contains(id)).toList();
+
+            Set<UUID> enrolled = new HashSet<>(updateWaitlisted(classId, eligible, "ENROLLED"));
+            Set<UUID> dropped = new HashSet<>(updateWaitlisted(classId, List.copyOf(conflicted), "DROPPED"));
+            promoted += enrolled.size();
+
+            // SV trùng lịch hoặc không còn dòng WAITLISTED (đã hủy chờ) → gỡ membership,
+            // giữ nguyên slot rồi chuyển slot đó cho người kế tiếp
+            List<UUID> rejected = candidates.stream().filter(id -> !enrolled.contains(id)).toList();
+            for (UUID studentId : rejected) {
+                classCacheService.removeEnrollment(semesterId, classId, courseId, studentId, false);
+                if (!dropped.contains(studentId)) {
+                    dequeued.remove(studentId); // Đã hủy chờ → không xếp lại khi hoàn tác
+                }
+            }
+            for (UUID studentId : enrolled) {
+                log.info("Auto-filled slot for class {} with waitlisted student {}", classId, studentId);
+            }
+            batch = rejected.isEmpty()
+                    ? List.of()
+                    : classCacheService.fillFromWaitlist(semesterId, classId, courseId, rejected.size());
+        }
+        return promoted;
+    }
+
+    /**
+     * SV ứng viên trùng lịch với lớp {@code classId}: lớp đã ENROLLED trong DB, cộng
+     * lớp trong membership set trên Redis — reservation write-behind chưa có dòng DB
+     * nhưng đã chiếm lịch của SV.
+     */
+    private Set<UUID> findConflicted(Integer semesterId, Integer classId, List<UUID> candidates) {
+        Set<UUID> conflicted = new HashSet<>(enrollmentRepository.findStudentsWithConflicts(classId, candidates));
+        WeeklyTimetable target = null;
+        for (UUID studentId : candidates) {
+            if (conflicted.contains(studentId)) {
+                continue;
+            }
+            Set<Integer> admitted = new HashSet<>(classCacheService.getAdmittedClassIds(semesterId, studentId));
+            admitted.remove(classId);
+            if (admitted.isEmpty()) {
+                continue;
+            }
+            if (target == null) {
+                target = WeeklyTimetable.fromRows(
+                        classSessionRepository.findSessionSlotsByClassIds(List.of(classId)));
+            }
+            if (!target.isEmpty() && target.overlaps(
+                    WeeklyTimetable.fromRows(classSessionRepository.findSessionSlotsByClassIds(admitted)))) {
+                conflicted.add(studentId);
+            }
+        }
+        return conflicted;
+    }
+
+    private void restoreWaitlist(Integer semesterId, Integer classId, Integer courseId,
+            Collection<WaitlistEntry> dequeued) {
+        try {
+            classCacheService.restoreWaitlist(semesterId, classId, courseId, dequeued);
+        } catch (Exception ex) {
+            log.error("Failed to restore waitlist of class {} after rollback: {}", classId, ex.getMessage());
+        }
+    }
+
+    /**
+     * @return studentId có dòng WAITLISTED đã được chuyển sang {@code status}
+     */
+    private List<UUID> updateWaitlisted(Integer classId, List<UUID> studentIds, String status) {
+        if (studentIds.isEmpty()) {
+            return List.of();
+        }
+        String sql = UPDATE_WAITLISTED_PREFIX
+                + String.join(", ", Collections.nCopies(studentIds.size(), "?"))
+                + UPDATE_WAITLISTED_SUFFIX;
+        List<Object> args = new ArrayList<>(studentIds.size() + 2);
+        args.add(status);
+        args.add(classId);
+        args.addAll(studentIds);
+        return jdbcTemplate.queryForList(sql, UUID.class, args.toArray());
+    }
+}
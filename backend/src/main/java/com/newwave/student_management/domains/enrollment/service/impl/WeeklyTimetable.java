@@ -0,0 +1,125 @@
+package com.newwave.student_management.domains.enrollment.service.impl;
+
+import com.newwave.student_management.domains.enrollment.entity.ClassSession;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Thời khóa biểu 1 tuần dạng bitset: 7 ngày × 1440 phút = 10080 bit (158
+ * long). Bit {@code (dayOfWeek - 1) * 1440 + phút} bật nếu phút đó có buổi học.
+ *
+ * <p>
+ * Kiểm tra trùng lịch = AND từng word, thay cho 1 query JOIN 3 bảng cho mỗi
+ * buổi của lớp đích. Phút bắt đầu làm tròn xuống, phút kết thúc làm tròn lên nên
+ * bitset không bỏ sót buổi trùng. Với giờ tính tới phút, kết quả trùng khớp điều
+ * kiện {@code start < otherEnd && end > otherStart} của query cũ; nếu có giờ lẻ
+ * giây thì bit trùng chỉ là ứng viên và được xác nhận lại bằng đúng điều kiện đó
+ * trên khoảng thời gian gốc.
+ * </p>
+ */
+public final class WeeklyTimetable {
+
+    private static final int DAYS = 7;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final int WORDS = (DAYS * MINUTES_PER_DAY + Long.SIZE - 1) / Long.SIZE;
+    private static final long NANOS_PER_MINUTE = 60_000_000_000L;
+    private static final long NANOS_PER_DAY = MINUTES_PER_DAY * NANOS_PER_MINUTE;
+
+    private final long[] words = new long[WORDS];
+    // {start, end} tính bằng nano giây từ đầu tuần — chỉ dùng khi có giờ lẻ giây
+    private final List<long[]> intervals = new ArrayList<>();
+    private boolean minuteAligned = true;
+    private boolean empty = true;
+
+    public static WeeklyTimetable of(Collection<ClassSession> sessions) {
+        WeeklyTimetable timetable = new WeeklyTimetable();
+        if (sessions != null) {
+            for (ClassSession session : sessions) {
+                timetable.add(session.getDayOfWeek(), session.getStartTime(), session.getEndTime());
+            }
+        }
+        return timetable;
+    }
+
+    /**
+     * @param rows Object[]{dayOfWeek, startTime, endTime} như
+     *             {@code EnrollmentRepository.findEnrolledSessionSlots}
+     */
+    public static WeeklyTimetable fromRows(List<Object[]> rows) {
+        WeeklyTimetable timetable = new WeeklyTimetable();
+        for (Object[] row : rows) {
+            timetable.add((Integer) row[0], (LocalTime) row[1], (LocalTime) row[2]);
+        }
+        return timetable;
+    }
+
+    /**
+     * Bật các phút [start, end) của ngày {@code dayOfWeek} (1-7). Buổi thiếu dữ
+     * liệu hoặc end ≤ start bị bỏ qua.
+     */
+    public WeeklyTimetable add(Integer dayOfWeek, LocalTime start, LocalTime end) {
+        if (dayOfWeek == null || dayOfWeek < 1 || dayOfWeek > DAYS || start == null || end == null) {
+            return this;
+        }
+        long startNanos = start.toNanoOfDay();
+        long endNanos = end.toNanoOfDay();
+        if (endNanos <= startNanos) {
+            return this;
+        }
+        int dayOffset = (dayOfWeek - 1) * MINUTES_PER_DAY;
+        int from = dayOffset + (int) (startNanos / NANOS_PER_MINUTE);
+        int to = dayOffset + (int) ((endNanos + NANOS_PER_MINUTE - 1) / NANOS_PER_MINUTE);
+        setRange(from, to);
+        long weekOffset = (dayOfWeek - 1) * NANOS_PER_DAY;
+        intervals.add(new long[] { weekOffset + startNanos, weekOffset + endNanos });
+        minuteAligned &= startNanos % NANOS_PER_MINUTE == 0 && endNanos % NANOS_PER_MINUTE == 0;
+        empty = false;
+        return this;
+    }
+
+    public boolean overlaps(WeeklyTimetable other) {
+        if (empty || other.empty) {
+            return false;
+        }
+        for (int i = 0; i < WORDS; i++) {
+            if ((words[i] & other.words[i]) != 0) {
+                return minuteAligned && other.minuteAligned || overlapsExactly(other);
+            }
+        }
+        return false;
+    }
+
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    private boolean overlapsExactly(WeeklyTimetable other) {
+        for (long[] mine : intervals) {
+            for (long[] theirs : other.intervals) {
+                if (mine[0] < theirs[1] && mine[1] > theirs[0]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void setRange(int from, int to) {
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if (first == last) {
+            words[first] |= firstMask & lastMask;
+            return;
+        }
+        words[first] |= firstMask;
+        for (int i = first + 1; i < last; i++) {
+            words[i] = -1L;
+        }
+        words[last] |= lastMask;
+    }
+}
@@ -5,6 +5,7 @@ import com.newwave.student_management.domains.auth.entity.User;
 import jakarta.persistence.*;
 import lombok.*;
 
+import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
@@ -30,4 +31,8 @@ public class FcmToken extends JpaBaseEntity {
 
     @Column(name = "device_type")
     private String deviceType; // web, android, ios
+
+    // FCM trả INVALID_ARGUMENT cho token này; không gửi push tới khi đăng ký lại
+    @Column(name = "quarantined_at")
+    private LocalDateTime quarantinedAt;
 }
@@ -35,11 +35,29 @@ public class SentNotification extends JpaBaseEntity {
     @Column(name = "recipient_count")
     private Integer recipientCount;
 
+    // Kết quả push FCM (multicast theo batch)
+    @Column(name = "push_batch_count")
+    private Integer pushBatchCount;
+
+    @Column(name = "push_success_count")
+    private Integer pushSuccessCount;
+
+    @Column(name = "push_failure_count")
+    private Integer pushFailureCount;
+
     @Column(name = "target_group")
     private String targetGroup; // "All", "Department: CS", etc.
 
     @Column(name = "status")
-    private String status; // PENDING, SENT, FAILED, CANCELLED
+    private String status; // PENDING, PROCESSING, SENT, FAILED, CANCELLED
+
+    // user_id cuối của chunk người nhận đã gửi xong (NotificationDeliveryService)
+    @Column(name = "dispatch_cursor")
+    private UUID dispatchCursor;
+
+    // Lưu 1 lần, ghép vào inbox người nhận lúc đọc (NotificationInboxService)
+    @Column(name = "inbox_on_read", nullable = false)
+    private boolean inboxOnRead;
 
     @Column(name = "scheduled_at")
     private java.time.LocalDateTime scheduledAt;
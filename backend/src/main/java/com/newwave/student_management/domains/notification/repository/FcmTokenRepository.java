@@ -4,9 +4,13 @@ import com.newwave.student_management.domains.notification.entity.FcmToken;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -15,23 +19,30 @@ import java.util.UUID;
 public interface FcmTokenRepository extends JpaRepository<FcmToken, UUID> {
         Optional<FcmToken> findByToken(String token);
 
-        List<FcmToken> findByUser_UserId(UUID userId);
+        List<FcmToken> findByUser_UserIdAndQuarantinedAtIsNull(UUID userId);
+
+        long countByQuarantinedAtIsNull();
 
         void deleteByToken(String token);
 
-        @Query("SELECT t FROM FcmToken t JOIN t.user u WHERE u.role.roleName <> :roleName")
-        List<FcmToken> findAllByRoleNot(@Param("roleName") String roleName);
-
-        @Query("SELECT t FROM FcmToken t " +
-                        "JOIN t.user u " +
-                        "LEFT JOIN Student s ON s.user = u " +
-                        "LEFT JOIN Teacher tr ON tr.user = u " +
-                        "WHERE (:roleName IS NULL OR u.role.roleName = :roleName) " +
-                        "AND (:departmentId IS NULL OR s.department.departmentId = :departmentId OR tr.department.departmentId = :departmentId) "
-                        +
-                        "AND (:classCode IS NULL OR s.manageClass = :classCode)")
-        List<FcmToken> findTokensByCriteria(
-                        @Param("roleName") String roleName,
-                        @Param("departmentId") Long departmentId,
-                        @Param("classCode") String classCode);
+        // Dọn token theo kết quả multicast (FcmTokenPruner), mỗi lần một batch. Token
+        // đăng ký lại sau lượt gửi (updated_at > reportedBefore) được giữ nguyên
+        @Transactional
+        @Modifying
+        @Query("DELETE FROM FcmToken t WHERE t.token IN :tokens "
+                        + "AND (t.updatedAt IS NULL OR t.updatedAt <= :reportedBefore)")
+        int deleteByTokenIn(@Param("tokens") Collection<String> tokens,
+                        @Param("reportedBefore") LocalDateTime reportedBefore);
+
+        @Transactional
+        @Modifying
+        @Query("UPDATE FcmToken t SET t.quarantinedAt = :now WHERE t.token IN :tokens AND t.quarantinedAt IS NULL "
+                        + "AND (t.updatedAt IS NULL OR t.updatedAt <= :reportedBefore)")
+        int quarantineByTokenIn(@Param("tokens") Collection<String> tokens, @Param("now") LocalDateTime now,
+                        @Param("reportedBefore") LocalDateTime reportedBefore);
+
+        @Transactional
+        @Modifying
+        @Query("DELETE FROM FcmToken t WHERE t.quarantinedAt < :cutoff")
+        int deleteQuarantinedBefore(@Param("cutoff") LocalDateTime cutoff);
 }
@@ -6,8 +6,11 @@ import org.springframework.stereotype.Repository;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 import java.util.UUID;
 
 @Repository
@@ -30,9 +33,34 @@ public interface SentNotificationRepository extends JpaRepository<SentNotificati
 
         java.util.List<SentNotification> findByStatusAndScheduledAtBefore(String status, java.time.LocalDateTime now);
 
-        @Query("SELECT sn FROM SentNotification sn WHERE sn.status = 'PENDING' AND " +
-                        "(sn.scheduledAt <= :now OR (sn.scheduledAt IS NULL AND sn.createdAt <= :threshold))")
+        // PENDING đến hạn, hoặc PROCESSING mà không có heartbeat (updatedAt) từ threshold — tiến trình gửi đã chết
+        @Query("SELECT sn FROM SentNotification sn WHERE (sn.status = 'PENDING' AND " +
+                        "(sn.scheduledAt <= :now OR (sn.scheduledAt IS NULL AND sn.createdAt <= :threshold))) " +
+                        "OR (sn.status = 'PROCESSING' AND sn.updatedAt <= :threshold)")
         java.util.List<SentNotification> findStuckNotifications(
                         @Param("now") java.time.LocalDateTime now,
                         @Param("threshold") java.time.LocalDateTime threshold);
+
+        // Gọi từ afterCommit của transaction gửi thông báo nên cần transaction riêng
+        @Transactional(propagation = Propagation.REQUIRES_NEW)
+        @Modifying
+        @Query("UPDATE SentNotification sn SET sn.pushBatchCount = :batches, sn.pushSuccessCount = :success, " +
+                        "sn.pushFailureCount = :failure WHERE sn.sentId = :sentId")
+        void recordPushDelivery(
+                        @Param("sentId") UUID sentId,
+                        @Param("batches") int batches,
+                        @Param("success") int success,
+                        @Param("failure") int failure);
+
+        // Cộng dồn kết quả push của từng chunk người nhận
+        @Transactional(propagation = Propagation.REQUIRES_NEW)
+        @Modifying
+        @Query("UPDATE SentNotification sn SET sn.pushBatchCount = COALESCE(sn.pushBatchCount, 0) + :batches, " +
+                        "sn.pushSuccessCount = COALESCE(sn.pushSuccessCount, 0) + :success, " +
+                        "sn.pushFailureCount = COALESCE(sn.pushFailureCount, 0) + :failure WHERE sn.sentId = :sentId")
+        void addPushDelivery(
+                        @Param("sentId") UUID sentId,
+                        @Param("batches") int batches,
+                        @Param("success") int success,
+                        @Param("failure") int failure);
 }
@@ -0,0 +1,169 @@
+package com.newwave.student_management.domains.notification.service;
+
+import com.newwave.student_management.domains.notification.repository.FcmTokenRepository;
+import com.newwave.student_management.infrastructure.fcm.FcmFanOutService;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.BiFunction;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Dọn FCM token theo kết quả multicast, ngoài luồng gửi push:
+ * <ul>
+ * <li>UNREGISTERED / SENDER_ID_MISMATCH → xóa hẳn</li>
+ * <li>INVALID_ARGUMENT → cách ly ({@code quarantined_at}); đăng ký lại thì bỏ
+ * cách ly, quá {@code fcm.token-pruning.quarantine-days} ngày thì xóa</li>
+ * </ul>
+ * Token được gom vào hàng đợi có giới hạn và ghi DB theo batch mỗi
+ * {@code fcm.token-pruning.interval-ms}; hàng đợi đầy thì bỏ qua (lần gửi sau
+ * FCM sẽ báo lại). Batch ghi lỗi được trả lại hàng đợi cho lượt sau. Token có
+ * {@code updated_at} mới hơn lúc gửi (user vừa đăng ký lại) được giữ nguyên.
+ *
+ * Metric: fcm.tokens.pruned (tag reason), fcm.tokens.prune_dropped,
+ * fcm.tokens.prune_queue — so với fcm.tokens.registered cho ra tốc độ churn.
+ */
+@Service
+@Slf4j
+public class FcmTokenPruner {
+
+    private static final String METRIC_NAME = "fcm.tokens";
+
+    private final FcmTokenRepository fcmTokenRepository;
+    private final MeterRegistry meterRegistry;
+    private final int batchSize;
+    private final int quarantineDays;
+    private final BlockingQueue<DeadToken> unregistered;
+    private final BlockingQueue<DeadToken> invalid;
+
+    /** Token FCM báo chết / sai trong lượt gửi bắt đầu lúc {@code sentAt}. */
+    private record DeadToken(String token, LocalDateTime sentAt) {
+    }
+
+    public FcmTokenPruner(FcmTokenRepository fcmTokenRepository, MeterRegistry meterRegistry,
+            @Value("${fcm.token-pruning.batch-size:500}") int batchSize,
+            @Value("${fcm.token-pruning.queue-capacity:100000}") int queueCapacity,
+            @Value("${fcm.token-pruning.quarantine-days:7}") int quarantineDays) {
+        this.fcmTokenRepository = fcmTokenRepository;
+        this.meterRegistry = meterRegistry;
+        this.batchSize = Math.max(1, batchSize);
+        this.quarantineDays = Math.max(0, quarantineDays);
+        this.unregistered = new LinkedBlockingQueue<>(Math.max(1, queueCapacity));
+        this.invalid = new LinkedBlockingQueue<>(Math.max(1, queueCapacity));
+        meterRegistry.gauge(METRIC_NAME + ".prune_queue", this, pruner -> pruner.pending());
+    }
+
+    /**
+     * Ghi nhận token chết / sai từ một lượt fan-out bắt đầu lúc {@code sentAt};
+     * không chạm DB.
+     */
+    public void report(FcmFanOutService.FanOutResult result, LocalDateTime sentAt) {
+        if (!result.hasDeadTokens()) {
+            return;
+        }
+        enqueue(unregistered, result.unregisteredTokens(), sentAt);
+        enqueue(invalid, result.invalidTokens(), sentAt);
+    }
+
+    public int pending() {
+        return unregistered.size() + invalid.size();
+    }
+
+    /**
+     * Xóa / cách ly toàn bộ token đang chờ, mỗi câu lệnh tối đa
+     * {@code batchSize} token.
+     */
+    @Scheduled(fixedDelayString = "${fcm.token-pruning.interval-ms:10000}",
+            initialDelayString = "${fcm.token-pruning.interval-ms:10000}")
+    public synchronized void flush() {
+        int deleted = flushQueue(unregistered, fcmTokenRepository::deleteByTokenIn);
+        LocalDateTime now = LocalDateTime.now();
+        int quarantined = flushQueue(invalid,
+                (tokens, reportedBefore) -> fcmTokenRepository.quarantineByTokenIn(tokens, now, reportedBefore));
+        if (deleted + quarantined > 0) {
+            meterRegistry.counter(METRIC_NAME + ".pruned", "reason", "unregistered").increment(deleted);
+            meterRegistry.counter(METRIC_NAME + ".pruned", "reason", "invalid").increment(quarantined);
+            log.info("Pruned FCM tokens: {} unregistered deleted, {} invalid quarantined", deleted, quarantined);
+        }
+    }
+
+    /**
+     * Ghi từng batch; batch lỗi được trả lại hàng đợi và dừng lượt này. Mỗi batch
+     * dùng thời điểm gửi sớm nhất trong batch làm mốc {@code updated_at}.
+     */
+    private int flushQueue(BlockingQueue<DeadToken> queue,
+            BiFunction<Collection<String>, LocalDateTime, Integer> write) {
+        int written = 0;
+        List<DeadToken> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            List<String> tokens = new ArrayList<>(batch.size());
+            LocalDateTime reportedBefore = batch.get(0).sentAt();
+            for (DeadToken dead : batch) {
+                tokens.add(dead.token());
+                if (dead.sentAt().isBefore(reportedBefore)) {
+                    reportedBefore = dead.sentAt();
+                }
+            }
+            try {
+                written += write.apply(tokens, reportedBefore);
+            } catch (Exception ex) {
+                log.warn("FCM token pruning failed, {} tokens re-queued: {}", batch.size(), ex.getMessage());
+                requeue(queue, batch);
+                break;
+            }
+            batch.clear();
+        }
+        return written;
+    }
+
+    /**
+     * Xóa token đã cách ly quá hạn mà không được đăng ký lại.
+     */
+    @Scheduled(fixedDelayString = "${fcm.token-pruning.quarantine-sweep-interval-ms:3600000}",
+            initialDelayString = "${fcm.token-pruning.quarantine-sweep-interval-ms:3600000}")
+    public void sweepQuarantine() {
+        try {
+            int removed = fcmTokenRepository.deleteQuarantinedBefore(LocalDateTime.now().minusDays(quarantineDays));
+            if (removed > 0) {
+                meterRegistry.counter(METRIC_NAME + ".pruned", "reason", "quarantine_expired").increment(removed);
+                log.info("Removed {} FCM tokens quarantined for over {} days", removed, quarantineDays);
+            }
+        } catch (Exception ex) {
+            log.warn("FCM quarantine sweep failed: {}", ex.getMessage());
+        }
+    }
+
+    private void enqueue(BlockingQueue<DeadToken> queue, Collection<String> tokens, LocalDateTime sentAt) {
+        int dropped = 0;
+        for (String token : tokens) {
+            if (!queue.offer(new DeadToken(token, sentAt))) {
+                dropped++;
+            }
+        }
+        countDropped(dropped);
+    }
+
+    private void requeue(BlockingQueue<DeadToken> queue, List<DeadToken> batch) {
+        int dropped = 0;
+        for (DeadToken dead : batch) {
+            if (!queue.offer(dead)) {
+                dropped++;
+            }
+        }
+        countDropped(dropped);
+    }
+
+    private void countDropped(int dropped) {
+        if (dropped > 0) {
+            meterRegistry.counter(METRIC_NAME + ".prune_dropped").increment(dropped);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.newwave.student_management.domains.notification.service;
+
+import com.newwave.student_management.domains.notification.entity.SentNotification;
+import com.newwave.student_management.domains.notification.repository.SentNotificationRepository;
+import com.newwave.student_management.infrastructure.fcm.FcmFanOutService;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gửi thông báo BROADCAST / TARGETED theo chunk người nhận thay vì nạp mọi
+ * User và FcmToken vào một persistence context.
+ *
+ * <p>
+ * Inbox không ghi theo người nhận: khi nhận gửi, SentNotification được đánh dấu
+ * {@code inbox_on_read} và {@code sent_at}, NotificationInboxService ghép nó vào
+ * inbox của user khớp điều kiện lúc đọc. Việc còn lại là push FCM.
+ * </p>
+ *
+ * <p>
+ * Người nhận được duyệt theo user_id tăng dần (keyset), mỗi chunk
+ * {@code notification.dispatch.chunk-size} user là một transaction riêng: lấy
+ * user_id, lấy FCM token, và lưu {@code dispatch_cursor} = user_id cuối của
+ * chunk. Sau khi chunk commit, thông báo hiện trong inbox của các user đó:
+ * counter chưa đọc (NotificationUnreadCounter) được tăng rồi mới push FCM.
+ * </p>
+ *
+ * <p>
+ * Trong lúc gửi, SentNotification ở trạng thái PROCESSING và updated_at được
+ * cập nhật mỗi chunk. Nếu tiến trình chết, NotificationScheduler thấy
+ * PROCESSING không có heartbeat quá {@code notification.dispatch.lease-ms} và
+ * gửi tiếp từ dispatch_cursor: chunk đã commit không được push lần hai, chỉ
+ * push của chunk đang dở có thể bị mất.
+ * </p>
+ *
+ * Metric: notification.dispatch.chunks, .recipients, .duration.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class NotificationDeliveryService {
+
+    public static final String STATUS_PROCESSING = "PROCESSING";
+    /** Đánh dấu phần lỗi nối vào body khi gửi thất bại (chỉ Admin cần thấy). */
+    public static final String SYSTEM_ERROR_MARKER = "\n\n[System Error]: ";
+
+    private static final String METRIC_NAME = "notification.dispatch";
+    // UUID nhỏ nhất theo thứ tự của PostgreSQL — điểm bắt đầu keyset
+    private static final UUID MIN_USER_ID = new UUID(0L, 0L);
+
+    // 1 câu INSERT cho cả danh sách người nhận (mảng uuid) thay vì saveAll từng entity
+    private static final String INSERT_INBOX_SQL = "INSERT INTO notifications "
+            + "(notification_id, user_id, title, body, is_read, action_url, notification_type, created_at, updated_at) "
+            + "SELECT gen_random_uuid(), recipient, ?, ?, false, ?, ?, now(), now() "
+            + "FROM unnest(?) AS recipient";
+    private static final String SELECT_TOKENS_SQL = "SELECT token FROM fcm_tokens "
+            + "WHERE user_id = ANY(?) AND quarantined_at IS NULL";
+
+    private static final String CLAIM_SQL = "UPDATE sent_notifications SET status = 'PROCESSING', updated_at = ?, "
+            + "inbox_on_read = TRUE, sent_at = CASE WHEN status = 'PENDING' THEN ? ELSE sent_at END, "
+            + "recipient_count = CASE WHEN status = 'PENDING' THEN 0 ELSE recipient_count END, "
+            + "dispatch_cursor = CASE WHEN status = 'PENDING' THEN NULL ELSE dispatch_cursor END "
+            + "WHERE sent_id = ? AND deleted_at IS NULL "
+            + "AND (status = 'PENDING' OR (status = 'PROCESSING' AND updated_at <= ?)) "
+            + "RETURNING sent_id";
+    private static final String ADVANCE_SQL = "UPDATE sent_notifications SET dispatch_cursor = ?, "
+            + "recipient_count = COALESCE(recipient_count, 0) + ?, updated_at = ? "
+            + "WHERE sent_id = ? AND status = 'PROCESSING'";
+    private static final String FINISH_SQL = "UPDATE sent_notifications SET status = 'SENT', updated_at = ? "
+            + "WHERE sent_id = ? AND status = 'PROCESSING'";
+    private static final String FAIL_SQL = "UPDATE sent_notifications SET status = 'FAILED', body = body || ?, "
+            + "updated_at = ? WHERE sent_id = ? AND status = 'PROCESSING'";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final SentNotificationRepository sentNotificationRepository;
+    private final FcmFanOutService fcmFanOutService;
+    private final FcmTokenPruner fcmTokenPruner;
+    private final NotificationUnreadCounter unreadCounter;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${notification.dispatch.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${notification.dispatch.lease-ms:120000}")
+    private long leaseMillis;
+
+    /**
+     * Điều kiện người nhận, dịch từ các trường target_* của SentNotification
+     * sang SQL trên users / students / teachers. Chiều ngược lại (user → thông
+     * báo khớp) ở NotificationInboxService, hai bên phải đổi cùng nhau.
+     */
+    private record RecipientFilter(String where, List<Object> args) {
+
+        static RecipientFilter of(SentNotification notif) {
+            StringBuilder where = new StringBuilder("u.deleted_at IS NULL");
+            List<Object> args = new ArrayList<>();
+            if ("BROADCAST".equals(notif.getNotificationType())) {
+                where.append(" AND r.role_name <> 'ADMIN'");
+                return new RecipientFilter(where.toString(), args);
+            }
+            String role = notif.getTargetRole();
+            if (role != null && !role.equalsIgnoreCase("All Roles")) {
+                where.append(" AND r.role_name = ?");
+                args.add(role.toUpperCase());
+            }
+            if (notif.getTargetDepartmentId() != null) {
+                where.append(" AND (s.department_id = ? OR t.department_id = ?)");
+                args.add(notif.getTargetDepartmentId());
+                args.add(notif.getTargetDepartmentId());
+            }
+            String classCode = notif.getTargetClassCode();
+            if (classCode != null && !classCode.equalsIgnoreCase("All Classes")) {
+                where.append(" AND s.manage_class = ?");
+                args.add(classCode);
+            }
+            return new RecipientFilter(where.toString(), args);
+        }
+
+        String selectChunkSql() {
+            return "SELECT u.user_id FROM users u "
+                    + "JOIN roles r ON r.role_id = u.role_id "
+                    + "LEFT JOIN students s ON s.user_id = u.user_id "
+                    + "LEFT JOIN teachers t ON t.user_id = u.user_id "
+                    + "WHERE " + where + " AND u.user_id > ? "
+                    + "ORDER BY u.user_id LIMIT ?";
+        }
+    }
+
+    /**
+     * @param cancelled SentNotification không còn PROCESSING (bị hủy / tiến trình
+     *                  khác đã nhận) — chunk không ghi gì
+     */
+    private record ChunkResult(int recipients, UUID lastUserId, List<UUID> userIds, List<String> tokens,
+            boolean cancelled) {
+    }
+
+    /**
+     * Gửi BROADCAST / TARGETED. Bỏ qua nếu thông báo không còn PENDING (hoặc
+     * PROCESSING đã hết lease). Không được gọi trong transaction của caller — mỗi
+     * chunk tự commit.
+     */
+    public void dispatch(UUID sentId) {
+        LocalDateTime now = LocalDateTime.now();
+        List<UUID> claimed = jdbcTemplate.queryForList(CLAIM_SQL, UUID.class, now, now, sentId,
+                now.minusNanos(TimeUnit.MILLISECONDS.toNanos(leaseMillis)));
+        if (claimed.isEmpty()) {
+            return;
+        }
+        SentNotification notif = sentNotificationRepository.findById(sentId).orElse(null);
+        if (notif == null) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            int recipients = dispatchChunks(notif);
+            jdbcTemplate.update(FINISH_SQL, LocalDateTime.now(), sentId);
+            log.info("Dispatched {} notification {} to {} recipients{}", notif.getNotificationType(), sentId,
+                    recipients, notif.getDispatchCursor() != null ? " (resumed)" : "");
+        } catch (Exception ex) {
+            log.error("Failed to dispatch notification {}", sentId, ex);
+            jdbcTemplate.update(FAIL_SQL,
+                    SYSTEM_ERROR_MARKER + ex.getClass().getSimpleName() + " - " + ex.getMessage(),
+                    LocalDateTime.now(), sentId);
+        } finally {
+            meterRegistry.timer(METRIC_NAME + ".duration").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Ghi inbox cho danh sách user trong transaction hiện tại.
+     */
+    public void insertInbox(List<UUID> userIds, String title, String body, String actionUrl,
+            String notificationType) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.update(INSERT_INBOX_SQL, ps -> {
+            ps.setString(1, title);
+            ps.setString(2, body);
+            ps.setString(3, actionUrl);
+            ps.setString(4, notificationType);
+            ps.setArray(5, ps.getConnection().createArrayOf("uuid", userIds.toArray()));
+        });
+    }
+
+    /**
+     * FCM token còn hiệu lực (không bị cách ly) của các user.
+     */
+    public List<String> findTokens(Collection<UUID> userIds) {
+        if (userIds.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.query(SELECT_TOKENS_SQL,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("uuid", userIds.toArray())),
+                (rs, rowNum) -> rs.getString(1));
+    }
+
+    /**
+     * Gửi push rồi chuyển token chết / sai cho FcmTokenPruner dọn.
+     */
+    public FcmFanOutService.FanOutResult push(List<String> tokens, String title, String body, String actionUrl) {
+        LocalDateTime sentAt = LocalDateTime.now();
+        FcmFanOutService.FanOutResult result = fcmFanOutService.send(tokens, title, body, actionUrl);
+        fcmTokenPruner.report(result, sentAt);
+        return result;
+    }
+
+    private int dispatchChunks(SentNotification notif) {
+        RecipientFilter filter = RecipientFilter.of(notif);
+        String selectSql = filter.selectChunkSql();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        UUID cursor = notif.getDispatchCursor() != null ? notif.getDispatchCursor() : MIN_USER_ID;
+        int recipients = 0;
+        while (true) {
+            UUID after = cursor;
+            ChunkResult chunk = transactionTemplate.execute(status -> processChunk(notif, filter, selectSql, after));
+            if (chunk == null || chunk.cancelled()) {
+                log.info("Dispatch of notification {} stopped: no longer PROCESSING", notif.getSentId());
+                break;
+            }
+            if (chunk.recipients() == 0) {
+                break;
+            }
+            cursor = chunk.lastUserId();
+            recipients += chunk.recipients();
+            meterRegistry.counter(METRIC_NAME + ".chunks").increment();
+            meterRegistry.counter(METRIC_NAME + ".recipients").increment(chunk.recipients());
+            unreadCounter.addAfterCommit(chunk.userIds(), 1);
+
+            FcmFanOutService.FanOutResult result = push(chunk.tokens(), notif.getTitle(), notif.getBody(),
+                    notif.getActionUrl());
+            if (result.batches() > 0) {
+                sentNotificationRepository.addPushDelivery(notif.getSentId(), result.batches(),
+                        result.successCount(), result.failureCount());
+            }
+            if (chunk.recipients() < chunkSize) {
+                break;
+            }
+        }
+        return recipients;
+    }
+
+    private ChunkResult processChunk(SentNotification notif, RecipientFilter filter, String selectSql,
+            UUID afterUserId) {
+        List<Object> args = new ArrayList<>(filter.args());
+        args.add(afterUserId);
+        args.add(chunkSize);
+        List<UUID> userIds = jdbcTemplate.queryForList(selectSql, UUID.class, args.toArray());
+        if (userIds.isEmpty()) {
+            return new ChunkResult(0, afterUserId, List.of(), List.of(), false);
+        }
+
+        UUID lastUserId = userIds.get(userIds.size() - 1);
+        int advanced = jdbcTemplate.update(ADVANCE_SQL, lastUserId, userIds.size(), LocalDateTime.now(),
+                notif.getSentId());
+        if (advanced == 0) {
+            return new ChunkResult(0, afterUserId, List.of(), List.of(), true);
+        }
+        return new ChunkResult(userIds.size(), lastUserId, userIds, findTokens(userIds), false);
+    }
+}
@@ -0,0 +1,295 @@
+package com.newwave.student_management.domains.notification.service;
+
+import com.newwave.student_management.domains.notification.entity.Notification;
+import com.newwave.student_management.domains.notification.repository.NotificationRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Inbox của user = dòng notifications riêng của user ghép với thông báo nhóm
+ * (sent_notifications có inbox_on_read) mà user khớp điều kiện, tại thời điểm
+ * đọc. Broadcast / targeted vì vậy chỉ ghi 1 dòng thay vì 1 dòng mỗi người nhận.
+ *
+ * <p>
+ * Thông báo nhóm hiện trong inbox khi đã gửi xong (SENT), hoặc chunk chứa user
+ * đã commit ({@code dispatch_cursor >= user_id}) — cùng lúc counter chưa đọc của
+ * user được tăng. Điều kiện cursor áp dụng cả khi đang gửi (PROCESSING) lẫn khi
+ * gửi dở rồi lỗi (FAILED) hoặc bị hủy (CANCELLED): user đã nhận vẫn giữ thông
+ * báo, khớp với counter. Chỉ tính thông báo gửi sau khi user được tạo. Điều
+ * kiện khớp giống điều kiện chọn người nhận push trong
+ * NotificationDeliveryService: BROADCAST cho mọi role trừ ADMIN, TARGETED theo
+ * role / khoa (SV hoặc GV) / lớp quản lý (SV).
+ * </p>
+ *
+ * <p>
+ * Trạng thái đọc của thông báo nhóm: mốc {@code notification_read_marks} (đọc
+ * tất cả) cộng tập {@code notification_group_reads} cho các thông báo đọc lẻ sau
+ * mốc; "đọc tất cả" dời mốc và dọn tập này.
+ * </p>
+ *
+ * <p>
+ * Số chưa đọc trả từ NotificationUnreadCounter (Redis), chỉ đếm trong DB khi
+ * counter chưa có. Đọc lẻ chỉ giảm counter khi thông báo thật sự chuyển từ chưa
+ * đọc sang đã đọc.
+ * </p>
+ */
+@Service
+@RequiredArgsConstructor
+public class NotificationInboxService {
+
+    private static final String READER_SQL = "SELECT r.role_name, COALESCE(s.department_id, t.department_id), "
+            + "s.manage_class, u.created_at "
+            + "FROM users u "
+            + "JOIN roles r ON r.role_id = u.role_id "
+            + "LEFT JOIN students s ON s.user_id = u.user_id "
+            + "LEFT JOIN teachers t ON t.user_id = u.user_id "
+            + "WHERE u.user_id = ?";
+
+    // Tham số: joinedAt, userId, role, role, departmentId, classCode (xem Reader#matchArgs)
+    private static final String GROUP_MATCH = groupMatch("?", "?", "?", "?", "?");
+
+    // FAIL_SQL nối lỗi vào body của thông báo gửi dở — người nhận chỉ thấy nội dung gốc
+    private static final String GROUP_BODY = "CASE WHEN sn.status = 'FAILED' THEN split_part(sn.body, E'"
+            + NotificationDeliveryService.SYSTEM_ERROR_MARKER.replace("\n", "\\n") + "', 1) ELSE sn.body END";
+
+    private static final String PAGE_SQL = "SELECT id, title, body, is_read, action_url, notification_type, created_at "
+            + "FROM ((SELECT n.notification_id AS id, n.title, n.body, COALESCE(n.is_read, false) AS is_read, "
+            + "n.action_url, n.notification_type, n.created_at "
+            + "FROM notifications n WHERE n.user_id = ? "
+            + "ORDER BY n.created_at DESC LIMIT ?) "
+            + "UNION ALL "
+            + "(SELECT sn.sent_id, sn.title, " + GROUP_BODY + ", "
+            + "COALESCE(sn.sent_at <= m.read_all_before, false) OR g.sent_id IS NOT NULL, "
+            + "sn.action_url, sn.notification_type, sn.sent_at "
+            + "FROM sent_notifications sn "
+            + "LEFT JOIN notification_read_marks m ON m.user_id = ? "
+            + "LEFT JOIN notification_group_reads g ON g.user_id = ? AND g.sent_id = sn.sent_id "
+            + "WHERE " + GROUP_MATCH + " "
+            + "ORDER BY sn.sent_at DESC LIMIT ?)) inbox "
+            + "ORDER BY created_at DESC, id DESC "
+            + "LIMIT ? OFFSET ?";
+
+    private static final String COUNT_SQL = "SELECT (SELECT COUNT(*) FROM notifications n WHERE n.user_id = ?) "
+            + "+ (SELECT COUNT(*) FROM sent_notifications sn WHERE " + GROUP_MATCH + ")";
+
+    private static final String UNREAD_SQL = "SELECT "
+            + "(SELECT COUNT(*) FROM notifications n WHERE n.user_id = ? AND n.is_read = false) "
+            + "+ (SELECT COUNT(*) FROM sent_notifications sn "
+            + "LEFT JOIN notification_read_marks m ON m.user_id = ? "
+            + "WHERE " + GROUP_MATCH + " "
+            + "AND (m.read_all_before IS NULL OR sn.sent_at > m.read_all_before) "
+            + "AND NOT EXISTS (SELECT 1 FROM notification_group_reads g "
+            + "WHERE g.user_id = ? AND g.sent_id = sn.sent_id))";
+
+    // Như UNREAD_SQL cho cả danh sách user trong 1 query (đối soát counter). Tham số: mảng user_id
+    private static final String UNREAD_BATCH_SQL = "SELECT rd.user_id, "
+            + "(SELECT COUNT(*) FROM notifications n WHERE n.user_id = rd.user_id AND n.is_read = false) "
+            + "+ (SELECT COUNT(*) FROM sent_notifications sn "
+            + "LEFT JOIN notification_read_marks m ON m.user_id = rd.user_id "
+            + "WHERE " + groupMatch("rd.joined_at", "rd.user_id", "rd.role_name", "rd.department_id",
+                    "rd.manage_class") + " "
+            + "AND (m.read_all_before IS NULL OR sn.sent_at > m.read_all_before) "
+            + "AND NOT EXISTS (SELECT 1 FROM notification_group_reads g "
+            + "WHERE g.user_id = rd.user_id AND g.sent_id = sn.sent_id)) "
+            + "FROM (SELECT u.user_id, r.role_name, COALESCE(s.department_id, t.department_id) AS department_id, "
+            + "s.manage_class, COALESCE(u.created_at, TIMESTAMP '1970-01-01') AS joined_at "
+            + "FROM users u "
+            + "JOIN roles r ON r.role_id = u.role_id "
+            + "LEFT JOIN students s ON s.user_id = u.user_id "
+            + "LEFT JOIN teachers t ON t.user_id = u.user_id "
+            + "WHERE u.user_id = ANY(?)) rd";
+
+    // Chỉ ghi khi thông báo đang hiện trong inbox và chưa đọc → 1 dòng = 1 lần giảm counter
+    private static final String MARK_GROUP_READ_SQL = "INSERT INTO notification_group_reads (user_id, sent_id) "
+            + "SELECT ?, sn.sent_id FROM sent_notifications sn "
+            + "LEFT JOIN notification_read_marks m ON m.user_id = ? "
+            + "WHERE sn.sent_id = ? AND " + GROUP_MATCH + " "
+            + "AND (m.read_all_before IS NULL OR sn.sent_at > m.read_all_before) "
+            + "ON CONFLICT DO NOTHING";
+    private static final String READ_ALL_MARK_SQL = "INSERT INTO notification_read_marks (user_id, read_all_before) "
+            + "VALUES (?, ?) ON CONFLICT (user_id) DO UPDATE "
+            + "SET read_all_before = GREATEST(notification_read_marks.read_all_before, EXCLUDED.read_all_before)";
+    private static final String COMPACT_GROUP_READS_SQL = "DELETE FROM notification_group_reads g "
+            + "USING sent_notifications sn "
+            + "WHERE g.user_id = ? AND sn.sent_id = g.sent_id AND sn.sent_at <= ?";
+
+    // users.created_at trống (dữ liệu cũ) → thấy mọi thông báo nhóm
+    private static final LocalDateTime NO_JOIN_DATE = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NotificationRepository notificationRepository;
+    private final NotificationUnreadCounter unreadCounter;
+
+    /**
+     * Thông tin của user dùng để khớp thông báo nhóm.
+     */
+    private record Reader(UUID userId, String role, Long departmentId, String classCode,
+            LocalDateTime joinedAt) {
+
+        Object[] matchArgs() {
+            return new Object[] { joinedAt, userId, role, role, departmentId, classCode };
+        }
+    }
+
+    /**
+     * Inbox mới nhất trước. Thứ tự luôn theo thời gian tạo giảm dần, bỏ qua sort
+     * của {@code pageable}.
+     */
+    @Transactional(readOnly = true)
+    public Page<Notification> getInbox(UUID userId, Pageable pageable) {
+        Reader reader = reader(userId);
+        if (reader == null) {
+            return Page.empty(pageable);
+        }
+        long window = pageable.getOffset() + pageable.getPageSize();
+
+        List<Object> args = new ArrayList<>();
+        args.add(userId);
+        args.add(window);
+        args.add(userId);
+        args.add(userId);
+        args.addAll(Arrays.asList(reader.matchArgs()));
+        args.add(window);
+        args.add(pageable.getPageSize());
+        args.add(pageable.getOffset());
+        List<Notification> items = jdbcTemplate.query(PAGE_SQL, (rs, rowNum) -> toNotification(rs), args.toArray());
+
+        List<Object> countArgs = new ArrayList<>();
+        countArgs.add(userId);
+        countArgs.addAll(Arrays.asList(reader.matchArgs()));
+        Long total = jdbcTemplate.queryForObject(COUNT_SQL, Long.class, countArgs.toArray());
+        return new PageImpl<>(items, pageable, total == null ? 0 : total);
+    }
+
+    public long countUnread(UUID userId) {
+        Long cached = unreadCounter.get(userId);
+        if (cached != null) {
+            return cached;
+        }
+        long unread = countUnreadFromDb(userId);
+        unreadCounter.load(userId, unread);
+        return unread;
+    }
+
+    public long countUnreadFromDb(UUID userId) {
+        Reader reader = reader(userId);
+        if (reader == null) {
+            return 0;
+        }
+        List<Object> args = new ArrayList<>();
+        args.add(userId);
+        args.add(userId);
+        args.addAll(Arrays.asList(reader.matchArgs()));
+        args.add(userId);
+        Long unread = jdbcTemplate.queryForObject(UNREAD_SQL, Long.class, args.toArray());
+        return unread == null ? 0 : unread;
+    }
+
+    /**
+     * Số chưa đọc trong DB của nhiều user trong 1 query; user không tồn tại bị bỏ
+     * qua.
+     */
+    public Map<UUID, Long> countUnreadFromDb(Collection<UUID> userIds) {
+        Map<UUID, Long> unread = new HashMap<>();
+        if (userIds.isEmpty()) {
+            return unread;
+        }
+        jdbcTemplate.query(UNREAD_BATCH_SQL,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("uuid", userIds.toArray())),
+                rs -> {
+                    unread.put(rs.getObject(1, UUID.class), rs.getLong(2));
+                });
+        return unread;
+    }
+
+    /**
+     * {@code notificationId} là id dòng notifications riêng, hoặc sent_id của
+     * thông báo nhóm.
+     */
+    @Transactional
+    public void markAsRead(UUID userId, UUID notificationId) {
+        int changed = notificationRepository.markAsRead(userId, notificationId);
+        if (changed == 0) {
+            Reader reader = reader(userId);
+            if (reader == null) {
+                return;
+            }
+            List<Object> args = new ArrayList<>();
+            args.add(userId);
+            args.add(userId);
+            args.add(notificationId);
+            args.addAll(Arrays.asList(reader.matchArgs()));
+            changed = jdbcTemplate.update(MARK_GROUP_READ_SQL, args.toArray());
+        }
+        if (changed > 0) {
+            unreadCounter.addAfterCommit(List.of(userId), -changed);
+        }
+    }
+
+    @Transactional
+    public void markAllAsRead(UUID userId) {
+        LocalDateTime now = LocalDateTime.now();
+        notificationRepository.markAllAsRead(userId);
+        jdbcTemplate.update(READ_ALL_MARK_SQL, userId, now);
+        jdbcTemplate.update(COMPACT_GROUP_READS_SQL, userId, now);
+        unreadCounter.resetAfterCommit(userId, 0);
+    }
+
+    private Reader reader(UUID userId) {
+        List<Reader> readers = jdbcTemplate.query(READER_SQL, (rs, rowNum) -> {
+            Number departmentId = (Number) rs.getObject(2);
+            Timestamp createdAt = rs.getTimestamp(4);
+            return new Reader(userId, rs.getString(1), departmentId == null ? null : departmentId.longValue(),
+                    rs.getString(3), createdAt == null ? NO_JOIN_DATE : createdAt.toLocalDateTime());
+        }, userId);
+        return readers.isEmpty() ? null : readers.getFirst();
+    }
+
+    /**
+     * Điều kiện thông báo nhóm {@code sn} khớp với người đọc; tham số là biểu thức
+     * SQL ({@code ?} hoặc cột) cho từng thuộc tính của người đọc.
+     */
+    private static String groupMatch(String joinedAt, String userId, String role, String departmentId,
+            String classCode) {
+        return "sn.inbox_on_read AND sn.status IN ('PROCESSING', 'SENT', 'FAILED', 'CANCELLED') "
+                + "AND sn.sent_at >= " + joinedAt + " "
+                + "AND (sn.status = 'SENT' OR sn.dispatch_cursor >= " + userId + ") "
+                + "AND ((sn.notification_type = 'BROADCAST' AND " + role + " <> 'ADMIN') "
+                + "OR (sn.notification_type = 'TARGETED' "
+                + "AND (sn.target_role IS NULL OR UPPER(sn.target_role) IN ('ALL ROLES', " + role + ")) "
+                + "AND (sn.target_department_id IS NULL OR sn.target_department_id = " + departmentId + ") "
+                + "AND (sn.target_class_code IS NULL OR UPPER(sn.target_class_code) = 'ALL CLASSES' "
+                + "OR sn.target_class_code = " + classCode + ")))";
+    }
+
+    private static Notification toNotification(ResultSet rs) throws SQLException {
+        Notification notification = Notification.builder()
+                .notificationId(rs.getObject(1, UUID.class))
+                .title(rs.getString(2))
+                .body(rs.getString(3))
+                .read(rs.getBoolean(4))
+                .actionUrl(rs.getString(5))
+                .notificationType(rs.getString(6))
+                .build();
+        Timestamp createdAt = rs.getTimestamp(7);
+        notification.setCreatedAt(createdAt == null ? null : createdAt.toLocalDateTime());
+        return notification;
+    }
+}
@@ -1,5 +1,6 @@
 package com.newwave.student_management.domains.notification.service;
 
+import com.newwave.student_management.common.util.TransactionHooks;
 import com.newwave.student_management.domains.auth.entity.User;
 import com.newwave.student_management.domains.notification.entity.FcmToken;
 import com.newwave.student_management.domains.notification.entity.Notification;
@@ -10,20 +11,22 @@ import com.newwave.student_management.domains.notification.repository.SentNotifi
 import com.newwave.student_management.domains.auth.repository.UserRepository;
 import com.newwave.student_management.domains.profile.repository.StudentRepository;
 import com.newwave.student_management.domains.profile.repository.TeacherRepository;
-import com.newwave.student_management.infrastructure.fcm.FcmService;
+import com.newwave.student_management.infrastructure.fcm.FcmFanOutService;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
 import com.newwave.student_management.domains.notification.dto.RecipientSearchResponse;
 import com.newwave.student_management.domains.notification.dto.NotificationEvent;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.transaction.support.TransactionSynchronization;
-import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -34,7 +37,10 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class NotificationInternalService {
 
-    private final FcmService fcmService;
+    private final NotificationDeliveryService notificationDeliveryService;
+    private final NotificationInboxService notificationInboxService;
+    private final NotificationUnreadCounter unreadCounter;
+    private final MeterRegistry meterRegistry;
     private final FcmTokenRepository fcmTokenRepository;
     private final NotificationRepository notificationRepository;
     private final SentNotificationRepository sentNotificationRepository;
@@ -42,6 +48,7 @@ public class NotificationInternalService {
     private final StudentRepository studentRepository;
     private final TeacherRepository teacherRepository;
     private final NotificationProducer notificationProducer;
+    private final PlatformTransactionManager transactionManager;
 
     @Transactional(readOnly = true)
     public Page<SentNotification> getSentHistory(
@@ -63,11 +70,18 @@ public class NotificationInternalService {
 
         fcmTokenRepository.findByToken(token).ifPresentOrElse(
                 existingToken -> {
+                    if (existingToken.getQuarantinedAt() != null) {
+                        meterRegistry.counter("fcm.tokens.registered", "kind", "reactivated").increment();
+                    }
                     existingToken.setUser(user);
                     existingToken.setDeviceType(deviceType);
+                    existingToken.setQuarantinedAt(null);
+                    // Luôn ghi updated_at để FcmTokenPruner bỏ qua báo cáo chết từ lượt gửi trước
+                    existingToken.setUpdatedAt(java.time.LocalDateTime.now());
                     fcmTokenRepository.save(existingToken);
                 },
                 () -> {
+                    meterRegistry.counter("fcm.tokens.registered", "kind", "new").increment();
                     FcmToken fcmToken = FcmToken.builder()
                             .user(user)
                             .token(token)
@@ -79,6 +93,15 @@ public class NotificationInternalService {
 
     @Transactional
     public void sendToUser(User user, String title, String body, String actionUrl) {
+        sendToUser(user, title, body, actionUrl, null);
+    }
+
+    /**
+     * Lưu thông báo vào inbox của 1 user; push FCM chạy sau khi transaction hiện
+     * tại commit (retry + backoff của fan-out không giữ connection DB). {@code sentId}
+     * khác null → ghi kết quả push vào dòng lịch sử đó.
+     */
+    private void sendToUser(User user, String title, String body, String actionUrl, java.util.UUID sentId) {
         // 1. Lưu vào DB cho người dùng xem
         Notification notification = Notification.builder()
                 .user(user)
@@ -89,12 +112,59 @@ public class NotificationInternalService {
                 .notificationType("SYSTEM")
                 .build();
         notificationRepository.save(notification);
+        unreadCounter.addAfterCommit(List.of(user.getUserId()), 1);
 
         // 2. Gửi qua FCM
-        List<FcmToken> tokens = fcmTokenRepository.findByUser_UserId(user.getUserId());
-        for (FcmToken fcmToken : tokens) {
-            fcmService.sendNotification(fcmToken.getToken(), title, body, actionUrl);
+        List<String> tokens = fcmTokenRepository.findByUser_UserIdAndQuarantinedAtIsNull(user.getUserId()).stream()
+                .map(FcmToken::getToken)
+                .toList();
+        pushAfterCommit(tokens, title, body, actionUrl, sentId);
+    }
+
+    /**
+     * Gửi cùng một thông báo hệ thống cho nhiều user trong một lượt: 1 dòng lịch
+     * sử (SENT), 1 câu INSERT cho toàn bộ inbox, 1 query lấy FCM token. Push FCM
+     * chạy sau khi transaction hiện tại commit.
+     *
+     * @return số user nhận thông báo
+     */
+    @Transactional
+    public int sendToUsers(Collection<java.util.UUID> userIds, String title, String body, String actionUrl,
+            String targetGroup) {
+        List<java.util.UUID> recipients = userIds.stream().distinct().toList();
+        if (recipients.isEmpty()) {
+            return 0;
         }
+
+        SentNotification history = sentNotificationRepository.save(SentNotification.builder()
+                .title(title)
+                .body(body)
+                .actionUrl(actionUrl)
+                .notificationType("TARGETED")
+                .targetGroup(targetGroup)
+                .recipientCount(recipients.size())
+                .status("SENT")
+                .sentAt(java.time.LocalDateTime.now())
+                .build());
+
+        notificationDeliveryService.insertInbox(recipients, title, body, actionUrl, "SYSTEM");
+        unreadCounter.addAfterCommit(recipients, 1);
+
+        List<String> tokens = notificationDeliveryService.findTokens(recipients);
+        pushAfterCommit(tokens, title, body, actionUrl, history.getSentId());
+        return recipients.size();
+    }
+
+    private void pushAfterCommit(List<String> tokens, String title, String body, String actionUrl,
+            java.util.UUID sentId) {
+        Runnable push = () -> {
+            FcmFanOutService.FanOutResult result = notificationDeliveryService.push(tokens, title, body, actionUrl);
+            if (sentId != null) {
+                sentNotificationRepository.recordPushDelivery(sentId, result.batches(), result.successCount(),
+                        result.failureCount());
+            }
+        };
+        TransactionHooks.afterCommit(push);
     }
 
     @Transactional
@@ -132,41 +202,7 @@ public class NotificationInternalService {
                 .type(notif.getNotificationType())
                 .build();
 
-        if (TransactionSynchronizationManager.isActualTransactionActive()) {
-            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
-                @Override
-                public void afterCommit() {
-                    notificationProducer.sendNotificationEvent(event);
-                }
-            });
-        } else {
-            notificationProducer.sendNotificationEvent(event);
-        }
-    }
-
-    private void sendBroadcastImmediate(SentNotification notif) {
-        List<FcmToken> allTokens = fcmTokenRepository.findAllByRoleNot("ADMIN");
-        notif.setRecipientCount(allTokens.size());
-        for (FcmToken fcmToken : allTokens) {
-            try {
-                fcmService.sendNotification(fcmToken.getToken(), notif.getTitle(), notif.getBody(),
-                        notif.getActionUrl());
-            } catch (Exception ex) {
-                System.err.println("Failed to send FCM: " + ex.getMessage());
-            }
-        }
-
-        // Save to per-user notification table
-        List<User> users = userRepository.findAllByRoleNameNot("ADMIN");
-        List<Notification> items = users.stream().map(systemUser -> Notification.builder()
-                .user(systemUser)
-                .title(notif.getTitle())
-                .body(notif.getBody())
-                .actionUrl(notif.getActionUrl())
-                .read(false)
-                .notificationType(notif.getNotificationType())
-                .build()).collect(Collectors.toList());
-        notificationRepository.saveAll(items);
+        TransactionHooks.afterCommit(() -> notificationProducer.sendNotificationEvent(event));
     }
 
     @Transactional
@@ -216,41 +252,9 @@ public class NotificationInternalService {
         sendToKafka(history);
     }
 
-    private void sendTargetedImmediate(SentNotification notif) {
-        String roleParam = (notif.getTargetRole() == null || notif.getTargetRole().equalsIgnoreCase("All Roles")) ? null
-                : notif.getTargetRole().toUpperCase();
-        String classCodeParam = (notif.getTargetClassCode() == null
-                || notif.getTargetClassCode().equalsIgnoreCase("All Classes")) ? null
-                        : notif.getTargetClassCode();
-        List<FcmToken> tokens = fcmTokenRepository.findTokensByCriteria(roleParam, notif.getTargetDepartmentId(),
-                classCodeParam);
-        notif.setRecipientCount(tokens.size());
-        for (FcmToken fcmToken : tokens) {
-            try {
-                fcmService.sendNotification(fcmToken.getToken(), notif.getTitle(), notif.getBody(),
-                        notif.getActionUrl());
-            } catch (Exception ex) {
-                System.err.println("Failed to send FCM: " + ex.getMessage());
-            }
-        }
-
-        // Save to per-user notification table
-        List<User> recipients = userRepository.findUsersByCriteria(roleParam, notif.getTargetDepartmentId(),
-                classCodeParam);
-        List<Notification> items = recipients.stream().map(systemUser -> Notification.builder()
-                .user(systemUser)
-                .title(notif.getTitle())
-                .body(notif.getBody())
-                .actionUrl(notif.getActionUrl())
-                .read(false)
-                .notificationType(notif.getNotificationType())
-                .build()).collect(Collectors.toList());
-        notificationRepository.saveAll(items);
-    }
-
     @Transactional(readOnly = true)
     public Map<String, Object> getStats() {
-        long activeTokens = fcmTokenRepository.count();
+        long activeTokens = fcmTokenRepository.countByQuarantinedAtIsNull();
         long sentLast30Days = sentNotificationRepository
                 .countByCreatedAtAfter(java.time.LocalDateTime.now().minusDays(30));
 
@@ -348,7 +352,7 @@ public class NotificationInternalService {
         }
 
         if (userOpt.isPresent()) {
-            sendToUser(userOpt.get(), notif.getTitle(), notif.getBody(), notif.getActionUrl());
+            sendToUser(userOpt.get(), notif.getTitle(), notif.getBody(), notif.getActionUrl(), notif.getSentId());
         } else {
             throw new RuntimeException("Recipient not found: " + identifier);
         }
@@ -357,7 +361,8 @@ public class NotificationInternalService {
     @Transactional
     public void deleteSentNotification(java.util.UUID sentId) {
         sentNotificationRepository.findById(sentId).ifPresent(notif -> {
-            if ("PENDING".equals(notif.getStatus())) {
+            if ("PENDING".equals(notif.getStatus())
+                    || NotificationDeliveryService.STATUS_PROCESSING.equals(notif.getStatus())) {
                 notif.setStatus("CANCELLED");
             }
             notif.setDeletedAt(java.time.LocalDateTime.now());
@@ -365,8 +370,20 @@ public class NotificationInternalService {
         });
     }
 
-    @Transactional
+    /**
+     * Gửi thông báo đến hạn. BROADCAST / TARGETED chạy theo chunk người nhận, mỗi
+     * chunk một transaction (NotificationDeliveryService); PERSONAL chạy trong 1
+     * transaction.
+     */
     public void processScheduledNotification(SentNotification notif) {
+        if ("BROADCAST".equals(notif.getNotificationType()) || "TARGETED".equals(notif.getNotificationType())) {
+            notificationDeliveryService.dispatch(notif.getSentId());
+            return;
+        }
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> processPersonal(notif));
+    }
+
+    private void processPersonal(SentNotification notif) {
         // Re-read from DB to check current status (guard against cancellation race)
         SentNotification fresh = sentNotificationRepository.findById(notif.getSentId()).orElse(null);
         if (fresh == null || !"PENDING".equals(fresh.getStatus())) {
@@ -374,11 +391,7 @@ public class NotificationInternalService {
         }
 
         try {
-            if ("BROADCAST".equals(fresh.getNotificationType())) {
-                sendBroadcastImmediate(fresh);
-            } else if ("TARGETED".equals(fresh.getNotificationType())) {
-                sendTargetedImmediate(fresh);
-            } else if ("PERSONAL".equals(fresh.getNotificationType())) {
+            if ("PERSONAL".equals(fresh.getNotificationType())) {
                 sendPersonalImmediate(fresh);
             }
 
@@ -388,29 +401,25 @@ public class NotificationInternalService {
         } catch (Exception ex) {
             log.error("Failed to process Scheduled Notification", ex);
             fresh.setStatus("FAILED");
-            fresh.setBody(
-                    fresh.getBody() + "\n\n[System Error]: " + ex.getClass().getSimpleName() + " - " + ex.getMessage());
+            fresh.setBody(fresh.getBody() + NotificationDeliveryService.SYSTEM_ERROR_MARKER
+                    + ex.getClass().getSimpleName() + " - " + ex.getMessage());
             sentNotificationRepository.save(fresh);
         }
     }
 
-    @Transactional(readOnly = true)
     public Page<Notification> getUserNotifications(java.util.UUID userId, Pageable pageable) {
-        return notificationRepository.findByUser_UserIdOrderByCreatedAtDesc(userId, pageable);
+        return notificationInboxService.getInbox(userId, pageable);
     }
 
-    @Transactional(readOnly = true)
     public long getUnreadCount(java.util.UUID userId) {
-        return notificationRepository.countByUser_UserIdAndReadFalse(userId);
+        return notificationInboxService.countUnread(userId);
     }
 
-    @Transactional
     public void markAsRead(java.util.UUID userId, java.util.UUID notificationId) {
-        notificationRepository.markAsRead(userId, notificationId);
+        notificationInboxService.markAsRead(userId, notificationId);
     }
 
-    @Transactional
     public void markAllAsRead(java.util.UUID userId) {
-        notificationRepository.markAllAsRead(userId);
+        notificationInboxService.markAllAsRead(userId);
     }
 }
@@ -0,0 +1,237 @@
+package com.newwave.student_management.domains.notification.service;
+
+import com.newwave.student_management.common.util.TransactionHooks;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.DefaultStringRedisConnection;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Số thông báo chưa đọc của từng user trên Redis ({@code notification:unread:{userId}}),
+ * để API đếm chưa đọc (frontend poll liên tục) không chạm PostgreSQL.
+ *
+ * <p>
+ * Counter chỉ được tạo khi user đọc lần đầu (nạp từ DB, SET NX kèm TTL
+ * {@code notification.unread-counter.ttl-seconds}); tăng / giảm chỉ áp dụng khi
+ * key còn tồn tại, nên user không online không tốn key nào. Các thay đổi gọi sau
+ * khi transaction ghi DB commit; lệch còn lại (lỗi Redis, crash giữa commit và
+ * INCR, thông báo bị hủy giữa chừng) do UnreadCounterReconciler sửa hoặc tự hết
+ * khi key hết hạn.
+ * </p>
+ *
+ * Lỗi Redis không làm hỏng luồng gọi: đọc thì trả {@code null} để bên gọi đếm
+ * từ DB, ghi thì bỏ qua. Metric: notification.unread_counter.requests (tag
+ * result), notification.unread_counter.errors.
+ */
+@Service
+@Slf4j
+public class NotificationUnreadCounter {
+
+    private static final String METRIC_NAME = "notification.unread_counter";
+    private static final String KEY_PREFIX = "notification:unread:";
+
+    private static final DefaultRedisScript<Long> ADD_IF_PRESENT_SCRIPT;
+    private static final DefaultRedisScript<Long> COMPARE_AND_SET_SCRIPT;
+
+    static {
+        // ARGV[1] = delta; không để counter âm
+        ADD_IF_PRESENT_SCRIPT = new DefaultRedisScript<>();
+        ADD_IF_PRESENT_SCRIPT.setResultType(Long.class);
+        ADD_IF_PRESENT_SCRIPT.setScriptText(
+                "local updated = 0 " +
+                        "for _, key in ipairs(KEYS) do " +
+                        "  if redis.call('EXISTS', key) == 1 then " +
+                        "    if redis.call('INCRBY', key, ARGV[1]) < 0 then " +
+                        "      redis.call('SET', key, '0', 'KEEPTTL') " +
+                        "    end " +
+                        "    updated = updated + 1 " +
+                        "  end " +
+                        "end " +
+                        "return updated");
+
+        COMPARE_AND_SET_SCRIPT = new DefaultRedisScript<>();
+        COMPARE_AND_SET_SCRIPT.setResultType(Long.class);
+        COMPARE_AND_SET_SCRIPT.setScriptText(
+                "local cur = redis.call('GET', KEYS[1]) " +
+                        "if not cur then return -1 end " +
+                        "if cur ~= ARGV[1] then return 0 end " +
+                        "redis.call('SET', KEYS[1], ARGV[2], 'KEEPTTL') " +
+                        "return 1");
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final Duration ttl;
+    private final int batchSize;
+
+    public NotificationUnreadCounter(StringRedisTemplate stringRedisTemplate, MeterRegistry meterRegistry,
+            @Value("${notification.unread-counter.enabled:true}") boolean enabled,
+            @Value("${notification.unread-counter.ttl-seconds:86400}") long ttlSeconds,
+            @Value("${notification.unread-counter.batch-size:500}") int batchSize) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.ttl = Duration.ofSeconds(Math.max(1, ttlSeconds));
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return counter hiện tại, {@code null} nếu chưa có (hoặc Redis lỗi / tắt)
+     */
+    public Long get(UUID userId) {
+        if (!enabled) {
+            return null;
+        }
+        try {
+            String value = stringRedisTemplate.opsForValue().get(KEY_PREFIX + userId);
+            meterRegistry.counter(METRIC_NAME + ".requests", "result", value != null ? "hit" : "miss").increment();
+            return value != null ? Long.parseLong(value) : null;
+        } catch (Exception ex) {
+            recordError("get", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Tạo counter từ số đếm DB nếu chưa có; không ghi đè counter đã được tạo
+     * song song.
+     */
+    public void load(UUID userId, long unread) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            stringRedisTemplate.opsForValue().setIfAbsent(KEY_PREFIX + userId, String.valueOf(unread), ttl);
+        } catch (Exception ex) {
+            recordError("load", ex);
+        }
+    }
+
+    /**
+     * Cộng {@code delta} vào counter đang có của các user, sau khi transaction
+     * hiện tại commit (ngay lập tức nếu không có transaction).
+     */
+    public void addAfterCommit(Collection<UUID> userIds, long delta) {
+        if (!enabled || userIds.isEmpty() || delta == 0) {
+            return;
+        }
+        List<UUID> snapshot = List.copyOf(userIds);
+        TransactionHooks.afterCommit(() -> add(snapshot, delta));
+    }
+
+    /**
+     * Đặt counter về {@code unread} sau khi transaction hiện tại commit (ví dụ
+     * "đọc tất cả"), kể cả khi key chưa có.
+     */
+    public void resetAfterCommit(UUID userId, long unread) {
+        if (!enabled) {
+            return;
+        }
+        TransactionHooks.afterCommit(() -> {
+            try {
+                stringRedisTemplate.opsForValue().set(KEY_PREFIX + userId, String.valueOf(unread), ttl);
+            } catch (Exception ex) {
+                recordError("reset", ex);
+            }
+        });
+    }
+
+    /**
+     * Duyệt mọi counter đang có theo batch {@code batchSize} user (SCAN, không
+     * chặn Redis).
+     */
+    public void scan(Consumer<List<UUID>> batchConsumer) {
+        ScanOptions options = ScanOptions.scanOptions()
+                .match(KEY_PREFIX + "*")
+                .count(batchSize)
+                .build();
+        List<UUID> batch = new ArrayList<>(batchSize);
+        try (Cursor<String> cursor = stringRedisTemplate.scan(options)) {
+            while (cursor.hasNext()) {
+                try {
+                    batch.add(UUID.fromString(cursor.next().substring(KEY_PREFIX.length())));
+                } catch (IllegalArgumentException ex) {
+                    continue;
+                }
+                if (batch.size() >= batchSize) {
+                    batchConsumer.accept(List.copyOf(batch));
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            batchConsumer.accept(List.copyOf(batch));
+        }
+    }
+
+    /**
+     * Đọc counter của nhiều user trong 1 pipeline; user không có key bị bỏ qua.
+     */
+    public Map<UUID, Long> read(List<UUID> userIds) {
+        List<Object> values = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = new DefaultStringRedisConnection(connection);
+            for (UUID userId : userIds) {
+                conn.get(KEY_PREFIX + userId);
+            }
+            return null;
+        });
+        Map<UUID, Long> counters = new HashMap<>();
+        for (int i = 0; i < userIds.size(); i++) {
+            Object value = values.get(i);
+            if (value != null) {
+                counters.put(userIds.get(i), Long.parseLong(value.toString()));
+            }
+        }
+        return counters;
+    }
+
+    /**
+     * Ghi đè counter bằng số đếm từ DB nếu Redis vẫn đang ở {@code expected}.
+     *
+     * @return 1 đã sửa, 0 counter vừa thay đổi (bỏ qua), -1 key không tồn tại
+     */
+    public long compareAndSet(UUID userId, long expected, long actual) {
+        Long result = stringRedisTemplate.execute(COMPARE_AND_SET_SCRIPT,
+                List.of(KEY_PREFIX + userId), String.valueOf(expected), String.valueOf(actual));
+        return result != null ? result : -1L;
+    }
+
+    private void add(List<UUID> userIds, long delta) {
+        try {
+            for (int from = 0; from < userIds.size(); from += batchSize) {
+                List<String> keys = userIds.subList(from, Math.min(from + batchSize, userIds.size())).stream()
+                        .map(userId -> KEY_PREFIX + userId)
+                        .toList();
+                stringRedisTemplate.execute(ADD_IF_PRESENT_SCRIPT, keys, String.valueOf(delta));
+            }
+        } catch (Exception ex) {
+            recordError("add", ex);
+        }
+    }
+
+    private void recordError(String operation, Exception ex) {
+        meterRegistry.counter(METRIC_NAME + ".errors", "operation", operation).increment();
+        log.warn("Unread counter {} failed: {}", operation, ex.getMessage());
+    }
+}
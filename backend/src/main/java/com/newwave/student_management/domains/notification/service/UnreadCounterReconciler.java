@@ -0,0 +1,121 @@
+package com.newwave.student_management.domains.notification.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Đối soát counter chưa đọc trên Redis với số chưa đọc thật trong PostgreSQL
+ * (lỗi Redis khi tăng / giảm, crash giữa commit và INCR, thông báo bị hủy giữa
+ * lúc gửi...).
+ *
+ * <p>
+ * Mỗi vòng duyệt mọi counter đang có theo batch: đọc counter (pipeline) → 1
+ * query đếm chưa đọc cho cả batch → đọc lại counter. Counter đổi giữa hai lần
+ * đọc đang có thông báo / lượt đọc xử lý nên bỏ qua. Cũng như
+ * SlotCounterReconciler, một lệch chỉ được sửa khi cùng cặp (redis, db) xuất
+ * hiện ở hai vòng liên tiếp, và việc ghi là compare-and-set trên Redis.
+ * </p>
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class UnreadCounterReconciler {
+
+    private static final String METRIC_NAME = "notification.unread_reconciliation";
+
+    private final NotificationUnreadCounter unreadCounter;
+    private final NotificationInboxService notificationInboxService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${notification.unread-counter.reconciliation-enabled:true}")
+    private boolean enabled;
+
+    /**
+     * Lệch quan sát được ở vòng trước, chờ xác nhận. Thay mới mỗi vòng nên
+     * counter đã hết lệch hoặc đã hết hạn tự rơi khỏi map.
+     */
+    private volatile Map<UUID, Observation> pending = Map.of();
+
+    private record Observation(long redis, long db) {
+    }
+
+    @Scheduled(fixedDelayString = "${notification.unread-counter.reconciliation-interval-ms:300000}",
+            initialDelayString = "${notification.unread-counter.reconciliation-interval-ms:300000}")
+    public void reconcile() {
+        if (!enabled || !unreadCounter.isEnabled()) {
+            return;
+        }
+        long start = System.nanoTime();
+        Map<UUID, Observation> next = new HashMap<>();
+        try {
+            unreadCounter.scan(userIds -> reconcileBatch(userIds, next));
+        } catch (Exception ex) {
+            log.warn("Unread counter reconciliation failed: {}", ex.getMessage());
+        }
+        pending = next;
+        meterRegistry.timer(METRIC_NAME + ".duration").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void reconcileBatch(List<UUID> userIds, Map<UUID, Observation> next) {
+        Map<UUID, Long> before = unreadCounter.read(userIds);
+        if (before.isEmpty()) {
+            return;
+        }
+        Map<UUID, Long> unread = notificationInboxService.countUnreadFromDb(before.keySet());
+        Map<UUID, Long> after = unreadCounter.read(List.copyOf(before.keySet()));
+        Map<UUID, Observation> previous = pending;
+
+        for (Map.Entry<UUID, Long> entry : before.entrySet()) {
+            UUID userId = entry.getKey();
+            long redis = entry.getValue();
+            Long again = after.get(userId);
+            if (again == null || again != redis) {
+                meterRegistry.counter(METRIC_NAME, "result", "busy").increment();
+                continue;
+            }
+
+            long db = unread.getOrDefault(userId, 0L);
+            if (redis == db) {
+                continue;
+            }
+
+            Observation observation = new Observation(redis, db);
+            if (!observation.equals(previous.get(userId))) {
+                next.put(userId, observation);
+                continue;
+            }
+
+            recordDrift(redis, db);
+            long result = unreadCounter.compareAndSet(userId, redis, db);
+            if (result == 1) {
+                log.warn("Repaired unread counter for user {}: redis={} db={}", userId, redis, db);
+                meterRegistry.counter(METRIC_NAME, "result", "repaired").increment();
+            } else {
+                meterRegistry.counter(METRIC_NAME, "result", result == 0 ? "changed" : "missing").increment();
+            }
+        }
+    }
+
+    /**
+     * redis &lt; db: badge thiếu thông báo chưa đọc. redis &gt; db: badge báo
+     * thông báo không còn (đã đọc / bị hủy).
+     */
+    private void recordDrift(long redis, long db) {
+        DistributionSummary.builder(METRIC_NAME + ".drift")
+                .description("Absolute unread counter drift of repaired users")
+                .tag("direction", redis < db ? "under_count" : "over_count")
+                .register(meterRegistry)
+                .record(Math.abs(redis - db));
+    }
+}
@@ -1,6 +1,8 @@
 package com.newwave.student_management.domains.profile.repository;
 
 import com.newwave.student_management.domains.profile.entity.Student;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -38,4 +40,36 @@ public interface StudentRepository extends JpaRepository<Student, UUID> {
             "LOWER(s.email) LIKE LOWER(CONCAT('%', :query, '%')) OR " +
             "LOWER(s.studentCode) LIKE LOWER(CONCAT('%', :query, '%')))")
     List<Student> searchRecipients(@Param("query") String query, org.springframework.data.domain.Pageable pageable);
+
+    String ELIGIBLE_STUDENTS_WHERE = "WHERE s.department.departmentId = :departmentId AND s.deletedAt IS NULL "
+            + "AND (LOWER(s.firstName) LIKE :search "
+            + "OR LOWER(s.lastName) LIKE :search "
+            + "OR LOWER(s.email) LIKE :search "
+            + "OR LOWER(s.studentCode) LIKE :search) "
+            + "AND NOT EXISTS (SELECT 1 FROM Enrollment e WHERE e.student = s "
+            + "AND e.scheduledClass.classId = :classId) "
+            + "AND NOT EXISTS (SELECT 1 FROM Enrollment c JOIN c.scheduledClass.sessions sess, ClassSession target "
+            + "WHERE c.student = s AND target.scheduledClass.classId = :classId "
+            + "AND c.scheduledClass.semester.semesterId = target.scheduledClass.semester.semesterId "
+            + "AND c.scheduledClass.deletedAt IS NULL AND c.status = 'ENROLLED' "
+            + "AND sess.dayOfWeek = target.dayOfWeek "
+            + "AND sess.startTime < target.endTime AND sess.endTime > target.startTime) ";
+
+    /**
+     * SV cùng khoa chưa có dòng enrollment nào ở lớp {@code classId} (mọi trạng
+     * thái — unique constraint uk_enrollments_student_class chặn Admin thêm SV
+     * đã có dòng WAITLISTED/DROPPED) và không có buổi học trùng giờ với lớp đó
+     * trong cùng semester — 1 query anti-join thay cho exists/countStudentConflicts
+     * từng SV. {@code search} là pattern LIKE từ
+     * {@link com.newwave.student_management.common.util.PaginationUtil#normalizeSearch}
+     * ("%" = không lọc).
+     * Trả về Object[]{userId (UUID), studentCode, firstName, lastName, email}.
+     */
+    @Query(value = "SELECT s.user.userId, s.studentCode, s.firstName, s.lastName, s.email FROM Student s "
+            + ELIGIBLE_STUDENTS_WHERE + "ORDER BY s.studentCode",
+            countQuery = "SELECT COUNT(s) FROM Student s " + ELIGIBLE_STUDENTS_WHERE)
+    Page<Object[]> findEligibleForClass(@Param("classId") Integer classId,
+            @Param("departmentId") Integer departmentId,
+            @Param("search") String search,
+            Pageable pageable);
 }
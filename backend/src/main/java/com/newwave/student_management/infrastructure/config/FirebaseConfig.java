@@ -3,6 +3,8 @@ package com.newwave.student_management.infrastructure.config;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
+import com.newwave.student_management.infrastructure.fcm.FcmEndpointTransport;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -12,7 +14,7 @@ import java.io.InputStream;
 public class FirebaseConfig {
 
     @Bean
-    public FirebaseApp firebaseApp() {
+    public FirebaseApp firebaseApp(@Value("${fcm.endpoint:}") String fcmEndpoint) {
         try {
             InputStream serviceAccount;
 
@@ -28,8 +30,8 @@ public class FirebaseConfig {
             if (serviceAccount == null) {
                 // 3. Fallback cuối cùng: dùng Google Application Default Credentials
                 // Nếu chạy trên GCP (Google Cloud) thì nó sẽ tự động nhận diện
-                FirebaseOptions options = FirebaseOptions.builder()
-                        .setCredentials(GoogleCredentials.getApplicationDefault())
+                FirebaseOptions options = withEndpoint(FirebaseOptions.builder()
+                        .setCredentials(GoogleCredentials.getApplicationDefault()), fcmEndpoint)
                         .build();
 
                 if (FirebaseApp.getApps().isEmpty()) {
@@ -38,8 +40,8 @@ public class FirebaseConfig {
                 return FirebaseApp.getInstance();
             }
 
-            FirebaseOptions options = FirebaseOptions.builder()
-                    .setCredentials(GoogleCredentials.fromStream(serviceAccount))
+            FirebaseOptions options = withEndpoint(FirebaseOptions.builder()
+                    .setCredentials(GoogleCredentials.fromStream(serviceAccount)), fcmEndpoint)
                     .build();
 
             if (FirebaseApp.getApps().isEmpty()) {
@@ -50,4 +52,12 @@ public class FirebaseConfig {
             throw new RuntimeException("Lỗi khởi tạo Firebase: " + ex.getMessage());
         }
     }
+
+    // fcm.endpoint: gửi push tới stub FCM thay vì fcm.googleapis.com
+    private static FirebaseOptions.Builder withEndpoint(FirebaseOptions.Builder builder, String fcmEndpoint) {
+        if (fcmEndpoint != null && !fcmEndpoint.isBlank()) {
+            builder.setHttpTransport(FcmEndpointTransport.forEndpoint(fcmEndpoint));
+        }
+        return builder;
+    }
 }
@@ -15,4 +15,12 @@ public class KafkaTopicConfig {
                 .replicas(1)
                 .build();
     }
+
+    @Bean
+    public NewTopic enrollmentCommitTopic() {
+        return TopicBuilder.name("enrollment-commit-topic")
+                .partitions(3)
+                .replicas(1)
+                .build();
+    }
 }
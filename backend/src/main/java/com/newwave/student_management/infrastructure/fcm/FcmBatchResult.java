@@ -0,0 +1,23 @@
+package com.newwave.student_management.infrastructure.fcm;
+
+import java.util.List;
+
+/**
+ * Kết quả một lần gửi multicast, phân loại token lỗi:
+ * <ul>
+ * <li>{@code retryableTokens} — lỗi tạm thời phía FCM (UNAVAILABLE, INTERNAL,
+ * QUOTA_EXCEEDED), đáng gửi lại</li>
+ * <li>{@code unregisteredTokens} — thiết bị đã gỡ app / token thuộc project
+ * khác (UNREGISTERED, SENDER_ID_MISMATCH), không bao giờ nhận được nữa</li>
+ * <li>{@code invalidTokens} — FCM trả INVALID_ARGUMENT (token sai định dạng,
+ * hoặc payload lỗi)</li>
+ * <li>{@code failedTokens} — lỗi khác</li>
+ * </ul>
+ */
+public record FcmBatchResult(int successCount, List<String> retryableTokens, List<String> unregisteredTokens,
+        List<String> invalidTokens, List<String> failedTokens) {
+
+    public int failureCount() {
+        return retryableTokens.size() + unregisteredTokens.size() + invalidTokens.size() + failedTokens.size();
+    }
+}
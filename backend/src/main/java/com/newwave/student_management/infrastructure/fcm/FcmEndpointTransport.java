@@ -0,0 +1,38 @@
+package com.newwave.student_management.infrastructure.fcm;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
+
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+
+/**
+ * HTTP transport cho Firebase SDK chuyển các request tới
+ * {@value #FCM_HOST} sang {@code fcm.endpoint} (stub FCM cục bộ khi test tải).
+ * Request khác (OAuth...) giữ nguyên đích.
+ */
+public final class FcmEndpointTransport {
+
+    private static final String FCM_HOST = "fcm.googleapis.com";
+
+    private FcmEndpointTransport() {
+    }
+
+    /**
+     * @param endpoint gốc thay thế, ví dụ {@code http://127.0.0.1:9099}
+     */
+    public static HttpTransport forEndpoint(String endpoint) {
+        String base = endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+        return new NetHttpTransport.Builder()
+                .setConnectionFactory(url -> (HttpURLConnection) rewrite(url, base).openConnection())
+                .build();
+    }
+
+    private static URL rewrite(URL url, String base) throws java.net.MalformedURLException {
+        if (!FCM_HOST.equalsIgnoreCase(url.getHost())) {
+            return url;
+        }
+        return URI.create(base + url.getFile()).toURL();
+    }
+}
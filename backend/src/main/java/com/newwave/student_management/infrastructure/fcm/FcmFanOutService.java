@@ -0,0 +1,210 @@
+package com.newwave.student_management.infrastructure.fcm;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fan-out push FCM cho nhiều thiết bị: chia token thành batch tối đa
+ * {@value FcmService#MAX_MULTICAST_TOKENS} (một MulticastMessage), gửi các
+ * batch song song trên virtual thread, tối đa
+ * {@code fcm.fan-out.max-concurrent-batches} batch cùng lúc.
+ *
+ * <p>
+ * Batch lỗi cả lần gọi (mạng, xác thực...) hoặc còn token lỗi tạm thời
+ * (UNAVAILABLE, INTERNAL, QUOTA_EXCEEDED) được gửi lại phần chưa thành công,
+ * tối đa {@code fcm.fan-out.max-attempts} lần, backoff lũy thừa có jitter.
+ * </p>
+ *
+ * <p>
+ * Token chết (UNREGISTERED) và token sai (INVALID_ARGUMENT) không gửi lại mà
+ * được trả về trong {@link FanOutResult} để bên gọi dọn khỏi DB. Nếu quá nửa
+ * batch bị INVALID_ARGUMENT thì coi là payload lỗi chứ không phải token, nên
+ * không báo các token đó.
+ * </p>
+ *
+ * Metric: {@value #METRIC_NAME}.batches / .messages (tag result),
+ * {@value #METRIC_NAME}.duration.
+ */
+@Service
+@Slf4j
+public class FcmFanOutService implements AutoCloseable {
+
+    private static final String METRIC_NAME = "fcm.fan_out";
+
+    /**
+     * Tổng hợp một lượt fan-out: số batch, số thiết bị nhận / không nhận được, số
+     * batch còn token lỗi sau khi hết lượt thử, cùng danh sách token chết / sai
+     * định dạng cần dọn.
+     */
+    public record FanOutResult(int batches, int successCount, int failureCount, int failedBatches,
+            List<String> unregisteredTokens, List<String> invalidTokens) {
+        public static final FanOutResult EMPTY = new FanOutResult(0, 0, 0, 0, List.of(), List.of());
+
+        public boolean hasDeadTokens() {
+            return !unregisteredTokens.isEmpty() || !invalidTokens.isEmpty();
+        }
+    }
+
+    private record BatchOutcome(int success, int failure, List<String> unregistered, List<String> invalid) {
+        static BatchOutcome aborted(int size) {
+            return new BatchOutcome(0, size, List.of(), List.of());
+        }
+    }
+
+    private final FcmService fcmService;
+    private final MeterRegistry meterRegistry;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final Semaphore permits;
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("fcm-fan-out-", 0).factory());
+
+    public FcmFanOutService(FcmService fcmService, MeterRegistry meterRegistry,
+            @Value("${fcm.fan-out.batch-size:500}") int batchSize,
+            @Value("${fcm.fan-out.max-concurrent-batches:4}") int maxConcurrentBatches,
+            @Value("${fcm.fan-out.max-attempts:3}") int maxAttempts,
+            @Value("${fcm.fan-out.initial-backoff-ms:500}") long initialBackoffMillis) {
+        this.fcmService = fcmService;
+        this.meterRegistry = meterRegistry;
+        this.batchSize = Math.clamp(batchSize, 1, FcmService.MAX_MULTICAST_TOKENS);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.permits = new Semaphore(Math.max(1, maxConcurrentBatches));
+    }
+
+    /**
+     * Gửi thông báo tới mọi token (bỏ trùng), chờ tới khi mọi batch xong.
+     */
+    public FanOutResult send(Collection<String> tokens, String title, String body, String actionUrl) {
+        List<String> distinct = tokens.stream().filter(Objects::nonNull).distinct().toList();
+        if (distinct.isEmpty()) {
+            return FanOutResult.EMPTY;
+        }
+
+        long start = System.nanoTime();
+        List<Future<BatchOutcome>> futures = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        for (int from = 0; from < distinct.size(); from += batchSize) {
+            List<String> batch = distinct.subList(from, Math.min(from + batchSize, distinct.size()));
+            futures.add(executor.submit(() -> sendBatch(batch, title, body, actionUrl)));
+            sizes.add(batch.size());
+        }
+
+        int success = 0;
+        int failure = 0;
+        int failedBatches = 0;
+        List<String> unregistered = new ArrayList<>();
+        List<String> invalid = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            BatchOutcome outcome = await(futures.get(i), sizes.get(i));
+            success += outcome.success();
+            failure += outcome.failure();
+            unregistered.addAll(outcome.unregistered());
+            invalid.addAll(outcome.invalid());
+            if (outcome.failure() > 0) {
+                failedBatches++;
+            }
+        }
+
+        FanOutResult result = new FanOutResult(futures.size(), success, failure, failedBatches,
+                unregistered, invalid);
+        meterRegistry.timer(METRIC_NAME + ".duration").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        meterRegistry.counter(METRIC_NAME + ".batches", "result", "success")
+                .increment(result.batches() - failedBatches);
+        meterRegistry.counter(METRIC_NAME + ".batches", "result", "failure").increment(failedBatches);
+        meterRegistry.counter(METRIC_NAME + ".messages", "result", "success").increment(success);
+        meterRegistry.counter(METRIC_NAME + ".messages", "result", "failure").increment(failure);
+        log.info("FCM fan-out to {} devices in {} batches: {} sent, {} failed", distinct.size(),
+                result.batches(), success, failure);
+        return result;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private BatchOutcome sendBatch(List<String> batch, String title, String body, String actionUrl) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return BatchOutcome.aborted(batch.size());
+        }
+        try {
+            List<String> pending = batch;
+            int success = 0;
+            int failed = 0;
+            List<String> unregistered = new ArrayList<>();
+            List<String> invalid = new ArrayList<>();
+            for (int attempt = 1;; attempt++) {
+                try {
+                    FcmBatchResult result = fcmService.sendMulticast(pending, title, body, actionUrl);
+                    success += result.successCount();
+                    failed += result.failedTokens().size() + result.unregisteredTokens().size()
+                            + result.invalidTokens().size();
+                    unregistered.addAll(result.unregisteredTokens());
+                    if (result.invalidTokens().size() * 2 > pending.size()) {
+                        log.warn("FCM rejected {}/{} tokens as INVALID_ARGUMENT, treating as payload error",
+                                result.invalidTokens().size(), pending.size());
+                    } else {
+                        invalid.addAll(result.invalidTokens());
+                    }
+                    pending = result.retryableTokens();
+                } catch (Exception ex) {
+                    log.warn("FCM batch of {} tokens failed (attempt {}/{}): {}", pending.size(), attempt,
+                            maxAttempts, ex.getMessage());
+                }
+                if (pending.isEmpty() || attempt >= maxAttempts || !backoff(attempt)) {
+                    break;
+                }
+            }
+            return new BatchOutcome(success, failed + pending.size(), unregistered, invalid);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * @return false nếu bị interrupt trong lúc chờ
+     */
+    private boolean backoff(int attempt) {
+        long base = initialBackoffMillis << (attempt - 1);
+        long delay = base / 2 + ThreadLocalRandom.current().nextLong(base + 1);
+        try {
+            Thread.sleep(delay);
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private BatchOutcome await(Future<BatchOutcome> future, int size) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            return BatchOutcome.aborted(size);
+        } catch (ExecutionException ex) {
+            log.warn("FCM batch of {} tokens aborted: {}", size, ex.getCause().getMessage());
+            return BatchOutcome.aborted(size);
+        }
+    }
+}
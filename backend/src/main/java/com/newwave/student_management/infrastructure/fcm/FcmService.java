@@ -1,29 +1,47 @@
 package com.newwave.student_management.infrastructure.fcm;
 
+import com.google.firebase.messaging.BatchResponse;
 import com.google.firebase.messaging.FirebaseMessaging;
+import com.google.firebase.messaging.FirebaseMessagingException;
 import com.google.firebase.messaging.Message;
+import com.google.firebase.messaging.MessagingErrorCode;
+import com.google.firebase.messaging.MulticastMessage;
 import com.google.firebase.messaging.Notification;
+import com.google.firebase.messaging.SendResponse;
+import com.google.firebase.messaging.WebpushConfig;
+import com.google.firebase.messaging.WebpushFcmOptions;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
 @Service
 @Slf4j
 public class FcmService {
 
+    /** Giới hạn token của một MulticastMessage. */
+    public static final int MAX_MULTICAST_TOKENS = 500;
+
+    // Lỗi phía FCM, gửi lại sau có thể thành công
+    private static final Set<MessagingErrorCode> RETRYABLE_ERRORS = EnumSet.of(
+            MessagingErrorCode.UNAVAILABLE, MessagingErrorCode.INTERNAL, MessagingErrorCode.QUOTA_EXCEEDED);
+
+    // Token không còn nhận được push: app đã gỡ / token hết hạn, hoặc thuộc project khác
+    private static final Set<MessagingErrorCode> UNREGISTERED_ERRORS = EnumSet.of(
+            MessagingErrorCode.UNREGISTERED, MessagingErrorCode.SENDER_ID_MISMATCH);
+
     public void sendNotification(String token, String title, String body, String actionUrl) {
         try {
-            com.google.firebase.messaging.Message.Builder builder = Message.builder()
+            Message.Builder builder = Message.builder()
                     .setToken(token)
-                    .setNotification(Notification.builder()
-                            .setTitle(title)
-                            .setBody(body)
-                            .build());
+                    .setNotification(notification(title, body));
 
             if (actionUrl != null && !actionUrl.isBlank()) {
                 builder.putData("url", actionUrl);
-                builder.setWebpushConfig(com.google.firebase.messaging.WebpushConfig.builder()
-                        .setFcmOptions(com.google.firebase.messaging.WebpushFcmOptions.withLink(actionUrl))
-                        .build());
+                builder.setWebpushConfig(webpushConfig(actionUrl));
             }
 
             Message message = builder.build();
@@ -33,4 +51,61 @@ public class FcmService {
             log.error("Error sending FCM message", ex);
         }
     }
+
+    /**
+     * Gửi cùng một thông báo tới tối đa {@value #MAX_MULTICAST_TOKENS} token
+     * trong một lần gọi SDK. Lỗi của từng token được phân loại trong kết quả;
+     * exception chỉ khi cả lần gọi thất bại.
+     */
+    public FcmBatchResult sendMulticast(List<String> tokens, String title, String body, String actionUrl)
+            throws FirebaseMessagingException {
+        if (tokens.size() > MAX_MULTICAST_TOKENS) {
+            throw new IllegalArgumentException("At most " + MAX_MULTICAST_TOKENS + " tokens per multicast");
+        }
+        MulticastMessage.Builder builder = MulticastMessage.builder()
+                .addAllTokens(tokens)
+                .setNotification(notification(title, body));
+        if (actionUrl != null && !actionUrl.isBlank()) {
+            builder.putData("url", actionUrl);
+            builder.setWebpushConfig(webpushConfig(actionUrl));
+        }
+
+        BatchResponse response = FirebaseMessaging.getInstance().sendEachForMulticast(builder.build());
+        List<String> retryable = new ArrayList<>();
+        List<String> unregistered = new ArrayList<>();
+        List<String> invalid = new ArrayList<>();
+        List<String> failed = new ArrayList<>();
+        List<SendResponse> responses = response.getResponses();
+        for (int i = 0; i < responses.size(); i++) {
+            SendResponse sendResponse = responses.get(i);
+            if (sendResponse.isSuccessful()) {
+                continue;
+            }
+            FirebaseMessagingException error = sendResponse.getException();
+            MessagingErrorCode code = error == null ? null : error.getMessagingErrorCode();
+            if (code != null && RETRYABLE_ERRORS.contains(code)) {
+                retryable.add(tokens.get(i));
+            } else if (code != null && UNREGISTERED_ERRORS.contains(code)) {
+                unregistered.add(tokens.get(i));
+            } else if (code == MessagingErrorCode.INVALID_ARGUMENT) {
+                invalid.add(tokens.get(i));
+            } else {
+                failed.add(tokens.get(i));
+            }
+        }
+        return new FcmBatchResult(response.getSuccessCount(), retryable, unregistered, invalid, failed);
+    }
+
+    private static Notification notification(String title, String body) {
+        return Notification.builder()
+                .setTitle(title)
+                .setBody(body)
+                .build();
+    }
+
+    private static WebpushConfig webpushConfig(String actionUrl) {
+        return WebpushConfig.builder()
+                .setFcmOptions(WebpushFcmOptions.withLink(actionUrl))
+                .build();
+    }
 }
@@ -0,0 +1,133 @@
+package com.newwave.student_management.infrastructure.ratelimit;
+
+import com.newwave.student_management.common.dto.ApiResponse;
+import com.newwave.student_management.common.exception.ErrorCode;
+import com.newwave.student_management.infrastructure.security.ClientIpResolver;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.PathContainer;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Rate limit theo rule cấu hình trong {@code rate-limit.rules} (enroll, login,
+ * forgot-password, upload avatar...). Mỗi request khớp rule tốn đúng 1 Lua call
+ * qua {@link RedisRateLimiter}; request không khớp rule nào đi thẳng.
+ */
+// KHÔNG dùng @Component — filter được đăng ký thủ công trong SecurityConfig
+// (addFilterAfter BearerTokenAuthenticationFilter) để chạy SAU khi JWT đã được
+// giải mã.
+// Nếu đánh @Component, Spring Boot sẽ tự đăng ký thêm 1 lần nữa khiến filter
+// chạy 2 lần.
+@Slf4j
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private final RedisRateLimiter rateLimiter;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final List<CompiledRule> rules;
+    private final ClientIpResolver clientIpResolver;
+
+    private record CompiledRule(RateLimitProperties.Rule rule, PathPattern pattern) {
+
+        boolean matches(String method, PathContainer path) {
+            return (rule.methods().isEmpty() || rule.methods().contains(method)) && pattern.matches(path);
+        }
+    }
+
+    public RateLimitFilter(RedisRateLimiter rateLimiter, RateLimitProperties properties,
+            ClientIpResolver clientIpResolver, ObjectMapper objectMapper) {
+        this.rateLimiter = rateLimiter;
+        this.clientIpResolver = clientIpResolver;
+        this.objectMapper = objectMapper;
+        this.enabled = properties.enabled();
+        this.rules = properties.rules().stream()
+                .map(rule -> new CompiledRule(rule, PathPatternParser.defaultInstance.parse(rule.pattern())))
+                .toList();
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || findRule(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+            HttpServletResponse response,
+            FilterChain filterChain) throws ServletException, IOException {
+
+        RateLimitProperties.Rule rule = findRule(request);
+        String key = rule.key() == RateLimitProperties.KeySource.IP
+                ? resolveClientIp(request)
+                : resolveUserId(request);
+
+        RedisRateLimiter.Decision decision = rateLimiter.tryAcquire(rule, key);
+        if (!decision.allowed()) {
+            long retryAfterSeconds = Math.max(1, (decision.retryAfterMillis() + 999) / 1000);
+            ErrorCode errorCode = rule.errorCode();
+            response.setStatus(errorCode.getStatusCode().value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setCharacterEncoding("UTF-8");
+            response.getWriter().write(objectMapper.writeValueAsString(ApiResponse.builder()
+                    .code(errorCode.getCode())
+                    .message(errorCode.getMessage())
+                    .build()));
+            return;
+        }
+
+        filterChain.doFilter(request, response);
+    }
+
+    private RateLimitProperties.Rule findRule(HttpServletRequest request) {
+        if (rules.isEmpty()) {
+            return null;
+        }
+        String uri = request.getRequestURI();
+        String contextPath = request.getContextPath();
+        PathContainer path = PathContainer.parsePath(
+                contextPath != null && uri.startsWith(contextPath) ? uri.substring(contextPath.length()) : uri);
+        for (CompiledRule compiled : rules) {
+            if (compiled.matches(request.getMethod(), path)) {
+                return compiled.rule();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Lấy userId từ JWT claim (đã xác thực bởi Spring Security).
+     * Fallback về IP nếu chưa xác thực.
+     */
+    String resolveUserId(HttpServletRequest request) {
+        try {
+            Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+            if (auth != null && auth.getPrincipal() instanceof Jwt jwt) {
+                String userId = jwt.getClaimAsString("userId");
+                if (userId != null && !userId.isBlank()) {
+                    return userId;
+                }
+            }
+        } catch (Exception ex) {
+            log.debug("Could not resolve userId from JWT: {}", ex.getMessage());
+        }
+        return resolveClientIp(request);
+    }
+
+    String resolveClientIp(HttpServletRequest request) {
+        return clientIpResolver.resolve(request);
+    }
+}
@@ -0,0 +1,60 @@
+package com.newwave.student_management.infrastructure.ratelimit;
+
+import com.newwave.student_management.common.exception.ErrorCode;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Cấu hình rate limit theo endpoint ({@code rate-limit.*} trong application.yaml).
+ *
+ * @param enabled        tắt toàn bộ rate limit (vd. môi trường load test)
+ * @param failOpen       Redis lỗi → true: cho request đi qua, false: trả 429
+ * @param localPrefilter nhớ trong JVM các key vừa bị Redis từ chối để chặn
+ *                       luôn tới khi hết retry-after, không gọi Redis
+ * @param localMaxKeys   số key tối đa giữ trong pre-filter
+ * @param rules          danh sách rule, rule đầu tiên khớp được áp dụng
+ */
+@ConfigurationProperties(prefix = "rate-limit")
+public record RateLimitProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("true") boolean failOpen,
+        @DefaultValue("true") boolean localPrefilter,
+        @DefaultValue("10000") int localMaxKeys,
+        List<Rule> rules) {
+
+    public RateLimitProperties {
+        rules = rules != null ? List.copyOf(rules) : List.of();
+    }
+
+    /**
+     * Token bucket: tối đa {@code limit} request dồn dập, hồi lại đều
+     * {@code limit} token mỗi {@code window}.
+     *
+     * @param name    tên rule, dùng trong Redis key và metric
+     * @param methods HTTP method áp dụng (rỗng = mọi method)
+     * @param pattern path pattern tính từ context-path, vd.
+     *                {@code /student/classes/*}{@code /enroll}
+     * @param key     đếm theo userId trong JWT (USER) hay IP client (IP)
+     * @param errorCode mã lỗi trong body 429 (mặc định RATE_LIMITED)
+     */
+    public record Rule(
+            String name,
+            List<String> methods,
+            String pattern,
+            int limit,
+            Duration window,
+            @DefaultValue("USER") KeySource key,
+            @DefaultValue("RATE_LIMITED") ErrorCode errorCode) {
+
+        public Rule {
+            methods = methods != null ? List.copyOf(methods) : List.of();
+        }
+    }
+
+    public enum KeySource {
+        USER, IP
+    }
+}
@@ -0,0 +1,135 @@
+package com.newwave.student_management.infrastructure.ratelimit;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limiter token bucket trên Redis — 1 Lua call mỗi request.
+ *
+ * <pre>
+ * rate:{rule}:{key} → HASH {tokens, ts} (PEXPIRE = window)
+ * </pre>
+ *
+ * Bucket đầy {@code limit} token, hồi {@code limit / window} token mỗi ms nên
+ * không còn hiện tượng dồn gấp đôi request ở ranh giới 2 cửa sổ như INCR + TTL.
+ * Thời gian lấy từ Redis TIME để các replica lệch giờ vẫn đếm chung 1 bucket.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RedisRateLimiter {
+
+    private static final String KEY_PREFIX = "rate:";
+    private static final String METRIC_NAME = "rate_limit.requests";
+
+    /**
+     * • KEYS[1] = rate:{rule}:{key}
+     * • ARGV = limit, window (ms)
+     * • Trả về {allowed (1/0), retryAfterMs}.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> TOKEN_BUCKET_SCRIPT;
+
+    static {
+        TOKEN_BUCKET_SCRIPT = new DefaultRedisScript<>();
+        TOKEN_BUCKET_SCRIPT.setResultType(List.class);
+        TOKEN_BUCKET_SCRIPT.setScriptText(
+                "local t = redis.call('TIME') " +
+                        "local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000) " +
+                        "local capacity = tonumber(ARGV[1]) " +
+                        "local window = tonumber(ARGV[2]) " +
+                        "local bucket = redis.call('HMGET', KEYS[1], 'tokens', 'ts') " +
+                        "local tokens = tonumber(bucket[1]) or capacity " +
+                        "local ts = tonumber(bucket[2]) or now " +
+                        "tokens = math.min(capacity, tokens + math.max(0, now - ts) * capacity / window) " +
+                        "local allowed = 0 " +
+                        "local retry = 0 " +
+                        "if tokens >= 1 then " +
+                        "  tokens = tokens - 1 " +
+                        "  allowed = 1 " +
+                        "else " +
+                        "  retry = math.ceil((1 - tokens) * window / capacity) " +
+                        "end " +
+                        "redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', tostring(now)) " +
+                        "redis.call('PEXPIRE', KEYS[1], window) " +
+                        "return {allowed, retry}");
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RateLimitProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Pre-filter: key → thời điểm (nanoTime) hết bị chặn. Chỉ ghi khi Redis đã từ
+     * chối, nên không bao giờ chặn oan request mà Redis sẽ cho qua.
+     */
+    private final Map<String, Long> blockedUntil = new ConcurrentHashMap<>();
+
+    public record Decision(boolean allowed, long retryAfterMillis) {
+        static final Decision ALLOWED = new Decision(true, 0);
+    }
+
+    public Decision tryAcquire(RateLimitProperties.Rule rule, String key) {
+        String redisKey = KEY_PREFIX + rule.name() + ":" + key;
+
+        if (properties.localPrefilter()) {
+            Long until = blockedUntil.get(redisKey);
+            if (until != null) {
+                long remaining = until - System.nanoTime();
+                if (remaining > 0) {
+                    record(rule, "rejected_local");
+                    return new Decision(false, TimeUnit.NANOSECONDS.toMillis(remaining) + 1);
+                }
+                blockedUntil.remove(redisKey, until);
+            }
+        }
+
+        long windowMillis = rule.window().toMillis();
+        List<?> result;
+        try {
+            result = stringRedisTemplate.execute(TOKEN_BUCKET_SCRIPT, List.of(redisKey),
+                    String.valueOf(rule.limit()), String.valueOf(windowMillis));
+        } catch (Exception ex) {
+            log.warn("Rate limiter unavailable for rule {} ({}), failing {}", rule.name(), ex.getMessage(),
+                    properties.failOpen() ? "open" : "closed");
+            record(rule, "error");
+            return properties.failOpen() ? Decision.ALLOWED : new Decision(false, windowMillis);
+        }
+
+        if (result != null && result.size() == 2 && ((Number) result.get(0)).longValue() == 0L) {
+            long retryAfter = ((Number) result.get(1)).longValue();
+            if (properties.localPrefilter()) {
+                rememberBlocked(redisKey, retryAfter);
+            }
+            log.warn("Rate limit exceeded for rule={} key={}, retry after {}ms", rule.name(), key, retryAfter);
+            record(rule, "rejected");
+            return new Decision(false, retryAfter);
+        }
+        record(rule, "allowed");
+        return Decision.ALLOWED;
+    }
+
+    private void rememberBlocked(String redisKey, long retryAfterMillis) {
+        long now = System.nanoTime();
+        if (blockedUntil.size() >= properties.localMaxKeys()) {
+            blockedUntil.values().removeIf(until -> until - now <= 0);
+            if (blockedUntil.size() >= properties.localMaxKeys()) {
+                return;
+            }
+        }
+        blockedUntil.put(redisKey, now + TimeUnit.MILLISECONDS.toNanos(retryAfterMillis));
+    }
+
+    private void record(RateLimitProperties.Rule rule, String result) {
+        meterRegistry.counter(METRIC_NAME, "rule", rule.name(), "result", result).increment();
+    }
+}
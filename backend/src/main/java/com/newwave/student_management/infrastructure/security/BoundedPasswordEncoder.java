@@ -0,0 +1,113 @@
+package com.newwave.student_management.infrastructure.security;
+
+import com.newwave.student_management.common.exception.AppException;
+import com.newwave.student_management.common.exception.ErrorCode;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chạy {@code encode}/{@code matches} của encoder gốc (BCrypt) trên pool riêng
+ * có số thread cố định và hàng đợi giới hạn, để đợt login dồn dập không chiếm
+ * hết CPU của các request khác.
+ *
+ * <p>
+ * Hàng đợi đầy → {@link ErrorCode#SERVICE_BUSY} (503) ngay thay vì xếp hàng vô
+ * hạn trên thread Tomcat. Không có timeout chờ: BCrypt không dừng được giữa
+ * chừng (cancel chỉ bỏ được task chưa chạy), nên timeout chỉ trả 503 cho một
+ * lần hash vẫn tốn trọn CPU. Thời gian chờ tối đa đã bị chặn bởi hàng đợi: khoảng
+ * (queueCapacity / threads + 1) × thời gian một lần hash.
+ * </p>
+ *
+ * Metric: {@value #METRIC_NAME}.duration (thời gian hash, tag op),
+ * {@value #METRIC_NAME}.queue / .active (gauge), {@value #METRIC_NAME}.rejected.
+ */
+@Slf4j
+public class BoundedPasswordEncoder implements PasswordEncoder, AutoCloseable {
+
+    private static final String METRIC_NAME = "auth.password_hash";
+
+    private final PasswordEncoder delegate;
+    private final ThreadPoolExecutor executor;
+    private final MeterRegistry meterRegistry;
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+
+    public BoundedPasswordEncoder(PasswordEncoder delegate, int threads, int queueCapacity,
+            MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.meterRegistry = meterRegistry;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hash-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.encodeTimer = Timer.builder(METRIC_NAME + ".duration").tag("op", "encode").register(meterRegistry);
+        this.matchesTimer = Timer.builder(METRIC_NAME + ".duration").tag("op", "matches").register(meterRegistry);
+        meterRegistry.gauge(METRIC_NAME + ".queue", executor, e -> e.getQueue().size());
+        meterRegistry.gauge(METRIC_NAME + ".active", executor, ThreadPoolExecutor::getActiveCount);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return submit(() -> encodeTimer.recordCallable(() -> delegate.encode(rawPassword)));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return submit(() -> matchesTimer.recordCallable(() -> delegate.matches(rawPassword, encodedPassword)));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private <T> T submit(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException ex) {
+            reject("queue_full");
+            throw new AppException(ErrorCode.SERVICE_BUSY);
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            // Chỉ bỏ được task còn trong hàng đợi; hash đang chạy vẫn chạy hết
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new AppException(ErrorCode.SERVICE_BUSY);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("Password hashing failed", ex.getCause());
+        }
+    }
+
+    private void reject(String reason) {
+        meterRegistry.counter(METRIC_NAME + ".rejected", "reason", reason).increment();
+        log.warn("Password hashing rejected ({}): queue={}, active={}", reason, executor.getQueue().size(),
+                executor.getActiveCount());
+    }
+}
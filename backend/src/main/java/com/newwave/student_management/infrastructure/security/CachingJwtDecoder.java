@@ -0,0 +1,109 @@
+package com.newwave.student_management.infrastructure.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.security.oauth2.core.OAuth2TokenValidator;
+import org.springframework.security.oauth2.core.OAuth2TokenValidatorResult;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.JwtValidationException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bọc {@link JwtDecoder} gốc và nhớ các {@link Jwt} đã giải mã + xác thực thành
+ * công theo SHA-256 của token, tới {@value #EXPIRY_MARGIN_SECONDS} giây trước
+ * {@code exp}. Request lặp lại với cùng token (poll unread-count...) bỏ qua parse
+ * JSON, verify HMAC và validator thời gian.
+ *
+ * <p>
+ * Thu hồi vẫn có hiệu lực ngay: mỗi lần hit đều chạy lại
+ * {@code revocationValidator} (blacklist + token version) — rẻ vì đọc từ
+ * {@link TokenStateCache}, vốn được TokenRedisService cập nhật qua pub/sub.
+ * </p>
+ */
+public class CachingJwtDecoder implements JwtDecoder {
+
+    private static final long EXPIRY_MARGIN_SECONDS = 5;
+    private static final String METRIC_NAME = "auth.jwt_decoder_cache";
+
+    private final JwtDecoder delegate;
+    private final OAuth2TokenValidator<Jwt> revocationValidator;
+    private final MeterRegistry meterRegistry;
+    private final int maxEntries;
+
+    private final Map<String, Jwt> cache = new ConcurrentHashMap<>();
+
+    public CachingJwtDecoder(JwtDecoder delegate, OAuth2TokenValidator<Jwt> revocationValidator,
+            MeterRegistry meterRegistry, int maxEntries) {
+        this.delegate = delegate;
+        this.revocationValidator = revocationValidator;
+        this.meterRegistry = meterRegistry;
+        this.maxEntries = maxEntries;
+        meterRegistry.gauge(METRIC_NAME + ".size", cache, Map::size);
+    }
+
+    @Override
+    public Jwt decode(String token) throws JwtException {
+        String digest = digest(token);
+        Jwt cached = cache.get(digest);
+        if (cached != null) {
+            if (isFresh(cached, Instant.now())) {
+                OAuth2TokenValidatorResult result = revocationValidator.validate(cached);
+                if (result.hasErrors()) {
+                    cache.remove(digest);
+                    meterRegistry.counter(METRIC_NAME, "result", "revoked").increment();
+                    throw new JwtValidationException(result.getErrors().iterator().next().getDescription(),
+                            result.getErrors());
+                }
+                meterRegistry.counter(METRIC_NAME, "result", "hit").increment();
+                return cached;
+            }
+            cache.remove(digest, cached);
+        }
+
+        meterRegistry.counter(METRIC_NAME, "result", "miss").increment();
+        Jwt jwt = delegate.decode(token);
+        if (isFresh(jwt, Instant.now())) {
+            evictIfFull();
+            cache.put(digest, jwt);
+        }
+        return jwt;
+    }
+
+    private static boolean isFresh(Jwt jwt, Instant now) {
+        Instant expiresAt = jwt.getExpiresAt();
+        return expiresAt != null && now.isBefore(expiresAt.minusSeconds(EXPIRY_MARGIN_SECONDS));
+    }
+
+    /**
+     * Dọn token sắp hết hạn khi chạm giới hạn; vẫn đầy thì xóa sạch (lần sau giải
+     * mã lại).
+     */
+    private void evictIfFull() {
+        if (cache.size() < maxEntries) {
+            return;
+        }
+        Instant now = Instant.now();
+        cache.values().removeIf(jwt -> !isFresh(jwt, now));
+        if (cache.size() >= maxEntries) {
+            cache.clear();
+            meterRegistry.counter(METRIC_NAME, "result", "overflow").increment();
+        }
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not available", ex);
+        }
+    }
+}
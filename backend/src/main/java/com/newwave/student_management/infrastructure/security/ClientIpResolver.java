@@ -0,0 +1,82 @@
+package com.newwave.student_management.infrastructure.security;
+
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.web.util.matcher.IpAddressMatcher;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Xác định IP client cho rate limit và khóa đăng nhập theo IP.
+ *
+ * <p>
+ * X-Forwarded-For do client tự đặt được, nên chỉ được tin khi request đến từ
+ * reverse proxy khai báo trong {@code app.trusted-proxies} (IP hoặc CIDR, phân
+ * tách bằng dấu phẩy). Header được duyệt từ phải sang trái, bỏ qua các hop là
+ * proxy tin cậy; địa chỉ đầu tiên không phải proxy là IP client. Không khai báo
+ * proxy nào thì luôn dùng remote address.
+ * </p>
+ */
+@Component
+@Slf4j
+public class ClientIpResolver {
+
+    private final List<IpAddressMatcher> trustedProxies;
+
+    public ClientIpResolver(@Value("${app.trusted-proxies:}") List<String> trustedProxies) {
+        this.trustedProxies = trustedProxies.stream()
+                .map(String::trim)
+                .filter(proxy -> !proxy.isEmpty())
+                .map(IpAddressMatcher::new)
+                .toList();
+    }
+
+    public String resolve(HttpServletRequest request) {
+        String remoteAddr = request.getRemoteAddr();
+        if (!isTrustedProxy(remoteAddr)) {
+            return remoteAddr;
+        }
+        String forwarded = request.getHeader("X-Forwarded-For");
+        if (forwarded == null || forwarded.isBlank()) {
+            return remoteAddr;
+        }
+        String[] hops = forwarded.split(",");
+        String client = remoteAddr;
+        for (int i = hops.length - 1; i >= 0; i--) {
+            String hop = hops[i].trim();
+            if (hop.isEmpty()) {
+                continue;
+            }
+            client = hop;
+            if (!isTrustedProxy(hop)) {
+                break;
+            }
+        }
+        return client;
+    }
+
+    private boolean isTrustedProxy(String address) {
+        // Chỉ so khớp IP literal — hop trong header là dữ liệu của client, không
+        // để IpAddressMatcher phân giải tên miền
+        if (address == null || trustedProxies.isEmpty() || !isIpLiteral(address)) {
+            return false;
+        }
+        try {
+            for (IpAddressMatcher matcher : trustedProxies) {
+                if (matcher.matches(address)) {
+                    return true;
+                }
+            }
+        } catch (IllegalArgumentException ex) {
+            log.debug("Ignoring malformed forwarded address {}", address);
+        }
+        return false;
+    }
+
+    private static boolean isIpLiteral(String address) {
+        return !address.isEmpty() && address.chars()
+                .allMatch(c -> Character.digit(c, 16) >= 0 || c == '.' || c == ':');
+    }
+}
@@ -12,17 +12,19 @@ import org.springframework.stereotype.Component;
  * Reject JWTs whose jti has been blacklisted in Redis.
  *
  * This makes logout/token invalidation take effect immediately (instead of waiting for exp).
+ * Lookups go through {@link TokenStateCache}; Redis is only read on a cache miss.
  */
 @Component
 @RequiredArgsConstructor
 public class JwtBlacklistValidator implements OAuth2TokenValidator<Jwt> {
 
     private final ITokenRedisService tokenRedisService;
+    private final TokenStateCache tokenStateCache;
 
     @Override
     public OAuth2TokenValidatorResult validate(Jwt token) {
         String jti = token.getId();
-        if (jti != null && tokenRedisService.isAccessTokenBlacklisted(jti)) {
+        if (jti != null && isBlacklisted(jti)) {
             OAuth2Error error = new OAuth2Error(
                     "token_blacklisted",
                     "Token has been revoked",
@@ -32,5 +34,17 @@ public class JwtBlacklistValidator implements OAuth2TokenValidator<Jwt> {
         }
         return OAuth2TokenValidatorResult.success();
     }
+
+    private boolean isBlacklisted(String jti) {
+        Boolean cached = tokenStateCache.isBlacklisted(jti);
+        if (cached != null) {
+            return cached;
+        }
+        boolean blacklisted = tokenRedisService.isAccessTokenBlacklisted(jti);
+        if (!blacklisted) {
+            tokenStateCache.putNotBlacklisted(jti);
+        }
+        return blacklisted;
+    }
 }
 
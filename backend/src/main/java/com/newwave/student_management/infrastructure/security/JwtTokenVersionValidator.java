@@ -15,12 +15,15 @@ import java.util.UUID;
  * Redis.
  * When user changes password we increment the version, so all existing tokens
  * (all devices/tabs) become invalid.
+ * Versions are served from {@link TokenStateCache}; Redis is only read on a
+ * cache miss.
  */
 @Component
 @RequiredArgsConstructor
 public class JwtTokenVersionValidator implements OAuth2TokenValidator<Jwt> {
 
     private final ITokenRedisService tokenRedisService;
+    private final TokenStateCache tokenStateCache;
 
     @Override
     public OAuth2TokenValidatorResult validate(Jwt token) {
@@ -41,7 +44,14 @@ public class JwtTokenVersionValidator implements OAuth2TokenValidator<Jwt> {
             tokenVersion = ((Number) tvClaim).longValue();
         }
 
-        long currentVersion = tokenRedisService.getTokenVersion(userId);
+        Long cachedVersion = tokenStateCache.getTokenVersion(userId);
+        long currentVersion;
+        if (cachedVersion != null) {
+            currentVersion = cachedVersion;
+        } else {
+            currentVersion = tokenRedisService.getTokenVersion(userId);
+            tokenStateCache.putTokenVersion(userId, currentVersion);
+        }
         if (tokenVersion < currentVersion) {
             OAuth2Error error = new OAuth2Error(
                     "token_version_invalid",
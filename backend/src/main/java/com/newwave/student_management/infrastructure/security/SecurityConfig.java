@@ -1,6 +1,9 @@
 package com.newwave.student_management.infrastructure.security;
 
-import com.newwave.student_management.domains.enrollment.filter.EnrollRateLimitFilter;
+import com.newwave.student_management.infrastructure.ratelimit.RateLimitFilter;
+import com.newwave.student_management.infrastructure.ratelimit.RateLimitProperties;
+import com.newwave.student_management.infrastructure.ratelimit.RedisRateLimiter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -13,7 +16,9 @@ import org.springframework.security.config.annotation.web.configurers.AbstractHt
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.oauth2.core.DelegatingOAuth2TokenValidator;
+import org.springframework.security.oauth2.core.OAuth2TokenValidator;
 import org.springframework.security.oauth2.jose.jws.MacAlgorithm;
+import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.security.oauth2.jwt.JwtDecoder;
 import org.springframework.security.oauth2.jwt.JwtValidators;
 import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
@@ -39,8 +44,25 @@ public class SecurityConfig {
         @Value("${spring.security.jwt.signer-key}")
         private String signerKey;
 
+        @Value("${spring.security.jwt.decoder-cache.enabled:true}")
+        private boolean decoderCacheEnabled;
+
+        @Value("${spring.security.jwt.decoder-cache.max-entries:50000}")
+        private int decoderCacheMaxEntries;
+
+        @Value("${auth.password.bcrypt-strength:10}")
+        private int bcryptStrength;
+
+        /** 0 = số CPU. */
+        @Value("${auth.password.hash-threads:0}")
+        private int passwordHashThreads;
+
+        @Value("${auth.password.queue-capacity:64}")
+        private int passwordHashQueueCapacity;
+
         private final JwtBlacklistValidator jwtBlacklistValidator;
         private final JwtTokenVersionValidator jwtTokenVersionValidator;
+        private final MeterRegistry meterRegistry;
 
         private final String[] PUBLIC_POST_ENDPOINTS = {
                         "/auth/login",
@@ -59,7 +81,7 @@ public class SecurityConfig {
 
         @Bean
         public SecurityFilterChain filterChain(HttpSecurity http,
-                        EnrollRateLimitFilter enrollRateLimitFilter) throws Exception {
+                        RateLimitFilter rateLimitFilter) throws Exception {
                 http
                                 .csrf(AbstractHttpConfigurer::disable)
                                 .cors(cors -> cors.configurationSource(corsConfigurationSource()))
@@ -73,9 +95,9 @@ public class SecurityConfig {
                                                                 .decoder(jwtDecoder())
                                                                 .jwtAuthenticationConverter(
                                                                                 jwtAuthenticationConverter())))
-                                // EnrollRateLimitFilter phải chạy SAU BearerTokenAuthenticationFilter
+                                // RateLimitFilter phải chạy SAU BearerTokenAuthenticationFilter
                                 // để SecurityContextHolder đã có Authentication khi filter đọc userId
-                                .addFilterAfter(enrollRateLimitFilter, BearerTokenAuthenticationFilter.class);
+                                .addFilterAfter(rateLimitFilter, BearerTokenAuthenticationFilter.class);
                 return http.build();
         }
 
@@ -88,12 +110,18 @@ public class SecurityConfig {
 
                 // Default validators (exp, nbf, etc.) + blacklist (jti) + token version
                 // (invalidate after password change)
+                OAuth2TokenValidator<Jwt> revocationValidator = new DelegatingOAuth2TokenValidator<>(
+                                jwtBlacklistValidator,
+                                jwtTokenVersionValidator);
                 decoder.setJwtValidator(new DelegatingOAuth2TokenValidator<>(
                                 JwtValidators.createDefault(),
-                                jwtBlacklistValidator,
-                                jwtTokenVersionValidator));
+                                revocationValidator));
 
-                return decoder;
+                // Token đã xác thực được nhớ theo digest; hit chỉ chạy lại revocationValidator
+                return decoderCacheEnabled
+                                ? new CachingJwtDecoder(decoder, revocationValidator, meterRegistry,
+                                                decoderCacheMaxEntries)
+                                : decoder;
         }
 
         @Bean
@@ -108,18 +136,27 @@ public class SecurityConfig {
         }
 
         /**
-         * Đăng ký EnrollRateLimitFilter như 1 Spring Bean (không @Component).
+         * Đăng ký RateLimitFilter như 1 Spring Bean (không @Component).
          * Bean này được inject vào filterChain qua addFilterAfter.
          */
         @Bean
-        public EnrollRateLimitFilter enrollRateLimitFilter(
-                        org.springframework.data.redis.core.StringRedisTemplate stringRedisTemplate) {
-                return new EnrollRateLimitFilter(stringRedisTemplate);
+        public RateLimitFilter rateLimitFilter(RedisRateLimiter redisRateLimiter,
+                        RateLimitProperties rateLimitProperties,
+                        ClientIpResolver clientIpResolver,
+                        tools.jackson.databind.ObjectMapper objectMapper) {
+                return new RateLimitFilter(redisRateLimiter, rateLimitProperties, clientIpResolver, objectMapper);
         }
 
+        /**
+         * BCrypt chạy trên pool riêng (xem {@link BoundedPasswordEncoder}). Đổi
+         * strength chỉ áp dụng cho hash mới; hash cũ vẫn verify được.
+         */
         @Bean
         public PasswordEncoder passwordEncoder() {
-                return new BCryptPasswordEncoder();
+                int threads = passwordHashThreads > 0 ? passwordHashThreads
+                                : Runtime.getRuntime().availableProcessors();
+                return new BoundedPasswordEncoder(new BCryptPasswordEncoder(bcryptStrength), threads,
+                                passwordHashQueueCapacity, meterRegistry);
         }
 
         @Bean
@@ -0,0 +1,206 @@
+package com.newwave.student_management.infrastructure.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache trong JVM cho token version (theo userId) và trạng thái blacklist (theo
+ * jti) mà {@link JwtTokenVersionValidator} / {@link JwtBlacklistValidator} cần
+ * ở mỗi request — request lặp lại với cùng access token không còn chạm Redis.
+ *
+ * <p>
+ * Entry đọc từ Redis sống tối đa {@code auth.token-cache.ttl-seconds}. Khi
+ * logout (blacklist jti) hoặc đổi mật khẩu (tăng version), TokenRedisService
+ * cập nhật cache local ngay rồi phát message lên kênh
+ * {@value #CHANNEL} để mọi replica cập nhật theo. Nếu mất message (Redis
+ * reconnect) thì độ trễ tối đa vẫn là TTL.
+ * </p>
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TokenStateCache implements MessageListener {
+
+    public static final String CHANNEL = "auth:token-state";
+    private static final String BLACKLIST_EVENT = "B";
+    private static final String VERSION_EVENT = "V";
+    private static final String METRIC_NAME = "auth.token_state_cache";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectProvider<RedisMessageListenerContainer> listenerContainer;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${auth.token-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${auth.token-cache.ttl-seconds:30}")
+    private long ttlSeconds;
+
+    @Value("${auth.token-cache.max-entries:100000}")
+    private int maxEntries;
+
+    private record VersionEntry(long version, long expiresAtNanos) {
+    }
+
+    private record JtiEntry(boolean blacklisted, long expiresAtNanos) {
+    }
+
+    private final Map<UUID, VersionEntry> versions = new ConcurrentHashMap<>();
+    private final Map<String, JtiEntry> jtis = new ConcurrentHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void subscribe() {
+        meterRegistry.gauge(METRIC_NAME + ".size", Tags.of("cache", "version"), versions, Map::size);
+        meterRegistry.gauge(METRIC_NAME + ".size", Tags.of("cache", "blacklist"), jtis, Map::size);
+        RedisMessageListenerContainer container = listenerContainer.getIfAvailable();
+        if (container == null) {
+            log.warn("No Redis listener container; token state cache relies on TTL only");
+            return;
+        }
+        container.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    /**
+     * @return version đã cache, null nếu miss (caller đọc Redis rồi
+     *         {@link #putTokenVersion})
+     */
+    public Long getTokenVersion(UUID userId) {
+        if (!enabled) {
+            return null;
+        }
+        VersionEntry entry = versions.get(userId);
+        boolean hit = entry != null && entry.expiresAtNanos() - System.nanoTime() > 0;
+        meterRegistry.counter(METRIC_NAME, "cache", "version", "result", hit ? "hit" : "miss").increment();
+        return hit ? entry.version() : null;
+    }
+
+    /**
+     * Lưu version đọc từ Redis. Version chỉ tăng nên giữ giá trị lớn hơn — một
+     * message tăng version đến trước không bị ghi đè bởi lần đọc cũ hơn.
+     */
+    public void putTokenVersion(UUID userId, long version) {
+        if (!enabled) {
+            return;
+        }
+        evictIfFull(versions);
+        long expiresAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(ttlSeconds);
+        versions.merge(userId, new VersionEntry(version, expiresAt),
+                (old, fresh) -> old.version() > fresh.version()
+                        ? new VersionEntry(old.version(), fresh.expiresAtNanos())
+                        : fresh);
+    }
+
+    /**
+     * @return trạng thái blacklist đã cache, null nếu miss
+     */
+    public Boolean isBlacklisted(String jti) {
+        if (!enabled) {
+            return null;
+        }
+        JtiEntry entry = jtis.get(jti);
+        boolean hit = entry != null && entry.expiresAtNanos() - System.nanoTime() > 0;
+        meterRegistry.counter(METRIC_NAME, "cache", "blacklist", "result", hit ? "hit" : "miss").increment();
+        return hit ? entry.blacklisted() : null;
+    }
+
+    /**
+     * Lưu kết quả "chưa bị blacklist" đọc từ Redis — không ghi đè entry blacklist
+     * đã có.
+     */
+    public void putNotBlacklisted(String jti) {
+        if (!enabled) {
+            return;
+        }
+        evictIfFull(jtis);
+        long expiresAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(ttlSeconds);
+        jtis.merge(jti, new JtiEntry(false, expiresAt), (old, fresh) -> old.blacklisted() ? old : fresh);
+    }
+
+    /**
+     * Blacklist jti trên mọi replica (entry sống tới khi access token hết hạn).
+     */
+    public void publishBlacklisted(String jti, long expiresInSeconds) {
+        publish(BLACKLIST_EVENT + "|" + jti + "|" + expiresInSeconds);
+    }
+
+    /**
+     * Đẩy version mới của user tới mọi replica.
+     */
+    public void publishTokenVersion(UUID userId, long version) {
+        publish(VERSION_EVENT + "|" + userId + "|" + version);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        apply(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    private void publish(String payload) {
+        apply(payload);
+        try {
+            stringRedisTemplate.convertAndSend(CHANNEL, payload);
+        } catch (Exception ex) {
+            log.warn("Failed to publish token state event {}: {}", payload, ex.getMessage());
+        }
+    }
+
+    private void apply(String payload) {
+        if (!enabled) {
+            return;
+        }
+        String[] parts = payload.split("\\|", 3);
+        try {
+            if (parts.length == 3 && BLACKLIST_EVENT.equals(parts[0])) {
+                evictIfFull(jtis);
+                long expiresAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(Long.parseLong(parts[2]));
+                jtis.put(parts[1], new JtiEntry(true, expiresAt));
+            } else if (parts.length == 3 && VERSION_EVENT.equals(parts[0])) {
+                putTokenVersion(UUID.fromString(parts[1]), Long.parseLong(parts[2]));
+            } else {
+                log.warn("Ignoring malformed token state event: {}", payload);
+            }
+        } catch (IllegalArgumentException ex) {
+            log.warn("Ignoring malformed token state event: {}", payload);
+        }
+    }
+
+    /**
+     * Dọn entry hết hạn khi chạm giới hạn; vẫn đầy thì xóa sạch (entry chỉ là
+     * cache, lần sau đọc lại Redis). Entry blacklist bị xóa cũng không sao: Redis
+     * vẫn giữ key blacklist.
+     */
+    private <K, V> void evictIfFull(Map<K, V> map) {
+        if (map.size() < maxEntries) {
+            return;
+        }
+        long now = System.nanoTime();
+        map.values().removeIf(value -> expiresAt(value) - now <= 0);
+        if (map.size() >= maxEntries) {
+            map.clear();
+            meterRegistry.counter(METRIC_NAME, "cache", map == versions ? "version" : "blacklist",
+                    "result", "overflow").increment();
+        }
+    }
+
+    private static long expiresAt(Object value) {
+        return value instanceof VersionEntry v ? v.expiresAtNanos() : ((JtiEntry) value).expiresAtNanos();
+    }
+}
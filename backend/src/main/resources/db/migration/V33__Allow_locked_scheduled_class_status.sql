@@ -0,0 +1,11 @@
+-- ==========================================================
+-- V33: Cho phép trạng thái LOCKED của lớp học phần
+-- ==========================================================
+-- Khóa lớp / dồn lớp khi hết hạn đăng ký chuyển lớp đủ sĩ số sang LOCKED,
+-- nhưng check constraint tạo ở V12 chỉ có OPEN / CLOSED / CANCELLED.
+
+ALTER TABLE scheduled_classes DROP CONSTRAINT IF EXISTS scheduled_classes_status_check;
+
+ALTER TABLE scheduled_classes
+    ADD CONSTRAINT scheduled_classes_status_check
+        CHECK (status IN ('OPEN', 'CLOSED', 'CANCELLED', 'LOCKED'));
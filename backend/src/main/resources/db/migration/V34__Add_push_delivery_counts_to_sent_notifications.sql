@@ -0,0 +1,9 @@
+-- ==========================================================
+-- V34: Kết quả gửi push FCM của mỗi thông báo
+-- ==========================================================
+-- push_batch_count: số batch multicast (≤ 500 token / batch)
+-- push_success_count / push_failure_count: số thiết bị nhận / không nhận được sau khi retry
+
+ALTER TABLE sent_notifications ADD COLUMN push_batch_count INTEGER;
+ALTER TABLE sent_notifications ADD COLUMN push_success_count INTEGER;
+ALTER TABLE sent_notifications ADD COLUMN push_failure_count INTEGER;
@@ -0,0 +1,10 @@
+-- ==========================================================
+-- V35: Cách ly FCM token bị FCM từ chối (INVALID_ARGUMENT)
+-- ==========================================================
+-- quarantined_at: thời điểm bị cách ly; token cách ly không được gửi push,
+-- đăng ký lại sẽ xóa cờ, quá hạn cách ly thì bị xóa hẳn.
+
+ALTER TABLE fcm_tokens ADD COLUMN quarantined_at TIMESTAMP;
+
+CREATE INDEX idx_fcm_tokens_quarantined_at ON fcm_tokens (quarantined_at)
+    WHERE quarantined_at IS NOT NULL;
@@ -0,0 +1,11 @@
+-- ==========================================================
+-- V36: Tiến độ gửi broadcast / targeted theo chunk người nhận
+-- ==========================================================
+-- dispatch_cursor: user_id cuối cùng của chunk đã commit (duyệt user_id tăng
+-- dần); gửi tiếp từ đây nếu tiến trình dừng giữa chừng.
+-- status thêm PROCESSING: đang gửi, updated_at làm heartbeat / lease.
+
+ALTER TABLE sent_notifications ADD COLUMN dispatch_cursor UUID;
+
+CREATE INDEX idx_sent_notifications_status ON sent_notifications (status)
+    WHERE status IN ('PENDING', 'PROCESSING');
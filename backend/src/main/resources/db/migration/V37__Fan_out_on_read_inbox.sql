@@ -0,0 +1,27 @@
+-- ==========================================================
+-- V37: Inbox fan-out-on-read cho thông báo nhóm
+-- ==========================================================
+-- Broadcast / targeted không còn ghi 1 dòng notifications cho mỗi người nhận:
+-- sent_notifications có inbox_on_read = TRUE được ghép vào inbox của user khớp
+-- điều kiện lúc đọc. Thông báo cũ (đã ghi từng dòng) giữ inbox_on_read = FALSE.
+
+ALTER TABLE sent_notifications ADD COLUMN inbox_on_read BOOLEAN NOT NULL DEFAULT FALSE;
+
+CREATE INDEX idx_sent_notifications_inbox ON sent_notifications (sent_at DESC)
+    WHERE inbox_on_read AND status IN ('PROCESSING', 'SENT');
+
+-- Mốc "đã đọc hết": thông báo nhóm có sent_at <= read_all_before coi như đã đọc
+CREATE TABLE notification_read_marks (
+    user_id UUID PRIMARY KEY REFERENCES users(user_id),
+    read_all_before TIMESTAMP NOT NULL
+);
+
+-- Thông báo nhóm đọc lẻ sau mốc; được dọn khi user "đọc tất cả"
+CREATE TABLE notification_group_reads (
+    user_id UUID NOT NULL REFERENCES users(user_id),
+    sent_id UUID NOT NULL REFERENCES sent_notifications(sent_id) ON DELETE CASCADE,
+    read_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (user_id, sent_id)
+);
+
+CREATE INDEX idx_notifications_user_created_at ON notifications (user_id, created_at DESC);
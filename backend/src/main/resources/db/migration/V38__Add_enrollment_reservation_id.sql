@@ -0,0 +1,11 @@
+-- ==========================================================
+-- V38: Reservation đã ghi dòng enrollment (write-behind)
+-- ==========================================================
+-- reservation_id: reservation của admission engine đã tạo / kích hoạt lại dòng.
+-- Consumer dùng cột này để nhận ra reservation được Kafka giao lại sau khi đã
+-- ghi (crash trước khi kịp báo trạng thái) thay vì coi là đăng ký trùng.
+
+ALTER TABLE enrollments ADD COLUMN reservation_id UUID;
+
+CREATE INDEX idx_enrollments_reservation_id ON enrollments (reservation_id)
+    WHERE reservation_id IS NOT NULL;
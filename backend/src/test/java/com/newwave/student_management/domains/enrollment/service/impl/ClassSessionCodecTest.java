@@ -0,0 +1,161 @@
+package com.newwave.student_management.domains.enrollment.service.impl;
+
+import com.newwave.student_management.domains.enrollment.dto.response.ClassSessionResponse;
+import com.newwave.student_management.domains.enrollment.entity.ClassSession;
+import com.newwave.student_management.domains.facility.entity.Room;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Trong thời gian rollout, hash {@code class:{classId}} có thể chứa cả định dạng
+ * LEGACY lẫn BINARY — decode phải đọc đúng cả hai.
+ */
+class ClassSessionCodecTest {
+
+    /** Giá trị do bản cũ (trước codec) ghi lên Redis. */
+    private static final String LEGACY_VALUE = "[{\"dayOfWeek\":2,\"startTime\":\"08:00\",\"endTime\":\"10:00\","
+            + "\"roomName\":\"A-101\",\"roomId\":1},{\"dayOfWeek\":5,\"startTime\":\"13:30\",\"endTime\":\"15:00\","
+            + "\"roomName\":\"B-202\",\"roomId\":7}]";
+
+    @Test
+    void legacyRoundTrip() {
+        List<ClassSession> sessions = List.of(
+                session(2, "08:00", "10:00", room(1, "A-101")),
+                session(5, "13:30", "15:00", room(7, "B-202")));
+
+        String encoded = ClassSessionCodec.encode(sessions, ClassSessionCodec.Encoding.LEGACY);
+
+        assertEquals(LEGACY_VALUE, encoded);
+        assertSessions(sessions, ClassSessionCodec.decode(encoded));
+    }
+
+    @Test
+    void binaryRoundTrip() {
+        List<ClassSession> sessions = List.of(
+                session(2, "08:00", "10:00", room(1, "A-101")),
+                session(7, "18:15:30", "20:45", room(65_535, "Hội trường lớn")));
+
+        String encoded = ClassSessionCodec.encode(sessions, ClassSessionCodec.Encoding.BINARY);
+
+        assertTrue(encoded.startsWith("~"));
+        assertSessions(sessions, ClassSessionCodec.decode(encoded));
+    }
+
+    @Test
+    void binaryKeepsRoomNamesWithSeparators() {
+        List<ClassSession> sessions = List.of(
+                session(1, "07:00", "09:00", room(3, "Lab 1, tầng 2")),
+                session(3, "09:00", "11:00", room(4, "Phòng \"VIP\": A")),
+                session(4, "11:00", "12:00", room(5, "},{\"dayOfWeek\":9")));
+
+        List<ClassSessionResponse> decoded = ClassSessionCodec.decode(ClassSessionCodec.encodeBinary(sessions));
+
+        assertSessions(sessions, decoded);
+    }
+
+    @Test
+    void binaryHandlesMissingRoomAndName() {
+        List<ClassSession> sessions = List.of(
+                session(2, "08:00", "10:00", null),
+                session(3, "08:00", "10:00", room(null, null)));
+
+        List<ClassSessionResponse> decoded = ClassSessionCodec.decode(ClassSessionCodec.encodeBinary(sessions));
+
+        assertEquals(2, decoded.size());
+        assertEquals("N/A", decoded.get(0).getRoomName());
+        assertNull(decoded.get(0).getRoomId());
+        assertNull(decoded.get(1).getRoomName());
+        assertNull(decoded.get(1).getRoomId());
+    }
+
+    @Test
+    void decodesLegacyValueWrittenBeforeRollout() {
+        List<ClassSessionResponse> decoded = ClassSessionCodec.decode(LEGACY_VALUE);
+
+        assertEquals(2, decoded.size());
+        assertEquals(2, decoded.get(0).getDayOfWeek());
+        assertEquals(LocalTime.of(8, 0), decoded.get(0).getStartTime());
+        assertEquals(LocalTime.of(10, 0), decoded.get(0).getEndTime());
+        assertEquals("A-101", decoded.get(0).getRoomName());
+        assertEquals(1, decoded.get(0).getRoomId());
+        assertEquals(7, decoded.get(1).getRoomId());
+    }
+
+    @Test
+    void legacyKeepsColonInRoomNameAndNullRoomId() {
+        List<ClassSessionResponse> decoded = ClassSessionCodec.decode(
+                "[{\"dayOfWeek\":3,\"startTime\":\"09:00\",\"endTime\":\"11:00\",\"roomName\":\"Lab:2\",\"roomId\":null}]");
+
+        assertEquals(1, decoded.size());
+        assertEquals("Lab:2", decoded.get(0).getRoomName());
+        assertNull(decoded.get(0).getRoomId());
+    }
+
+    @Test
+    void mixedFormatsDecodeToSameSessions() {
+        List<ClassSession> sessions = List.of(
+                session(2, "08:00", "10:00", room(1, "A-101")),
+                session(5, "13:30", "15:00", room(7, "B-202")));
+
+        List<ClassSessionResponse> fromLegacy = ClassSessionCodec.decode(LEGACY_VALUE);
+        List<ClassSessionResponse> fromBinary = ClassSessionCodec.decode(
+                ClassSessionCodec.encode(sessions, ClassSessionCodec.Encoding.BINARY));
+
+        assertEquals(fromLegacy, fromBinary);
+    }
+
+    @Test
+    void emptyValues() {
+        assertTrue(ClassSessionCodec.decode(null).isEmpty());
+        assertTrue(ClassSessionCodec.decode("").isEmpty());
+        assertTrue(ClassSessionCodec.decode("[]").isEmpty());
+        assertTrue(ClassSessionCodec.decode(ClassSessionCodec.encodeBinary(List.of())).isEmpty());
+        assertEquals("[]", ClassSessionCodec.encodeLegacy(null));
+    }
+
+    @Test
+    void rejectsUnknownBinaryVersion() {
+        String encoded = ClassSessionCodec.encodeBinary(List.of(session(2, "08:00", "10:00", room(1, "A-101"))));
+        byte[] bytes = java.util.Base64.getUrlDecoder().decode(encoded.substring(1));
+        bytes[0] = 2;
+        String future = "~" + java.util.Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        assertThrows(IllegalArgumentException.class, () -> ClassSessionCodec.decode(future));
+    }
+
+    private static void assertSessions(List<ClassSession> expected, List<ClassSessionResponse> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            ClassSession session = expected.get(i);
+            ClassSessionResponse response = actual.get(i);
+            assertEquals(session.getDayOfWeek(), response.getDayOfWeek());
+            assertEquals(session.getStartTime(), response.getStartTime());
+            assertEquals(session.getEndTime(), response.getEndTime());
+            assertEquals(session.getRoom().getRoomId(), response.getRoomId());
+            assertEquals(session.getRoom().getName(), response.getRoomName());
+        }
+    }
+
+    private static ClassSession session(int dayOfWeek, String start, String end, Room room) {
+        ClassSession session = new ClassSession();
+        session.setDayOfWeek(dayOfWeek);
+        session.setStartTime(LocalTime.parse(start));
+        session.setEndTime(LocalTime.parse(end));
+        session.setRoom(room);
+        return session;
+    }
+
+    private static Room room(Integer roomId, String name) {
+        Room room = new Room();
+        room.setRoomId(roomId);
+        room.setName(name);
+        return room;
+    }
+}
@@ -0,0 +1,128 @@
+package com.newwave.student_management.domains.enrollment.service.impl;
+
+import com.newwave.student_management.domains.curriculum.entity.Course;
+import com.newwave.student_management.domains.enrollment.entity.ScheduledClass;
+import com.newwave.student_management.domains.enrollment.repository.ClassSessionRepository;
+import com.newwave.student_management.domains.enrollment.repository.EnrollmentRepository;
+import com.newwave.student_management.domains.enrollment.service.impl.ClassCacheService.WaitlistEntry;
+import com.newwave.student_management.domains.profile.entity.Semester;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.time.LocalTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Redis đổi trước DB khi đôn hàng đợi — transaction DB rollback thì SV phải được
+ * xếp lại hàng đợi với score cũ; reservation write-behind trên Redis cũng tính là
+ * lịch đã chiếm.
+ */
+class WaitlistPromotionServiceTest {
+
+    private static final int SEMESTER_ID = 1;
+    private static final int CLASS_ID = 10;
+    private static final int COURSE_ID = 100;
+    private static final UUID FIRST = UUID.fromString("00000000-0000-0000-0000-000000000001");
+    private static final UUID SECOND = UUID.fromString("00000000-0000-0000-0000-000000000002");
+
+    private ClassCacheService classCacheService;
+    private EnrollmentRepository enrollmentRepository;
+    private ClassSessionRepository classSessionRepository;
+    private JdbcTemplate jdbcTemplate;
+    private WaitlistPromotionService service;
+
+    @BeforeEach
+    void setUp() {
+        classCacheService = mock(ClassCacheService.class);
+        enrollmentRepository = mock(EnrollmentRepository.class);
+        classSessionRepository = mock(ClassSessionRepository.class);
+        jdbcTemplate = mock(JdbcTemplate.class);
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+        service = new WaitlistPromotionService(classCacheService, enrollmentRepository, classSessionRepository,
+                jdbcTemplate, transactionManager);
+
+        when(enrollmentRepository.findStudentsWithConflicts(eq(CLASS_ID), anyCollection())).thenReturn(List.of());
+        when(classCacheService.getAdmittedClassIds(eq(SEMESTER_ID), any())).thenReturn(Set.of(CLASS_ID));
+    }
+
+    @Test
+    void dbFailureRestoresDequeuedStudents() {
+        List<WaitlistEntry> dequeued = List.of(new WaitlistEntry(FIRST, 1_000), new WaitlistEntry(SECOND, 2_000));
+        when(classCacheService.fillFromWaitlist(SEMESTER_ID, CLASS_ID, COURSE_ID, 1)).thenReturn(dequeued);
+        when(jdbcTemplate.queryForList(anyString(), eq(UUID.class), any(Object[].class)))
+                .thenThrow(new DataAccessResourceFailureException("connection reset"));
+
+        service.fillReleasedSlotsAfterCommit(scheduledClass(), 1);
+
+        verify(classCacheService).restoreWaitlist(eq(SEMESTER_ID), eq(CLASS_ID), eq(COURSE_ID),
+                argThat((Collection<WaitlistEntry> entries) -> List.copyOf(entries).equals(dequeued)));
+    }
+
+    @Test
+    void redisReservationConflictIsDropped() {
+        when(classCacheService.fillFromWaitlist(SEMESTER_ID, CLASS_ID, COURSE_ID, 1))
+                .thenReturn(List.of(new WaitlistEntry(FIRST, 1_000)), List.of());
+        // Lớp 20 mới giữ chỗ qua write-behind, chưa có dòng ENROLLED trong DB
+        when(classCacheService.getAdmittedClassIds(SEMESTER_ID, FIRST)).thenReturn(Set.of(CLASS_ID, 20));
+        when(classSessionRepository.findSessionSlotsByClassIds(List.of(CLASS_ID)))
+                .thenReturn(List.<Object[]>of(new Object[] { 2, LocalTime.of(8, 0), LocalTime.of(10, 0) }));
+        when(classSessionRepository.findSessionSlotsByClassIds(Set.of(20)))
+                .thenReturn(List.<Object[]>of(new Object[] { 2, LocalTime.of(9, 0), LocalTime.of(11, 0) }));
+        when(jdbcTemplate.queryForList(anyString(), eq(UUID.class), any(Object[].class)))
+                .thenReturn(List.of(FIRST));
+
+        service.fillReleasedSlotsAfterCommit(scheduledClass(), 1);
+
+        verify(jdbcTemplate).queryForList(anyString(), eq(UUID.class), eq("DROPPED"), eq(CLASS_ID), eq(FIRST));
+        verify(classCacheService).removeEnrollment(SEMESTER_ID, CLASS_ID, COURSE_ID, FIRST, false);
+        verify(classCacheService, never()).restoreWaitlist(anyInt(), anyInt(), anyInt(), anyCollection());
+    }
+
+    @Test
+    void cancelledWaitlistIsNotRestored() {
+        when(classCacheService.fillFromWaitlist(SEMESTER_ID, CLASS_ID, COURSE_ID, 1))
+                .thenReturn(List.of(new WaitlistEntry(FIRST, 1_000)), List.of(new WaitlistEntry(SECOND, 2_000)));
+        // FIRST đã hủy chờ (không còn dòng WAITLISTED), UPDATE cho SECOND thì lỗi
+        when(jdbcTemplate.queryForList(anyString(), eq(UUID.class), any(Object[].class)))
+                .thenReturn(List.of())
+                .thenThrow(new DataAccessResourceFailureException("connection reset"));
+
+        service.fillReleasedSlotsAfterCommit(scheduledClass(), 1);
+
+        verify(classCacheService).removeEnrollment(SEMESTER_ID, CLASS_ID, COURSE_ID, FIRST, false);
+        verify(classCacheService).restoreWaitlist(eq(SEMESTER_ID), eq(CLASS_ID), eq(COURSE_ID),
+                argThat((Collection<WaitlistEntry> entries) -> entries.size() == 1
+                        && entries.iterator().next().studentId().equals(SECOND)));
+    }
+
+    private static ScheduledClass scheduledClass() {
+        Semester semester = new Semester();
+        semester.setSemesterId(SEMESTER_ID);
+        Course course = new Course();
+        course.setCourseId(COURSE_ID);
+        ScheduledClass scheduledClass = new ScheduledClass();
+        scheduledClass.setClassId(CLASS_ID);
+        scheduledClass.setSemester(semester);
+        scheduledClass.setCourse(course);
+        return scheduledClass;
+    }
+}
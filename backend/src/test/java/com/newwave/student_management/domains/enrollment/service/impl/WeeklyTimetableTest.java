@@ -0,0 +1,120 @@
+package com.newwave.student_management.domains.enrollment.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * So sánh {@link WeeklyTimetable#overlaps} với điều kiện của query
+ * countStudentConflicts cũ: cùng ngày và
+ * {@code sess.startTime < endTime AND sess.endTime > startTime}.
+ */
+class WeeklyTimetableTest {
+
+    private record Slot(int day, LocalTime start, LocalTime end) {
+    }
+
+    @Test
+    void backToBackSessionsDoNotConflict() {
+        assertConsistent(List.of(slot(2, "08:00", "09:30")), List.of(slot(2, "09:30", "11:00")), false);
+        assertConsistent(List.of(slot(2, "09:30", "11:00")), List.of(slot(2, "08:00", "09:30")), false);
+    }
+
+    @Test
+    void overlappingSessionsOnSameDayConflict() {
+        assertConsistent(List.of(slot(3, "08:00", "09:30")), List.of(slot(3, "09:29", "11:00")), true);
+        assertConsistent(List.of(slot(3, "08:00", "12:00")), List.of(slot(3, "09:00", "10:00")), true);
+    }
+
+    @Test
+    void sameTimeOnDifferentDaysDoesNotConflict() {
+        assertConsistent(List.of(slot(1, "08:00", "09:30")), List.of(slot(2, "08:00", "09:30")), false);
+        assertConsistent(List.of(slot(7, "23:00", "23:59:59")), List.of(slot(1, "00:00", "01:00")), false);
+    }
+
+    @Test
+    void timesWithSecondsFollowExactBoundaries() {
+        // Cùng phút 09:00 nhưng không chạm nhau
+        assertConsistent(List.of(slot(4, "08:00:00", "09:00:30")), List.of(slot(4, "09:00:45", "10:00")), false);
+        assertConsistent(List.of(slot(4, "09:00:45", "10:00")), List.of(slot(4, "08:00:00", "09:00:30")), false);
+        // Chạm đúng giây → không trùng, lệch 1 giây → trùng
+        assertConsistent(List.of(slot(4, "08:00:00", "09:00:30")), List.of(slot(4, "09:00:30", "10:00")), false);
+        assertConsistent(List.of(slot(4, "08:00:00", "09:00:31")), List.of(slot(4, "09:00:30", "10:00")), true);
+        // Giờ lẻ giây ở một bên, bên kia tròn phút
+        assertConsistent(List.of(slot(5, "08:00", "09:00")), List.of(slot(5, "08:59:59", "10:00")), true);
+        assertConsistent(List.of(slot(5, "08:00", "08:59:30")), List.of(slot(5, "08:59:30", "10:00")), false);
+    }
+
+    @Test
+    void invalidSessionsAreIgnored() {
+        WeeklyTimetable timetable = new WeeklyTimetable()
+                .add(null, time("08:00"), time("09:00"))
+                .add(8, time("08:00"), time("09:00"))
+                .add(2, time("09:00"), time("09:00"));
+        assertTrue(timetable.isEmpty());
+        assertFalse(timetable.overlaps(new WeeklyTimetable().add(2, time("08:00"), time("10:00"))));
+    }
+
+    @Test
+    void randomizedScheduleMatchesLegacyPredicate() {
+        Random random = new Random(20260118L);
+        for (int i = 0; i < 20_000; i++) {
+            boolean withSeconds = i % 2 == 0;
+            List<Slot> enrolled = randomSlots(random, 1 + random.nextInt(6), withSeconds);
+            List<Slot> target = randomSlots(random, 1 + random.nextInt(3), withSeconds);
+            assertConsistent(enrolled, target, legacyConflict(enrolled, target));
+        }
+    }
+
+    private static void assertConsistent(List<Slot> enrolled, List<Slot> target, boolean expected) {
+        assertEquals(expected, legacyConflict(enrolled, target), "legacy predicate");
+        assertEquals(expected, timetable(enrolled).overlaps(timetable(target)),
+                () -> "enrolled=" + enrolled + ", target=" + target);
+    }
+
+    private static boolean legacyConflict(List<Slot> enrolled, List<Slot> target) {
+        for (Slot t : target) {
+            for (Slot sess : enrolled) {
+                if (sess.day() == t.day() && sess.start().isBefore(t.end()) && sess.end().isAfter(t.start())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static WeeklyTimetable timetable(List<Slot> slots) {
+        WeeklyTimetable timetable = new WeeklyTimetable();
+        for (Slot slot : slots) {
+            timetable.add(slot.day(), slot.start(), slot.end());
+        }
+        return timetable;
+    }
+
+    private static List<Slot> randomSlots(Random random, int count, boolean withSeconds) {
+        List<Slot> slots = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int day = 1 + random.nextInt(3); // ít ngày → nhiều cặp cùng ngày
+            int unit = withSeconds ? 1 : 60;
+            int start = (7 * 3600 + random.nextInt(12 * 3600 / unit) * unit);
+            int length = unit + random.nextInt(3 * 3600 / unit) * unit;
+            slots.add(new Slot(day, LocalTime.ofSecondOfDay(start), LocalTime.ofSecondOfDay(start + length)));
+        }
+        return slots;
+    }
+
+    private static Slot slot(int day, String start, String end) {
+        return new Slot(day, time(start), time(end));
+    }
+
+    private static LocalTime time(String value) {
+        return LocalTime.parse(value);
+    }
+}
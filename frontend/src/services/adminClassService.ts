@@ -176,14 +176,35 @@ export interface AdminEligibleStudent {
   email: string
 }
 
-export async function getEligibleStudents(classId: number): Promise<AdminEligibleStudent[]> {
-  const response = await apiFetch(`/admin/classes/${classId}/eligible-students`)
+export interface AdminEligibleStudentListResponse {
+  content: AdminEligibleStudent[]
+  page: number
+  size: number
+  totalElements: number
+  totalPages: number
+}
+
+/**
+ * Sinh viên đủ điều kiện thêm vào lớp (lọc + phân trang phía server, page 0-based)
+ */
+export async function getEligibleStudents(
+  classId: number,
+  search = '',
+  page = 0,
+  size = 20,
+): Promise<AdminEligibleStudentListResponse> {
+  const query = new URLSearchParams()
+  if (search.trim()) query.set('search', search.trim())
+  query.set('page', String(Math.max(0, page)))
+  query.set('size', String(size))
+
+  const response = await apiFetch(`/admin/classes/${classId}/eligible-students?${query.toString()}`)
   if (!response.ok) {
     const errorData = await response.json().catch(() => null)
     throw new Error(errorData?.message || `Failed to fetch eligible students (${response.status})`)
   }
   const data = await response.json()
-  return (data.result || data) as AdminEligibleStudent[]
+  return (data.result || data) as AdminEligibleStudentListResponse
 }
 
 export async function unenrollStudent(classId: number, studentId: string): Promise<void> {
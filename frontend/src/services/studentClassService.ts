@@ -66,7 +66,14 @@ export async function getEnrolledClasses(): Promise<StudentEnrolledClass[]> {
   throw new Error('Failed to fetch enrolled classes')
 }
 
-export async function enrollInClass(classId: number): Promise<void> {
+export interface EnrollmentReservation {
+  reservationId: string | null // null khi đăng ký được ghi đồng bộ
+  classId: number
+  status: 'ENROLLED' | 'WAITLISTED' | 'PENDING' | 'FAILED'
+  message?: string | null
+}
+
+export async function enrollInClass(classId: number): Promise<EnrollmentReservation> {
   const response = await apiFetch(`/student/classes/${classId}/enroll`, {
     method: 'POST',
   })
@@ -74,6 +81,36 @@ export async function enrollInClass(classId: number): Promise<void> {
     const errorData = await response.json().catch(() => ({}))
     throw new Error(errorData.message || 'Failed to enroll in class')
   }
+  const data = await response.json()
+  return data.result as EnrollmentReservation
+}
+
+export async function getReservation(reservationId: string): Promise<EnrollmentReservation> {
+  const response = await apiFetch(`/student/classes/reservations/${reservationId}`)
+  if (!response.ok) {
+    const errorData = await response.json().catch(() => ({}))
+    throw new Error(errorData.message || 'Failed to fetch enrollment status')
+  }
+  const data = await response.json()
+  return data.result as EnrollmentReservation
+}
+
+/**
+ * Suất đăng ký PENDING (ghi DB async) → poll tới khi có kết quả ENROLLED/FAILED.
+ * Hết thời gian chờ thì trả lại trạng thái PENDING cuối cùng.
+ */
+export async function waitForReservation(
+  reservation: EnrollmentReservation,
+  intervalMs = 1000,
+  timeoutMs = 30000,
+): Promise<EnrollmentReservation> {
+  let current = reservation
+  const deadline = Date.now() + timeoutMs
+  while (current.status === 'PENDING' && current.reservationId && Date.now() < deadline) {
+    await new Promise((resolve) => setTimeout(resolve, intervalMs))
+    current = await getReservation(current.reservationId)
+  }
+  return current
 }
 
 export async function dropClass(classId: number): Promise<void> {